@@ -21,6 +21,8 @@ import org.csap.events.db.ServiceAnalytics ;
 import org.csap.events.db.TrendingReportHelper ;
 import org.csap.events.monitoring.MongoClusterListener ;
 import org.csap.events.monitoring.MongoCommandListener ;
+import org.csap.events.util.ReportCacheWarmer ;
+import org.csap.events.util.ReportCaches ;
 import org.csap.helpers.CsapApplication ;
 import org.csap.integations.CsapEncryptionConfiguration ;
 import org.csap.integations.CsapMicroMeter ;
@@ -28,9 +30,12 @@ import org.csap.integations.CsapSecurityConfiguration ;
 import org.csap.security.config.CsapSecurityRoles ;
 import org.slf4j.Logger ;
 import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.ObjectProvider ;
 import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.beans.factory.config.BeanPostProcessor ;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty ;
 import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.cache.CacheManager ;
 import org.springframework.context.annotation.Bean ;
 import org.springframework.core.env.Environment ;
 import org.springframework.core.task.TaskExecutor ;
@@ -44,6 +49,7 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor ;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler ;
 import org.springframework.web.client.RestTemplate ;
 import org.springframework.web.servlet.config.annotation.CorsRegistry ;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry ;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry ;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer ;
 import org.springframework.web.servlet.resource.VersionResourceResolver ;
@@ -92,6 +98,9 @@ public class CsapEventsApplication implements WebMvcConfigurer {
 	@Inject
 	ObjectMapper jsonMapper ;
 
+	@Inject
+	ObjectProvider<ReportCacheWarmer> reportCacheWarmerProvider ;
+
 	private String hostUrlPattern = "http://CSAP_HOST.yourcompany.com:8011" ;
 
 	public String getHostUrlPattern ( ) {
@@ -154,6 +163,27 @@ public class CsapEventsApplication implements WebMvcConfigurer {
 
 	}
 
+	// report caches: single flight loads, stale entries served while rebuilt
+	@Bean
+	public static BeanPostProcessor reportCacheDecorator ( ObjectProvider<ReportCaches> reportCachesProvider ) {
+
+		return new BeanPostProcessor( ) {
+			@Override
+			public Object postProcessAfterInitialization ( Object bean , String beanName ) {
+
+				if ( bean instanceof CacheManager && ! ( bean instanceof ReportCaches.DecoratingCacheManager ) ) {
+
+					return new ReportCaches.DecoratingCacheManager( (CacheManager) bean, reportCachesProvider ) ;
+
+				}
+
+				return bean ;
+
+			}
+		} ;
+
+	}
+
 	MongoCredential mongoCredential = null ;
 
 	public MongoCredential getMongoCredential ( ) {
@@ -298,6 +328,16 @@ public class CsapEventsApplication implements WebMvcConfigurer {
 
 	}
 
+	// request counts used to pre-build the most requested reports
+	@Override
+	public void addInterceptors ( InterceptorRegistry registry ) {
+
+		registry
+				.addInterceptor( reportCacheWarmerProvider.getObject( ) )
+				.addPathPatterns( REPORT_API + "/**", METRICS_API + "/**" ) ;
+
+	}
+
 	// https://spring.io/blog/2014/07/24/spring-framework-4-1-handling-static-web-resources
 	// http://www.mscharhag.com/spring/resource-versioning-with-spring-mvc
 	@Override
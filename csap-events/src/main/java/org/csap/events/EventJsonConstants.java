@@ -1,11 +1,15 @@
 package org.csap.events ;
 
 import java.io.IOException ;
+import java.io.Writer ;
 import java.util.Arrays ;
 import java.util.List ;
 
 import org.bson.Document ;
+import org.bson.codecs.DocumentCodec ;
+import org.bson.codecs.EncoderContext ;
 import org.bson.json.JsonMode ;
+import org.bson.json.JsonWriter ;
 import org.bson.json.JsonWriterSettings ;
 
 import com.fasterxml.jackson.databind.JsonNode ;
@@ -63,6 +67,8 @@ public class EventJsonConstants {
 
 	final static ObjectMapper jacksonMapper = new ObjectMapper( ) ;
 
+	final static DocumentCodec documentCodec = new DocumentCodec( ) ;
+
 	static public JsonNode transformToJackson ( AggregateIterable<Document> results )
 		throws IOException {
 
@@ -81,4 +87,38 @@ public class EventJsonConstants {
 
 	}
 
+	//
+	// Streaming alternative to transformToJackson: each result is encoded from the
+	// cursor straight to the output - no String or JsonNode per row, so memory is
+	// constant and the first rows are sent while the cursor is still being read.
+	// Output is identical to transformToJackson (RELAXED json array)
+	//
+	static public long streamJsonArray ( AggregateIterable<Document> results , Writer outputWriter )
+		throws IOException {
+
+		long numberWritten = 0 ;
+		outputWriter.write( "[" ) ;
+
+		try ( var resultIterator = results.iterator( ) ) {
+
+			while ( resultIterator.hasNext( ) ) {
+
+				if ( numberWritten++ > 0 ) {
+
+					outputWriter.write( "," ) ;
+
+				}
+
+				documentCodec.encode( new JsonWriter( outputWriter, jsonWriter ), resultIterator.next( ),
+						EncoderContext.builder( ).build( ) ) ;
+
+			}
+
+		}
+
+		outputWriter.write( "]" ) ;
+		return numberWritten ;
+
+	}
+
 }
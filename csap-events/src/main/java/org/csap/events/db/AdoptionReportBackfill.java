@@ -0,0 +1,254 @@
+package org.csap.events.db ;
+
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.concurrent.CompletableFuture ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.TimeUnit ;
+import java.util.concurrent.atomic.AtomicInteger ;
+
+import javax.inject.Inject ;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory ;
+import org.bson.Document ;
+import org.csap.events.CsapEventsApplication ;
+import org.csap.events.EventServiceConfiguration ;
+import org.csap.helpers.CSAP ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.stereotype.Service ;
+
+import com.fasterxml.jackson.databind.ObjectMapper ;
+import com.fasterxml.jackson.databind.node.ObjectNode ;
+
+/**
+ *
+ * Rebuilds adoption reports for a range of days, for example after a report
+ * fix.
+ *
+ * - days are split into chunks of chunkDays; chunks run on at most concurrency
+ * threads, each building and storing its days in order, which bounds the
+ * aggregations and writes sent to mongo
+ *
+ * - reports are stored with EventDataWriter in this instance's database, rather
+ * than posted to the data-connection url as the nightly report is
+ *
+ * - one backfill at a time; progress and throughput are available while it
+ * runs and after it completes
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".adoption-backfill" )
+public class AdoptionReportBackfill {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	@Inject
+	private CsapAdoptionReportBuilder adoptionReportBuilder ;
+
+	@Inject
+	private EventDataWriter eventDataWriter ;
+
+	@Inject
+	private EventServiceConfiguration eventServiceConfiguration ;
+
+	private int concurrency = 4 ;
+	private int chunkDays = 7 ;
+	private int maxDays = 730 ;
+
+	private ObjectMapper jsonMapper = new ObjectMapper( ) ;
+
+	private volatile Backfill current = null ;
+
+	static class Backfill {
+
+		final int fromOffSet ;
+		final int numDays ;
+		final long startedAt = System.currentTimeMillis( ) ;
+
+		final AtomicInteger stored = new AtomicInteger( ) ;
+		final AtomicInteger noData = new AtomicInteger( ) ;
+		final AtomicInteger failed = new AtomicInteger( ) ;
+		volatile long completedAt = 0 ;
+
+		Backfill ( int fromOffSet, int numDays ) {
+
+			this.fromOffSet = fromOffSet ;
+			this.numDays = numDays ;
+
+		}
+
+		int completed ( ) {
+
+			return stored.get( ) + noData.get( ) + failed.get( ) ;
+
+		}
+
+		boolean isRunning ( ) {
+
+			return completedAt == 0 ;
+
+		}
+	}
+
+	/**
+	 *
+	 * @param fromOffSet most recent day: 1 is yesterday
+	 * @param numDays    days to build, going back from fromOffSet
+	 */
+	public synchronized ObjectNode start ( int fromOffSet , int numDays ) {
+
+		if ( fromOffSet < 1 || numDays < 1 || numDays > maxDays ) {
+
+			throw new IllegalArgumentException( "offSet must be 1 or more, numDays between 1 and " + maxDays ) ;
+
+		}
+
+		if ( current != null && current.isRunning( ) ) {
+
+			var progress = getProgress( ) ;
+			progress.put( "message", "Backfill already in progress" ) ;
+			return progress ;
+
+		}
+
+		var backfill = new Backfill( fromOffSet, numDays ) ;
+		current = backfill ;
+
+		logger.info( "Adoption backfill: offSet: {}, numDays: {}, concurrency: {}, chunkDays: {}",
+				fromOffSet, numDays, concurrency, chunkDays ) ;
+
+		var backfillPool = Executors.newFixedThreadPool( concurrency, new BasicThreadFactory.Builder( )
+				.namingPattern( CsapEventsApplication.class.getSimpleName( ) + "AdoptionBackfill-%d" )
+				.daemon( true )
+				.build( ) ) ;
+
+		var timer = metricUtilities.startTimer( ) ;
+		List<CompletableFuture<Void>> chunks = new ArrayList<>( ) ;
+		int lastOffSet = fromOffSet + numDays - 1 ;
+
+		for ( var chunkStart = fromOffSet; chunkStart <= lastOffSet; chunkStart += chunkDays ) {
+
+			int firstDay = chunkStart ;
+			int lastDay = Math.min( chunkStart + chunkDays - 1, lastOffSet ) ;
+			chunks.add( CompletableFuture.runAsync( ( ) -> backfillChunk( backfill, firstDay, lastDay ),
+					backfillPool ) ) ;
+
+		}
+
+		CompletableFuture.allOf( chunks.toArray( new CompletableFuture[0] ) ).whenComplete( ( result , e ) -> {
+
+			backfill.completedAt = System.currentTimeMillis( ) ;
+			backfillPool.shutdown( ) ;
+			var nanos = metricUtilities.stopTimer( timer, "AdoptionReport.backfill" ) ;
+			logger.info( "Adoption backfill complete: {}, Time Taken: {}", getProgress( ),
+					CSAP.timeUnitPresent( TimeUnit.NANOSECONDS.toMillis( nanos ) ) ) ;
+
+		} ) ;
+
+		return getProgress( ) ;
+
+	}
+
+	private void backfillChunk ( Backfill backfill , int firstDay , int lastDay ) {
+
+		for ( var offSet = firstDay; offSet <= lastDay; offSet++ ) {
+
+			try {
+
+				String jsonDoc = adoptionReportBuilder.buildAdoptionReport( offSet ) ;
+
+				if ( jsonDoc == null ) {
+
+					backfill.noData.incrementAndGet( ) ;
+					continue ;
+
+				}
+
+				eventDataWriter.insertReportDocument( Document.parse( jsonDoc ), eventServiceConfiguration.getUser( ) ) ;
+				backfill.stored.incrementAndGet( ) ;
+
+			} catch ( Exception e ) {
+
+				backfill.failed.incrementAndGet( ) ;
+				metricUtilities.incrementCounter( "AdoptionReport.backfill.failed" ) ;
+				logger.warn( "Failed adoption report, offSet: {} {}", offSet, CSAP.buildCsapStack( e ) ) ;
+
+			}
+
+		}
+
+	}
+
+	public ObjectNode getProgress ( ) {
+
+		var progress = jsonMapper.createObjectNode( ) ;
+		var backfill = current ;
+
+		if ( backfill == null ) {
+
+			progress.put( "running", false ) ;
+			return progress ;
+
+		}
+
+		long endTime = backfill.isRunning( ) ? System.currentTimeMillis( ) : backfill.completedAt ;
+		double elapsedSeconds = Math.max( 1, endTime - backfill.startedAt ) / 1000.0 ;
+
+		progress.put( "running", backfill.isRunning( ) ) ;
+		progress.put( "offSet", backfill.fromOffSet ) ;
+		progress.put( "numDays", backfill.numDays ) ;
+		progress.put( "completed", backfill.completed( ) ) ;
+		progress.put( "stored", backfill.stored.get( ) ) ;
+		progress.put( "noData", backfill.noData.get( ) ) ;
+		progress.put( "failed", backfill.failed.get( ) ) ;
+		progress.put( "remaining", backfill.numDays - backfill.completed( ) ) ;
+		progress.put( "elapsedSeconds", Math.round( elapsedSeconds ) ) ;
+		progress.put( "reportsPerMinute", Math.round( backfill.completed( ) * 600 / elapsedSeconds ) / 10.0 ) ;
+		return progress ;
+
+	}
+
+	public int getConcurrency ( ) {
+
+		return concurrency ;
+
+	}
+
+	public void setConcurrency ( int concurrency ) {
+
+		this.concurrency = concurrency ;
+
+	}
+
+	public int getChunkDays ( ) {
+
+		return chunkDays ;
+
+	}
+
+	public void setChunkDays ( int chunkDays ) {
+
+		this.chunkDays = chunkDays ;
+
+	}
+
+	public int getMaxDays ( ) {
+
+		return maxDays ;
+
+	}
+
+	public void setMaxDays ( int maxDays ) {
+
+		this.maxDays = maxDays ;
+
+	}
+
+}
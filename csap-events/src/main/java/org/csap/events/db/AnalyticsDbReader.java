@@ -37,6 +37,7 @@ import org.apache.commons.lang3.math.NumberUtils ;
 import org.bson.Document ;
 import org.csap.events.CsapEventsApplication ;
 import org.csap.events.EventJsonConstants ;
+import org.csap.events.util.MetricsTimeSeries ;
 import org.csap.helpers.CSAP ;
 import org.csap.integations.CsapMicroMeter ;
 import org.slf4j.Logger ;
@@ -68,6 +69,12 @@ public class AnalyticsDbReader {
 	@Inject
 	private TrendingReportHelper trendingReportHelper ;
 
+	@Inject
+	private HostReportExecutor hostReportExecutor ;
+
+	@Inject
+	private DailyTrendStore dailyTrendStore ;
+
 	public AggregateIterable<Document> userActivityReport (
 															String appId ,
 															String project ,
@@ -207,17 +214,25 @@ public class AnalyticsDbReader {
 
 		logger.debug( "Trending report category {} serviceNameFilter: {}", category, serviceNameFilter ) ;
 
-		AggregateIterable<Document> aggregationOutput = analyticsHelper.getMongoEventCollection( )
+		// per host and all host totals need the host reports
+		var isDailyTotals = ! byHost
+				&& ! "true".equalsIgnoreCase( allVmTotal )
+				&& dailyTrendStore.isReady( ) ;
+
+		var trendCollection = isDailyTotals ? dailyTrendStore.getTotalsCollection( )
+				: analyticsHelper.getMongoEventCollection( ) ;
+
+		AggregateIterable<Document> aggregationOutput = trendCollection
 				.aggregate(
 						trendingReportHelper.trendingOperationPipelineBuilder(
 								byHost,
 								appId, project, life, serviceNameFilter,
 								category, metricsId, divideBy,
-								allVmTotal, dayCount, dateOffSet ) ) ;
+								allVmTotal, dayCount, dateOffSet, isDailyTotals ) ) ;
 
 		var trendReport = EventJsonConstants.transformToJackson( aggregationOutput ) ;
 
-		metricUtilities.stopTimer( timer, "trendingByCategory" ) ;
+		metricUtilities.stopTimer( timer, isDailyTotals ? "trendingByCategory.daily-totals" : "trendingByCategory" ) ;
 
 		if ( numDays < 0 ) {
 
@@ -277,11 +292,14 @@ public class AnalyticsDbReader {
 		// serviceNameFilter = "" ;
 		// }
 		// List<String> services = List.of( serviceNameFilter ) ;
-		Map<String, JsonNode> hostMetricReports = CSAP.jsonStream( trendsWithHostReported )
+		var hosts = CSAP.jsonStream( trendsWithHostReported )
 				.map( hostTrendReport -> hostTrendReport.path( "host" ) )
 				.filter( JsonNode::isTextual )
 				.map( JsonNode::asText )
-				.map( host -> {
+				.collect( Collectors.toList( ) ) ;
+
+		Map<String, JsonNode> hostMetricReports = hostReportExecutor.buildReports( "category-hourly", hosts,
+				host -> {
 
 					var metricReport = metricsId[0] ;
 					logger.debug( "{} report for host: {}, service: {}, metric: {} ", category, host, serviceNameFilter,
@@ -315,30 +333,39 @@ public class AnalyticsDbReader {
 
 						}
 
-						var hostFullReport = jsonMapper.readTree( metricsDataHandler
-								.buildMetricsReportNoCache(
+						// only the metric, or its per pod columns, are loaded
+						var metricColumn = metricSource ;
+						var podColumnPrefix = metricsId[0] + "_" ;
+
+						var hostFullReport = metricsDataHandler
+								.buildMetricsSeries(
 										host, metricsReportId,
 										"not-cached",
 										dayCount, dateOffSet,
 										1, 0,
 										services,
-										appId, life, false, false ) ) ;
+										appId, life, false, false, 0,
+										dataPoint -> dataPoint.equals( metricColumn )
+												|| dataPoint.startsWith( podColumnPrefix ) ) ;
 
-						logger.debug( "hostFullReport: {}", hostFullReport ) ;
+						var hostSeries = hostFullReport.getData( ) ;
+						logger.debug( "hostFullReport rows: {}", hostSeries.length( ) ) ;
 
 						hostMetricReport.set( "timeStamp",
 								reduce_using_samples(
-										hostFullReport.path( "data" ).path( "timeStamp" ),
+										hostSeries, MetricsTimeSeries.TIME_STAMP,
 										TREND_SAMPLES_FOR_24_HOURS,
 										false, false ) ) ;
 
-						var metricData = hostFullReport.path( "data" ).path( metricSource ) ;
 						var useTotals = new AtomicBoolean( false ) ;
 
-						if ( metricData.isMissingNode( ) ) {
+						if ( ! hostSeries.hasAttribute( metricSource ) ) {
 
-							var pods = hostFullReport.path( "attributes" ).path( "servicesAvailable" ) ;
-							var averagedData = jsonMapper.createArrayNode( ) ;
+							var pods = hostFullReport.getAttributes( ).path( "servicesAvailable" ) ;
+							var podTotals = new double[][] {
+									null
+							} ;
+							var totalsIntegral = new AtomicBoolean( true ) ;
 							CSAP.jsonStream( pods )
 									.filter( JsonNode::isTextual )
 									.map( podNode -> podNode.asText( ) )
@@ -346,34 +373,38 @@ public class AnalyticsDbReader {
 
 										logger.debug( "loading pod data: {}", podName ) ;
 										var podFilter = metricsId[0] + "_" + podName ;
-										var podData = hostFullReport.path( "data" ).path( podFilter ) ;
 
-										if ( averagedData.isEmpty( ) ) {
+										if ( ! hostSeries.hasAttribute( podFilter ) ) {
+
+											if ( podTotals[0] != null ) {
+
+												logger.warn( "pod value {} is not available - skipping merge",
+														podFilter ) ;
 
-											averagedData.addAll( (ArrayNode) podData ) ;
+											}
+
+										} else if ( podTotals[0] == null ) {
+
+											podTotals[0] = hostSeries.values( podFilter ) ;
+											totalsIntegral.set( hostSeries.isIntegral( podFilter ) ) ;
 
 										} else {
 
-											if ( podData.path( 0 ).isInt( ) ) {
+											if ( hostSeries.isIntegral( podFilter ) ) {
 
 												useTotals.set( true ) ;
-												var mergedVals = jsonMapper.createArrayNode( ) ;
+												var podData = hostSeries.values( podFilter ) ;
 
-												for ( var i = 0; i < podData.size( ); i++ ) {
+												for ( var i = 0; i < podData.length; i++ ) {
 
-													var sum = podData.path( i ).asLong( ) + averagedData.path( i )
-															.asLong( ) ;
-													mergedVals.add( sum ) ;
+													podTotals[0][i] = (long) podData[i] + (long) podTotals[0][i] ;
 
 												}
 
-												averagedData.removeAll( ) ;
-												averagedData.addAll( mergedVals ) ;
-
 											} else {
 
 												logger.warn( "pod value {} is not a int - skipping merge: {}",
-														podFilter, podData.path( 0 ) ) ;
+														podFilter, hostSeries.valueAt( podFilter, 0 ) ) ;
 
 											}
 
@@ -381,13 +412,18 @@ public class AnalyticsDbReader {
 
 									} ) ;
 
-							metricData = averagedData ;
+							if ( podTotals[0] != null ) {
+
+								hostSeries.putColumn( metricSource, podTotals[0],
+										totalsIntegral.get( ) || useTotals.get( ) ) ;
+
+							}
 
 						}
 
 						hostMetricReport.set( metricReport,
 								reduce_using_samples(
-										metricData,
+										hostSeries, metricSource,
 										TREND_SAMPLES_FOR_24_HOURS,
 										true, useTotals.get( ) ) ) ;
 
@@ -399,10 +435,7 @@ public class AnalyticsDbReader {
 
 					return hostMetricReport ;
 
-				} )
-				.collect( Collectors.toMap(
-						hostMetricReport -> hostMetricReport.get( "host" ).asText( ),
-						hostMetricReport -> hostMetricReport ) ) ;
+				} ) ;
 
 		logger.debug( "hostMetricReports: {}", hostMetricReports ) ;
 
@@ -801,6 +834,7 @@ public class AnalyticsDbReader {
 	}
 
 	final static String CORES_USED = "coresUsed" ;
+	final static Set<String> CORE_METRICS = Set.of( "usrCpu", "sysCpu" ) ;
 
 	public JsonNode buildCoreUsedTrendingReport (
 													String appId ,
@@ -866,11 +900,14 @@ public class AnalyticsDbReader {
 
 		var services = new String[0] ;
 
-		Map<String, JsonNode> hostMetricReports = CSAP.jsonStream( trendsWithHostReported )
+		var hosts = CSAP.jsonStream( trendsWithHostReported )
 				.map( hostTrendReport -> hostTrendReport.path( "host" ) )
 				.filter( JsonNode::isTextual )
 				.map( JsonNode::asText )
-				.map( host -> {
+				.collect( Collectors.toList( ) ) ;
+
+		Map<String, JsonNode> hostMetricReports = hostReportExecutor.buildReports( "core-hourly", hosts,
+				host -> {
 
 					logger.debug( "metric report for host: {} ", host ) ;
 
@@ -879,31 +916,34 @@ public class AnalyticsDbReader {
 
 					try {
 
-						var hostFullReport = jsonMapper.readTree( metricsDataHandler
-								.buildMetricsReportNoCache(
+						var hostFullReport = metricsDataHandler
+								.buildMetricsSeries(
 										host, "host_30",
 										"not-cached",
 										dayCount, dateOffSet,
 										0, 0,
-										services, appId, life, false, false ) ) ;
+										services, appId, life, false, false, 0,
+										CORE_METRICS::contains ) ;
+
+						var hostSeries = hostFullReport.getData( ) ;
 
 						hostMetricReport.set( "timeStamp",
 								reduce_using_samples(
-										hostFullReport.path( "data" ).path( "timeStamp" ),
+										hostSeries, MetricsTimeSeries.TIME_STAMP,
 										TREND_SAMPLES_FOR_24_HOURS,
 										false, false ) ) ;
 
-						var usrCpu = reduce_using_samples( hostFullReport.path( "data" ).path( "usrCpu" ),
+						var usrCpu = reduce_using_samples( hostSeries, "usrCpu",
 								TREND_SAMPLES_FOR_24_HOURS,
 								true, false ) ;
 						// logger.debug("usrCpu: {}", usrCpu) ;
 
-						var sysCpu = reduce_using_samples( hostFullReport.path( "data" ).path( "sysCpu" ),
+						var sysCpu = reduce_using_samples( hostSeries, "sysCpu",
 								TREND_SAMPLES_FOR_24_HOURS,
 								true, false ) ;
 
 						var coresUsed = jsonMapper.createArrayNode( ) ;
-						var cpuCount = hostFullReport.path( "attributes" ).path( "cpuCount" ).asInt( ) ;
+						var cpuCount = hostFullReport.getAttributes( ).path( "cpuCount" ).asInt( ) ;
 
 						for ( var i = 0; i < usrCpu.size( ); i++ ) {
 
@@ -923,10 +963,7 @@ public class AnalyticsDbReader {
 
 					return hostMetricReport ;
 
-				} )
-				.collect( Collectors.toMap(
-						hostMetricReport -> hostMetricReport.get( "host" ).asText( ),
-						hostMetricReport -> hostMetricReport ) ) ;
+				} ) ;
 
 		logger.debug( "hostMetricReports: {}", hostMetricReports ) ;
 
@@ -1349,11 +1386,14 @@ public class AnalyticsDbReader {
 
 		logger.debug( "performing metrics query: {}, hostTrendReports: {}", reportHostUsage, trendsWithHostReported ) ;
 
-		Map<String, JsonNode> hostMetricReports = CSAP.jsonStream( trendsWithHostReported )
+		var hosts = CSAP.jsonStream( trendsWithHostReported )
 				.map( hostTrendReport -> hostTrendReport.path( "host" ) )
 				.filter( JsonNode::isTextual )
 				.map( JsonNode::asText )
-				.map( host -> {
+				.collect( Collectors.toList( ) ) ;
+
+		Map<String, JsonNode> hostMetricReports = hostReportExecutor.buildReports( "host-hourly", hosts,
+				host -> {
 
 					logger.debug( "metric report for host: {} ", host ) ;
 
@@ -1362,14 +1402,6 @@ public class AnalyticsDbReader {
 
 					try {
 
-						var hostFullReport = jsonMapper.readTree( metricsDataHandler
-								.buildMetricsReportNoCache(
-										host, "host_30",
-										"not-cached",
-										analyticsDays, dateOffSet,
-										0, 0,
-										services, appId, life, false, false ) ) ;
-
 						var metric = metricsId[0] ;
 
 						if ( metric.equals( "totalCpuTestTime" ) ) {
@@ -1391,14 +1423,24 @@ public class AnalyticsDbReader {
 
 						}
 
+						var hostSeries = metricsDataHandler
+								.buildMetricsSeries(
+										host, "host_30",
+										"not-cached",
+										analyticsDays, dateOffSet,
+										0, 0,
+										services, appId, life, false, false, 0,
+										metric::equals )
+								.getData( ) ;
+
 						hostMetricReport.set( "timeStamp",
 								reduce_using_samples(
-										hostFullReport.path( "data" ).path( "timeStamp" ),
+										hostSeries, MetricsTimeSeries.TIME_STAMP,
 										TREND_SAMPLES_FOR_24_HOURS,
 										false, false ) ) ;
 
 						hostMetricReport.set( metricsId[0],
-								reduce_using_samples( hostFullReport.path( "data" ).path( metric ),
+								reduce_using_samples( hostSeries, metric,
 										TREND_SAMPLES_FOR_24_HOURS,
 										true, false ) ) ;
 
@@ -1410,10 +1452,7 @@ public class AnalyticsDbReader {
 
 					return hostMetricReport ;
 
-				} )
-				.collect( Collectors.toMap(
-						hostMetricReport -> hostMetricReport.get( "host" ).asText( ),
-						hostMetricReport -> hostMetricReport ) ) ;
+				} ) ;
 
 		// logger.info( "hostMetricReports: {}", hostMetricReports ) ;
 
@@ -1495,12 +1534,23 @@ public class AnalyticsDbReader {
 	}
 
 	public JsonNode reduce_using_samples (
-											JsonNode data ,
+											MetricsTimeSeries series ,
+											String attribute ,
 											int requestedSamples ,
 											boolean calculateAverage ,
 											boolean useTotal ) {
 
-		var sampleInterval = Math.round( data.size( ) / requestedSamples ) ;
+		var trimmedData = jsonMapper.createArrayNode( ) ;
+
+		if ( ! series.hasAttribute( attribute ) ) {
+
+			return trimmedData ;
+
+		}
+
+		var dataSize = series.length( ) ;
+		var isIntegral = series.isIntegral( attribute ) ;
+		var sampleInterval = Math.round( dataSize / requestedSamples ) ;
 
 		if ( sampleInterval < 1 ) {
 
@@ -1508,28 +1558,27 @@ public class AnalyticsDbReader {
 
 		}
 
-		var trimmedData = jsonMapper.createArrayNode( ) ;
 		double intervalAverageTotal = 0 ;
 		int intervalTotalInt = 0 ;
 		var intervalCount = 0 ;
 
-		for ( var i = 0; i < data.size( ); i++ ) {
+		for ( var i = 0; i < dataSize; i++ ) {
 
-			boolean isFinalIteration = i == ( data.size( ) - 1 ) ;
+			boolean isFinalIteration = i == ( dataSize - 1 ) ;
 
 			intervalCount++ ;
 
-			var current = data.path( i ) ;
+			var current = series.valueAt( attribute, i ) ;
 
 			if ( calculateAverage ) {
 
-				intervalAverageTotal += current.asDouble( ) ;
+				intervalAverageTotal += current ;
 
 			}
 
 			if ( useTotal ) {
 
-				intervalTotalInt += current.asInt( ) ;
+				intervalTotalInt += (int) current ;
 
 			}
 
@@ -1544,6 +1593,10 @@ public class AnalyticsDbReader {
 
 					trimmedData.add( CSAP.roundIt( intervalAverageTotal / intervalCount, 2 ) ) ;
 
+				} else if ( isIntegral ) {
+
+					trimmedData.add( (long) current ) ;
+
 				} else {
 
 					trimmedData.add( current ) ;
@@ -1828,10 +1881,19 @@ public class AnalyticsDbReader {
 
 		logger.debug( "trendingCommandPipleline: {} ", trendingCommandPipleline ) ;
 
-		AggregateIterable<Document> aggregationOutput = analyticsHelper.getMongoEventCollection( )
+		// totals of all hosts are materialized: same pipeline, one document per day
+		var isDailyTotals = matchHosts.isEmpty( )
+				&& ! perVm
+				&& ! "true".equalsIgnoreCase( allVmTotal )
+				&& dailyTrendStore.isReady( ) ;
+
+		var trendCollection = isDailyTotals ? dailyTrendStore.getTotalsCollection( )
+				: analyticsHelper.getMongoEventCollection( ) ;
+
+		AggregateIterable<Document> aggregationOutput = trendCollection
 				.aggregate( trendingCommandPipleline ) ;
 
-		metricUtilities.stopTimer( timer, "vmTrending" ) ;
+		metricUtilities.stopTimer( timer, isDailyTotals ? "vmTrending.daily-totals" : "vmTrending" ) ;
 		return aggregationOutput ;
 
 	}
@@ -14,9 +14,14 @@ import java.time.LocalDateTime ;
 import java.time.format.DateTimeFormatter ;
 import java.util.ArrayList ;
 import java.util.Calendar ;
+import java.util.Collection ;
+import java.util.Date ;
 import java.util.HashMap ;
+import java.util.HashSet ;
+import java.util.LinkedHashMap ;
 import java.util.List ;
 import java.util.Map ;
+import java.util.Set ;
 import java.util.regex.Pattern ;
 import java.util.stream.StreamSupport ;
 
@@ -37,12 +42,9 @@ import com.fasterxml.jackson.databind.JsonNode ;
 import com.fasterxml.jackson.databind.ObjectMapper ;
 import com.fasterxml.jackson.databind.node.ArrayNode ;
 import com.fasterxml.jackson.databind.node.ObjectNode ;
-import com.mongodb.BasicDBObject ;
 import com.mongodb.DBCollection ;
 import com.mongodb.MongoClient ;
 import com.mongodb.client.AggregateIterable ;
-import com.mongodb.client.MongoCollection ;
-import com.mongodb.client.MongoCursor ;
 import com.mongodb.util.JSON ;
 
 @Service
@@ -62,6 +64,14 @@ public class CsapAdoptionReportBuilder {
 	@Inject
 	private EventServiceConfiguration eventHelper ;
 
+	final static String HOST_DAILY_CATEGORY = "/csap/reports/host/daily" ;
+	final static String HEALTH_CATEGORY = "/csap/health" ;
+
+	final static Document MODEL_SUMMARY_FIELDS = new Document( "appId", 1 )
+			.append( "data.version", 1 )
+			.append( "data.name", 1 )
+			.append( "data.packages", 1 ) ;
+
 	private ObjectMapper jacksonMapper = new ObjectMapper( ) ;
 
 	public String buildAdoptionReportAndSaveToDB ( int offSet , String projectName ) {
@@ -72,10 +82,8 @@ public class CsapAdoptionReportBuilder {
 
 		if ( allGlobalActivity.size( ) > 0 ) {
 
-			retrieveCpuInformation( offSet, allGlobalActivity ) ;
-			retrieveLoadInformation( offSet, allGlobalActivity ) ;
-			activeUsers( offSet, allGlobalActivity ) ;
-			userActivity( offSet, allGlobalActivity ) ;
+			retrieveHostInformation( offSet, allGlobalActivity ) ;
+			retrieveUserInformation( offSet, allGlobalActivity ) ;
 			retrieveCurrentGlobalActivity( allGlobalActivity, projectName, offSet ) ;
 			calculateTotal( allGlobalActivity ) ;
 			String jsonDoc = summaryJson( allGlobalActivity, offSet ) ;
@@ -93,26 +101,42 @@ public class CsapAdoptionReportBuilder {
 
 		String result = "Did not run" ;
 
+		String jsonDoc = buildAdoptionReport( offSet ) ;
+
+		if ( jsonDoc != null ) {
+
+			result = eventHelper.postEventData( jsonDoc ) ;
+			logger.debug( "offSet: {} days,  report: \n{}", offSet, jsonDoc ) ;
+
+		}
+
+		return result ;
+
+	}
+
+	/**
+	 *
+	 * @return the adoption report for all projects, or null if no project has
+	 *         data for the day
+	 */
+	public String buildAdoptionReport ( int offSet ) {
+
 		Map<String, GlobalAnalyticsSummary> allGlobalActivity = new HashMap<>( ) ;
 
 		AggregateIterable<Document> projectWithLife = getProjectLife( offSet ) ;
 
 		retrieveInfoFromApplicationDefinition( offSet, allGlobalActivity, projectWithLife ) ;
 
-		if ( allGlobalActivity.size( ) > 0 ) {
+		if ( allGlobalActivity.isEmpty( ) ) {
 
-			retrieveCpuInformation( offSet, allGlobalActivity ) ;
-			retrieveLoadInformation( offSet, allGlobalActivity ) ;
-			activeUsers( offSet, allGlobalActivity ) ;
-			userActivity( offSet, allGlobalActivity ) ;
-			calculateTotal( allGlobalActivity ) ;
-			String jsonDoc = summaryJson( allGlobalActivity, offSet ) ;
-			result = eventHelper.postEventData( jsonDoc ) ;
-			logger.debug( "offSet: {} days,  report: \n{}", offSet, jsonDoc ) ;
+			return null ;
 
 		}
 
-		return result ;
+		retrieveHostInformation( offSet, allGlobalActivity ) ;
+		retrieveUserInformation( offSet, allGlobalActivity ) ;
+		calculateTotal( allGlobalActivity ) ;
+		return summaryJson( allGlobalActivity, offSet ) ;
 
 	}
 
@@ -177,97 +201,88 @@ public class CsapAdoptionReportBuilder {
 
 	}
 
-	public void retrieveLoadInformation ( int offSet , Map<String, GlobalAnalyticsSummary> allGlobalActivity ) {
+	//
+	// host daily reports (load) and health events (cpu) for all projects: one
+	// pass over the day's documents, grouped per project in each facet
+	//
+	public void retrieveHostInformation ( int offSet , Map<String, GlobalAnalyticsSummary> allGlobalActivity ) {
 
 		var timer = metricUtilities.startTimer( ) ;
-		metricUtilities.stopTimer( timer, "AdoptionReport.retrieveLoadInformation" ) ;
-		String formatedDate = DateUtil.buildMongoCreatedDateFromOffset( offSet ) ;
-		MongoCollection<Document> eventCollection = analyticsHelper.getMongoEventCollection( ) ;
 
-		for ( String projectName : allGlobalActivity.keySet( ) ) {
+		var operations = hostInformationPipeline( DateUtil.buildMongoCreatedDateFromOffset( offSet ),
+				allGlobalActivity.keySet( ) ) ;
 
-			Document query = new Document( ) ;
-			query.append( CATEGORY, "/csap/reports/host/daily" ) ;
-			query.append( PROJECT, projectName ) ;
-			query.append( CREATED_ON + ".date", formatedDate ) ;
-
-			Document match = new Document( "$match", query ) ;
+		Document facets = analyticsHelper.getMongoEventCollection( )
+				.aggregate( operations )
+				.allowDiskUse( true )
+				.first( ) ;
 
-			Document groupFields = new Document( "_id", "$" + PROJECT ) ;
-			groupFields.put( "totalLoad", new Document( "$sum", "$data.summary.totalLoad" ) ) ;
-			groupFields.put( "numberOfSamples", new Document( "$sum", "$data.summary.numberOfSamples" ) ) ;
+		if ( facets != null ) {
 
-			Document group = new Document( "$group", groupFields ) ;
+			for ( Document projectLoad : (List<Document>) facets.get( "load" ) ) {
 
-			List<Document> operations = new ArrayList<>( ) ;
-			operations.add( match ) ;
-			operations.add( group ) ;
+				var summary = allGlobalActivity.get( projectLoad.get( "_id" ) ) ;
 
-			// AggregationOutput output =
-			// dbCollection.aggregate(operations,ReadPreference.secondaryPreferred());
-			AggregateIterable<Document> aggregationOutput = eventCollection.aggregate( operations ) ;
-			/*
-			 * output.results().forEach(dbObject -> {
-			 * allGlobalActivity.get(projectName).setTotalLoad(dbObject.get( "totalLoad"));
-			 * allGlobalActivity.get(projectName).setNumSamples(dbObject.get(
-			 * "numberOfSamples")); });
-			 */
-			MongoCursor<Document> resultCursor = aggregationOutput.iterator( ) ;
+				if ( summary != null ) {
 
-			// for(DBObject dbObject : output.results()){
-			while ( resultCursor.hasNext( ) ) {
+					summary.setTotalLoad( projectLoad.get( "totalLoad" ) ) ;
+					summary.setNumSamples( projectLoad.get( "numberOfSamples" ) ) ;
 
-				Document dbObject = resultCursor.next( ) ;
-				allGlobalActivity.get( projectName ).setTotalLoad( dbObject.get( "totalLoad" ) ) ;
-				allGlobalActivity.get( projectName ).setNumSamples( dbObject.get( "numberOfSamples" ) ) ;
+				}
 
 			}
 
-		}
-
-		metricUtilities.stopTimer( timer, "AdoptionReport.retrieveLoadInformation" ) ;
-
-	}
-
-	public void retrieveCpuInformation ( int offSet , Map<String, GlobalAnalyticsSummary> allGlobalActivity ) {
-
-		var timer = metricUtilities.startTimer( ) ;
+			for ( Document projectCpu : (List<Document>) facets.get( "cpu" ) ) {
 
-		for ( String projectName : allGlobalActivity.keySet( ) ) {
+				var summary = allGlobalActivity.get( projectCpu.get( "_id" ) ) ;
 
-			Document query = new Document( ) ;
-			query.append( CATEGORY, "/csap/health" ) ;
-			query.append( PROJECT, projectName ) ;
-			String formatedDate = DateUtil.buildMongoCreatedDateFromOffset( offSet ) ;
-			query.append( CREATED_ON + ".date", formatedDate ) ;
+				if ( summary != null ) {
 
-			Document match = new Document( "$match", query ) ;
+					summary.setCpuCount( projectCpu.get( "totCpu" ) ) ;
 
-			Document groupFields = new Document( "_id", "$" + PROJECT ) ;
-			groupFields.put( "totCpu", new Document( "$sum", "$data.vm.cpuCount" ) ) ;
-			Document group = new Document( "$group", groupFields ) ;
+				}
 
-			List<Document> operations = new ArrayList<>( ) ;
-			operations.add( match ) ;
-			operations.add( group ) ;
+			}
 
-			// AggregationOutput output =
-			// dbCollection.aggregate(operations,ReadPreference.secondaryPreferred());
-			AggregateIterable<Document> aggregationOutput = analyticsHelper.getMongoEventCollection( ).aggregate(
-					operations ) ;
-			MongoCursor<Document> resultsCursor = aggregationOutput.iterator( ) ;
+		}
 
-			// for(DBObject dbObject : aggregationOutput.){
-			while ( resultsCursor.hasNext( ) ) {
+		metricUtilities.stopTimer( timer, "AdoptionReport.retrieveHostInformation" ) ;
 
-				Document dbObject = resultsCursor.next( ) ;
-				allGlobalActivity.get( projectName ).setCpuCount( dbObject.get( "totCpu" ) ) ;
+	}
 
-			}
+	static List<Document> hostInformationPipeline ( String formatedDate , Collection<String> projectNames ) {
 
-		}
+		Document query = new Document( ) ;
+		query.append( CATEGORY, new Document( "$in", List.of( HOST_DAILY_CATEGORY, HEALTH_CATEGORY ) ) ) ;
+		query.append( PROJECT, new Document( "$in", new ArrayList<>( projectNames ) ) ) ;
+		query.append( CREATED_ON + ".date", formatedDate ) ;
+
+		Document fieldsUsed = new Document( PROJECT, 1 )
+				.append( CATEGORY, 1 )
+				.append( "data.summary.totalLoad", 1 )
+				.append( "data.summary.numberOfSamples", 1 )
+				.append( "data.vm.cpuCount", 1 ) ;
+
+		Document loadFields = new Document( "_id", $PROJECT ) ;
+		loadFields.put( "totalLoad", new Document( "$sum", "$data.summary.totalLoad" ) ) ;
+		loadFields.put( "numberOfSamples", new Document( "$sum", "$data.summary.numberOfSamples" ) ) ;
+
+		Document cpuFields = new Document( "_id", $PROJECT ) ;
+		cpuFields.put( "totCpu", new Document( "$sum", "$data.vm.cpuCount" ) ) ;
+
+		Document facets = new Document( )
+				.append( "load", List.of(
+						new Document( "$match", new Document( CATEGORY, HOST_DAILY_CATEGORY ) ),
+						new Document( "$group", loadFields ) ) )
+				.append( "cpu", List.of(
+						new Document( "$match", new Document( CATEGORY, HEALTH_CATEGORY ) ),
+						new Document( "$group", cpuFields ) ) ) ;
 
-		metricUtilities.stopTimer( timer, "AdoptionReport.retrieveCpuInformation" ) ;
+		List<Document> operations = new ArrayList<>( ) ;
+		operations.add( new Document( "$match", query ) ) ;
+		operations.add( new Document( "$project", fieldsUsed ) ) ;
+		operations.add( new Document( "$facet", facets ) ) ;
+		return operations ;
 
 	}
 
@@ -276,59 +291,26 @@ public class CsapAdoptionReportBuilder {
 														Map<String, GlobalAnalyticsSummary> allGlobalActivity ,
 														AggregateIterable<Document> projectWithLife ) {
 
-		MongoCursor<Document> projectCursor = projectWithLife.iterator( ) ;
-		// for(DBObject dbObject : projectWithLife){
+		Map<String, List> projectLifes = new LinkedHashMap<>( ) ;
 
-		StringBuilder summaryInfo = new StringBuilder( "Generating: "
-				+ EventJsonConstants.CSAP_MODEL_SUMMAY_CATEGORY ) ;
+		for ( Document dbObject : projectWithLife ) {
 
-		while ( projectCursor.hasNext( ) ) {
+			projectLifes.put( (String) dbObject.get( "_id" ), (List) dbObject.get( "lifes" ) ) ;
 
-			Document dbObject = projectCursor.next( ) ;
-			String projectName = (String) dbObject.get( "_id" ) ;
-			GlobalAnalyticsSummary summary = new GlobalAnalyticsSummary( ) ;
-			summary.setProjectName( projectName ) ;
-			List lifes = (List) dbObject.get( "lifes" ) ;
-
-			summaryInfo.append( "\n\t Project: " + pad( projectName ) + " lifes: " + pad( lifes.toString( ) ) ) ;
-
-			boolean dataExists = false ;
-
-			for ( Object life : lifes ) {
-
-				Document query = analyticsHelper.constructModelSummaryQuery( projectName, life ) ;
-
-				Document sortOrder = new Document( CREATED_ON + "." + MONGO_DATE, -1 ) ;
-
-				Document clusterSummary = analyticsHelper.getMongoEventCollection( )
-						.find( query )
-						.sort( sortOrder )
-						.limit( 1 )
-						.first( ) ;
-
-				if ( null != clusterSummary ) {
-
-					dataExists = true ;
+		}
 
-					Document dataObject = (Document) clusterSummary.get( "data" ) ;
-					summary.setCsapVersion( (String) dataObject.get( "version" ), (String) life ) ;
-					summary.setDeploymentName( (String) dataObject.get( "name" ) ) ;
-					summary.setAppId( (String) clusterSummary.get( "appId" ) ) ;
-					List packages = (List) dataObject.get( "packages" ) ;
+		var projectsFound = addModelSummaries( allGlobalActivity, projectLifes ) ;
 
-					packages.stream( )
-							.filter( ( packObj -> isRequiredPackage( projectName, packObj ) ) )
-							.findFirst( )
-							.ifPresent( packObj -> summary.addVmSummary( packObj ) ) ;
+		StringBuilder summaryInfo = new StringBuilder( "Generating: "
+				+ EventJsonConstants.CSAP_MODEL_SUMMAY_CATEGORY ) ;
 
-				}
+		projectLifes.forEach( ( projectName , lifes ) -> {
 
-			}
+			summaryInfo.append( "\n\t Project: " + pad( projectName ) + " lifes: " + pad( lifes.toString( ) ) ) ;
 
-			if ( dataExists ) {
+			if ( projectsFound.contains( projectName ) ) {
 
 				summaryInfo.append( " - found" ) ;
-				allGlobalActivity.put( projectName, summary ) ;
 
 			} else {
 
@@ -339,44 +321,43 @@ public class CsapAdoptionReportBuilder {
 
 			}
 
-		}
+		} ) ;
 
 		logger.info( summaryInfo.toString( ) ) ;
 		logger.debug( "allGlobalActivity {}", allGlobalActivity ) ;
 
 	}
 
-	public static String pad ( String input ) {
-
-		return StringUtils.rightPad( input, 25 ) ;
+	//
+	// latest model summary per project and lifecycle: one indexed find, sorted
+	// and limited to 1, rather than sorting every stored summary
+	//
+	private Set<String> addModelSummaries (
+											Map<String, GlobalAnalyticsSummary> allGlobalActivity ,
+											Map<String, List> projectLifes ) {
 
-	}
+		var timer = metricUtilities.startTimer( ) ;
 
-	public void retrieveInfoFromClusterConfig (
-												int offSet ,
-												Map<String, GlobalAnalyticsSummary> allGlobalActivity ,
-												String projectName ,
-												List lifes ) {
+		Set<String> projectsFound = new HashSet<>( ) ;
 
-		GlobalAnalyticsSummary summary = new GlobalAnalyticsSummary( ) ;
-		summary.setProjectName( projectName ) ;
-		boolean dataExists = false ;
+		projectLifes.forEach( ( projectName , lifes ) -> {
 
-		if ( null != lifes && lifes.size( ) > 0 ) {
+			GlobalAnalyticsSummary summary = new GlobalAnalyticsSummary( ) ;
+			summary.setProjectName( projectName ) ;
 
 			for ( Object life : lifes ) {
 
-				Document query = analyticsHelper.constructModelSummaryQuery( projectName, life ) ;
-				Document sortOrder = new Document( CREATED_ON + "." + MONGO_DATE, -1 ) ;
 				Document clusterSummary = analyticsHelper.getMongoEventCollection( )
-						.find( query )
-						.sort( sortOrder )
+						.find( analyticsHelper.constructModelSummaryQuery( projectName, life ) )
+						.sort( new Document( CREATED_ON + "." + MONGO_DATE, -1 ) )
+						.projection( MODEL_SUMMARY_FIELDS )
 						.limit( 1 )
 						.first( ) ;
 
 				if ( null != clusterSummary ) {
 
-					dataExists = true ;
+					projectsFound.add( projectName ) ;
+
 					Document dataObject = (Document) clusterSummary.get( "data" ) ;
 					summary.setCsapVersion( (String) dataObject.get( "version" ), (String) life ) ;
 					summary.setDeploymentName( (String) dataObject.get( "name" ) ) ;
@@ -393,17 +374,16 @@ public class CsapAdoptionReportBuilder {
 
 			}
 
-		}
-
-		if ( dataExists ) {
+			if ( projectsFound.contains( projectName ) ) {
 
-			allGlobalActivity.put( projectName, summary ) ;
+				allGlobalActivity.put( projectName, summary ) ;
 
-		} else {
+			}
 
-			logger.info( "Data does not exists. Ignored project {} ", projectName ) ;
+		} ) ;
 
-		}
+		metricUtilities.stopTimer( timer, "AdoptionReport.modelSummaries" ) ;
+		return projectsFound ;
 
 	}
 
@@ -421,6 +401,34 @@ public class CsapAdoptionReportBuilder {
 
 	}
 
+	public static String pad ( String input ) {
+
+		return StringUtils.rightPad( input, 25 ) ;
+
+	}
+
+	public void retrieveInfoFromClusterConfig (
+												int offSet ,
+												Map<String, GlobalAnalyticsSummary> allGlobalActivity ,
+												String projectName ,
+												List lifes ) {
+
+		boolean dataExists = false ;
+
+		if ( null != lifes && lifes.size( ) > 0 ) {
+
+			dataExists = addModelSummaries( allGlobalActivity, Map.of( projectName, lifes ) ).contains( projectName ) ;
+
+		}
+
+		if ( ! dataExists ) {
+
+			logger.info( "Data does not exists. Ignored project {} ", projectName ) ;
+
+		}
+
+	}
+
 	public List getLife ( int offSet , String projectName ) {
 
 		Document query = new Document( ) ;
@@ -495,103 +503,88 @@ public class CsapAdoptionReportBuilder {
 
 	}
 
-	private void activeUsers ( int offSet , Map<String, GlobalAnalyticsSummary> allGlobalActivity ) {
+	//
+	// ui events (active users) and events with a ui user (activity) for all
+	// projects: one pass over the day's documents
+	//
+	public void retrieveUserInformation ( int offSet , Map<String, GlobalAnalyticsSummary> allGlobalActivity ) {
 
 		var timer = metricUtilities.startTimer( ) ;
 
-		Document query = new Document( ) ;
-		// query.append( METADATA + "." + UIUSER, new BasicDBObject( "$exists",
-		// true ) );
-		Pattern uiPattern = Pattern.compile( "^/csap/ui/" ) ;
-		query.append( CATEGORY, uiPattern ) ;
-
 		Calendar startTime = DateUtil.getDateWithOffSet( offSet ) ;
 		Calendar endTime = DateUtil.getDateWithOffSet( offSet - 1 ) ;
-		query.append( CREATED_ON + "." + MONGO_DATE, new Document( "$gte", startTime.getTime( ) ).append( "$lt", endTime
-				.getTime( ) ) ) ;
-		Document match = new Document( "$match", query ) ;
 
-		Map<String, Object> groupFieldMap = new HashMap<>( ) ;
-		groupFieldMap.put( PROJECT, "$" + PROJECT ) ;
-		// groupFieldMap.put(UIUSER,"$"+METADATA+"."+UIUSER);
-
-		Document groupFields = new Document( "_id", "$" + PROJECT ) ;
-		groupFields.put( "uniqueUsers", new Document( "$addToSet", "$" + METADATA + "." + UIUSER ) ) ;
-		Document group = new Document( "$group", groupFields ) ;
+		Document facets = analyticsHelper.getMongoEventCollection( )
+				.aggregate( userInformationPipeline( startTime.getTime( ), endTime.getTime( ) ) )
+				.allowDiskUse( true )
+				.first( ) ;
 
-		List<Document> operations = new ArrayList<>( ) ;
-		operations.add( match ) ;
-		operations.add( group ) ;
+		if ( facets != null ) {
 
-		// DBCollection dbCollection = getEventCollection();
-		// AggregationOutput output =
-		// dbCollection.aggregate(operations,ReadPreference.secondaryPreferred());
-		// logger.debug("output"+output.results());
-		AggregateIterable<Document> aggregationOutput = analyticsHelper.getMongoEventCollection( ).aggregate(
-				operations ) ;
-		MongoCursor<Document> resultsCursor = aggregationOutput.iterator( ) ;
+			for ( Document projectUsers : (List<Document>) facets.get( "users" ) ) {
 
-		// for(DBObject dbObject : output.results()){
-		while ( resultsCursor.hasNext( ) ) {
+				var summary = allGlobalActivity.get( projectUsers.get( "_id" ) ) ;
+				List uniqueUsers = (List) projectUsers.get( "uniqueUsers" ) ;
 
-			Document dbObject = resultsCursor.next( ) ;
-			String projectName = (String) dbObject.get( "_id" ) ;
-			List uniqueUsers = (List) dbObject.get( "uniqueUsers" ) ;
+				if ( null != uniqueUsers && null != summary ) {
 
-			if ( null != uniqueUsers && null != allGlobalActivity.get( projectName ) ) {
+					summary.setActiveUsers( uniqueUsers.size( ) ) ;
 
-				allGlobalActivity.get( projectName ).setActiveUsers( uniqueUsers.size( ) ) ;
+				}
 
 			}
 
-		}
+			for ( Document projectActivity : (List<Document>) facets.get( "activity" ) ) {
 
-		metricUtilities.stopTimer( timer, "AdoptionReport.activeUsers" ) ;
+				var summary = allGlobalActivity.get( projectActivity.get( "_id" ) ) ;
 
-	}
+				if ( null != summary ) {
 
-	public void userActivity ( int offSet , Map<String, GlobalAnalyticsSummary> allGlobalActivity ) {
+					summary.setTotalActivity( projectActivity.get( "totActivity" ) ) ;
 
-		var timer = metricUtilities.startTimer( ) ;
-		Document query = new Document( ) ;
-		query.append( METADATA + "." + UIUSER, new Document( "$exists", true ) ) ;
-		Calendar startTime = DateUtil.getDateWithOffSet( offSet ) ;
-		Calendar endTime = DateUtil.getDateWithOffSet( offSet - 1 ) ;
-		query.append( CREATED_ON + "." + MONGO_DATE, new Document( "$gte", startTime.getTime( ) ).append( "$lt", endTime
-				.getTime( ) ) ) ;
-		Document match = new Document( "$match", query ) ;
+				}
 
-		Document groupFields = new Document( "_id", "$" + PROJECT ) ;
-		groupFields.put( "totActivity", new BasicDBObject( "$sum", 1 ) ) ;
-		Document group = new Document( "$group", groupFields ) ;
+			}
 
-		List<Document> operations = new ArrayList<>( ) ;
-		operations.add( match ) ;
-		operations.add( group ) ;
+		}
 
-		// DBCollection dbCollection = getEventCollection();
-		// AggregationOutput output =
-		// dbCollection.aggregate(operations,ReadPreference.secondaryPreferred());
-		AggregateIterable<Document> aggregationOutput = analyticsHelper.getMongoEventCollection( ).aggregate(
-				operations ) ;
-		MongoCursor<Document> resultsCursor = aggregationOutput.iterator( ) ;
+		metricUtilities.stopTimer( timer, "AdoptionReport.retrieveUserInformation" ) ;
+
+	}
+
+	static List<Document> userInformationPipeline ( Date start , Date end ) {
 
-		while ( resultsCursor.hasNext( ) ) {
+		Pattern uiPattern = Pattern.compile( "^/csap/ui/" ) ;
+		Document uiEvents = new Document( CATEGORY, uiPattern ) ;
+		Document userEvents = new Document( METADATA + "." + UIUSER, new Document( "$exists", true ) ) ;
 
-			// output.results().forEach(dbObject -> {
-			Document dbObject = resultsCursor.next( ) ;
-			Object projectName = dbObject.get( "_id" ) ;
-			Object totActivity = dbObject.get( "totActivity" ) ;
+		Document query = new Document( ) ;
+		query.append( CREATED_ON + "." + MONGO_DATE, new Document( "$gte", start ).append( "$lt", end ) ) ;
+		query.append( "$or", List.of( uiEvents, userEvents ) ) ;
 
-			if ( null != allGlobalActivity.get( projectName ) ) {
+		Document fieldsUsed = new Document( PROJECT, 1 )
+				.append( CATEGORY, 1 )
+				.append( METADATA + "." + UIUSER, 1 ) ;
 
-				allGlobalActivity.get( projectName ).setTotalActivity( totActivity ) ;
+		Document usersFields = new Document( "_id", $PROJECT ) ;
+		usersFields.put( "uniqueUsers", new Document( "$addToSet", "$" + METADATA + "." + UIUSER ) ) ;
 
-			}
+		Document activityFields = new Document( "_id", $PROJECT ) ;
+		activityFields.put( "totActivity", new Document( "$sum", 1 ) ) ;
 
-		}
+		Document facets = new Document( )
+				.append( "users", List.of(
+						new Document( "$match", uiEvents ),
+						new Document( "$group", usersFields ) ) )
+				.append( "activity", List.of(
+						new Document( "$match", userEvents ),
+						new Document( "$group", activityFields ) ) ) ;
 
-		metricUtilities.stopTimer( timer, "AdoptionReport.userActivity" ) ;
+		List<Document> operations = new ArrayList<>( ) ;
+		operations.add( new Document( "$match", query ) ) ;
+		operations.add( new Document( "$project", fieldsUsed ) ) ;
+		operations.add( new Document( "$facet", facets ) ) ;
+		return operations ;
 
 	}
 
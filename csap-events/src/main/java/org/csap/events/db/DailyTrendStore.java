@@ -0,0 +1,708 @@
+package org.csap.events.db ;
+
+import static com.mongodb.client.model.Filters.eq ;
+import static org.csap.events.EventJsonConstants.APPID ;
+import static org.csap.events.EventJsonConstants.CATEGORY ;
+import static org.csap.events.EventJsonConstants.CREATED_ON ;
+import static org.csap.events.EventJsonConstants.CREATED_ON_DATE ;
+import static org.csap.events.EventJsonConstants.DATA ;
+import static org.csap.events.EventJsonConstants.DATE ;
+import static org.csap.events.EventJsonConstants.HOST ;
+import static org.csap.events.EventJsonConstants.LIFE ;
+import static org.csap.events.EventJsonConstants.PROJECT ;
+import static org.csap.events.EventJsonConstants.SUMMARY ;
+import static org.csap.events.util.MongoConstants.DAILY_TREND_HOSTS_COLLECTION_NAME ;
+import static org.csap.events.util.MongoConstants.DAILY_TREND_TOTALS_COLLECTION_NAME ;
+import static org.csap.events.util.MongoConstants.EVENT_COLLECTION_NAME ;
+import static org.csap.events.util.MongoConstants.EVENT_DB_NAME ;
+
+import java.util.ArrayList ;
+import java.util.Arrays ;
+import java.util.LinkedHashMap ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.ScheduledExecutorService ;
+import java.util.concurrent.TimeUnit ;
+import java.util.regex.Pattern ;
+
+import javax.annotation.PostConstruct ;
+import javax.annotation.PreDestroy ;
+import javax.inject.Inject ;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory ;
+import org.bson.Document ;
+import org.csap.events.CsapEventsApplication ;
+import org.csap.helpers.CSAP ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.stereotype.Service ;
+
+import com.mongodb.MongoClient ;
+import com.mongodb.MongoNamespace ;
+import com.mongodb.client.MongoCollection ;
+import com.mongodb.client.model.BulkWriteOptions ;
+import com.mongodb.client.model.FindOneAndReplaceOptions ;
+import com.mongodb.client.model.IndexOptions ;
+import com.mongodb.client.model.RenameCollectionOptions ;
+import com.mongodb.client.model.ReturnDocument ;
+import com.mongodb.client.model.UpdateOneModel ;
+import com.mongodb.client.model.UpdateOptions ;
+import com.mongodb.client.model.WriteModel ;
+
+/**
+ *
+ * Daily report totals per category, appId, project, lifecycle, date and
+ * serviceName: the numeric data.summary fields of every host report summed
+ * once, as reports arrive.
+ *
+ * - totals documents use the same field names as the daily report events
+ * (createdOn.date, data.summary.*), so trend pipelines run on them unchanged:
+ * a long trend reads one small document per day (and service) rather than
+ * grouping every host report
+ *
+ * - reports are upserted several times a day: the last summary of each host is
+ * kept, and totals are incremented by the difference
+ *
+ * - totals are built from the events when empty, and every
+ * rebuildIntervalHours to correct drift (failed updates). Trends use the events
+ * until then. Totals are not expired with the events
+ *
+ * - the rebuild writes temporary collections, indexed as in
+ * setup3-csap-dbs.js, that then replace the current ones. Reports arriving
+ * meanwhile are held, then applied once swapped; a report the rebuild already
+ * includes is applied as a zero difference. Coalesced upserts are written
+ * first, so reports already applied are in the events the rebuild reads
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".daily-trends" )
+public class DailyTrendStore {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	final static String SERVICE_NAME = "serviceName" ;
+	final static String SUMMARY_PATH = DATA + "." + SUMMARY ;
+	final static String GLOBAL_REPORT = "/csap/reports/global/daily" ;
+	final static Pattern DAILY_REPORTS = Pattern.compile( "^/csap/reports/.*/daily$" ) ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	@Inject
+	private MongoClient mongoClient ;
+
+	@Inject
+	private EventUpsertCoalescer upsertCoalescer ;
+
+	private boolean enabled = false ;
+	private int rebuildIntervalHours = 24 ;
+
+	static final String REBUILD_SUFFIX = "Rebuild" ;
+
+	// same as setup3-csap-dbs.js: rebuilt collections replace the indexed ones
+	static final List<Document> TOTALS_INDEXES = List.of(
+			new Document( APPID, 1 ).append( PROJECT, 1 ).append( LIFE, 1 ).append( CATEGORY, 1 )
+					.append( CREATED_ON_DATE, -1 ),
+			new Document( CATEGORY, 1 ).append( CREATED_ON_DATE, -1 ) ) ;
+
+	private volatile boolean ready = false ;
+	private ScheduledExecutorService trendBuilder ;
+
+	// guarded by itself: reports received while rebuilding
+	private List<Document> heldReports = new ArrayList<>( ) ;
+	private boolean rebuilding = false ;
+
+	static class TotalsDelta {
+
+		final Document totalsFields ;
+		final Document increments = new Document( ) ;
+
+		TotalsDelta ( Document totalsFields ) {
+
+			this.totalsFields = totalsFields ;
+
+		}
+	}
+
+	@PostConstruct
+	public void startTrendStore ( ) {
+
+		if ( ! isEnabled( ) ) {
+
+			logger.info( "Daily trend store disabled: trends use report events" ) ;
+			return ;
+
+		}
+
+		logger.info( "Daily trend store enabled: rebuildIntervalHours: {}", rebuildIntervalHours ) ;
+
+		trendBuilder = Executors.newSingleThreadScheduledExecutor( new BasicThreadFactory.Builder( )
+				.namingPattern( CsapEventsApplication.class.getSimpleName( ) + "DailyTrends-%d" )
+				.daemon( true )
+				.build( ) ) ;
+
+		trendBuilder.schedule( this::rebuildIfEmpty, 0, TimeUnit.SECONDS ) ;
+
+		if ( rebuildIntervalHours > 0 ) {
+
+			trendBuilder.scheduleWithFixedDelay( this::rebuild, rebuildIntervalHours, rebuildIntervalHours,
+					TimeUnit.HOURS ) ;
+
+		}
+
+	}
+
+	@PreDestroy
+	public void stopTrendStore ( ) {
+
+		if ( trendBuilder != null ) {
+
+			trendBuilder.shutdownNow( ) ;
+
+		}
+
+	}
+
+	public static boolean isTrendCategory ( String category ) {
+
+		return category != null
+				&& ! category.equals( GLOBAL_REPORT )
+				&& DAILY_REPORTS.matcher( category ).matches( ) ;
+
+	}
+
+	/**
+	 *
+	 * called after each daily report upsert
+	 *
+	 */
+	public void reportUpdated ( Document reportEvent ) {
+
+		if ( ! isEnabled( ) || ! isTrendCategory( reportEvent.getString( CATEGORY ) ) ) {
+
+			return ;
+
+		}
+
+		var data = reportEvent.get( DATA ) ;
+		var summary = ( data instanceof Document ) ? ( (Document) data ).get( SUMMARY ) : null ;
+
+		if ( summary == null ) {
+
+			return ;
+
+		}
+
+		synchronized ( heldReports ) {
+
+			if ( rebuilding ) {
+
+				heldReports.add( reportEvent ) ;
+				return ;
+
+			}
+
+		}
+
+		applyReport( reportEvent, summary ) ;
+
+	}
+
+	private void applyReport ( Document reportEvent , Object summary ) {
+
+		var timer = metricUtilities.startTimer( ) ;
+
+		try {
+
+			var hostSummary = new Document( APPID, reportEvent.getString( APPID ) )
+					.append( PROJECT, reportEvent.getString( PROJECT ) )
+					.append( LIFE, reportEvent.getString( LIFE ) )
+					.append( CATEGORY, reportEvent.getString( CATEGORY ) )
+					.append( HOST, reportEvent.getString( HOST ) )
+					.append( CREATED_ON, new Document( DATE, dateOf( reportEvent ) ) )
+					.append( SUMMARY, summary ) ;
+
+			var previousSummary = getHostsCollection( ).findOneAndReplace(
+					eq( "_id", hostKey( hostSummary ) ),
+					hostSummary,
+					new FindOneAndReplaceOptions( ).upsert( true ).returnDocument( ReturnDocument.BEFORE ) ) ;
+
+			var totalsDeltas = new LinkedHashMap<String, TotalsDelta>( ) ;
+			addContributions( totalsDeltas, hostSummary, 1 ) ;
+
+			if ( previousSummary != null ) {
+
+				addContributions( totalsDeltas, previousSummary, -1 ) ;
+
+			}
+
+			writeTotals( totalsDeltas, previousSummary != null ) ;
+
+		} catch ( Exception e ) {
+
+			// corrected by the next rebuild
+			metricUtilities.incrementCounter( "db-event.daily-trends.failed." + e.getClass( ).getSimpleName( ) ) ;
+			logger.error( "Failed updating daily trends: {}", CSAP.buildCsapStack( e ) ) ;
+
+		}
+
+		metricUtilities.stopTimer( timer, "db-event.daily-trends.update" ) ;
+
+	}
+
+	//
+	// sign is -1 to remove the previous summary of the host
+	//
+	static void addContributions ( Map<String, TotalsDelta> totalsDeltas , Document hostSummary , int sign ) {
+
+		var createdOn = (Document) hostSummary.get( CREATED_ON ) ;
+
+		for ( var summaryRow : summaryRows( hostSummary.get( SUMMARY ) ) ) {
+
+			var serviceName = summaryRow.get( SERVICE_NAME ) instanceof String ? summaryRow.getString( SERVICE_NAME )
+					: null ;
+
+			var totalsFields = new Document( CATEGORY, hostSummary.getString( CATEGORY ) )
+					.append( APPID, hostSummary.getString( APPID ) )
+					.append( PROJECT, hostSummary.getString( PROJECT ) )
+					.append( LIFE, hostSummary.getString( LIFE ) )
+					.append( CREATED_ON_DATE, createdOn.getString( DATE ) ) ;
+
+			if ( serviceName != null ) {
+
+				totalsFields.append( SUMMARY_PATH + "." + SERVICE_NAME, serviceName ) ;
+
+			}
+
+			var totalsDelta = totalsDeltas.computeIfAbsent( totalsKey( totalsFields, serviceName ),
+					key -> new TotalsDelta( totalsFields ) ) ;
+
+			for ( var summaryField : summaryRow.entrySet( ) ) {
+
+				if ( ! ( summaryField.getValue( ) instanceof Number ) || ! isFieldName( summaryField.getKey( ) ) ) {
+
+					continue ;
+
+				}
+
+				var value = (Number) summaryField.getValue( ) ;
+
+				if ( sign < 0 ) {
+
+					value = negate( value ) ;
+
+				}
+
+				totalsDelta.increments.merge( SUMMARY_PATH + "." + summaryField.getKey( ), value,
+						( current , added ) -> add( (Number) current, (Number) added ) ) ;
+
+			}
+
+		}
+
+	}
+
+	private void writeTotals ( Map<String, TotalsDelta> totalsDeltas , boolean isUpdate ) {
+
+		UpdateOptions upsert = new UpdateOptions( ).upsert( true ) ;
+		List<WriteModel<Document>> updates = new ArrayList<>( ) ;
+
+		for ( var totals : totalsDeltas.entrySet( ) ) {
+
+			var totalsDelta = totals.getValue( ) ;
+
+			// report resent without changes
+			if ( isUpdate && totalsDelta.increments.values( ).stream( )
+					.allMatch( value -> ( (Number) value ).doubleValue( ) == 0 ) ) {
+
+				continue ;
+
+			}
+
+			var update = new Document( "$setOnInsert", totalsDelta.totalsFields ) ;
+
+			if ( ! totalsDelta.increments.isEmpty( ) ) {
+
+				update.append( "$inc", totalsDelta.increments ) ;
+
+			}
+
+			updates.add( new UpdateOneModel<>( eq( "_id", totals.getKey( ) ), update, upsert ) ) ;
+
+		}
+
+		if ( ! updates.isEmpty( ) ) {
+
+			getTotalsCollection( ).bulkWrite( updates, new BulkWriteOptions( ).ordered( false ) ) ;
+
+		}
+
+	}
+
+	// host reports have a single summary, service reports one per service
+	static List<Document> summaryRows ( Object summary ) {
+
+		var summaryRows = new ArrayList<Document>( ) ;
+
+		if ( summary instanceof Document ) {
+
+			summaryRows.add( (Document) summary ) ;
+
+		} else if ( summary instanceof List ) {
+
+			for ( var summaryRow : (List<?>) summary ) {
+
+				if ( summaryRow instanceof Document ) {
+
+					summaryRows.add( (Document) summaryRow ) ;
+
+				}
+
+			}
+
+		}
+
+		return summaryRows ;
+
+	}
+
+	// integral values stay integral so trend output is unchanged
+	static Number add ( Number first , Number second ) {
+
+		if ( isIntegral( first ) && isIntegral( second ) ) {
+
+			return first.longValue( ) + second.longValue( ) ;
+
+		}
+
+		return first.doubleValue( ) + second.doubleValue( ) ;
+
+	}
+
+	private static Number negate ( Number value ) {
+
+		return isIntegral( value ) ? -value.longValue( ) : -value.doubleValue( ) ;
+
+	}
+
+	private static boolean isIntegral ( Number value ) {
+
+		return value instanceof Integer || value instanceof Long ;
+
+	}
+
+	private static boolean isFieldName ( String name ) {
+
+		return ! name.contains( "." ) && ! name.startsWith( "$" ) ;
+
+	}
+
+	private static String dateOf ( Document reportEvent ) {
+
+		var createdOn = reportEvent.get( CREATED_ON ) ;
+		return ( createdOn instanceof Document ) ? ( (Document) createdOn ).getString( DATE ) : null ;
+
+	}
+
+	static String hostKey ( Document hostSummary ) {
+
+		return keyPart( hostSummary.getString( CATEGORY ) )
+				+ "|" + keyPart( hostSummary.getString( HOST ) )
+				+ "|" + keyPart( ( (Document) hostSummary.get( CREATED_ON ) ).getString( DATE ) ) ;
+
+	}
+
+	static String totalsKey ( Document totalsFields , String serviceName ) {
+
+		return keyPart( totalsFields.getString( CATEGORY ) )
+				+ "|" + keyPart( totalsFields.getString( APPID ) )
+				+ "|" + keyPart( totalsFields.getString( PROJECT ) )
+				+ "|" + keyPart( totalsFields.getString( LIFE ) )
+				+ "|" + keyPart( totalsFields.getString( CREATED_ON_DATE ) )
+				+ "|" + keyPart( serviceName ) ;
+
+	}
+
+	private static String keyPart ( String value ) {
+
+		return ( value == null ) ? "" : value ;
+
+	}
+
+	private void rebuildIfEmpty ( ) {
+
+		try {
+
+			if ( getTotalsCollection( ).count( ) == 0 ) {
+
+				rebuild( ) ;
+
+			} else {
+
+				ready = true ;
+
+			}
+
+		} catch ( Exception e ) {
+
+			logger.error( "Failed checking daily trends: {}", CSAP.buildCsapStack( e ) ) ;
+
+		}
+
+	}
+
+	/**
+	 *
+	 * replaces host summaries and totals using aggregations of the report events
+	 * ($out). Trends use the events while running, and reports are held until
+	 * the rebuilt collections replace the current ones
+	 *
+	 */
+	public void rebuild ( ) {
+
+		var timer = metricUtilities.startTimer( ) ;
+
+		synchronized ( heldReports ) {
+
+			rebuilding = true ;
+
+		}
+
+		// reports applied before the fence may still be pending in the coalescer
+		if ( upsertCoalescer.isEnabled( ) && ! upsertCoalescer.flush( ) ) {
+
+			metricUtilities.incrementCounter( "db-event.daily-trends.rebuild-skipped" ) ;
+			logger.warn( "Daily trends rebuild skipped: report upserts not written" ) ;
+			applyHeldReports( ) ;
+			return ;
+
+		}
+
+		logger.info( "Rebuilding daily trends" ) ;
+		ready = false ;
+
+		var reportMatch = new Document( "$match", new Document( CATEGORY, new Document( "$regex",
+				DAILY_REPORTS.pattern( ) ).append( "$ne", GLOBAL_REPORT ) ) ) ;
+
+		try {
+
+			getEventCollection( )
+					.aggregate( List.of(
+							reportMatch,
+							// duplicate reports: the last one updated is kept
+							new Document( "$sort", new Document( CREATED_ON + ".lastUpdatedOn", 1 ) ),
+							new Document( "$group", new Document( "_id", concatKey(
+									"$" + CATEGORY, "$" + HOST, "$" + CREATED_ON_DATE ) )
+											.append( APPID, new Document( "$last", "$" + APPID ) )
+											.append( PROJECT, new Document( "$last", "$" + PROJECT ) )
+											.append( LIFE, new Document( "$last", "$" + LIFE ) )
+											.append( CATEGORY, new Document( "$last", "$" + CATEGORY ) )
+											.append( HOST, new Document( "$last", "$" + HOST ) )
+											.append( CREATED_ON, new Document( "$last", "$" + CREATED_ON ) )
+											.append( SUMMARY, new Document( "$last", "$" + SUMMARY_PATH ) ) ),
+							new Document( "$out", DAILY_TREND_HOSTS_COLLECTION_NAME + REBUILD_SUFFIX ) ) )
+					.allowDiskUse( true )
+					.toCollection( ) ;
+
+			var totalsId = new Document( CATEGORY, "$" + CATEGORY )
+					.append( APPID, "$" + APPID )
+					.append( PROJECT, "$" + PROJECT )
+					.append( LIFE, "$" + LIFE )
+					.append( DATE, "$" + CREATED_ON_DATE )
+					.append( SERVICE_NAME, "$" + SUMMARY + "." + SERVICE_NAME ) ;
+
+			var fieldTotalsId = new Document( totalsId ).append( "field", "$fields.k" ) ;
+
+			// host reports have no serviceName
+			var serviceNameField = new Document( "$cond", List.of(
+					new Document( "$eq", Arrays.asList( "$_id." + SERVICE_NAME, null ) ),
+					List.of( ),
+					List.of( new Document( "k", SERVICE_NAME ).append( "v", "$_id." + SERVICE_NAME ) ) ) ) ;
+
+			// totals from the rebuilt host summaries: both hold the same reports
+			getRebuildCollection( DAILY_TREND_HOSTS_COLLECTION_NAME )
+					.aggregate( List.of(
+							new Document( "$unwind", "$" + SUMMARY ),
+							new Document( "$project", new Document( CATEGORY, 1 )
+									.append( APPID, 1 )
+									.append( PROJECT, 1 )
+									.append( LIFE, 1 )
+									.append( CREATED_ON_DATE, 1 )
+									.append( SUMMARY + "." + SERVICE_NAME, 1 )
+									.append( "fields", new Document( "$objectToArray", "$" + SUMMARY ) ) ),
+							new Document( "$unwind", "$fields" ),
+							new Document( "$match", new Document( "fields.v", new Document( "$type", "number" ) ) ),
+							new Document( "$group", new Document( "_id", fieldTotalsId )
+									.append( "total", new Document( "$sum", "$fields.v" ) ) ),
+							new Document( "$group", new Document( "_id", prefixed( totalsId.keySet( ), "$_id." ) )
+									.append( "fields", new Document( "$push", new Document( "k", "$_id.field" )
+											.append( "v", "$total" ) ) ) ),
+							new Document( "$project", new Document( "_id", concatKey(
+									"$_id." + CATEGORY, "$_id." + APPID, "$_id." + PROJECT, "$_id." + LIFE,
+									"$_id." + DATE, "$_id." + SERVICE_NAME ) )
+											.append( CATEGORY, "$_id." + CATEGORY )
+											.append( APPID, "$_id." + APPID )
+											.append( PROJECT, "$_id." + PROJECT )
+											.append( LIFE, "$_id." + LIFE )
+											.append( CREATED_ON_DATE, "$_id." + DATE )
+											.append( SUMMARY_PATH, new Document( "$arrayToObject", new Document(
+													"$concatArrays", List.of( "$fields", serviceNameField ) ) ) ) ),
+							new Document( "$out", DAILY_TREND_TOTALS_COLLECTION_NAME + REBUILD_SUFFIX ) ) )
+					.allowDiskUse( true )
+					.toCollection( ) ;
+
+			var rebuiltTotals = getRebuildCollection( DAILY_TREND_TOTALS_COLLECTION_NAME ) ;
+
+			for ( var index : TOTALS_INDEXES ) {
+
+				rebuiltTotals.createIndex( index, new IndexOptions( ).background( true ) ) ;
+
+			}
+
+			swapRebuilt( DAILY_TREND_HOSTS_COLLECTION_NAME ) ;
+			swapRebuilt( DAILY_TREND_TOTALS_COLLECTION_NAME ) ;
+
+			ready = true ;
+
+		} catch ( Exception e ) {
+
+			metricUtilities.incrementCounter( "db-event.daily-trends.failed.rebuild" ) ;
+			logger.error( "Failed rebuilding daily trends: {}", CSAP.buildCsapStack( e ) ) ;
+
+		} finally {
+
+			applyHeldReports( ) ;
+
+		}
+
+		var nanos = metricUtilities.stopTimer( timer, "db-event.daily-trends.rebuild" ) ;
+		logger.info( "Daily trends rebuilt in {} ms", TimeUnit.NANOSECONDS.toMillis( nanos ) ) ;
+
+	}
+
+	// reporters wait while held reports are applied, so they stay in order
+	private void applyHeldReports ( ) {
+
+		synchronized ( heldReports ) {
+
+			logger.info( "Applying {} reports received while rebuilding", heldReports.size( ) ) ;
+
+			for ( var reportEvent : heldReports ) {
+
+				applyReport( reportEvent, ( (Document) reportEvent.get( DATA ) ).get( SUMMARY ) ) ;
+
+			}
+
+			heldReports.clear( ) ;
+			rebuilding = false ;
+
+		}
+
+	}
+
+	private void swapRebuilt ( String collectionName ) {
+
+		getRebuildCollection( collectionName ).renameCollection(
+				new MongoNamespace( EVENT_DB_NAME, collectionName ),
+				new RenameCollectionOptions( ).dropTarget( true ) ) ;
+
+	}
+
+	private MongoCollection<Document> getRebuildCollection ( String collectionName ) {
+
+		return mongoClient.getDatabase( EVENT_DB_NAME ).getCollection( collectionName + REBUILD_SUFFIX ) ;
+
+	}
+
+	private Document prefixed ( Iterable<String> fieldNames , String prefix ) {
+
+		var fields = new Document( ) ;
+
+		for ( var fieldName : fieldNames ) {
+
+			fields.append( fieldName, prefix + fieldName ) ;
+
+		}
+
+		return fields ;
+
+	}
+
+	// same format as hostKey and totalsKey
+	private Document concatKey ( String... fieldExpressions ) {
+
+		var keyParts = new ArrayList<Object>( ) ;
+
+		for ( var fieldExpression : fieldExpressions ) {
+
+			if ( ! keyParts.isEmpty( ) ) {
+
+				keyParts.add( "|" ) ;
+
+			}
+
+			keyParts.add( new Document( "$ifNull", List.of( fieldExpression, "" ) ) ) ;
+
+		}
+
+		return new Document( "$concat", keyParts ) ;
+
+	}
+
+	/**
+	 *
+	 * @return true once totals are built: trends may use getTotalsCollection
+	 */
+	public boolean isReady ( ) {
+
+		return isEnabled( ) && ready ;
+
+	}
+
+	private MongoCollection<Document> getEventCollection ( ) {
+
+		return mongoClient.getDatabase( EVENT_DB_NAME ).getCollection( EVENT_COLLECTION_NAME ) ;
+
+	}
+
+	private MongoCollection<Document> getHostsCollection ( ) {
+
+		return mongoClient.getDatabase( EVENT_DB_NAME ).getCollection( DAILY_TREND_HOSTS_COLLECTION_NAME ) ;
+
+	}
+
+	public MongoCollection<Document> getTotalsCollection ( ) {
+
+		return mongoClient.getDatabase( EVENT_DB_NAME ).getCollection( DAILY_TREND_TOTALS_COLLECTION_NAME ) ;
+
+	}
+
+	public boolean isEnabled ( ) {
+
+		return enabled ;
+
+	}
+
+	public void setEnabled ( boolean enabled ) {
+
+		this.enabled = enabled ;
+
+	}
+
+	public int getRebuildIntervalHours ( ) {
+
+		return rebuildIntervalHours ;
+
+	}
+
+	public void setRebuildIntervalHours ( int rebuildIntervalHours ) {
+
+		this.rebuildIntervalHours = rebuildIntervalHours ;
+
+	}
+
+}
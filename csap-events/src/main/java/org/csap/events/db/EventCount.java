@@ -0,0 +1,52 @@
+package org.csap.events.db ;
+
+/**
+ *
+ * Event count plus how it was computed. approximate is set for sampled
+ * estimates and for counter reads that round a time range to whole days.
+ *
+ */
+public class EventCount {
+
+	public static final String COUNTERS = "counters" ;
+	public static final String QUERY = "query" ;
+	public static final String SAMPLED = "sampled" ;
+
+	private long count ;
+	private boolean approximate ;
+	private String source ;
+
+	public EventCount ( long count, boolean approximate, String source ) {
+
+		this.count = count ;
+		this.approximate = approximate ;
+		this.source = source ;
+
+	}
+
+	@Override
+	public String toString ( ) {
+
+		return "EventCount{count=" + count + ", approximate=" + approximate + ", source=" + source + "}" ;
+
+	}
+
+	public long getCount ( ) {
+
+		return count ;
+
+	}
+
+	public boolean isApproximate ( ) {
+
+		return approximate ;
+
+	}
+
+	public String getSource ( ) {
+
+		return source ;
+
+	}
+
+}
@@ -0,0 +1,613 @@
+package org.csap.events.db ;
+
+import static com.mongodb.client.model.Filters.eq ;
+import static com.mongodb.client.model.Filters.lte ;
+import static org.csap.events.EventJsonConstants.APPID ;
+import static org.csap.events.EventJsonConstants.CATEGORY ;
+import static org.csap.events.EventJsonConstants.CREATED_ON ;
+import static org.csap.events.EventJsonConstants.CREATED_ON_DATE ;
+import static org.csap.events.EventJsonConstants.LIFE ;
+import static org.csap.events.util.MongoConstants.EVENT_COLLECTION_NAME ;
+import static org.csap.events.util.MongoConstants.EVENT_COUNTERS_COLLECTION_NAME ;
+import static org.csap.events.util.MongoConstants.EVENT_DB_NAME ;
+
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.Set ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.ScheduledExecutorService ;
+import java.util.concurrent.TimeUnit ;
+
+import javax.annotation.PostConstruct ;
+import javax.annotation.PreDestroy ;
+import javax.inject.Inject ;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory ;
+import org.bson.Document ;
+import org.bson.conversions.Bson ;
+import org.bson.types.ObjectId ;
+import org.csap.events.CsapEventsApplication ;
+import org.csap.helpers.CSAP ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.stereotype.Service ;
+
+import com.mongodb.MongoClient ;
+import com.mongodb.MongoNamespace ;
+import com.mongodb.client.MongoCollection ;
+import com.mongodb.client.model.Accumulators ;
+import com.mongodb.client.model.Aggregates ;
+import com.mongodb.client.model.BulkWriteOptions ;
+import com.mongodb.client.model.IndexOptions ;
+import com.mongodb.client.model.RenameCollectionOptions ;
+import com.mongodb.client.model.UpdateOneModel ;
+import com.mongodb.client.model.UpdateOptions ;
+import com.mongodb.client.model.WriteModel ;
+
+/**
+ *
+ * Event counts per appId, lifecycle, category and createdOn.date, maintained as
+ * events are inserted and deleted. Counter documents use the same field names
+ * as events, so the ui search filter is applied to them unchanged when it only
+ * uses those fields.
+ *
+ * - increments are batched in memory and flushed every flushIntervalMs
+ *
+ * - counters are rebuilt from the events when empty, and every
+ * rebuildIntervalHours to correct drift (ttl expiry, failed batch inserts).
+ * The rebuild counts events up to a fence _id into a temporary collection,
+ * indexed as in setup3-csap-dbs.js, that then replaces the counters; flushes are held until the swap, then only deltas
+ * for events after the fence are applied. Deltas flushed by other instances
+ * while a rebuild runs are corrected by the next rebuild.
+ *
+ * - filters on other fields use a query with a short maxTime, falling back to a
+ * sampled estimate flagged as approximate
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".counters" )
+public class EventCounters {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	// search fields that counters can answer
+	final static Set<String> COUNTER_SEARCH_FIELDS = Set.of(
+			APPID, LIFE, "simpleSearchText", "from", "to", "eventReceivedOn", "isDataRequired" ) ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	@Inject
+	private MongoClient mongoClient ;
+
+	private boolean enabled = false ;
+	private long flushIntervalMs = 1000 ;
+	private int rebuildIntervalHours = 24 ;
+	private int exactCountMaxSeconds = 5 ;
+	private int sampleSize = 2000 ;
+
+	static final String REBUILD_COLLECTION_NAME = EVENT_COUNTERS_COLLECTION_NAME + "Rebuild" ;
+
+	// same as setup3-csap-dbs.js: the rebuilt collection replaces the indexed one
+	static final List<Document> COUNTER_INDEXES = List.of(
+			new Document( APPID, 1 ).append( LIFE, 1 ).append( CREATED_ON_DATE, -1 ),
+			new Document( CATEGORY, 1 ).append( CREATED_ON_DATE, -1 ) ) ;
+
+	private ConcurrentHashMap<String, PendingCount> pendingCounts = new ConcurrentHashMap<>( ) ;
+
+	// set while rebuilding: events up to and including it are in the rebuild
+	private volatile ObjectId rebuildFence = null ;
+
+	private ScheduledExecutorService counterUpdater ;
+
+	static class PendingCount {
+
+		final Document counterFields ;
+		long delta = 0 ;
+
+		PendingCount ( Document counterFields ) {
+
+			this.counterFields = counterFields ;
+
+		}
+	}
+
+	@PostConstruct
+	public void startCounters ( ) {
+
+		if ( ! isEnabled( ) ) {
+
+			logger.info( "Event counters disabled: counts use queries" ) ;
+			return ;
+
+		}
+
+		logger.info( "Event counters enabled: flushIntervalMs: {}, rebuildIntervalHours: {}",
+				flushIntervalMs, rebuildIntervalHours ) ;
+
+		counterUpdater = Executors.newSingleThreadScheduledExecutor( new BasicThreadFactory.Builder( )
+				.namingPattern( CsapEventsApplication.class.getSimpleName( ) + "Counters-%d" )
+				.daemon( true )
+				.build( ) ) ;
+
+		metricUtilities.addGauge( "csap.ingest.counters-pending", this, EventCounters::getPendingCount ) ;
+
+		counterUpdater.scheduleWithFixedDelay( this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS ) ;
+		counterUpdater.schedule( this::rebuildIfEmpty, 0, TimeUnit.SECONDS ) ;
+
+		if ( rebuildIntervalHours > 0 ) {
+
+			counterUpdater.scheduleWithFixedDelay( this::rebuild, rebuildIntervalHours, rebuildIntervalHours,
+					TimeUnit.HOURS ) ;
+
+		}
+
+	}
+
+	@PreDestroy
+	public void stopCounters ( ) {
+
+		if ( counterUpdater == null ) {
+
+			return ;
+
+		}
+
+		counterUpdater.shutdownNow( ) ;
+		flush( ) ;
+
+	}
+
+	public void eventInserted ( Document eventDocument ) {
+
+		var fence = rebuildFence ;
+
+		if ( fence != null && isBeforeFence( eventDocument.get( "_id" ), fence ) ) {
+
+			return ;
+
+		}
+
+		addDelta( eventDocument, 1 ) ;
+
+	}
+
+	/**
+	 *
+	 * events are grouped by counter before the delete, so matching counters are
+	 * decremented
+	 *
+	 */
+	public long deleteMany ( MongoCollection<Document> eventCollection , Bson filter ) {
+
+		List<Document> deletedCounts = new ArrayList<>( ) ;
+
+		if ( isEnabled( ) ) {
+
+			eventCollection.aggregate( List.of(
+					Aggregates.match( filter ),
+					Aggregates.group(
+							new Document( APPID, "$" + APPID )
+									.append( LIFE, "$" + LIFE )
+									.append( CATEGORY, "$" + CATEGORY )
+									.append( "date", "$" + CREATED_ON_DATE ),
+							Accumulators.sum( "count", 1 ) ) ) )
+					.into( deletedCounts ) ;
+
+		}
+
+		var deleteResult = eventCollection.deleteMany( filter ) ;
+
+		for ( var deletedCount : deletedCounts ) {
+
+			var counter = (Document) deletedCount.get( "_id" ) ;
+			var event = new Document( APPID, counter.get( APPID ) )
+					.append( LIFE, counter.get( LIFE ) )
+					.append( CATEGORY, counter.get( CATEGORY ) )
+					.append( CREATED_ON, new Document( "date", counter.get( "date" ) ) ) ;
+
+			addDelta( event, -deletedCount.getInteger( "count" ) ) ;
+
+		}
+
+		return deleteResult.getDeletedCount( ) ;
+
+	}
+
+	private void addDelta ( Document eventDocument , long delta ) {
+
+		if ( ! isEnabled( ) ) {
+
+			return ;
+
+		}
+
+		var counterFields = counterFields( eventDocument ) ;
+
+		// compute is atomic with the remove in flush: no deltas are lost
+		pendingCounts.compute( counterKey( counterFields ), ( key , pending ) -> {
+
+			if ( pending == null ) {
+
+				pending = new PendingCount( counterFields ) ;
+
+			}
+
+			pending.delta += delta ;
+			return pending ;
+
+		} ) ;
+
+	}
+
+	static boolean isBeforeFence ( Object eventId , ObjectId fence ) {
+
+		return eventId instanceof ObjectId && ( (ObjectId) eventId ).compareTo( fence ) <= 0 ;
+
+	}
+
+	static Document counterFields ( Document eventDocument ) {
+
+		String date = null ;
+		var createdOn = eventDocument.get( CREATED_ON ) ;
+
+		if ( createdOn instanceof Document ) {
+
+			date = ( (Document) createdOn ).getString( "date" ) ;
+
+		}
+
+		return new Document( APPID, eventDocument.getString( APPID ) )
+				.append( LIFE, eventDocument.getString( LIFE ) )
+				.append( CATEGORY, eventDocument.getString( CATEGORY ) )
+				.append( CREATED_ON, new Document( "date", date ) ) ;
+
+	}
+
+	static String counterKey ( Document counterFields ) {
+
+		var createdOn = (Document) counterFields.get( CREATED_ON ) ;
+
+		return keyPart( counterFields.getString( APPID ) )
+				+ "|" + keyPart( counterFields.getString( LIFE ) )
+				+ "|" + keyPart( counterFields.getString( CATEGORY ) )
+				+ "|" + keyPart( createdOn.getString( "date" ) ) ;
+
+	}
+
+	private static String keyPart ( String value ) {
+
+		return ( value == null ) ? "" : value ;
+
+	}
+
+	void flush ( ) {
+
+		// held until the rebuilt counters replace the current ones
+		if ( pendingCounts.isEmpty( ) || rebuildFence != null ) {
+
+			return ;
+
+		}
+
+		var timer = metricUtilities.startTimer( ) ;
+
+		UpdateOptions upsert = new UpdateOptions( ).upsert( true ) ;
+		List<WriteModel<Document>> updates = new ArrayList<>( ) ;
+
+		for ( String counterKey : pendingCounts.keySet( ) ) {
+
+			var pending = pendingCounts.remove( counterKey ) ;
+
+			if ( pending != null && pending.delta != 0 ) {
+
+				updates.add( new UpdateOneModel<>(
+						eq( "_id", counterKey ),
+						new Document( "$inc", new Document( "count", pending.delta ) )
+								.append( "$setOnInsert", pending.counterFields ),
+						upsert ) ) ;
+
+			}
+
+		}
+
+		if ( updates.isEmpty( ) ) {
+
+			return ;
+
+		}
+
+		try {
+
+			getCountersCollection( ).bulkWrite( updates, new BulkWriteOptions( ).ordered( false ) ) ;
+
+		} catch ( Exception e ) {
+
+			metricUtilities.incrementCounter( "db-event.counters.failed." + e.getClass( ).getSimpleName( ) ) ;
+			logger.error( "Failed updating {} counters: {}", updates.size( ), CSAP.buildCsapStack( e ) ) ;
+
+		}
+
+		metricUtilities.stopTimer( timer, "db-event.counters.flush" ) ;
+
+	}
+
+	private void rebuildIfEmpty ( ) {
+
+		try {
+
+			if ( getCountersCollection( ).count( ) == 0 ) {
+
+				rebuild( ) ;
+
+			}
+
+		} catch ( Exception e ) {
+
+			logger.error( "Failed checking counters: {}", CSAP.buildCsapStack( e ) ) ;
+
+		}
+
+	}
+
+	/**
+	 *
+	 * replaces all counters using a single aggregation of the events ($out),
+	 * fenced by _id so deltas are neither lost nor counted twice
+	 *
+	 */
+	public void rebuild ( ) {
+
+		var timer = metricUtilities.startTimer( ) ;
+
+		// pending deltas are for events already written: included in the rebuild
+		var fence = new ObjectId( ) ;
+		rebuildFence = fence ;
+		pendingCounts.clear( ) ;
+
+		logger.info( "Rebuilding event counters up to: {}", fence ) ;
+
+		var counterId = new Document( "$concat", List.of(
+				new Document( "$ifNull", List.of( "$_id." + APPID, "" ) ), "|",
+				new Document( "$ifNull", List.of( "$_id." + LIFE, "" ) ), "|",
+				new Document( "$ifNull", List.of( "$_id." + CATEGORY, "" ) ), "|",
+				new Document( "$ifNull", List.of( "$_id.date", "" ) ) ) ) ;
+
+		try {
+
+			getEventCollection( )
+					.aggregate( List.of(
+							Aggregates.match( lte( "_id", fence ) ),
+							Aggregates.group(
+									new Document( APPID, "$" + APPID )
+											.append( LIFE, "$" + LIFE )
+											.append( CATEGORY, "$" + CATEGORY )
+											.append( "date", "$" + CREATED_ON_DATE ),
+									Accumulators.sum( "count", 1 ) ),
+							new Document( "$project", new Document( "_id", counterId )
+									.append( APPID, "$_id." + APPID )
+									.append( LIFE, "$_id." + LIFE )
+									.append( CATEGORY, "$_id." + CATEGORY )
+									.append( CREATED_ON_DATE, "$_id.date" )
+									.append( "count", 1 ) ),
+							Aggregates.out( REBUILD_COLLECTION_NAME ) ) )
+					.allowDiskUse( true )
+					.toCollection( ) ;
+
+			var rebuiltCounters = mongoClient.getDatabase( EVENT_DB_NAME ).getCollection( REBUILD_COLLECTION_NAME ) ;
+
+			for ( var index : COUNTER_INDEXES ) {
+
+				rebuiltCounters.createIndex( index, new IndexOptions( ).background( true ) ) ;
+
+			}
+
+			rebuiltCounters.renameCollection(
+					new MongoNamespace( EVENT_DB_NAME, EVENT_COUNTERS_COLLECTION_NAME ),
+					new RenameCollectionOptions( ).dropTarget( true ) ) ;
+
+		} catch ( Exception e ) {
+
+			metricUtilities.incrementCounter( "db-event.counters.failed.rebuild" ) ;
+			logger.error( "Failed rebuilding counters: {}", CSAP.buildCsapStack( e ) ) ;
+
+		} finally {
+
+			rebuildFence = null ;
+
+		}
+
+		var nanos = metricUtilities.stopTimer( timer, "db-event.counters.rebuild" ) ;
+		logger.info( "Event counters rebuilt in {} ms", TimeUnit.NANOSECONDS.toMillis( nanos ) ) ;
+
+	}
+
+	/**
+	 *
+	 * @return true if every field in the ui search string is kept in the counters
+	 */
+	public boolean isCounterSearch ( String searchString ) {
+
+		if ( ! isEnabled( ) || searchString == null ) {
+
+			return false ;
+
+		}
+
+		for ( String searchParameter : searchString.split( "," ) ) {
+
+			if ( searchParameter.contains( "eventReceivedOn" ) || searchParameter.contains( "isDataRequired" ) ) {
+
+				continue ;
+
+			}
+
+			String[] filterNameAndValue = searchParameter.split( "=" ) ;
+
+			if ( filterNameAndValue.length != 2 ) {
+
+				continue ;
+
+			}
+
+			if ( ! COUNTER_SEARCH_FIELDS.contains( filterNameAndValue[0] ) ) {
+
+				return false ;
+
+			}
+
+		}
+
+		return true ;
+
+	}
+
+	/**
+	 *
+	 * @param filter using only appId, lifecycle, category and createdOn.date
+	 */
+	public EventCount countFromCounters ( Bson filter , boolean approximate ) {
+
+		var timer = metricUtilities.startTimer( ) ;
+
+		var total = getCountersCollection( )
+				.aggregate( List.of(
+						Aggregates.match( filter ),
+						Aggregates.group( null, Accumulators.sum( "count", "$count" ) ) ) )
+				.first( ) ;
+
+		long count = 0 ;
+
+		if ( total != null ) {
+
+			count = ( (Number) total.get( "count" ) ).longValue( ) ;
+
+		}
+
+		metricUtilities.stopTimer( timer, "db-event.counters.count" ) ;
+
+		return new EventCount( count, approximate, EventCount.COUNTERS ) ;
+
+	}
+
+	/**
+	 *
+	 * fraction of a random sample matching the filter, scaled by the collection
+	 * size
+	 *
+	 */
+	public EventCount sampledCount ( Bson filter ) {
+
+		var timer = metricUtilities.startTimer( ) ;
+
+		var eventCollection = getEventCollection( ) ;
+
+		// no filter: answered from collection metadata
+		long total = eventCollection.count( ) ;
+
+		var matched = eventCollection
+				.aggregate( List.of(
+						Aggregates.sample( sampleSize ),
+						Aggregates.match( filter ),
+						Aggregates.group( null, Accumulators.sum( "count", 1 ) ) ) )
+				.first( ) ;
+
+		long count = 0 ;
+
+		if ( matched != null && total > 0 ) {
+
+			long sampled = Math.min( sampleSize, total ) ;
+			count = Math.round( (double) matched.getInteger( "count" ) / sampled * total ) ;
+
+		}
+
+		metricUtilities.stopTimer( timer, "db-event.counters.sampled" ) ;
+
+		return new EventCount( count, true, EventCount.SAMPLED ) ;
+
+	}
+
+	// not using EventDataHelper: it deletes events using the counters
+	private MongoCollection<Document> getEventCollection ( ) {
+
+		return mongoClient.getDatabase( EVENT_DB_NAME ).getCollection( EVENT_COLLECTION_NAME ) ;
+
+	}
+
+	public MongoCollection<Document> getCountersCollection ( ) {
+
+		return mongoClient.getDatabase( EVENT_DB_NAME ).getCollection( EVENT_COUNTERS_COLLECTION_NAME ) ;
+
+	}
+
+	public long getPendingCount ( ) {
+
+		return pendingCounts.size( ) ;
+
+	}
+
+	public boolean isEnabled ( ) {
+
+		return enabled ;
+
+	}
+
+	public void setEnabled ( boolean enabled ) {
+
+		this.enabled = enabled ;
+
+	}
+
+	public long getFlushIntervalMs ( ) {
+
+		return flushIntervalMs ;
+
+	}
+
+	public void setFlushIntervalMs ( long flushIntervalMs ) {
+
+		this.flushIntervalMs = flushIntervalMs ;
+
+	}
+
+	public int getRebuildIntervalHours ( ) {
+
+		return rebuildIntervalHours ;
+
+	}
+
+	public void setRebuildIntervalHours ( int rebuildIntervalHours ) {
+
+		this.rebuildIntervalHours = rebuildIntervalHours ;
+
+	}
+
+	public int getExactCountMaxSeconds ( ) {
+
+		return exactCountMaxSeconds ;
+
+	}
+
+	public void setExactCountMaxSeconds ( int exactCountMaxSeconds ) {
+
+		this.exactCountMaxSeconds = exactCountMaxSeconds ;
+
+	}
+
+	public int getSampleSize ( ) {
+
+		return sampleSize ;
+
+	}
+
+	public void setSampleSize ( int sampleSize ) {
+
+		this.sampleSize = sampleSize ;
+
+	}
+
+}
@@ -54,7 +54,6 @@ import com.mongodb.ReadPreference ;
 import com.mongodb.ServerAddress ;
 import com.mongodb.client.FindIterable ;
 import com.mongodb.client.MongoCollection ;
-import com.mongodb.client.result.DeleteResult ;
 
 @Service
 public class EventDataHelper {
@@ -67,6 +66,9 @@ public class EventDataHelper {
 	@Inject
 	private MongoClient mongoClient ;
 
+	@Inject
+	private EventCounters eventCounters ;
+
 	@Deprecated
 	@Cacheable ( "healthReportCache" )
 	public boolean isHealthReportEnabled ( String projectName , String life ) {
@@ -412,8 +414,8 @@ public class EventDataHelper {
 
 			if ( deleteList.size( ) > 0 ) {
 
-				DeleteResult deleteResult = eventCollection.deleteMany( in( "_id", deleteList ) ) ;
-				logger.info( "Deleted {} records", deleteResult.getDeletedCount( ) ) ;
+				long deletedCount = eventCounters.deleteMany( eventCollection, in( "_id", deleteList ) ) ;
+				logger.info( "Deleted {} records", deletedCount ) ;
 
 			}
 
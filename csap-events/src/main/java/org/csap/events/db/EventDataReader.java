@@ -9,6 +9,7 @@ import static com.mongodb.client.model.Projections.exclude ;
 import static com.mongodb.client.model.Projections.excludeId ;
 import static com.mongodb.client.model.Projections.fields ;
 import static com.mongodb.client.model.Projections.include ;
+import static com.mongodb.client.model.Sorts.ascending ;
 import static com.mongodb.client.model.Sorts.descending ;
 import static org.csap.events.EventJsonConstants.APPID ;
 import static org.csap.events.EventJsonConstants.CREATED_ON ;
@@ -47,11 +48,14 @@ import com.fasterxml.jackson.databind.ObjectMapper ;
 import com.fasterxml.jackson.databind.node.ArrayNode ;
 import com.mongodb.BasicDBObject ;
 import com.mongodb.MongoClient ;
+import com.mongodb.MongoExecutionTimeoutException ;
 import com.mongodb.ReadPreference ;
 import com.mongodb.client.AggregateIterable ;
 import com.mongodb.client.FindIterable ;
 import com.mongodb.client.MongoCollection ;
+import com.mongodb.client.model.Aggregates ;
 import com.mongodb.client.model.CountOptions ;
+import com.mongodb.client.model.Facet ;
 import com.mongodb.util.JSON ;
 
 @Service
@@ -68,6 +72,12 @@ public class EventDataReader {
 	@Inject
 	private EventDataHelper eventDataHelper ;
 
+	@Inject
+	private EventMetaDataCache eventMetaDataCache ;
+
+	@Inject
+	private EventCounters eventCounters ;
+
 	// @Cacheable( value = "oneMinuteCache", key = "{'eventListing' +
 	// #searchString + #searchString + #searchString}" )
 	public FindIterable<Document> getEventsByCriteria ( String searchString , int numRecords , int startIndex ) {
@@ -83,6 +93,89 @@ public class EventDataReader {
 
 	}
 
+	/**
+	 *
+	 * keyset pagination: seeks past the last event of the previous page on
+	 * (sort field, _id) rather than skipping. One extra event is read to
+	 * determine if there is a next page.
+	 *
+	 * @param pageToken empty for the first page
+	 * @return events, plus nextPageToken if more are available
+	 * @throws IllegalArgumentException if pageToken is not valid, or numRecords
+	 *                                  is not positive
+	 */
+	public EventPage getEventsAfter ( String searchString , int numRecords , String pageToken ) {
+
+		if ( numRecords <= 0 ) {
+
+			throw new IllegalArgumentException( "length must be greater than 0: " + numRecords ) ;
+
+		}
+
+		var sortField = getSortString( searchString ) ;
+		var searchFilter = eventDataHelper.convertUserInterfaceQueryToMongoFilter( searchString ) ;
+
+		if ( StringUtils.isNotBlank( pageToken ) ) {
+
+			var previousPage = EventPageToken.decode( pageToken ) ;
+
+			if ( ! previousPage.getSortField( ).equals( sortField ) ) {
+
+				throw new IllegalArgumentException( "Page token sort does not match search: " + sortField ) ;
+
+			}
+
+			searchFilter = and( searchFilter, previousPage.seekFilter( ) ) ;
+
+		}
+
+		List<Document> events = eventDataHelper.getMongoEventCollection( )
+				.find( searchFilter )
+				.sort( descending( sortField, "_id" ) )
+				.projection( exclude( getExcludedKeys( searchString ) ) )
+				.limit( numRecords + 1 )
+				.into( new ArrayList<>( ) ) ;
+
+		String nextPageToken = null ;
+
+		if ( events.size( ) > numRecords ) {
+
+			events = events.subList( 0, numRecords ) ;
+			nextPageToken = EventPageToken.fromLastEvent( sortField, events.get( numRecords - 1 ) ).encode( ) ;
+
+		}
+
+		return new EventPage( events, nextPageToken ) ;
+
+	}
+
+	public static class EventPage {
+
+		private List<Document> events ;
+		private String nextPageToken ;
+
+		EventPage ( List<Document> events, String nextPageToken ) {
+
+			this.events = events ;
+			this.nextPageToken = nextPageToken ;
+
+		}
+
+		public List<Document> getEvents ( ) {
+
+			return events ;
+
+		}
+
+		// null on the last page
+		public String getNextPageToken ( ) {
+
+			return nextPageToken ;
+
+		}
+
+	}
+
 	private String[] getExcludedKeys ( String searchString ) {
 
 		if ( searchString.contains( "isDataRequired=false" ) ) {
@@ -351,14 +444,14 @@ public class EventDataReader {
 	public final static String SEARCH_FILTER_KEY = SEARCH_FILTER + "." ;
 
 	/**
-	 * This can be changed to java driver 3 only after 3.1 library is out
+	 *
+	 * Search filters for the event browser, cached per appId, life and date
+	 * range. Refer to EventMetaDataCache for invalidation
 	 *
 	 * @param appId
 	 * @param life
 	 * @return
 	 */
-	// @Cacheable(value = "oneMinuteCache", key = "{'metaData' + #appId + #life
-	// + #appId + #fromDate + #toDate}")
 	public EventMetaData getEventMetaData (
 											String appId ,
 											String life ,
@@ -366,35 +459,72 @@ public class EventDataReader {
 											String toDate ,
 											int maxSeconds ) {
 
+		return eventMetaDataCache.get( appId, life, fromDate, toDate,
+				( ) -> loadEventMetaData( appId, life, fromDate, toDate, maxSeconds ) ) ;
+
+	}
+
+	/**
+	 *
+	 * All filters except appIds are built using a single $facet aggregation:
+	 * one pass over the matching events rather than a distinct per field.
+	 *
+	 * - lifecycles: appId and date filters
+	 *
+	 * - categories, hosts, projects: appId, date and life filters
+	 *
+	 * - uiUsers: as above, limited to /csap/ui/ categories
+	 *
+	 */
+	public EventMetaData loadEventMetaData (
+												String appId ,
+												String life ,
+												String fromDate ,
+												String toDate ,
+												int maxSeconds ) {
+
 		var totalRefreshTime = metricUtilities.startTimer( ) ;
 
 		EventMetaData searchFilters = new EventMetaData( ) ;
 
-		var appidTime = metricUtilities.startTimer( ) ;
-
 		int MAX_META_QUERY_SECONDS = maxSeconds ;
+
 		// show all appids - enable users to switch
-		searchFilters.setAppIds( eventDataHelper
-				.getMongoEventCollection( )
-				.distinct( APPID, String.class )
-				.maxTime( MAX_META_QUERY_SECONDS, TimeUnit.SECONDS ) ) ;
+		searchFilters.setAppIds( eventMetaDataCache.getAppIds( ( ) -> {
+
+			var appidTime = metricUtilities.startTimer( ) ;
+			var appIds = new ArrayList<String>( ) ;
+
+			try {
+
+				eventDataHelper
+						.getMongoEventCollection( )
+						.distinct( APPID, String.class )
+						.maxTime( MAX_META_QUERY_SECONDS, TimeUnit.SECONDS )
+						.into( appIds ) ;
+
+			} catch ( Exception e ) {
+
+				metricUtilities.incrementCounter( SEARCH_FILTER_KEY + "errors" ) ;
+				logger.error( "Failed to load: {}", CSAP.buildCsapStack( e ) ) ;
 
-		metricUtilities.stopTimer( appidTime, SEARCH_FILTER_KEY + "appids" ) ;
+			}
+
+			metricUtilities.stopTimer( appidTime, SEARCH_FILTER_KEY + "appids" ) ;
+			return appIds ;
+
+		} ) ) ;
 
-		List<Bson> all_filters = new ArrayList<>( ) ;
 		List<Bson> appId_date_filters = new ArrayList<>( ) ;
 
 		if ( StringUtils.isNotBlank( appId ) ) {
 
-			all_filters.add( eq( EventJsonConstants.APPID, appId ) ) ;
 			appId_date_filters.add( eq( EventJsonConstants.APPID, appId ) ) ;
 
 		}
 
 		if ( StringUtils.isNotBlank( fromDate ) ) {
 
-			all_filters.add( gte( EventJsonConstants.CREATED_ON_DATE, DateUtil.convertUserDateToMongoCreatedDate(
-					fromDate ) ) ) ;
 			appId_date_filters.add( gte( EventJsonConstants.CREATED_ON_DATE, DateUtil.convertUserDateToMongoCreatedDate(
 					fromDate ) ) ) ;
 
@@ -402,8 +532,6 @@ public class EventDataReader {
 
 		if ( StringUtils.isNotBlank( toDate ) ) {
 
-			all_filters.add( lte( EventJsonConstants.CREATED_ON_DATE, DateUtil.convertUserDateToMongoCreatedDate(
-					toDate ) ) ) ;
 			appId_date_filters.add( lte( EventJsonConstants.CREATED_ON_DATE, DateUtil.convertUserDateToMongoCreatedDate(
 					toDate ) ) ) ;
 
@@ -417,115 +545,104 @@ public class EventDataReader {
 
 		}
 
-		var lifeTimer = metricUtilities.startTimer( ) ;
-		searchFilters.setLifecycles(
-				eventDataHelper.getMongoEventCollection( )
-						.distinct( EventJsonConstants.LIFE, lifecycle_filter, String.class )
-						.filter( lifecycle_filter )
-						.maxTime( MAX_META_QUERY_SECONDS, TimeUnit.SECONDS ) ) ;
-		metricUtilities.stopTimer( lifeTimer, SEARCH_FILTER_KEY + "lifecycles" ) ;
+		List<Bson> life_filters = new ArrayList<>( ) ;
 
 		if ( StringUtils.isNotBlank( life ) ) {
 
-			all_filters.add( eq( EventJsonConstants.LIFE, life ) ) ;
+			life_filters.add( eq( EventJsonConstants.LIFE, life ) ) ;
 
 		}
 
-		Bson allFiltersAnded = new Document( ) ;
+		// ignore null users - seems to be failing intermittently
+		// switch to use of category
+		List<Bson> user_filters = new ArrayList<>( life_filters ) ;
+		user_filters.add( regex( EventJsonConstants.CATEGORY, Pattern.compile( "^/csap/ui/" ) ) ) ;
+
+		var facetPipeline = List.of(
+				Aggregates.match( lifecycle_filter ),
+				Aggregates.facet(
+						distinctFacet( "lifecycles", EventJsonConstants.LIFE, List.of( ) ),
+						distinctFacet( "categories", EventJsonConstants.CATEGORY, life_filters ),
+						distinctFacet( "hosts", EventJsonConstants.HOST, life_filters ),
+						distinctFacet( "projects", EventJsonConstants.PROJECT, life_filters ),
+						distinctFacet( "uiUsers", EventJsonConstants.UI_USER, user_filters ) ) ) ;
 
-		if ( all_filters.size( ) > 0 ) {
+		logger.debug( "facet pipeline: {}", facetPipeline ) ;
 
-			allFiltersAnded = and( all_filters ) ;
+		var facetTimer = metricUtilities.startTimer( ) ;
 
-		}
+		try {
 
-		addCategorysHostsAndProjects( searchFilters, MAX_META_QUERY_SECONDS, allFiltersAnded ) ;
+			var facets = eventDataHelper.getMongoEventCollection( )
+					.aggregate( facetPipeline )
+					.maxTime( MAX_META_QUERY_SECONDS, TimeUnit.SECONDS )
+					.first( ) ;
+
+			if ( facets != null ) {
+
+				searchFilters.setLifecycles( facetValues( facets, "lifecycles" ) ) ;
+				searchFilters.setCategories( facetValues( facets, "categories" ) ) ;
+				searchFilters.setHosts( facetValues( facets, "hosts" ) ) ;
+				searchFilters.setProjects( facetValues( facets, "projects" ) ) ;
+				searchFilters.setUiUsers( facetValues( facets, "uiUsers" ) ) ;
+
+			}
+
+		} catch ( Exception e ) {
+
+			metricUtilities.incrementCounter( SEARCH_FILTER_KEY + "errors" ) ;
+			logger.error( "Failed to load: {}", CSAP.buildCsapStack( e ) ) ;
+
+		}
 
-		addActiveUsers( searchFilters, MAX_META_QUERY_SECONDS, all_filters ) ;
+		metricUtilities.stopTimer( facetTimer, SEARCH_FILTER_KEY + "facets" ) ;
 
 		var nanos = metricUtilities.stopTimer( totalRefreshTime, "csap." + SEARCH_FILTER ) ;
 
-		logger.debug( "all - filter: {}, Time taken: {},\n length: {}",
-				allFiltersAnded,
+		logger.debug( "all - filter: {}, life: {}, Time taken: {},\n length: {}",
+				lifecycle_filter, life,
 				CSAP.timeUnitPresent( TimeUnit.NANOSECONDS.toMillis( nanos ) ),
 				searchFilters.toString( ).length( ) ) ;
 
-		// logger.debug( "Time taken: {}\n {}", SimonUtils.presentNanoTime(
-		// totalRefreshTime.runningFor() ), metaData.toString() );
 		return searchFilters ;
 
 	}
 
-	private void addCategorysHostsAndProjects (
-												EventMetaData metaData ,
-												int MAX_META_QUERY_SECONDS ,
-												Bson allFiltersAnded ) {
+	private Facet distinctFacet ( String name , String field , List<Bson> filters ) {
 
-		var timer = metricUtilities.startTimer( ) ;
+		List<Bson> stages = new ArrayList<>( ) ;
 
-		metaData.setCategories(
-				eventDataHelper.getMongoEventCollection( )
-						.distinct( EventJsonConstants.CATEGORY, String.class )
-						.filter( allFiltersAnded )
-						.maxTime( MAX_META_QUERY_SECONDS, TimeUnit.SECONDS ) ) ;
+		if ( filters.size( ) > 0 ) {
 
-		metricUtilities.stopTimer( timer, SEARCH_FILTER_KEY + "category" ) ;
+			stages.add( Aggregates.match( and( filters ) ) ) ;
 
-		//
-		var hosts = metricUtilities.startTimer( ) ;
-
-		metaData.setHosts(
-				eventDataHelper.getMongoEventCollection( )
-						.distinct(
-								EventJsonConstants.HOST,
-								String.class )
-						.filter( allFiltersAnded )
-						.maxTime( MAX_META_QUERY_SECONDS, TimeUnit.SECONDS ) ) ;
-		metricUtilities.stopTimer( hosts, SEARCH_FILTER_KEY + "hosts" ) ;
+		}
 
-		logger.debug( "{} hosts: {} ", allFiltersAnded, metaData.getHosts( ) ) ;
+		stages.add( Aggregates.group( "$" + field ) ) ;
+		stages.add( Aggregates.sort( ascending( "_id" ) ) ) ;
 
-		var projects = metricUtilities.startTimer( ) ;
-		metaData.setProjects(
-				eventDataHelper.getMongoEventCollection( )
-						.distinct( EventJsonConstants.PROJECT, String.class )
-						.filter( allFiltersAnded )
-						.maxTime( MAX_META_QUERY_SECONDS, TimeUnit.SECONDS ) ) ;
-		metricUtilities.stopTimer( projects, SEARCH_FILTER_KEY + "projects" ) ;
+		return new Facet( name, stages ) ;
 
 	}
 
-	private void addActiveUsers ( EventMetaData metaData , int MAX_META_QUERY_SECONDS , List<Bson> all_filters ) {
+	// group _ids, skipping events without the field
+	private List<String> facetValues ( Document facets , String name ) {
 
-		var timer = metricUtilities.startTimer( ) ;
+		var values = new ArrayList<String>( ) ;
 
-		List<Bson> user_filters = new ArrayList<>( ) ;
+		for ( var facetValue : facets.get( name, List.class ) ) {
 
-		// ignore null users - seems to be failing intermittently
-		// user_filters.add( ne( EventJsonConstants.UI_USER, null ) ) ;
-		Pattern uiPattern = Pattern.compile( "^/csap/ui/" ) ;
-		user_filters.add( regex( EventJsonConstants.CATEGORY, uiPattern ) ) ;
-		// switch to use of category
+			var value = ( (Document) facetValue ).get( "_id" ) ;
 
-		if ( all_filters.size( ) > 0 ) {
+			if ( value instanceof String ) {
 
-			user_filters.addAll( all_filters ) ;
+				values.add( (String) value ) ;
 
-		}
-
-		Bson usersDistinctFilter = and( user_filters ) ;
-		metaData.setUiUsers(
-				eventDataHelper.getMongoEventCollection( )
-						.distinct( EventJsonConstants.UI_USER, String.class )
-						.filter( usersDistinctFilter )
-						.maxTime( MAX_META_QUERY_SECONDS, TimeUnit.SECONDS ) ) ;
+			}
 
-		var nanos = metricUtilities.stopTimer( timer, SEARCH_FILTER_KEY + "users" ) ;
+		}
 
-		logger.debug( "users - filter: {}, Time taken: {},\n users: {}",
-				usersDistinctFilter,
-				CSAP.timeUnitPresent( TimeUnit.NANOSECONDS.toMillis( nanos ) ),
-				metaData.getUiUsers( ) ) ;
+		return values ;
 
 	}
 
@@ -641,44 +758,52 @@ public class EventDataReader {
 
 	}
 
+	/**
+	 *
+	 * searches using only appId, lifecycle, category and dates are summed from
+	 * EventCounters. Others are counted with a short maxTime, falling back to a
+	 * sampled estimate
+	 *
+	 */
 	@Cacheable ( value = "oneMinuteCache" , key = "{'numberOfEvents' + #searchString}" )
-	public Long numberOfEvents ( String searchString ) {
+	public EventCount numberOfEvents ( String searchString ) {
 
 		logger.debug( "Event count not found in cache or expired, updating using: {}", searchString ) ;
 
 		var timer = metricUtilities.startTimer( ) ;
-		MongoCollection<Document> eventCollection = eventDataHelper.getMongoEventCollection( ) ;
 
 		Bson filter = eventDataHelper.convertUserInterfaceQueryToMongoFilter( searchString ) ;
 
 		logger.debug( "search filter: {}", filter ) ;
-		CountOptions countOptions = new CountOptions( ) ;
-		countOptions.maxTime( EventJsonConstants.MAX_QUERY_TIME_SECONDS, TimeUnit.SECONDS ) ;
-
-		if ( searchString.contains( "appId" ) ) {
 
-			countOptions.hintString( EventJsonConstants.EVENT_ALL_INDEX ) ;
+		EventCount count = null ;
 
-		} else if ( searchString.contains( "from" ) ) {
+		if ( eventCounters.isCounterSearch( searchString ) ) {
 
-			countOptions.hintString( EventJsonConstants.EVENT_DATE_INDEX ) ;
+			count = countUsingCounters( filter, false ) ;
 
 		}
 
-		long count = -1 ;
+		if ( count == null ) {
 
-		try {
+			CountOptions countOptions = new CountOptions( ) ;
 
-			count = eventCollection.count( filter, countOptions ) ;
+			if ( searchString.contains( "appId" ) ) {
 
-		} catch ( Exception e ) {
+				countOptions.hintString( EventJsonConstants.EVENT_ALL_INDEX ) ;
+
+			} else if ( searchString.contains( "from" ) ) {
+
+				countOptions.hintString( EventJsonConstants.EVENT_DATE_INDEX ) ;
 
-			logger.error( "Failed to find {} in 20 seconds", searchString ) ;
+			}
+
+			count = countUsingQuery( filter, countOptions ) ;
 
 		}
 
 		metricUtilities.stopTimer( timer, "filteredTotalRecords" ) ;
-		return new Long( count ) ;
+		return count ;
 
 	}
 
@@ -686,27 +811,85 @@ public class EventDataReader {
 	public long getTotalEvents ( String userRequest ) {
 
 		var timer = metricUtilities.startTimer( ) ;
-		CountOptions countOptions = new CountOptions( ) ;
-		countOptions.maxTime( EventJsonConstants.MAX_QUERY_TIME_SECONDS, TimeUnit.SECONDS ) ;
 		// countOptions.hintString( "appId_1_lifecycle_1_createdOn.date_-1" );
-		long count = 99999 ;
 		Bson filter = eventDataHelper.buildAppIdAndLifeFilter( userRequest ) ;
 
+		EventCount count = null ;
+
+		if ( eventCounters.isEnabled( ) ) {
+
+			count = countUsingCounters( filter, false ) ;
+
+		}
+
+		if ( count == null ) {
+
+			count = countUsingQuery( filter, new CountOptions( ) ) ;
+
+		}
+
+		metricUtilities.stopTimer( timer, "totalRecords" ) ;
+
+		if ( count.getCount( ) < 0 ) {
+
+			return 99999 ;
+
+		}
+
+		return count.getCount( ) ;
+
+	}
+
+	private EventCount countUsingCounters ( Bson filter , boolean approximate ) {
+
 		try {
 
-			count = eventDataHelper.getMongoEventCollection( )
-					.count(
-							filter,
-							countOptions ) ;
+			return eventCounters.countFromCounters( filter, approximate ) ;
 
 		} catch ( Exception e ) {
 
-			logger.error( "Failed to find {} in 20 seconds", filter ) ;
+			logger.warn( "Failed counting {} using counters: {}", filter, CSAP.buildCsapStack( e ) ) ;
 
 		}
 
-		metricUtilities.stopTimer( timer, "totalRecords" ) ;
-		return count ;
+		return null ;
+
+	}
+
+	private EventCount countUsingQuery ( Bson filter , CountOptions countOptions ) {
+
+		countOptions.maxTime( eventCounters.getExactCountMaxSeconds( ), TimeUnit.SECONDS ) ;
+
+		try {
+
+			return new EventCount(
+					eventDataHelper.getMongoEventCollection( ).count( filter, countOptions ),
+					false, EventCount.QUERY ) ;
+
+		} catch ( MongoExecutionTimeoutException e ) {
+
+			metricUtilities.incrementCounter( "db-event.counters.query-timeout" ) ;
+			logger.debug( "Count of {} exceeded {} seconds, using sample", filter,
+					eventCounters.getExactCountMaxSeconds( ) ) ;
+
+		} catch ( Exception e ) {
+
+			logger.error( "Failed to count {}: {}", filter, CSAP.buildCsapStack( e ) ) ;
+			return new EventCount( -1, false, EventCount.QUERY ) ;
+
+		}
+
+		try {
+
+			return eventCounters.sampledCount( filter ) ;
+
+		} catch ( Exception e ) {
+
+			logger.error( "Failed to estimate {}: {}", filter, CSAP.buildCsapStack( e ) ) ;
+
+		}
+
+		return new EventCount( -1, false, EventCount.SAMPLED ) ;
 
 	}
 
@@ -724,7 +907,13 @@ public class EventDataReader {
 
 	}
 
-	public long countEvents ( int numDays , String appId , String life , String category , String project ) {
+	/**
+	 *
+	 * if project is not set, counts are summed from EventCounters. numDays is then
+	 * rounded to whole days and the count is flagged approximate
+	 *
+	 */
+	public EventCount countEvents ( int numDays , String appId , String life , String category , String project ) {
 
 		List<Bson> conds = new ArrayList<>( ) ;
 
@@ -788,14 +977,49 @@ public class EventDataReader {
 
 		}
 
-		MongoCollection<Document> eventCollection = eventDataHelper.getMongoEventCollection( ) ;
-		long count = eventCollection.count( filter ) ;
+		EventCount count = null ;
+
+		if ( eventCounters.isEnabled( ) && StringUtils.isBlank( project ) ) {
+
+			count = countUsingCounters( counterFilter( conds, numDays ), numDays > 0 ) ;
+
+		}
+
+		if ( count == null ) {
+
+			count = countUsingQuery( filter, new CountOptions( ) ) ;
+
+		}
+
 		logger.debug( "Number of events for appId: {} ,project: {} , life: {} , category: {} , numDays: {} is {} ",
 				appId, project, life, category, numDays, count ) ;
 		return count ;
 
 	}
 
+	// counters are per day: the lastUpdatedOn condition is replaced by createdOn.date
+	private Bson counterFilter ( List<Bson> conds , int numDays ) {
+
+		List<Bson> counterConds = new ArrayList<>( conds ) ;
+
+		if ( numDays > 0 ) {
+
+			counterConds.remove( counterConds.size( ) - 1 ) ;
+			counterConds.add( gte( EventJsonConstants.CREATED_ON_DATE,
+					DateUtil.buildMongoCreatedDateFromOffset( numDays ) ) ) ;
+
+		}
+
+		if ( counterConds.isEmpty( ) ) {
+
+			return new Document( ) ;
+
+		}
+
+		return and( counterConds ) ;
+
+	}
+
 	private BasicDBObject constructDateQuery ( int numDays ) {
 
 		BasicDBObject query = new BasicDBObject( ) ;
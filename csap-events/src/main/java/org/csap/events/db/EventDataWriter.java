@@ -15,6 +15,7 @@ import static org.csap.events.EventJsonConstants.PROJECT ;
 import static org.csap.events.EventJsonConstants.SUMMARY ;
 import static org.csap.events.EventJsonConstants.TIME ;
 import static org.csap.events.EventJsonConstants.UNIXMS ;
+import static org.csap.events.util.EventJsonConstants.CSAP_MODEL_SUMMAY_CATEGORY ;
 import static org.csap.events.util.MongoConstants.EVENT_COLLECTION_NAME ;
 import static org.csap.events.util.MongoConstants.EVENT_DB_NAME ;
 
@@ -24,6 +25,7 @@ import java.util.ArrayList ;
 import java.util.Calendar ;
 import java.util.Date ;
 import java.util.List ;
+import java.util.concurrent.RejectedExecutionException ;
 import java.util.concurrent.TimeUnit ;
 
 import javax.inject.Inject ;
@@ -50,12 +52,13 @@ import com.mongodb.WriteResult ;
 import com.mongodb.client.MongoCollection ;
 import com.mongodb.client.model.FindOneAndUpdateOptions ;
 import com.mongodb.client.model.ReturnDocument ;
-import com.mongodb.client.result.DeleteResult ;
 import com.mongodb.util.JSON ;
 
 @Service
 public class EventDataWriter {
 	public static final String MONGO_IS_TIMING_OUT = "Mongo Not Available" ;
+	public static final String INGEST_BACKLOG_FULL = "Ingest Backlog Full" ;
+	public static final String UPSERT_PENDING = "upsert pending" ;
 	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
 
 	@Autowired
@@ -69,17 +72,34 @@ public class EventDataWriter {
 	@Inject
 	private HealthEventWriter healthEventWriter ;
 
-	public long deleteEventByFilter ( String filter ) {
+	@Inject
+	private EventIngestPipeline ingestPipeline ;
 
-		long docsEffected = 0 ;
-		Bson query = eventDataHelper.convertUserInterfaceQueryToMongoFilter( filter ) ;
-		DeleteResult result = eventDataHelper.getMongoEventCollection( ).deleteMany( query ) ;
+	@Inject
+	private EventUpsertCoalescer upsertCoalescer ;
 
-		if ( null != result ) {
+	@Inject
+	private MetricsRollups metricsRollups ;
 
-			docsEffected = result.getDeletedCount( ) ;
+	@Inject
+	private EventMetaDataCache eventMetaDataCache ;
 
-		}
+	@Inject
+	private EventCounters eventCounters ;
+
+	@Inject
+	private DailyTrendStore dailyTrendStore ;
+
+	@Inject
+	private MetricsIntervals metricsIntervals ;
+
+	@Inject
+	private MetricsHotTail metricsHotTail ;
+
+	public long deleteEventByFilter ( String filter ) {
+
+		Bson query = eventDataHelper.convertUserInterfaceQueryToMongoFilter( filter ) ;
+		long docsEffected = eventCounters.deleteMany( eventDataHelper.getMongoEventCollection( ), query ) ;
 
 		logger.warn( "Docs effected {} ", docsEffected ) ;
 		return docsEffected ;
@@ -89,15 +109,8 @@ public class EventDataWriter {
 	public long deleteEventById ( String objectId ) {
 
 		Document query = new Document( "_id", new ObjectId( objectId ) ) ;
-		DeleteResult result = eventDataHelper.getMongoEventCollection( ).deleteOne( query ) ;
-		long docsEffected = 0 ;
-
-		if ( null != result ) {
-
-			docsEffected = result.getDeletedCount( ) ;
-			logger.warn( "docs effected {}", docsEffected ) ;
-
-		}
+		long docsEffected = eventCounters.deleteMany( eventDataHelper.getMongoEventCollection( ), query ) ;
+		logger.warn( "docs effected {}", docsEffected ) ;
 
 		return docsEffected ;
 
@@ -182,7 +195,9 @@ public class EventDataWriter {
 				}
 
 				eventDataHelper.getMongoEventCollection( ).insertOne( eventDocument ) ;
+				eventCounters.eventInserted( eventDocument ) ;
 				key = eventDocument.get( "_id" ).toString( ) ;
+				eventMetaDataCache.eventAdded( eventDocument ) ;
 
 			} catch ( Exception e ) {
 
@@ -197,6 +212,36 @@ public class EventDataWriter {
 
 	}
 
+	/**
+	 * Reports built by this service (adoption backfill): stored the same way as
+	 * a posted report, without the http round trip and json parse of
+	 * insertEventData
+	 */
+	public String insertReportDocument ( Document reportDocument , String appId ) {
+
+		String category = reportDocument.getString( CATEGORY ) ;
+
+		if ( category == null || ! category.startsWith( "/csap/reports" ) ) {
+
+			throw new IllegalArgumentException( "Not a report category: " + category ) ;
+
+		}
+
+		var timer = metricUtilities.startTimer( ) ;
+
+		reportDocument.append( "appId", appId ) ;
+		setMongoDate( reportDocument ) ;
+		reportDocument.append( "expiresAt", getExpirationTime( reportDocument.getString( "lifecycle" ) ) ) ;
+
+		String key = insertOrUpdate( reportDocument ) ;
+		dailyTrendStore.reportUpdated( reportDocument ) ;
+		eventMetaDataCache.eventAdded( reportDocument ) ;
+
+		metricUtilities.stopTimer( timer, "csap.event.add.report-direct" ) ;
+		return key ;
+
+	}
+
 	/**
 	 * This will insert events and/or metrics based on category.
 	 * 
@@ -277,6 +322,7 @@ public class EventDataWriter {
 				} else if ( category.startsWith( "/csap/reports" ) ) {
 
 					documentKeyUsedInLogs = insertOrUpdate( eventDocument ) ;
+					dailyTrendStore.reportUpdated( eventDocument ) ;
 
 				} else if ( category.matches( "/csap/system/service/.*/job" ) ) {
 
@@ -284,13 +330,19 @@ public class EventDataWriter {
 
 				} else {
 
-					eventDataHelper.getMongoEventCollection( )
-							.insertOne( eventDocument ) ;
-					documentKeyUsedInLogs = eventDocument.get( "_id" ).toString( ) ;
+					documentKeyUsedInLogs = insertDocument( eventDataHelper.getMongoEventCollection( ),
+							eventDocument ) ;
+
+					if ( CSAP_MODEL_SUMMAY_CATEGORY.equals( category ) ) {
+
+						metricsIntervals.modelSummaryIngested( eventDocument ) ;
+
+					}
 
 				}
 
 				metricUtilities.stopTimer( categoryTimer, "csap.event.add." + timerName( category ) ) ;
+				eventMetaDataCache.eventAdded( eventDocument ) ;
 
 			} else {
 
@@ -298,6 +350,13 @@ public class EventDataWriter {
 
 			}
 
+		} catch ( RejectedExecutionException e ) {
+
+			// backpressure: caller responds with 503 so agent retries later
+			metricUtilities.incrementCounter( "db-event.attempt.failed.backlog" ) ;
+			logger.debug( "Ingest backlog full, appId: {}", appId ) ;
+			documentKeyUsedInLogs = INGEST_BACKLOG_FULL ;
+
 		} catch ( Exception e ) {
 
 			metricUtilities.incrementCounter( "db-event.attempt.failed." + e.getClass( ).getName( ) ) ;
@@ -387,22 +446,31 @@ public class EventDataWriter {
 
 		//
 		// either an attributes or data event:
-		// - step 1: both are stored in the metrics db
-		// - step 2: an event is added to event db, including a key used to xref the
-		// data.
+		// - both are stored in the metrics db
+		// - an event is added to event db, including a key used to xref the data.
+		// The key is assigned up front, so the event is written first
 		//
 
 		String key = "" ;
 		String category = eventDocument.getString( "category" ) ;
+		boolean isAttributes = category.startsWith( "/csap/metrics" ) && category.endsWith( "attributes" ) ;
 		MongoCollection<Document> metricsAttributeOrDataCollection = eventDataHelper.getMetricsCollectionByCategory(
 				category ) ;
 		String metricsDocumentIdUsedForCrossReferences = "" ;
+		Document dataDocument = null ;
 
 		if ( null != metricsAttributeOrDataCollection ) {
 
-			Document dataDocument = (Document) eventDocument.get( "data" ) ;
+			dataDocument = (Document) eventDocument.get( "data" ) ;
 			dataDocument.append( "createdOn", eventDocument.get( "createdOn" ) ) ;
-			metricsAttributeOrDataCollection.insertOne( dataDocument ) ;
+
+			// assigned up front: attributes are inserted together with their event
+			if ( ! dataDocument.containsKey( "_id" ) ) {
+
+				dataDocument.put( "_id", new ObjectId( ) ) ;
+
+			}
+
 			metricsDocumentIdUsedForCrossReferences = dataDocument.get( "_id" ).toString( ) ;
 
 			logger.debug( "Metrics Key {}", metricsDocumentIdUsedForCrossReferences ) ;
@@ -421,15 +489,37 @@ public class EventDataWriter {
 
 		}
 
-		if ( category.startsWith( "/csap/metrics" ) && category.endsWith( "attributes" ) ) {
+		if ( isAttributes ) {
+
+			List<EventIngestPipeline.PendingInsert> inserts = new ArrayList<>( ) ;
+
+			if ( dataDocument != null ) {
+
+				inserts.add( new EventIngestPipeline.PendingInsert( metricsAttributeOrDataCollection, dataDocument ) ) ;
 
-			eventDataHelper.getMongoEventCollection( ).insertOne( eventDocument ) ;
+			}
+
+			inserts.add( new EventIngestPipeline.PendingInsert( eventDataHelper.getMongoEventCollection( ),
+					eventDocument ) ) ;
+			insertDocuments( inserts ) ;
 			key = eventDocument.get( "_id" ).toString( ) ;
 
 		} else if ( category.startsWith( "/csap/metrics" ) && category.endsWith( "data" ) ) {
 
+			// event upsert first: when it is rejected (503) the agent posts again, so
+			// the data and rollups are only written once the event is accepted
 			key = insertOrUpdate( eventDocument ) ;
 
+			insertDocument( metricsAttributeOrDataCollection, dataDocument ) ;
+
+			if ( metricsRollups.isEnabled( ) ) {
+
+				metricsRollups.update( dataDocument ) ;
+
+			}
+
+			metricsHotTail.metricsDataIngested( dataDocument ) ;
+
 		} else {
 
 			logger.debug( "Category not ending with data or attribute :: {}", category ) ;
@@ -441,6 +531,55 @@ public class EventDataWriter {
 
 	}
 
+	private String insertDocument ( MongoCollection<Document> collection , Document document ) {
+
+		insertDocuments( List.of( new EventIngestPipeline.PendingInsert( collection, document ) ) ) ;
+
+		return document.get( "_id" ).toString( ) ;
+
+	}
+
+	//
+	// batched ingest: documents are queued together for insertMany by the ingest
+	// writers, which update the counters once inserted. _id is assigned up front
+	// so the key is available immediately
+	//
+	private void insertDocuments ( List<EventIngestPipeline.PendingInsert> inserts ) {
+
+		if ( ingestPipeline.isEnabled( ) ) {
+
+			if ( ! ingestPipeline.submit( inserts ) ) {
+
+				throw new RejectedExecutionException( "Ingest queue full: " + ingestPipeline.getQueueSize( ) ) ;
+
+			}
+
+			return ;
+
+		}
+
+		for ( var insert : inserts ) {
+
+			insert.collection.insertOne( insert.document ) ;
+
+			if ( insert.collection.getNamespace( ).getCollectionName( ).equals( EVENT_COLLECTION_NAME ) ) {
+
+				eventCounters.eventInserted( insert.document ) ;
+
+			}
+
+		}
+
+	}
+
+	// counter is incremented on every upsert: 1 means the event was inserted
+	static boolean isFirstUpsert ( Document upsertResult ) {
+
+		var counter = upsertResult.get( "counter" ) ;
+		return ( counter instanceof Number ) && ( (Number) counter ).longValue( ) == 1 ;
+
+	}
+
 	private String insertOrUpdate ( Document eventDocument ) {
 
 		var eventCategory = eventDocument.getString( "category" ) ;
@@ -453,6 +592,7 @@ public class EventDataWriter {
 		// queryFilters.add(eq("lifecycle",eventDocument.getString("lifecycle")));
 		queryFilters.add(
 				eq( "category", eventCategory ) ) ;
+		StringBuilder upsertKey = new StringBuilder( eventCategory ) ;
 
 		// Special hook for analytics project generating one report for each
 		// deployed instance
@@ -465,6 +605,7 @@ public class EventDataWriter {
 		} else {
 
 			queryFilters.add( eq( "host", eventDocument.getString( "host" ) ) ) ;
+			upsertKey.append( "|" ).append( eventDocument.getString( "host" ) ) ;
 
 		}
 
@@ -474,11 +615,21 @@ public class EventDataWriter {
 			Document createdOn = (Document) eventDocument.get( "createdOn" ) ;
 			String date = createdOn.getString( "date" ) ;
 			queryFilters.add( eq( "createdOn.date", date ) ) ;
+			upsertKey.append( "|" ).append( date ) ;
 
 		}
 
 		Bson andedQueryFilters = and( queryFilters ) ;
 
+		if ( upsertCoalescer.isEnabled( ) ) {
+
+			// merged with other upserts to the same key, written in next bulkWrite
+			upsertCoalescer.submit( upsertKey.toString( ), andedQueryFilters, eventDocument ) ;
+			metricUtilities.stopTimer( timer, "db-event.insert.insertOrUpdate.coalesced" ) ;
+			return UPSERT_PENDING ;
+
+		}
+
 		Document replacementEvent = new Document( ) ;
 		replacementEvent.put( "$set", eventDocument ) ;
 		replacementEvent.put( "$inc", new Document( ).append( "counter", 1 ) ) ;
@@ -500,6 +651,13 @@ public class EventDataWriter {
 			if ( null != result ) {
 
 				key = result.getObjectId( "_id" ).toString( ) ;
+
+				if ( isFirstUpsert( result ) ) {
+
+					eventCounters.eventInserted( result ) ;
+
+				}
+
 				// if ( eventCategory.startsWith( "/csap/ui/access" ) ) {
 				logger.debug( "upsert for {}, filters: {}, results:  {}", eventCategory, queryFilters,
 						CsapApplication.header( result.toJson( ) ) ) ;
@@ -556,6 +714,7 @@ public class EventDataWriter {
 			// eventCollection.insert(dbObject);
 			eventDataHelper.getMongoEventCollection( )
 					.insertOne( eventDocument ) ;
+			eventCounters.eventInserted( eventDocument ) ;
 
 		} catch ( Exception e ) {
 
@@ -635,6 +794,7 @@ public class EventDataWriter {
 
 			eventDataHelper.getMongoEventCollection( )
 					.insertOne( exceptionEventDocument ) ;
+			eventCounters.eventInserted( exceptionEventDocument ) ;
 
 		} catch ( Exception e ) {
 
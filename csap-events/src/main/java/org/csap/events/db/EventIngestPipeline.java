@@ -0,0 +1,490 @@
+package org.csap.events.db ;
+
+import java.util.ArrayList ;
+import java.util.LinkedHashMap ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.concurrent.BlockingQueue ;
+import java.util.concurrent.ExecutorService ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.LinkedBlockingQueue ;
+import java.util.concurrent.Semaphore ;
+import java.util.concurrent.TimeUnit ;
+import java.util.stream.Collectors ;
+
+import javax.annotation.PostConstruct ;
+import javax.annotation.PreDestroy ;
+import javax.inject.Inject ;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory ;
+import org.bson.Document ;
+import org.bson.types.ObjectId ;
+import org.csap.events.CsapEventsApplication ;
+import org.csap.events.util.MongoConstants ;
+import org.csap.helpers.CSAP ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.stereotype.Service ;
+
+import com.mongodb.ErrorCategory ;
+import com.mongodb.MongoBulkWriteException ;
+import com.mongodb.bulk.BulkWriteError ;
+import com.mongodb.client.MongoCollection ;
+import com.mongodb.client.model.InsertManyOptions ;
+
+/**
+ *
+ * Optional ingest mode: agent posts are queued in memory and written to mongo
+ * in batches (insertMany) by background writers, rather than one round trip on
+ * the http request thread.
+ *
+ * - _id is assigned before queuing, so callers still get a key for logs and
+ * cross references
+ *
+ * - queue is bounded: when full, submit returns false and the caller responds
+ * with 503 so agents back off and retry. Documents submitted together are
+ * accepted or rejected together, so a retry never duplicates part of a post
+ *
+ * - event counters are updated once the events are inserted
+ *
+ * - failed inserts are queued again and retried after flushIntervalMs, up to
+ * maxFlushAttempts. While mongo is failing, lastMongoFailure is set so new
+ * posts are rejected (503) and agents retry, rather than filling the queue
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".ingest" )
+public class EventIngestPipeline {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	@Inject
+	private EventCounters eventCounters ;
+
+	private boolean enabled = false ;
+	private int queueCapacity = 20000 ;
+	private int batchSize = 500 ;
+	private long flushIntervalMs = 1000 ;
+	private int writerThreads = 2 ;
+	private int maxFlushAttempts = 3 ;
+
+	private volatile long lastMongoFailure = 0 ;
+
+	private BlockingQueue<PendingInsert> pendingInserts ;
+
+	// queued and in flight documents
+	private Semaphore capacity ;
+	private ExecutorService writers ;
+	private volatile boolean running = false ;
+
+	static class PendingInsert {
+
+		final MongoCollection<Document> collection ;
+		final Document document ;
+		int failedFlushes = 0 ;
+
+		PendingInsert ( MongoCollection<Document> collection, Document document ) {
+
+			this.collection = collection ;
+			this.document = document ;
+
+		}
+	}
+
+	@PostConstruct
+	public void startWriters ( ) {
+
+		if ( ! isEnabled( ) ) {
+
+			logger.info( "Batched ingest disabled: events are written on the request thread" ) ;
+			return ;
+
+		}
+
+		logger.info( "Batched ingest enabled: queueCapacity: {}, batchSize: {}, flushIntervalMs: {}, writerThreads: {}",
+				queueCapacity, batchSize, flushIntervalMs, writerThreads ) ;
+
+		pendingInserts = new LinkedBlockingQueue<>( ) ;
+		capacity = new Semaphore( queueCapacity ) ;
+
+		BasicThreadFactory writerThreadFactory = new BasicThreadFactory.Builder( )
+				.namingPattern( CsapEventsApplication.class.getSimpleName( ) + "Ingest-%d" )
+				.daemon( true )
+				.build( ) ;
+
+		writers = Executors.newFixedThreadPool( writerThreads, writerThreadFactory ) ;
+		running = true ;
+
+		for ( int i = 0; i < writerThreads; i++ ) {
+
+			writers.execute( this::drainPendingInserts ) ;
+
+		}
+
+		metricUtilities.addGauge( "csap.ingest.queue-size", this, EventIngestPipeline::getQueueSize ) ;
+
+	}
+
+	@PreDestroy
+	public void stopWriters ( ) {
+
+		if ( writers == null ) {
+
+			return ;
+
+		}
+
+		running = false ;
+		writers.shutdown( ) ;
+
+		try {
+
+			if ( ! writers.awaitTermination( flushIntervalMs * 5, TimeUnit.MILLISECONDS ) ) {
+
+				logger.warn( "Ingest writers did not complete, pending inserts: {}", getQueueSize( ) ) ;
+				writers.shutdownNow( ) ;
+
+			}
+
+		} catch ( InterruptedException e ) {
+
+			Thread.currentThread( ).interrupt( ) ;
+
+		}
+
+	}
+
+	/**
+	 *
+	 * @return false if the queue cannot hold all the inserts - none are queued,
+	 *         caller should reject the request
+	 */
+	public boolean submit ( List<PendingInsert> inserts ) {
+
+		if ( ! capacity.tryAcquire( inserts.size( ) ) ) {
+
+			metricUtilities.incrementCounter( "db-event.ingest.rejected" ) ;
+			return false ;
+
+		}
+
+		for ( var insert : inserts ) {
+
+			if ( ! insert.document.containsKey( "_id" ) ) {
+
+				insert.document.put( "_id", new ObjectId( ) ) ;
+
+			}
+
+			pendingInserts.add( insert ) ;
+
+		}
+
+		return true ;
+
+	}
+
+	private void drainPendingInserts ( ) {
+
+		List<PendingInsert> batch = new ArrayList<>( batchSize ) ;
+
+		while ( running || ! pendingInserts.isEmpty( ) ) {
+
+			try {
+
+				long flushAt = System.currentTimeMillis( ) + flushIntervalMs ;
+
+				while ( batch.size( ) < batchSize ) {
+
+					long waitMs = flushAt - System.currentTimeMillis( ) ;
+
+					if ( waitMs <= 0 ) {
+
+						break ;
+
+					}
+
+					PendingInsert next = pendingInserts.poll( waitMs, TimeUnit.MILLISECONDS ) ;
+
+					if ( next == null ) {
+
+						break ;
+
+					}
+
+					batch.add( next ) ;
+					pendingInserts.drainTo( batch, batchSize - batch.size( ) ) ;
+
+				}
+
+			} catch ( InterruptedException e ) {
+
+				logger.info( "Ingest writer interrupted, flushing {} inserts", batch.size( ) ) ;
+				running = false ;
+				pendingInserts.drainTo( batch ) ;
+				Thread.currentThread( ).interrupt( ) ;
+
+			}
+
+			if ( ! batch.isEmpty( ) ) {
+
+				// retries keep their capacity
+				var retries = flush( batch ) ;
+				capacity.release( batch.size( ) - retries.size( ) ) ;
+				batch.clear( ) ;
+
+				if ( ! retries.isEmpty( ) ) {
+
+					pendingInserts.addAll( retries ) ;
+					pauseBeforeRetry( ) ;
+
+				}
+
+			}
+
+		}
+
+	}
+
+	private void pauseBeforeRetry ( ) {
+
+		try {
+
+			TimeUnit.MILLISECONDS.sleep( flushIntervalMs ) ;
+
+		} catch ( InterruptedException e ) {
+
+			running = false ;
+			Thread.currentThread( ).interrupt( ) ;
+
+		}
+
+	}
+
+	/**
+	 *
+	 * @return inserts to retry
+	 */
+	List<PendingInsert> flush ( List<PendingInsert> batch ) {
+
+		var timer = metricUtilities.startTimer( ) ;
+
+		Map<String, List<PendingInsert>> insertsByCollection = new LinkedHashMap<>( ) ;
+
+		for ( PendingInsert pending : batch ) {
+
+			String namespace = pending.collection.getNamespace( ).getFullName( ) ;
+			insertsByCollection.computeIfAbsent( namespace, key -> new ArrayList<>( ) ).add( pending ) ;
+
+		}
+
+		InsertManyOptions unordered = new InsertManyOptions( ).ordered( false ) ;
+		List<PendingInsert> retries = new ArrayList<>( ) ;
+		List<PendingInsert> dropped = new ArrayList<>( ) ;
+
+		insertsByCollection.forEach( ( namespace , inserts ) -> {
+
+			var collection = inserts.get( 0 ).collection ;
+			var isEvents = collection.getNamespace( ).getCollectionName( )
+					.equals( MongoConstants.EVENT_COLLECTION_NAME ) ;
+
+			var documents = inserts.stream( )
+					.map( pending -> pending.document )
+					.collect( Collectors.toList( ) ) ;
+
+			try {
+
+				collection.insertMany( documents, unordered ) ;
+				lastMongoFailure = 0 ;
+
+				if ( isEvents ) {
+
+					documents.forEach( eventCounters::eventInserted ) ;
+
+				}
+
+			} catch ( MongoBulkWriteException e ) {
+
+				lastMongoFailure = 0 ;
+				metricUtilities.incrementCounter( "db-event.ingest.failed.write-errors" ) ;
+				logger.warn( "{} partial batch failure: {} of {} documents not inserted: {}",
+						namespace, e.getWriteErrors( ).size( ), documents.size( ), e.getMessage( ) ) ;
+
+				// unordered: every document without a write error was inserted
+				var failedIndexes = e.getWriteErrors( ).stream( )
+						.collect( Collectors.toMap( BulkWriteError::getIndex, error -> error ) ) ;
+
+				for ( var index = 0; index < inserts.size( ); index++ ) {
+
+					var pending = inserts.get( index ) ;
+					var error = failedIndexes.get( index ) ;
+
+					if ( error == null ) {
+
+						if ( isEvents ) {
+
+							eventCounters.eventInserted( pending.document ) ;
+
+						}
+
+					} else if ( ErrorCategory.fromErrorCode( error.getCode( ) ) == ErrorCategory.DUPLICATE_KEY ) {
+
+						// a retry of a document inserted by an earlier failed batch
+						if ( isEvents && pending.failedFlushes > 0 ) {
+
+							eventCounters.eventInserted( pending.document ) ;
+
+						}
+
+					} else {
+
+						retryOrDrop( pending, retries, dropped ) ;
+
+					}
+
+				}
+
+			} catch ( Exception e ) {
+
+				lastMongoFailure = System.currentTimeMillis( ) ;
+				metricUtilities.incrementCounter( "db-event.ingest.failed." + e.getClass( ).getSimpleName( ) ) ;
+				logger.error( "{} failed inserting batch of {}: {}",
+						namespace, documents.size( ), CSAP.buildCsapStack( e ) ) ;
+
+				inserts.forEach( pending -> retryOrDrop( pending, retries, dropped ) ) ;
+
+			}
+
+		} ) ;
+
+		if ( ! dropped.isEmpty( ) ) {
+
+			logger.warn( "Dropping {} inserts after {} attempts", dropped.size( ), maxFlushAttempts ) ;
+
+		}
+
+		metricUtilities.stopTimer( timer, "db-event.ingest.flush" ) ;
+
+		return retries ;
+
+	}
+
+	private void retryOrDrop ( PendingInsert pending , List<PendingInsert> retries , List<PendingInsert> dropped ) {
+
+		pending.failedFlushes++ ;
+
+		if ( pending.failedFlushes >= maxFlushAttempts ) {
+
+			metricUtilities.incrementCounter( "db-event.ingest.dropped" ) ;
+			dropped.add( pending ) ;
+
+		} else {
+
+			retries.add( pending ) ;
+
+		}
+
+	}
+
+	/**
+	 *
+	 * @return time of the last batch that failed to reach mongo, 0 once a batch
+	 *         is written
+	 */
+	public long getLastMongoFailure ( ) {
+
+		return lastMongoFailure ;
+
+	}
+
+	public long getQueueSize ( ) {
+
+		if ( pendingInserts == null ) {
+
+			return 0 ;
+
+		}
+
+		return pendingInserts.size( ) ;
+
+	}
+
+	public boolean isEnabled ( ) {
+
+		return enabled ;
+
+	}
+
+	public void setEnabled ( boolean enabled ) {
+
+		this.enabled = enabled ;
+
+	}
+
+	public int getQueueCapacity ( ) {
+
+		return queueCapacity ;
+
+	}
+
+	public void setQueueCapacity ( int queueCapacity ) {
+
+		this.queueCapacity = queueCapacity ;
+
+	}
+
+	public int getBatchSize ( ) {
+
+		return batchSize ;
+
+	}
+
+	public void setBatchSize ( int batchSize ) {
+
+		this.batchSize = batchSize ;
+
+	}
+
+	public long getFlushIntervalMs ( ) {
+
+		return flushIntervalMs ;
+
+	}
+
+	public void setFlushIntervalMs ( long flushIntervalMs ) {
+
+		this.flushIntervalMs = flushIntervalMs ;
+
+	}
+
+	public int getWriterThreads ( ) {
+
+		return writerThreads ;
+
+	}
+
+	public void setWriterThreads ( int writerThreads ) {
+
+		this.writerThreads = writerThreads ;
+
+	}
+
+	public int getMaxFlushAttempts ( ) {
+
+		return maxFlushAttempts ;
+
+	}
+
+	public void setMaxFlushAttempts ( int maxFlushAttempts ) {
+
+		this.maxFlushAttempts = maxFlushAttempts ;
+
+	}
+
+}
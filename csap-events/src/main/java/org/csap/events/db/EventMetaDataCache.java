@@ -0,0 +1,325 @@
+package org.csap.events.db ;
+
+import static org.csap.events.EventJsonConstants.APPID ;
+import static org.csap.events.EventJsonConstants.CATEGORY ;
+import static org.csap.events.EventJsonConstants.HOST ;
+import static org.csap.events.EventJsonConstants.LIFE ;
+import static org.csap.events.EventJsonConstants.PROJECT ;
+
+import java.util.Collection ;
+import java.util.HashSet ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.Set ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.function.Supplier ;
+
+import org.apache.commons.lang3.StringUtils ;
+import org.bson.Document ;
+import org.csap.events.CsapEventsApplication ;
+import org.csap.events.EventMetaData ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.stereotype.Service ;
+
+/**
+ *
+ * Event browser search filters, cached per appId, life and date range.
+ *
+ * - entries expire after cacheSeconds
+ *
+ * - inserted events that add a value not yet in a matching entry (new host,
+ * category, project, user, ...) invalidate that entry, so new values show up
+ * without waiting for expiry. Values are kept in sets: checked on every insert
+ *
+ * - metrics and health events are not checked: they are most of the ingest
+ * volume, and repeat the same hosts and categories. A new host is shown once
+ * the entry expires, or any other event from it is inserted
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".search-filters" )
+public class EventMetaDataCache {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	// high volume categories, not checked on insert
+	final static List<String> UNCHECKED_CATEGORIES = List.of( "/csap/metrics", "/csap/health" ) ;
+
+	private boolean enabled = true ;
+	private int cacheSeconds = 300 ;
+	private int maxEntries = 200 ;
+
+	private Map<String, CachedMetaData> cachedFilters = new ConcurrentHashMap<>( ) ;
+	private volatile CachedAppIds cachedAppIds = null ;
+
+	static class CachedMetaData {
+
+		final String appId ;
+		final String life ;
+		final EventMetaData metaData ;
+		final long loadedAt = System.currentTimeMillis( ) ;
+
+		final Set<String> appIds ;
+		final Set<String> lifecycles ;
+		final Set<String> categories ;
+		final Set<String> hosts ;
+		final Set<String> projects ;
+		final Set<String> uiUsers ;
+
+		CachedMetaData ( String appId, String life, EventMetaData metaData ) {
+
+			this.appId = appId ;
+			this.life = life ;
+			this.metaData = metaData ;
+
+			appIds = toSet( metaData.getAppIds( ) ) ;
+			lifecycles = toSet( metaData.getLifecycles( ) ) ;
+			categories = toSet( metaData.getCategories( ) ) ;
+			hosts = toSet( metaData.getHosts( ) ) ;
+			projects = toSet( metaData.getProjects( ) ) ;
+			uiUsers = toSet( metaData.getUiUsers( ) ) ;
+
+		}
+	}
+
+	static class CachedAppIds {
+
+		final List<String> appIds ;
+		final Set<String> appIdSet ;
+		final long loadedAt = System.currentTimeMillis( ) ;
+
+		CachedAppIds ( List<String> appIds ) {
+
+			this.appIds = appIds ;
+			this.appIdSet = toSet( appIds ) ;
+
+		}
+	}
+
+	static Set<String> toSet ( Collection<?> values ) {
+
+		var valueSet = new HashSet<String>( ) ;
+
+		if ( values != null ) {
+
+			values.forEach( value -> valueSet.add( String.valueOf( value ) ) ) ;
+
+		}
+
+		return valueSet ;
+
+	}
+
+	public EventMetaData get (
+								String appId ,
+								String life ,
+								String fromDate ,
+								String toDate ,
+								Supplier<EventMetaData> metaDataLoader ) {
+
+		if ( ! isEnabled( ) ) {
+
+			return metaDataLoader.get( ) ;
+
+		}
+
+		var key = appId + "," + life + "," + fromDate + "," + toDate ;
+		var cached = cachedFilters.get( key ) ;
+
+		if ( cached != null && ! isExpired( cached.loadedAt ) ) {
+
+			metricUtilities.incrementCounter( EventDataReader.SEARCH_FILTER_KEY + "cache.hit" ) ;
+			return cached.metaData ;
+
+		}
+
+		metricUtilities.incrementCounter( EventDataReader.SEARCH_FILTER_KEY + "cache.miss" ) ;
+
+		var metaData = metaDataLoader.get( ) ;
+
+		if ( cachedFilters.size( ) >= maxEntries ) {
+
+			removeOldest( ) ;
+
+		}
+
+		cachedFilters.put( key, new CachedMetaData( appId, life, metaData ) ) ;
+
+		return metaData ;
+
+	}
+
+	// appIds are not filtered, shared by every entry
+	public List<String> getAppIds ( Supplier<List<String>> appIdsLoader ) {
+
+		var cached = cachedAppIds ;
+
+		if ( ! isEnabled( ) || cached == null || isExpired( cached.loadedAt ) ) {
+
+			cached = new CachedAppIds( appIdsLoader.get( ) ) ;
+			cachedAppIds = cached ;
+
+		}
+
+		return cached.appIds ;
+
+	}
+
+	/**
+	 *
+	 * called for each event inserted: entries missing any of the event values are
+	 * dropped
+	 *
+	 */
+	public void eventAdded ( Document eventDocument ) {
+
+		var category = eventDocument.getString( CATEGORY ) ;
+
+		if ( ! isEnabled( ) || category == null
+				|| UNCHECKED_CATEGORIES.stream( ).anyMatch( category::startsWith ) ) {
+
+			return ;
+
+		}
+
+		var appId = eventDocument.getString( APPID ) ;
+		var life = eventDocument.getString( LIFE ) ;
+		var host = eventDocument.getString( HOST ) ;
+		var project = eventDocument.getString( PROJECT ) ;
+		var uiUser = userOf( eventDocument ) ;
+
+		var appIds = cachedAppIds ;
+
+		if ( appIds != null && isMissing( appIds.appIdSet, appId ) ) {
+
+			cachedAppIds = null ;
+
+		}
+
+		cachedFilters.entrySet( ).removeIf( cachedEntry -> {
+
+			var cached = cachedEntry.getValue( ) ;
+
+			if ( StringUtils.isNotBlank( cached.appId ) && ! cached.appId.equals( appId ) ) {
+
+				return false ;
+
+			}
+
+			boolean stale = isMissing( cached.appIds, appId )
+					|| isMissing( cached.lifecycles, life ) ;
+
+			if ( StringUtils.isBlank( cached.life ) || cached.life.equals( life ) ) {
+
+				stale = stale
+						|| isMissing( cached.categories, category )
+						|| isMissing( cached.hosts, host )
+						|| isMissing( cached.projects, project )
+						|| ( category.startsWith( "/csap/ui/" ) && isMissing( cached.uiUsers, uiUser ) ) ;
+
+			}
+
+			if ( stale ) {
+
+				metricUtilities.incrementCounter( EventDataReader.SEARCH_FILTER_KEY + "cache.invalidated" ) ;
+				logger.debug( "Removing search filters: {}", cachedEntry.getKey( ) ) ;
+
+			}
+
+			return stale ;
+
+		} ) ;
+
+	}
+
+	public void clear ( ) {
+
+		cachedFilters.clear( ) ;
+		cachedAppIds = null ;
+
+	}
+
+	private String userOf ( Document eventDocument ) {
+
+		var eventMetaData = eventDocument.get( "metaData" ) ;
+
+		if ( eventMetaData instanceof Document ) {
+
+			return ( (Document) eventMetaData ).getString( "uiUser" ) ;
+
+		}
+
+		return null ;
+
+	}
+
+	private boolean isMissing ( Set<String> values , String value ) {
+
+		return value != null && ! values.contains( value ) ;
+
+	}
+
+	private boolean isExpired ( long loadedAt ) {
+
+		return System.currentTimeMillis( ) - loadedAt > cacheSeconds * 1000L ;
+
+	}
+
+	private void removeOldest ( ) {
+
+		cachedFilters.entrySet( ).stream( )
+				.min( ( first , second ) -> Long.compare( first.getValue( ).loadedAt, second.getValue( ).loadedAt ) )
+				.ifPresent( oldest -> cachedFilters.remove( oldest.getKey( ) ) ) ;
+
+	}
+
+	public int size ( ) {
+
+		return cachedFilters.size( ) ;
+
+	}
+
+	public boolean isEnabled ( ) {
+
+		return enabled ;
+
+	}
+
+	public void setEnabled ( boolean enabled ) {
+
+		this.enabled = enabled ;
+
+	}
+
+	public int getCacheSeconds ( ) {
+
+		return cacheSeconds ;
+
+	}
+
+	public void setCacheSeconds ( int cacheSeconds ) {
+
+		this.cacheSeconds = cacheSeconds ;
+
+	}
+
+	public int getMaxEntries ( ) {
+
+		return maxEntries ;
+
+	}
+
+	public void setMaxEntries ( int maxEntries ) {
+
+		this.maxEntries = maxEntries ;
+
+	}
+
+}
@@ -0,0 +1,137 @@
+package org.csap.events.db ;
+
+import static com.mongodb.client.model.Filters.and ;
+import static com.mongodb.client.model.Filters.eq ;
+import static com.mongodb.client.model.Filters.lt ;
+import static com.mongodb.client.model.Filters.or ;
+
+import java.nio.charset.StandardCharsets ;
+import java.util.Base64 ;
+import java.util.Date ;
+
+import org.bson.Document ;
+import org.bson.conversions.Bson ;
+import org.bson.types.ObjectId ;
+
+/**
+ *
+ * Continuation token for the event browser: the sort value and _id of the last
+ * event returned. The next page seeks past it using the (sort field, _id)
+ * index, so page cost does not grow with the number of events before it.
+ *
+ * Format is opaque to clients: url safe base64 of sortField|sortMillis|_id
+ *
+ */
+public class EventPageToken {
+
+	private static final String SEPARATOR = "|" ;
+	private static final String NO_VALUE = "-" ;
+
+	private String sortField ;
+	private Date sortValue ;
+	private ObjectId id ;
+
+	public EventPageToken ( String sortField, Date sortValue, ObjectId id ) {
+
+		this.sortField = sortField ;
+		this.sortValue = sortValue ;
+		this.id = id ;
+
+	}
+
+	public static EventPageToken fromLastEvent ( String sortField , Document lastEvent ) {
+
+		Object value = lastEvent ;
+
+		for ( var fieldName : sortField.split( "\\." ) ) {
+
+			value = ( value instanceof Document ) ? ( (Document) value ).get( fieldName ) : null ;
+
+		}
+
+		var sortValue = ( value instanceof Date ) ? (Date) value : null ;
+
+		return new EventPageToken( sortField, sortValue, lastEvent.getObjectId( "_id" ) ) ;
+
+	}
+
+	/**
+	 *
+	 * @throws IllegalArgumentException if token was not created by encode
+	 */
+	public static EventPageToken decode ( String token ) {
+
+		try {
+
+			var decoded = new String( Base64.getUrlDecoder( ).decode( token ), StandardCharsets.UTF_8 ) ;
+			var fields = decoded.split( "\\" + SEPARATOR ) ;
+
+			if ( fields.length != 3 ) {
+
+				throw new IllegalArgumentException( "Invalid page token: " + token ) ;
+
+			}
+
+			Date sortValue = null ;
+
+			if ( ! fields[1].equals( NO_VALUE ) ) {
+
+				sortValue = new Date( Long.parseLong( fields[1] ) ) ;
+
+			}
+
+			return new EventPageToken( fields[0], sortValue, new ObjectId( fields[2] ) ) ;
+
+		} catch ( IllegalArgumentException e ) {
+
+			throw new IllegalArgumentException( "Invalid page token: " + token, e ) ;
+
+		}
+
+	}
+
+	public String encode ( ) {
+
+		var sortMillis = ( sortValue == null ) ? NO_VALUE : Long.toString( sortValue.getTime( ) ) ;
+		var token = sortField + SEPARATOR + sortMillis + SEPARATOR + id.toHexString( ) ;
+
+		return Base64.getUrlEncoder( ).withoutPadding( ).encodeToString( token.getBytes( StandardCharsets.UTF_8 ) ) ;
+
+	}
+
+	// events after this one in (sortField desc, _id desc) order
+	public Bson seekFilter ( ) {
+
+		if ( sortValue == null ) {
+
+			// events missing the sort field are last
+			return and( eq( sortField, null ), lt( "_id", id ) ) ;
+
+		}
+
+		return or(
+				lt( sortField, sortValue ),
+				and( eq( sortField, sortValue ), lt( "_id", id ) ),
+				eq( sortField, null ) ) ;
+
+	}
+
+	public String getSortField ( ) {
+
+		return sortField ;
+
+	}
+
+	public Date getSortValue ( ) {
+
+		return sortValue ;
+
+	}
+
+	public ObjectId getId ( ) {
+
+		return id ;
+
+	}
+
+}
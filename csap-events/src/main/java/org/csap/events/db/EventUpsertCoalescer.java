@@ -0,0 +1,386 @@
+package org.csap.events.db ;
+
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.RejectedExecutionException ;
+import java.util.concurrent.ScheduledExecutorService ;
+import java.util.concurrent.TimeUnit ;
+import java.util.stream.Collectors ;
+
+import javax.annotation.PostConstruct ;
+import javax.annotation.PreDestroy ;
+import javax.inject.Inject ;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory ;
+import org.bson.Document ;
+import org.bson.conversions.Bson ;
+import org.csap.events.CsapEventsApplication ;
+import org.csap.helpers.CSAP ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.stereotype.Service ;
+
+import com.mongodb.MongoBulkWriteException ;
+import com.mongodb.bulk.BulkWriteError ;
+import com.mongodb.bulk.BulkWriteResult ;
+import com.mongodb.client.model.BulkWriteOptions ;
+import com.mongodb.client.model.UpdateOneModel ;
+import com.mongodb.client.model.UpdateOptions ;
+import com.mongodb.client.model.WriteModel ;
+
+/**
+ *
+ * Upserts (health, metrics data, reports, access and jobs) are keyed on
+ * category, host and createdOn.date. Repeated upserts to the same key inside
+ * the window are merged in memory - last $set wins per top level field,
+ * counters are summed - then sent as one unordered bulkWrite.
+ *
+ * Upserts that fail are merged back, behind any upsert to the same key
+ * submitted since, and retried on the next flush up to maxFlushAttempts.
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".upserts" )
+public class EventUpsertCoalescer {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	@Inject
+	private EventDataHelper eventDataHelper ;
+
+	@Inject
+	private EventCounters eventCounters ;
+
+	private boolean enabled = false ;
+	private long windowMs = 500 ;
+	private int maxPending = 5000 ;
+	private int maxFlushAttempts = 3 ;
+
+	private ConcurrentHashMap<String, PendingUpsert> pendingUpserts = new ConcurrentHashMap<>( ) ;
+	private ScheduledExecutorService flusher ;
+
+	static class PendingUpsert {
+
+		final Bson filter ;
+		final Document setFields ;
+		int counter ;
+		int failedFlushes = 0 ;
+
+		PendingUpsert ( Bson filter, Document setFields ) {
+
+			this.filter = filter ;
+			this.setFields = setFields ;
+			this.counter = 1 ;
+
+		}
+
+		PendingUpsert merge ( Document laterSetFields ) {
+
+			setFields.putAll( laterSetFields ) ;
+			counter++ ;
+			return this ;
+
+		}
+
+		// write failed: later fields still win
+		PendingUpsert restore ( PendingUpsert newer ) {
+
+			setFields.putAll( newer.setFields ) ;
+			counter += newer.counter ;
+			return this ;
+
+		}
+
+		Document buildUpdate ( ) {
+
+			return new Document( "$set", setFields )
+					.append( "$inc", new Document( "counter", counter ) ) ;
+
+		}
+	}
+
+	@PostConstruct
+	public void startFlusher ( ) {
+
+		if ( ! isEnabled( ) ) {
+
+			return ;
+
+		}
+
+		logger.info( "Coalescing upserts: windowMs: {}, maxPending: {}", windowMs, maxPending ) ;
+
+		flusher = Executors.newSingleThreadScheduledExecutor( new BasicThreadFactory.Builder( )
+				.namingPattern( CsapEventsApplication.class.getSimpleName( ) + "Upserts-%d" )
+				.daemon( true )
+				.build( ) ) ;
+
+		flusher.scheduleWithFixedDelay( this::flush, windowMs, windowMs, TimeUnit.MILLISECONDS ) ;
+
+		metricUtilities.addGauge( "csap.ingest.upserts-pending", this, EventUpsertCoalescer::getPendingCount ) ;
+
+	}
+
+	@PreDestroy
+	public void stopFlusher ( ) {
+
+		if ( flusher == null ) {
+
+			return ;
+
+		}
+
+		flusher.shutdown( ) ;
+
+		try {
+
+			flusher.awaitTermination( windowMs * 5, TimeUnit.MILLISECONDS ) ;
+
+		} catch ( InterruptedException e ) {
+
+			Thread.currentThread( ).interrupt( ) ;
+
+		}
+
+		flush( ) ;
+
+	}
+
+	/**
+	 *
+	 * eventDocument is copied: callers (health processing) continue to modify it
+	 * on other threads
+	 *
+	 */
+	public void submit ( String upsertKey , Bson filter , Document eventDocument ) {
+
+		if ( pendingUpserts.size( ) >= maxPending && ! pendingUpserts.containsKey( upsertKey ) ) {
+
+			metricUtilities.incrementCounter( "db-event.upserts.rejected" ) ;
+			throw new RejectedExecutionException( "Pending upserts: " + pendingUpserts.size( ) ) ;
+
+		}
+
+		Document setFields = (Document) deepCopy( eventDocument ) ;
+
+		pendingUpserts.merge( upsertKey, new PendingUpsert( filter, setFields ),
+				( existing , latest ) -> existing.merge( latest.setFields ) ) ;
+
+	}
+
+	/**
+	 *
+	 * Synchronized: when it returns, every upsert submitted before the call has
+	 * been written or failed
+	 *
+	 * @return false if any upsert failed: merged back for the next flush
+	 */
+	synchronized boolean flush ( ) {
+
+		if ( pendingUpserts.isEmpty( ) ) {
+
+			return true ;
+
+		}
+
+		var timer = metricUtilities.startTimer( ) ;
+
+		UpdateOptions upsert = new UpdateOptions( ).upsert( true ) ;
+		List<WriteModel<Document>> updates = new ArrayList<>( ) ;
+		List<Document> updatedEvents = new ArrayList<>( ) ;
+
+		// same order as updates: restored if the write fails
+		List<String> updatedKeys = new ArrayList<>( ) ;
+		List<PendingUpsert> updatedPending = new ArrayList<>( ) ;
+		int eventsCoalesced = 0 ;
+
+		// remove is atomic per key: submits arriving during flush start a new entry
+		for ( String upsertKey : pendingUpserts.keySet( ) ) {
+
+			PendingUpsert pending = pendingUpserts.remove( upsertKey ) ;
+
+			if ( pending != null ) {
+
+				eventsCoalesced += pending.counter ;
+				updates.add( new UpdateOneModel<>( pending.filter, pending.buildUpdate( ), upsert ) ) ;
+				updatedEvents.add( pending.setFields ) ;
+				updatedKeys.add( upsertKey ) ;
+				updatedPending.add( pending ) ;
+
+			}
+
+		}
+
+		if ( updates.isEmpty( ) ) {
+
+			return true ;
+
+		}
+
+		var written = false ;
+
+		try {
+
+			BulkWriteResult result = eventDataHelper.getMongoEventCollection( )
+					.bulkWrite( updates, new BulkWriteOptions( ).ordered( false ) ) ;
+
+			logger.debug( "events: {}, bulk upserts: {}, matched: {}, inserted: {}",
+					eventsCoalesced, updates.size( ), result.getMatchedCount( ), result.getUpserts( ).size( ) ) ;
+
+			countInserted( result, updatedEvents ) ;
+			written = true ;
+
+		} catch ( MongoBulkWriteException e ) {
+
+			metricUtilities.incrementCounter( "db-event.upserts.failed.write-errors" ) ;
+			logger.warn( "partial upsert failure: {} of {} updates failed: {}",
+					e.getWriteErrors( ).size( ), updates.size( ), e.getMessage( ) ) ;
+
+			countInserted( e.getWriteResult( ), updatedEvents ) ;
+
+			var failedIndexes = e.getWriteErrors( ).stream( )
+					.map( BulkWriteError::getIndex )
+					.collect( Collectors.toSet( ) ) ;
+
+			for ( var index : failedIndexes ) {
+
+				flushFailed( updatedKeys.get( index ), updatedPending.get( index ) ) ;
+
+			}
+
+		} catch ( Exception e ) {
+
+			metricUtilities.incrementCounter( "db-event.upserts.failed." + e.getClass( ).getSimpleName( ) ) ;
+			logger.error( "Failed bulk upsert of {} updates: {}", updates.size( ), CSAP.buildCsapStack( e ) ) ;
+
+			for ( var index = 0; index < updatedKeys.size( ); index++ ) {
+
+				flushFailed( updatedKeys.get( index ), updatedPending.get( index ) ) ;
+
+			}
+
+		}
+
+		metricUtilities.stopTimer( timer, "db-event.upserts.flush" ) ;
+
+		return written ;
+
+	}
+
+	// retried on the next flush
+	private void flushFailed ( String upsertKey , PendingUpsert failed ) {
+
+		failed.failedFlushes++ ;
+
+		if ( failed.failedFlushes >= maxFlushAttempts ) {
+
+			metricUtilities.incrementCounter( "db-event.upserts.dropped" ) ;
+			logger.warn( "Dropping upsert after {} attempts: {}", maxFlushAttempts, upsertKey ) ;
+			return ;
+
+		}
+
+		pendingUpserts.merge( upsertKey, failed, ( newer , restored ) -> restored.restore( newer ) ) ;
+
+	}
+
+	// upserts that did not match an existing event
+	private void countInserted ( BulkWriteResult result , List<Document> updatedEvents ) {
+
+		for ( var inserted : result.getUpserts( ) ) {
+
+			eventCounters.eventInserted( updatedEvents.get( inserted.getIndex( ) ) ) ;
+
+		}
+
+	}
+
+	static Object deepCopy ( Object value ) {
+
+		if ( value instanceof Document ) {
+
+			Document copy = new Document( ) ;
+			( (Document) value ).forEach( ( key , item ) -> copy.put( key, deepCopy( item ) ) ) ;
+			return copy ;
+
+		} else if ( value instanceof List ) {
+
+			List<Object> copy = new ArrayList<>( ) ;
+
+			for ( Object item : (List<?>) value ) {
+
+				copy.add( deepCopy( item ) ) ;
+
+			}
+
+			return copy ;
+
+		}
+
+		return value ;
+
+	}
+
+	public long getPendingCount ( ) {
+
+		return pendingUpserts.size( ) ;
+
+	}
+
+	public boolean isEnabled ( ) {
+
+		return enabled ;
+
+	}
+
+	public void setEnabled ( boolean enabled ) {
+
+		this.enabled = enabled ;
+
+	}
+
+	public long getWindowMs ( ) {
+
+		return windowMs ;
+
+	}
+
+	public void setWindowMs ( long windowMs ) {
+
+		this.windowMs = windowMs ;
+
+	}
+
+	public int getMaxPending ( ) {
+
+		return maxPending ;
+
+	}
+
+	public void setMaxPending ( int maxPending ) {
+
+		this.maxPending = maxPending ;
+
+	}
+
+	public int getMaxFlushAttempts ( ) {
+
+		return maxFlushAttempts ;
+
+	}
+
+	public void setMaxFlushAttempts ( int maxFlushAttempts ) {
+
+		this.maxFlushAttempts = maxFlushAttempts ;
+
+	}
+
+}
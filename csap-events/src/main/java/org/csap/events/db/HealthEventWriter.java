@@ -1,6 +1,9 @@
 package org.csap.events.db ;
 
 import static org.csap.events.EventJsonConstants.CATEGORY ;
+import static org.csap.events.EventJsonConstants.CREATED_ON ;
+import static org.csap.events.EventJsonConstants.DATE ;
+import static org.csap.events.EventJsonConstants.HOST ;
 
 import java.time.LocalDate ;
 import java.time.LocalDateTime ;
@@ -8,9 +11,9 @@ import java.time.format.DateTimeFormatter ;
 import java.util.ArrayList ;
 import java.util.Calendar ;
 import java.util.List ;
-import java.util.concurrent.TimeUnit ;
-import java.util.concurrent.locks.Lock ;
-import java.util.concurrent.locks.ReentrantLock ;
+import java.util.Map ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.RejectedExecutionException ;
 
 import javax.inject.Inject ;
 
@@ -18,6 +21,7 @@ import org.apache.commons.lang3.StringUtils ;
 import org.bson.Document ;
 import org.csap.events.CsapEventsApplication ;
 import org.csap.events.util.DateUtil ;
+import org.csap.events.util.HostShardedExecutor ;
 import org.csap.events.util.MetricsJsonConstants ;
 import org.csap.helpers.CSAP ;
 import org.csap.integations.CsapMicroMeter ;
@@ -32,14 +36,17 @@ import com.fasterxml.jackson.databind.JsonMappingException ;
 import com.fasterxml.jackson.databind.JsonNode ;
 import com.fasterxml.jackson.databind.ObjectMapper ;
 import com.fasterxml.jackson.databind.node.ObjectNode ;
-import com.mongodb.client.model.FindOneAndUpdateOptions ;
-import com.mongodb.client.model.ReturnDocument ;
+import com.mongodb.client.model.UpdateOptions ;
 
 @Component
 public class HealthEventWriter {
 
 	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
 
+	final static String UNHEALTHY_COUNT = "UnHealthyEventCount" ;
+	final static String HEALTH_STATUS = "healthStatus" ;
+	final static String LAST_STATUS = "lastStatus" ;
+
 	@Autowired
 	CsapMicroMeter.Utilities metricUtilities ;
 
@@ -49,18 +56,18 @@ public class HealthEventWriter {
 	@Inject
 	private EventDataHelper eventDataHelper ;
 
-	ObjectMapper jsonMapper = new ObjectMapper( ) ;
-
-	volatile ObjectNode discoveryReport ;
+	@Inject
+	private HealthStates healthStates ;
 
-	volatile int lastClearedDay = -1 ;
-	Lock discoveryLock = new ReentrantLock( ) ;
+	ObjectMapper jsonMapper = new ObjectMapper( ) ;
 
-	public HealthEventWriter ( ) {
+	@Inject
+	private HostShardedExecutor hostLanes ;
 
-		discoveryReport = jsonMapper.createObjectNode( ) ;
+	// appId -> lifecycle -> load balancer or host
+	Map<String, Map<String, String>> discoveredHosts = new ConcurrentHashMap<>( ) ;
 
-	}
+	volatile int lastClearedDay = -1 ;
 
 	// CANNOT be invoked from same class unless AspectJ configured. Invoked from
 	// Landing Page
@@ -75,12 +82,27 @@ public class HealthEventWriter {
 
 	}
 
-	@Async ( CsapEventsApplication.HEALTH_EXECUTOR )
+	/**
+	 *
+	 * Queued on the host's lane: events for a host are processed in order
+	 *
+	 * @throws RejectedExecutionException when the lane is full
+	 */
 	public void writeHealthEvent (
 									Document eventDocument ,
 									String eventJson ,
 									String appId ) {
 
+		hostLanes.execute( eventDocument.getString( "host" ),
+				( ) -> processHealthEvent( eventDocument, eventJson, appId ) ) ;
+
+	}
+
+	private void processHealthEvent (
+										Document eventDocument ,
+										String eventJson ,
+										String appId ) {
+
 		metricUtilities.incrementCounter( "db-event.insert.health" ) ;
 		var projectName = eventDocument.getString( "project" ) ;
 		var life = eventDocument.getString( "lifecycle" ) ;
@@ -95,7 +117,11 @@ public class HealthEventWriter {
 			logger.debug( "Health event enabled: {},  for project {} life {} ",
 					projectName, life, isHealthReportEnabled ) ;
 
-			if ( isHealthReportEnabled ) {
+			if ( isHealthReportEnabled && healthStates.isEnabled( ) ) {
+
+				recordHealthState( eventDocument ) ;
+
+			} else if ( isHealthReportEnabled ) {
 
 				performHealthProcessing( eventDocument ) ;
 
@@ -105,27 +131,15 @@ public class HealthEventWriter {
 
 			}
 
-			if ( discoveryLock.tryLock( ) ) {
-
-				try {
+			try {
 
-					var fullEvent = jsonMapper.readTree( eventJson ) ;
-					addDiscoveryHost( host, appId, projectName, life, fullEvent.path( "data" ) ) ;
+				var fullEvent = jsonMapper.readTree( eventJson ) ;
+				addDiscoveryHost( host, appId, projectName, life, fullEvent.path( "data" ) ) ;
 
-				} catch ( Exception e ) {
+			} catch ( Exception e ) {
 
-					logger.warn( "{} Failed discovery: {}, project: {}, environment: {}",
-							host, appId, projectName, life, CSAP.buildCsapStack( e ) ) ;
-
-				} finally {
-
-					discoveryLock.unlock( ) ;
-
-				}
-
-			} else {
-
-				logger.info( "Skipping discovery: {} due to lock in use, disovery on next try", host ) ;
+				logger.warn( "{} Failed discovery: {}, project: {}, environment: {}",
+						host, appId, projectName, life, CSAP.buildCsapStack( e ) ) ;
 
 			}
 
@@ -149,30 +163,22 @@ public class HealthEventWriter {
 
 			lastClearedDay = nowDayOfYear ;
 			logger.info( "Clearing discovered hosts" ) ;
-			discoveryReport = jsonMapper.createObjectNode( ) ;
-
-		}
-
-		var appIdReport = discoveryReport.path( appId ) ;
-
-		if ( ! appIdReport.isObject( ) ) {
-
-			discoveryReport.putObject( appId ) ;
+			discoveredHosts.clear( ) ;
 
 		}
 
-		var appIdObj = (ObjectNode) discoveryReport.path( appId ) ;
+		var appIdHosts = discoveredHosts.computeIfAbsent( appId, newAppId -> new ConcurrentHashMap<>( ) ) ;
 
 		var vmReport = data.path( "vm" ) ;
 		var loadbalancer = vmReport.path( MetricsJsonConstants.LOADBALANCER_URL ).asText( ) ;
 
 		if ( StringUtils.isNotEmpty( loadbalancer ) ) {
 
-			appIdObj.put( life, loadbalancer ) ;
+			appIdHosts.put( life, loadbalancer ) ;
 
 		} else {
 
-			appIdObj.put( life, host ) ;
+			appIdHosts.put( life, host ) ;
 
 		}
 
@@ -181,253 +187,216 @@ public class HealthEventWriter {
 
 	}
 
-	public void performHealthProcessing ( Document eventDocument ) {
+	// in memory: written to mongo by HealthStates flush
+	private void recordHealthState ( Document eventDocument ) {
 
-		// logger.info("Inside write health event");
 		eventDocument.put( CATEGORY, "/csap/reports/health" ) ;
-		Document query = eventDataHelper.constructCategoryHostDateDocumentQuery( eventDocument ) ;
-		Document healthObject = eventDataHelper.getMongoEventCollection( )
-				.find( query )
-				.maxTime( 1, TimeUnit.SECONDS )
-				.limit( 1 )
-				.first( ) ;
-
-		if ( null == healthObject ) {
 
-			var timer = metricUtilities.startTimer( ) ;
-			logger.debug( "Health object does not exists" ) ;
-			constructDataObject( eventDocument ) ;
-			logger.debug( "Health object" + eventDocument ) ;
-			updateOneRecordPerDay( eventDocument ) ;
-			metricUtilities.stopTimer( timer, "db-event.insert.health.new" ) ;
-
-		} else {
+		healthStates.record(
+				eventDataHelper.constructCategoryHostDateDocumentQuery( eventDocument ),
+				eventDocument,
+				currentHealthStatus( eventDocument ),
+				isUnHealthyEventExists( eventDocument ) ? 1 : 0,
+				eventsApp.getMaxHealthChangesPerDay( ) ) ;
 
-			var timer = metricUtilities.startTimer( ) ;
-			logger.debug( "Updating health report for host: {} ", eventDocument.getString( "host" ) ) ;
+	}
 
-			boolean isHealthStatusChanged = isHealthStatusChanged( eventDocument, healthObject ) ;
-			logger.debug( "isHealthStatusChanged: {} ", isHealthStatusChanged ) ;
+	/**
+	 *
+	 * One health document per host per day. Most events repeat the last status:
+	 * the counter is incremented only when the stored lastStatus matches. Status
+	 * changes (and the first event of the day) are a single upsert that also
+	 * appends to healthStatus, capped at maxHealthChangesPerDay.
+	 *
+	 */
+	public void performHealthProcessing ( Document eventDocument ) {
 
-			boolean isHealthStatusArrayFull = isHealthStatusArrayFull( healthObject ) ;
-			logger.debug( "isHealthStatusArrayFull: {} ", isHealthStatusArrayFull ) ;
+		var timer = metricUtilities.startTimer( ) ;
 
-			boolean isUnHealthyEventExists = isUnHealthyEventExists( eventDocument ) ;
-			logger.debug( "isUnHealthyEventExists: {} ", isUnHealthyEventExists ) ;
+		eventDocument.put( CATEGORY, "/csap/reports/health" ) ;
+		Document query = eventDataHelper.constructCategoryHostDateDocumentQuery( eventDocument ) ;
 
-			if ( isUnHealthyEventExists ) {
+		var currentStatus = currentHealthStatus( eventDocument ) ;
+		int unHealthyIncrement = isUnHealthyEventExists( eventDocument ) ? 1 : 0 ;
 
-				Document healthDataObject = (Document) healthObject.get( "data" ) ;
-				int unHealthyEventCount = (Integer) healthDataObject.get( "UnHealthyEventCount" ) ;
-				unHealthyEventCount = unHealthyEventCount + 1 ;
-				healthDataObject.put( "UnHealthyEventCount", unHealthyEventCount ) ;
+		var unchangedQuery = new Document( query ).append( "data." + LAST_STATUS, currentStatus ) ;
+		var counterUpdate = new Document( "$inc", new Document( "data." + UNHEALTHY_COUNT, unHealthyIncrement ) ) ;
 
-			}
+		var unchangedResult = eventDataHelper.getMongoEventCollection( ).updateOne( unchangedQuery, counterUpdate ) ;
 
-			if ( isHealthStatusChanged && ! isHealthStatusArrayFull ) {
+		if ( unchangedResult.getMatchedCount( ) > 0 ) {
 
-				// Update counter and error message
-				addToHealthStatus( eventDocument, healthObject ) ;
-				updateOneRecordPerDay( healthObject ) ;
+			metricUtilities.stopTimer( timer, "db-event.insert.health.update" ) ;
+			return ;
 
-			} else {
+		}
 
-				// Update only the counter
-				if ( isUnHealthyEventExists ) {
+		logger.debug( "Health status changed for host: {} ", eventDocument.getString( HOST ) ) ;
 
-					healthObject.remove( "counter" ) ;
-					updateOneRecordPerDay( healthObject ) ;
+		eventDataHelper.getMongoEventCollection( ).updateOne(
+				query,
+				healthChangeUpdate( eventDocument, currentStatus, unHealthyIncrement,
+						eventsApp.getMaxHealthChangesPerDay( ) ),
+				new UpdateOptions( ).upsert( true ) ) ;
 
-				}
+		metricUtilities.stopTimer( timer, "db-event.insert.health.change" ) ;
 
-			}
+	}
 
-			metricUtilities.stopTimer( timer, "db-event.insert.health.update" ) ;
+	static Document healthChangeUpdate (
+											Document eventDocument ,
+											List currentStatus ,
+											int unHealthyIncrement ,
+											int maxHealthChangesPerDay ) {
 
-		}
+		return healthUpdate( insertOnlyFields( eventDocument ), List.of( statusChange( currentStatus ) ),
+				currentStatus, unHealthyIncrement, maxHealthChangesPerDay ) ;
 
 	}
 
-	private boolean isUnHealthyEventExists ( Document eventDBObject ) {
+	static Document healthUpdate (
+									Document insertFields ,
+									List<Document> statusChanges ,
+									List lastStatus ,
+									int unHealthyIncrement ,
+									int maxHealthChangesPerDay ) {
 
-		Document dataObject = (Document) eventDBObject.get( "data" ) ;
-		Document errorsObject = (Document) dataObject.get( "errors" ) ;
+		var update = new Document( "$inc", new Document( "data." + UNHEALTHY_COUNT, unHealthyIncrement ) ) ;
 
-		if ( null != errorsObject ) {
+		if ( lastStatus != null ) {
 
-			return true ;
+			update.append( "$set", new Document( "data." + LAST_STATUS, lastStatus ) ) ;
 
 		}
 
-		return false ;
-
-	}
-
-	private boolean isHealthStatusChanged ( Document eventDBObject , Document healthObject ) {
+		if ( ! statusChanges.isEmpty( ) ) {
 
-		Document dataObject = (Document) eventDBObject.get( "data" ) ;
-		Document errorsObject = (Document) dataObject.get( "errors" ) ;
-		String hostName = eventDBObject.getString( "host" ) ;
-		int currentHealthStatusLength = 0 ;
+			// positive slice keeps the first entries: changes after the limit are dropped
+			var healthStatusPush = new Document( "$each", statusChanges )
+					.append( "$slice", maxHealthChangesPerDay + 1 ) ;
 
-		if ( null != errorsObject ) {
+			update.append( "$push", new Document( "data." + HEALTH_STATUS, healthStatusPush ) ) ;
 
-			List errorsList = (List) errorsObject.get( hostName ) ;
-			String currentHealthStatus = errorsList.toString( ).trim( ) ;
-			currentHealthStatusLength = currentHealthStatus.length( ) ;
+		}
 
-		} else {
+		if ( ! insertFields.isEmpty( ) ) {
 
-			List currentStatusList = new ArrayList( ) ;
-			currentStatusList.add( "Success" ) ;
-			currentHealthStatusLength = currentStatusList.toString( ).length( ) ;
+			update.append( "$setOnInsert", insertFields ) ;
 
 		}
 
-		Document healthDataObject = (Document) healthObject.get( "data" ) ;
-		List healthStatusList = (List) healthDataObject.get( "healthStatus" ) ;
-		Document lastHealthObj = (Document) healthStatusList.get( ( healthStatusList.size( ) - 1 ) ) ;
-		List lastHealthStatus = (List) lastHealthObj.get( "status" ) ;
-		int lastHealthStatusLength = lastHealthStatus.toString( ).length( ) ;
-		return currentHealthStatusLength != lastHealthStatusLength ;
+		return update ;
 
 	}
 
-	private boolean isHealthStatusArrayFull ( Document healthObject ) {
+	static Document statusChange ( List status ) {
 
-		Document healthDataObject = (Document) healthObject.get( "data" ) ;
-		List healthStatusList = (List) healthDataObject.get( "healthStatus" ) ;
-		logger.debug( "health staus size {}", healthStatusList.size( ) ) ;
-		return healthStatusList.size( ) > eventsApp.getMaxHealthChangesPerDay( ) ;
+		Document statusChange = new Document( ) ;
+		statusChange.append( "time", DateUtil.getFormatedTime( Calendar.getInstance( ) ) ) ;
+		statusChange.append( "status", status ) ;
+		return statusChange ;
 
 	}
 
-	private void addToHealthStatus ( Document eventDBObject , Document healthObject ) {
+	//
+	// event fields stored when the day's document is created; query fields are
+	// added by the upsert, health fields are maintained by the update operators
+	//
+	static Document insertOnlyFields ( Document eventDocument ) {
 
-		healthObject.remove( "counter" ) ;
-		Document dataObject = (Document) eventDBObject.get( "data" ) ;
-		Document errorsObject = (Document) dataObject.get( "errors" ) ;
-		String hostName = eventDBObject.getString( "host" ) ;
-		List currentStatusList = null ;
-		Document healthDataObject = (Document) healthObject.get( "data" ) ;
+		Document insertFields = new Document( ) ;
 
-		if ( null != errorsObject ) {
+		for ( var field : eventDocument.entrySet( ) ) {
 
-			currentStatusList = (List) errorsObject.get( hostName ) ;
+			switch ( field.getKey( ) ) {
 
-			// int unHealthyEventCount =
-			// (Integer)healthDataObject.get("UnHealthyEventCount");
-			// unHealthyEventCount++;
-			// healthDataObject.put("UnHealthyEventCount", unHealthyEventCount);
-			// logger.info("health data object {}",healthDataObject);
-		} else {
+			case "_id":
+			case "counter":
+			case CATEGORY:
+			case HOST:
+				break ;
 
-			currentStatusList = new ArrayList( ) ;
-			currentStatusList.add( "Success" ) ;
+			case CREATED_ON:
+				( (Document) field.getValue( ) ).forEach( ( name , value ) -> {
 
-		}
+					if ( ! DATE.equals( name ) ) {
 
-		List healthStatusList = (List) healthDataObject.get( "healthStatus" ) ;
-		Document newHealthStatus = new Document( ) ;
-		newHealthStatus.append( "time", DateUtil.getFormatedTime( Calendar.getInstance( ) ) ) ;
-		newHealthStatus.append( "status", currentStatusList ) ;
-		healthStatusList.add( newHealthStatus ) ;
+						insertFields.append( CREATED_ON + "." + name, value ) ;
 
-	}
+					}
 
-	private String updateOneRecordPerDay ( Document eventDBObject ) {
+				} ) ;
+				break ;
 
-		String key = "Failure" ;
-		Document query = eventDataHelper.constructCategoryHostDateDocumentQuery( eventDBObject ) ;
-		Document setObject = new Document( ) ;
-		setObject.put( "$set", eventDBObject ) ;
-		FindOneAndUpdateOptions options = new FindOneAndUpdateOptions( ) ;
-		options.upsert( true ) ;
-		options.returnDocument( ReturnDocument.AFTER ) ;
+			case "data":
+				( (Document) field.getValue( ) ).forEach( ( name , value ) -> {
 
-		// DBCollection eventCollection = eventDataHelper.getEventCollection();
-		try {
-
-			// eventCollection.update(query, setObject, true, false);
-			Document result = eventDataHelper.getMongoEventCollection( ).findOneAndUpdate( query, setObject, options ) ;
+					if ( ! List.of( "Healthy", "errors", UNHEALTHY_COUNT, HEALTH_STATUS, LAST_STATUS ).contains(
+							name ) ) {
 
-			if ( null != result ) {
+						insertFields.append( "data." + name, value ) ;
 
-				key = result.getObjectId( "_id" ).toString( ) ;
+					}
 
-			}
+				} ) ;
+				break ;
 
-		} catch ( Exception e ) {
+			default:
+				insertFields.append( field.getKey( ), field.getValue( ) ) ;
 
-			logger.error( "Exception while inserting health metrics", e ) ;
+			}
 
 		}
 
-		return key ;
+		return insertFields ;
 
 	}
 
-	private void constructDataObject ( Document eventDBObject ) {
+	private boolean isUnHealthyEventExists ( Document eventDBObject ) {
 
-		eventDBObject.remove( "counter" ) ;
 		Document dataObject = (Document) eventDBObject.get( "data" ) ;
-		Document errorObject = constructErrorObject( eventDBObject ) ;
-
-		if ( (Boolean) dataObject.get( "Healthy" ) ) {
-
-			dataObject.put( "UnHealthyEventCount", 0 ) ;
+		Document errorsObject = (Document) dataObject.get( "errors" ) ;
 
-		} else {
+		if ( null != errorsObject ) {
 
-			dataObject.put( "UnHealthyEventCount", 1 ) ;
+			return true ;
 
 		}
 
-		dataObject.remove( "Healthy" ) ;
-		dataObject.remove( "errors" ) ;
-		List errorList = new ArrayList( ) ;
-		errorList.add( errorObject ) ;
-		dataObject.put( "healthStatus", errorList ) ;
+		return false ;
 
 	}
 
-	private Document constructErrorObject ( Document eventDBObject ) {
+	private List currentHealthStatus ( Document eventDBObject ) {
 
 		Document dataObject = (Document) eventDBObject.get( "data" ) ;
-		Document vmObject = (Document) dataObject.get( "vm" ) ;
-		Document servicesObject = (Document) dataObject.get( "services" ) ;
 		Document errorsObject = (Document) dataObject.get( "errors" ) ;
-		String hostName = eventDBObject.getString( "host" ) ;
-		Document errorObj = new Document( ) ;
-		errorObj.append( "time", DateUtil.getFormatedTime( Calendar.getInstance( ) ) ) ;
-
-		if ( null != errorsObject ) {
-
-			List errorsList = (List) errorsObject.get( hostName ) ;
-			String errorAsString = errorsList.toString( ) ;
-			errorObj.append( "status", errorsList ) ;
+		String hostName = eventDBObject.getString( HOST ) ;
 
-		} else {
+		if ( null != errorsObject && errorsObject.get( hostName ) instanceof List ) {
 
-			List errorsList = new ArrayList( ) ;
-			errorsList.add( "Success" ) ;
-			errorObj.append( "status", errorsList ) ;
+			return (List) errorsObject.get( hostName ) ;
 
 		}
 
-		return errorObj ;
+		List successList = new ArrayList( ) ;
+		successList.add( "Success" ) ;
+		return successList ;
 
 	}
 
 	public ObjectNode getDiscoveryReport ( ) {
 
-		return discoveryReport ;
+		var discoveryReport = jsonMapper.createObjectNode( ) ;
 
-	}
+		discoveredHosts.forEach( ( appId , appIdHosts ) -> {
 
-	public void setDiscoveryReport ( ObjectNode discoveryReport ) {
+			var appIdReport = discoveryReport.putObject( appId ) ;
+			appIdHosts.forEach( appIdReport::put ) ;
 
-		this.discoveryReport = discoveryReport ;
+		} ) ;
+
+		return discoveryReport ;
 
 	}
 
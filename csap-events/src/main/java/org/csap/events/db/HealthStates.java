@@ -0,0 +1,547 @@
+package org.csap.events.db ;
+
+import static com.mongodb.client.model.Projections.excludeId ;
+import static com.mongodb.client.model.Projections.fields ;
+import static com.mongodb.client.model.Projections.include ;
+import static org.csap.events.EventJsonConstants.CREATED_ON ;
+import static org.csap.events.EventJsonConstants.DATE ;
+import static org.csap.events.EventJsonConstants.HOST ;
+
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.ScheduledExecutorService ;
+import java.util.concurrent.TimeUnit ;
+import java.util.stream.Collectors ;
+
+import javax.annotation.PostConstruct ;
+import javax.annotation.PreDestroy ;
+import javax.inject.Inject ;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory ;
+import org.bson.Document ;
+import org.csap.events.CsapEventsApplication ;
+import org.csap.helpers.CSAP ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.stereotype.Service ;
+
+import com.mongodb.MongoBulkWriteException ;
+import com.mongodb.bulk.BulkWriteError ;
+import com.mongodb.client.model.BulkWriteOptions ;
+import com.mongodb.client.model.UpdateOneModel ;
+import com.mongodb.client.model.UpdateOptions ;
+import com.mongodb.client.model.WriteModel ;
+
+/**
+ *
+ * Health state per project, lifecycle, host and day, evaluated in memory as
+ * health events arrive: the last status, the number of status changes, and
+ * the unhealthy events not yet written.
+ *
+ * - only transitions and counter increments are flushed, as one unordered
+ * bulkWrite every flushMs; repeated healthy events write nothing. Updates that
+ * fail are merged back and retried on the next flush, up to maxFlushAttempts
+ *
+ * - after a restart (or once a state was idle for idleMinutes) the stored
+ * status is read on the flush thread, so the first event is not recorded as a
+ * change when it matches
+ *
+ * - each instance keeps its own states: counters are always exact, but status
+ * changes are only detected when every event of a host goes to one instance.
+ * Disabled by default: with several instances, events are written as they
+ * arrive (HealthEventWriter)
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".health-states" )
+public class HealthStates {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	@Inject
+	private EventDataHelper eventDataHelper ;
+
+	private boolean enabled = false ;
+	private long flushMs = 5000 ;
+	private int idleMinutes = 60 ;
+	private int maxFlushAttempts = 3 ;
+
+	private ConcurrentHashMap<String, HostHealth> states = new ConcurrentHashMap<>( ) ;
+	private ScheduledExecutorService flusher ;
+
+	static class HostHealth {
+
+		final Document query ;
+		final Document insertFields ;
+		final int maxHealthChangesPerDay ;
+
+		boolean loaded = false ;
+		boolean removed = false ;
+		long lastEvent = System.currentTimeMillis( ) ;
+
+		List lastStatus = null ;
+		int changeCount = 0 ;
+
+		// since the last flush
+		boolean statusChanged = false ;
+		int unHealthyEvents = 0 ;
+		List<Document> statusChanges = new ArrayList<>( ) ;
+		int failedFlushes = 0 ;
+
+		HostHealth ( Document query, Document insertFields, int maxHealthChangesPerDay ) {
+
+			this.query = query ;
+			this.insertFields = insertFields ;
+			this.maxHealthChangesPerDay = maxHealthChangesPerDay ;
+
+		}
+
+		void record ( List currentStatus , int unHealthyIncrement ) {
+
+			lastEvent = System.currentTimeMillis( ) ;
+			unHealthyEvents += unHealthyIncrement ;
+
+			if ( currentStatus.equals( lastStatus ) ) {
+
+				return ;
+
+			}
+
+			lastStatus = currentStatus ;
+			statusChanged = true ;
+
+			// same limit as the stored array: changes after it are dropped
+			if ( changeCount <= maxHealthChangesPerDay ) {
+
+				statusChanges.add( HealthEventWriter.statusChange( currentStatus ) ) ;
+				changeCount++ ;
+
+			}
+
+		}
+
+		// stored status replaces the unknown status the first event was compared to
+		void loaded ( List storedStatus , int storedChanges ) {
+
+			loaded = true ;
+
+			if ( storedStatus != null
+					&& ! statusChanges.isEmpty( )
+					&& storedStatus.equals( statusChanges.get( 0 ).get( "status" ) ) ) {
+
+				statusChanges.remove( 0 ) ;
+
+			}
+
+			changeCount = storedChanges + statusChanges.size( ) ;
+
+		}
+
+		boolean isPending ( ) {
+
+			return statusChanged || unHealthyEvents > 0 ;
+
+		}
+
+		Document buildUpdate ( ) {
+
+			return HealthEventWriter.healthUpdate( insertFields, statusChanges, lastStatus, unHealthyEvents,
+					maxHealthChangesPerDay ) ;
+
+		}
+
+		PendingHealth takePending ( ) {
+
+			var pending = new PendingHealth( statusChanged, unHealthyEvents, statusChanges ) ;
+
+			statusChanged = false ;
+			unHealthyEvents = 0 ;
+			statusChanges = new ArrayList<>( ) ;
+
+			return pending ;
+
+		}
+
+		// write failed: merged ahead of anything recorded since
+		void restore ( PendingHealth pending ) {
+
+			statusChanged = statusChanged || pending.statusChanged ;
+			unHealthyEvents += pending.unHealthyEvents ;
+
+			var mergedChanges = new ArrayList<>( pending.statusChanges ) ;
+			mergedChanges.addAll( statusChanges ) ;
+			statusChanges = mergedChanges ;
+
+			failedFlushes++ ;
+
+		}
+	}
+
+	static class PendingHealth {
+
+		final boolean statusChanged ;
+		final int unHealthyEvents ;
+		final List<Document> statusChanges ;
+
+		PendingHealth ( boolean statusChanged, int unHealthyEvents, List<Document> statusChanges ) {
+
+			this.statusChanged = statusChanged ;
+			this.unHealthyEvents = unHealthyEvents ;
+			this.statusChanges = statusChanges ;
+
+		}
+	}
+
+	@PostConstruct
+	public void startFlusher ( ) {
+
+		if ( ! isEnabled( ) ) {
+
+			return ;
+
+		}
+
+		logger.info( "Health states in memory: flushMs: {}, idleMinutes: {}", flushMs, idleMinutes ) ;
+
+		flusher = Executors.newSingleThreadScheduledExecutor( new BasicThreadFactory.Builder( )
+				.namingPattern( CsapEventsApplication.class.getSimpleName( ) + "HealthStates-%d" )
+				.daemon( true )
+				.build( ) ) ;
+
+		flusher.scheduleWithFixedDelay( this::flush, flushMs, flushMs, TimeUnit.MILLISECONDS ) ;
+
+		metricUtilities.addGauge( "csap.health-states.hosts", this, HealthStates::getStateCount ) ;
+
+	}
+
+	@PreDestroy
+	public void stopFlusher ( ) {
+
+		if ( flusher == null ) {
+
+			return ;
+
+		}
+
+		flusher.shutdown( ) ;
+
+		try {
+
+			flusher.awaitTermination( flushMs * 2, TimeUnit.MILLISECONDS ) ;
+
+		} catch ( InterruptedException e ) {
+
+			Thread.currentThread( ).interrupt( ) ;
+
+		}
+
+		flush( ) ;
+
+	}
+
+	/**
+	 *
+	 * query: the day's health document; only used when the state is created
+	 *
+	 */
+	public void record (
+							Document query ,
+							Document eventDocument ,
+							List currentStatus ,
+							int unHealthyIncrement ,
+							int maxHealthChangesPerDay ) {
+
+		var stateKey = stateKey( eventDocument ) ;
+
+		while ( true ) {
+
+			var state = states.computeIfAbsent( stateKey, key -> new HostHealth(
+					query,
+					(Document) EventUpsertCoalescer.deepCopy( HealthEventWriter.insertOnlyFields( eventDocument ) ),
+					maxHealthChangesPerDay ) ) ;
+
+			synchronized ( state ) {
+
+				// idle states are dropped by the flusher: start a new one
+				if ( ! state.removed ) {
+
+					state.record( currentStatus, unHealthyIncrement ) ;
+					return ;
+
+				}
+
+			}
+
+		}
+
+	}
+
+	static String stateKey ( Document eventDocument ) {
+
+		var createdOn = (Document) eventDocument.get( CREATED_ON ) ;
+
+		return eventDocument.getString( "project" )
+				+ "|" + eventDocument.getString( "lifecycle" )
+				+ "|" + eventDocument.getString( HOST )
+				+ "|" + createdOn.getString( DATE ) ;
+
+	}
+
+	void flush ( ) {
+
+		if ( states.isEmpty( ) ) {
+
+			return ;
+
+		}
+
+		var timer = metricUtilities.startTimer( ) ;
+
+		UpdateOptions upsert = new UpdateOptions( ).upsert( true ) ;
+		List<WriteModel<Document>> updates = new ArrayList<>( ) ;
+
+		// same order as updates: restored if the write fails
+		List<HostHealth> updatedStates = new ArrayList<>( ) ;
+		List<PendingHealth> updatedPending = new ArrayList<>( ) ;
+
+		long idleSince = System.currentTimeMillis( ) - TimeUnit.MINUTES.toMillis( idleMinutes ) ;
+		int transitions = 0 ;
+
+		for ( var stateEntry : states.entrySet( ) ) {
+
+			var state = stateEntry.getValue( ) ;
+
+			try {
+
+				if ( ! state.loaded ) {
+
+					loadStoredStatus( state ) ;
+
+				}
+
+				synchronized ( state ) {
+
+					if ( state.isPending( ) ) {
+
+						transitions += state.statusChanges.size( ) ;
+						updates.add( new UpdateOneModel<>( state.query, state.buildUpdate( ), upsert ) ) ;
+						updatedStates.add( state ) ;
+						updatedPending.add( state.takePending( ) ) ;
+
+					} else if ( state.lastEvent < idleSince ) {
+
+						state.removed = true ;
+						states.remove( stateEntry.getKey( ), state ) ;
+
+					}
+
+				}
+
+			} catch ( Exception e ) {
+
+				metricUtilities.incrementCounter( "db-event.health-states.failed.load" ) ;
+				logger.warn( "Failed loading health state {}: {}", stateEntry.getKey( ), CSAP.buildCsapStack( e ) ) ;
+
+			}
+
+		}
+
+		if ( updates.isEmpty( ) ) {
+
+			return ;
+
+		}
+
+		try {
+
+			var result = eventDataHelper.getMongoEventCollection( )
+					.bulkWrite( updates, new BulkWriteOptions( ).ordered( false ) ) ;
+
+			logger.debug( "health updates: {}, transitions: {}, inserted: {}",
+					updates.size( ), transitions, result.getUpserts( ).size( ) ) ;
+
+			updatedStates.forEach( this::flushSucceeded ) ;
+
+		} catch ( MongoBulkWriteException e ) {
+
+			metricUtilities.incrementCounter( "db-event.health-states.failed.write-errors" ) ;
+			logger.warn( "partial health update failure: {} of {} updates failed: {}",
+					e.getWriteErrors( ).size( ), updates.size( ), e.getMessage( ) ) ;
+
+			var failedIndexes = e.getWriteErrors( ).stream( )
+					.map( BulkWriteError::getIndex )
+					.collect( Collectors.toSet( ) ) ;
+
+			for ( var index = 0; index < updatedStates.size( ); index++ ) {
+
+				if ( failedIndexes.contains( index ) ) {
+
+					flushFailed( updatedStates.get( index ), updatedPending.get( index ) ) ;
+
+				} else {
+
+					flushSucceeded( updatedStates.get( index ) ) ;
+
+				}
+
+			}
+
+		} catch ( Exception e ) {
+
+			metricUtilities.incrementCounter( "db-event.health-states.failed." + e.getClass( ).getSimpleName( ) ) ;
+			logger.error( "Failed health update of {} hosts: {}", updates.size( ), CSAP.buildCsapStack( e ) ) ;
+
+			for ( var index = 0; index < updatedStates.size( ); index++ ) {
+
+				flushFailed( updatedStates.get( index ), updatedPending.get( index ) ) ;
+
+			}
+
+		}
+
+		metricUtilities.stopTimer( timer, "db-event.health-states.flush" ) ;
+
+	}
+
+	private void flushSucceeded ( HostHealth state ) {
+
+		synchronized ( state ) {
+
+			state.failedFlushes = 0 ;
+
+		}
+
+	}
+
+	// retried on the next flush; an idle state is not dropped while pending
+	private void flushFailed ( HostHealth state , PendingHealth pending ) {
+
+		synchronized ( state ) {
+
+			if ( state.failedFlushes + 1 >= maxFlushAttempts ) {
+
+				metricUtilities.incrementCounter( "db-event.health-states.dropped" ) ;
+				logger.warn( "Dropping health update after {} attempts: {}", maxFlushAttempts, state.query ) ;
+				state.failedFlushes = 0 ;
+				return ;
+
+			}
+
+			state.restore( pending ) ;
+
+		}
+
+	}
+
+	// documents written before lastStatus was stored use the last change
+	private void loadStoredStatus ( HostHealth state ) {
+
+		var stored = eventDataHelper.getMongoEventCollection( )
+				.find( state.query )
+				.projection( fields( include( "data." + HealthEventWriter.LAST_STATUS,
+						"data." + HealthEventWriter.HEALTH_STATUS ), excludeId( ) ) )
+				.limit( 1 )
+				.first( ) ;
+
+		List storedStatus = null ;
+		int storedChanges = 0 ;
+
+		if ( stored != null && stored.get( "data" ) instanceof Document ) {
+
+			var storedData = (Document) stored.get( "data" ) ;
+			var healthStatus = storedData.get( HealthEventWriter.HEALTH_STATUS ) ;
+
+			if ( healthStatus instanceof List && ! ( (List) healthStatus ).isEmpty( ) ) {
+
+				storedChanges = ( (List) healthStatus ).size( ) ;
+				var lastChange = ( (List) healthStatus ).get( storedChanges - 1 ) ;
+
+				if ( lastChange instanceof Document ) {
+
+					storedStatus = (List) ( (Document) lastChange ).get( "status" ) ;
+
+				}
+
+			}
+
+			if ( storedData.get( HealthEventWriter.LAST_STATUS ) instanceof List ) {
+
+				storedStatus = (List) storedData.get( HealthEventWriter.LAST_STATUS ) ;
+
+			}
+
+		}
+
+		synchronized ( state ) {
+
+			state.loaded( storedStatus, storedChanges ) ;
+
+		}
+
+		metricUtilities.incrementCounter( "db-event.health-states.load" ) ;
+
+	}
+
+	public long getStateCount ( ) {
+
+		return states.size( ) ;
+
+	}
+
+	public boolean isEnabled ( ) {
+
+		return enabled ;
+
+	}
+
+	public void setEnabled ( boolean enabled ) {
+
+		this.enabled = enabled ;
+
+	}
+
+	public long getFlushMs ( ) {
+
+		return flushMs ;
+
+	}
+
+	public void setFlushMs ( long flushMs ) {
+
+		this.flushMs = flushMs ;
+
+	}
+
+	public int getMaxFlushAttempts ( ) {
+
+		return maxFlushAttempts ;
+
+	}
+
+	public void setMaxFlushAttempts ( int maxFlushAttempts ) {
+
+		this.maxFlushAttempts = maxFlushAttempts ;
+
+	}
+
+	public int getIdleMinutes ( ) {
+
+		return idleMinutes ;
+
+	}
+
+	public void setIdleMinutes ( int idleMinutes ) {
+
+		this.idleMinutes = idleMinutes ;
+
+	}
+
+}
@@ -0,0 +1,409 @@
+package org.csap.events.db ;
+
+import java.io.ByteArrayOutputStream ;
+import java.io.IOException ;
+import java.nio.ByteBuffer ;
+import java.nio.channels.FileChannel ;
+import java.nio.charset.StandardCharsets ;
+import java.nio.file.Files ;
+import java.nio.file.NoSuchFileException ;
+import java.nio.file.Path ;
+import java.nio.file.Paths ;
+import java.nio.file.StandardCopyOption ;
+import java.nio.file.StandardOpenOption ;
+import java.security.MessageDigest ;
+import java.security.NoSuchAlgorithmException ;
+import java.util.ArrayList ;
+import java.util.Comparator ;
+import java.util.List ;
+import java.util.concurrent.atomic.AtomicLong ;
+import java.util.stream.Collectors ;
+import java.util.zip.DataFormatException ;
+import java.util.zip.Deflater ;
+import java.util.zip.Inflater ;
+
+import org.csap.events.CsapEventsApplication ;
+import org.csap.helpers.CSAP ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.stereotype.Service ;
+
+/**
+ *
+ * Historical metrics reports on local disk: past days never change, so reports
+ * survive restarts and are served without querying mongo.
+ *
+ * - one file per report, keyed by a hash of the report parameters (host,
+ * collection, day and service set, ...): deflated json with its length
+ *
+ * - files are memory mapped for reads; writes go to a temp file and are moved
+ * into place so a crash never leaves a partial report
+ *
+ * - nothing is loaded at startup: reports are added as they are requested, and
+ * the least recently written are deleted when maxDiskMb is exceeded
+ *
+ * - only days whose data window is closed are stored: daily collections
+ * (_300, _1800) for yesterday may still be uploaded after midnight
+ *
+ * - disabled by default: folder is relative to the process working folder
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".historical-reports" )
+public class HistoricalReportStore {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	final static int FORMAT_VERSION = 1 ;
+	final static int HEADER_BYTES = 8 ;
+	final static int CLOSED_DAYS_OFFSET = 2 ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	private boolean enabled = false ;
+	private String folder = "cache-persistence/historical-reports" ;
+	private int maxDiskMb = 2048 ;
+
+	private volatile AtomicLong storedBytes = null ;
+
+	public String reportKey ( Object... reportParameters ) {
+
+		var reportId = List.of( reportParameters ).stream( )
+				.map( String::valueOf )
+				.collect( Collectors.joining( "|" ) ) ;
+
+		try {
+
+			var digest = MessageDigest.getInstance( "SHA-256" ).digest( reportId.getBytes( StandardCharsets.UTF_8 ) ) ;
+			var hexKey = new StringBuilder( ) ;
+
+			for ( var digestByte : digest ) {
+
+				hexKey.append( String.format( "%02x", digestByte ) ) ;
+
+			}
+
+			return hexKey.toString( ) ;
+
+		} catch ( NoSuchAlgorithmException e ) {
+
+			throw new IllegalStateException( e ) ;
+
+		}
+
+	}
+
+	public static boolean isDataWindowClosed ( int numDaysOffsetFromToday ) {
+
+		return numDaysOffsetFromToday >= CLOSED_DAYS_OFFSET ;
+
+	}
+
+	/**
+	 *
+	 * @return the stored report, or null if not stored
+	 */
+	public String read ( String reportKey ) {
+
+		if ( ! isEnabled( ) ) {
+
+			return null ;
+
+		}
+
+		var timer = metricUtilities.startTimer( ) ;
+
+		try ( var channel = FileChannel.open( reportPath( reportKey ), StandardOpenOption.READ ) ) {
+
+			var mappedReport = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size( ) ) ;
+			var report = decode( mappedReport ) ;
+			metricUtilities.stopTimer( timer, "csap.historical-reports.read" ) ;
+			return report ;
+
+		} catch ( NoSuchFileException e ) {
+
+			metricUtilities.incrementCounter( "csap.historical-reports.miss" ) ;
+
+		} catch ( Exception e ) {
+
+			logger.warn( "Discarding unreadable report {}: {}", reportKey, CSAP.buildCsapStack( e ) ) ;
+			delete( reportPath( reportKey ) ) ;
+
+		}
+
+		return null ;
+
+	}
+
+	public void write ( String reportKey , String report ) {
+
+		if ( ! isEnabled( ) ) {
+
+			return ;
+
+		}
+
+		var timer = metricUtilities.startTimer( ) ;
+		var reportPath = reportPath( reportKey ) ;
+
+		try {
+
+			Files.createDirectories( reportPath.getParent( ) ) ;
+
+			var encodedReport = encode( report ) ;
+			var tempPath = Files.createTempFile( reportPath.getParent( ), reportKey, ".tmp" ) ;
+			Files.write( tempPath, encodedReport ) ;
+			Files.move( tempPath, reportPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE ) ;
+
+			if ( getStoredBytes( ).addAndGet( encodedReport.length ) > maxDiskMb * 1024L * 1024L ) {
+
+				pruneOldest( ) ;
+
+			}
+
+			metricUtilities.stopTimer( timer, "csap.historical-reports.write" ) ;
+
+		} catch ( Exception e ) {
+
+			logger.warn( "Failed storing report {}: {}", reportKey, CSAP.buildCsapStack( e ) ) ;
+
+		}
+
+	}
+
+	static byte[] encode ( String report ) {
+
+		var reportBytes = report.getBytes( StandardCharsets.UTF_8 ) ;
+
+		var deflater = new Deflater( Deflater.BEST_SPEED ) ;
+		deflater.setInput( reportBytes ) ;
+		deflater.finish( ) ;
+
+		var encoded = new ByteArrayOutputStream( reportBytes.length / 8 + 64 ) ;
+		encoded.writeBytes( ByteBuffer.allocate( HEADER_BYTES )
+				.putInt( FORMAT_VERSION )
+				.putInt( reportBytes.length )
+				.array( ) ) ;
+
+		var buffer = new byte[64 * 1024] ;
+
+		while ( ! deflater.finished( ) ) {
+
+			encoded.write( buffer, 0, deflater.deflate( buffer ) ) ;
+
+		}
+
+		deflater.end( ) ;
+		return encoded.toByteArray( ) ;
+
+	}
+
+	static String decode ( ByteBuffer encodedReport )
+		throws DataFormatException {
+
+		if ( encodedReport.getInt( ) != FORMAT_VERSION ) {
+
+			throw new DataFormatException( "Unexpected report format" ) ;
+
+		}
+
+		var reportBytes = new byte[encodedReport.getInt( )] ;
+
+		var inflater = new Inflater( ) ;
+
+		try {
+
+			inflater.setInput( encodedReport ) ;
+			var offset = 0 ;
+
+			while ( offset < reportBytes.length && ! inflater.finished( ) ) {
+
+				var inflated = inflater.inflate( reportBytes, offset, reportBytes.length - offset ) ;
+
+				if ( inflated == 0 && ( inflater.needsInput( ) || inflater.needsDictionary( ) ) ) {
+
+					throw new DataFormatException( "Truncated report" ) ;
+
+				}
+
+				offset += inflated ;
+
+			}
+
+		} finally {
+
+			inflater.end( ) ;
+
+		}
+
+		return new String( reportBytes, StandardCharsets.UTF_8 ) ;
+
+	}
+
+	private Path reportPath ( String reportKey ) {
+
+		return Paths.get( folder, reportKey.substring( 0, 2 ), reportKey + ".report" ) ;
+
+	}
+
+	private AtomicLong getStoredBytes ( ) {
+
+		if ( storedBytes == null ) {
+
+			synchronized ( this ) {
+
+				if ( storedBytes == null ) {
+
+					storedBytes = new AtomicLong( storedFiles( ).stream( ).mapToLong( this::fileSize ).sum( ) ) ;
+					logger.info( "{} stored bytes: {}", folder, storedBytes.get( ) ) ;
+
+				}
+
+			}
+
+		}
+
+		return storedBytes ;
+
+	}
+
+	// least recently written are deleted until 80% of maxDiskMb
+	private synchronized void pruneOldest ( ) {
+
+		var timer = metricUtilities.startTimer( ) ;
+		long target = maxDiskMb * 1024L * 1024L * 8 / 10 ;
+
+		var files = storedFiles( ) ;
+		files.sort( Comparator.comparingLong( this::lastModified ) ) ;
+
+		long total = files.stream( ).mapToLong( this::fileSize ).sum( ) ;
+		var deleted = 0 ;
+
+		for ( var file : files ) {
+
+			if ( total <= target ) {
+
+				break ;
+
+			}
+
+			total -= fileSize( file ) ;
+			delete( file ) ;
+			deleted++ ;
+
+		}
+
+		storedBytes.set( total ) ;
+		logger.info( "{} pruned {} reports, stored bytes: {}", folder, deleted, total ) ;
+		metricUtilities.stopTimer( timer, "csap.historical-reports.prune" ) ;
+
+	}
+
+	private List<Path> storedFiles ( ) {
+
+		var root = Paths.get( folder ) ;
+
+		if ( ! Files.isDirectory( root ) ) {
+
+			return new ArrayList<>( ) ;
+
+		}
+
+		try ( var paths = Files.walk( root, 2 ) ) {
+
+			return paths
+					.filter( path -> path.toString( ).endsWith( ".report" ) )
+					.collect( Collectors.toList( ) ) ;
+
+		} catch ( IOException e ) {
+
+			logger.warn( "Failed listing {}: {}", folder, CSAP.buildCsapStack( e ) ) ;
+			return new ArrayList<>( ) ;
+
+		}
+
+	}
+
+	private long fileSize ( Path path ) {
+
+		try {
+
+			return Files.size( path ) ;
+
+		} catch ( IOException e ) {
+
+			return 0 ;
+
+		}
+
+	}
+
+	private long lastModified ( Path path ) {
+
+		try {
+
+			return Files.getLastModifiedTime( path ).toMillis( ) ;
+
+		} catch ( IOException e ) {
+
+			return 0 ;
+
+		}
+
+	}
+
+	private void delete ( Path path ) {
+
+		try {
+
+			Files.deleteIfExists( path ) ;
+
+		} catch ( IOException e ) {
+
+			logger.warn( "Failed deleting {}: {}", path, CSAP.buildCsapStack( e ) ) ;
+
+		}
+
+	}
+
+	public boolean isEnabled ( ) {
+
+		return enabled ;
+
+	}
+
+	public void setEnabled ( boolean enabled ) {
+
+		this.enabled = enabled ;
+
+	}
+
+	public String getFolder ( ) {
+
+		return folder ;
+
+	}
+
+	public void setFolder ( String folder ) {
+
+		this.folder = folder ;
+
+	}
+
+	public int getMaxDiskMb ( ) {
+
+		return maxDiskMb ;
+
+	}
+
+	public void setMaxDiskMb ( int maxDiskMb ) {
+
+		this.maxDiskMb = maxDiskMb ;
+
+	}
+
+}
@@ -0,0 +1,281 @@
+package org.csap.events.db ;
+
+import java.util.Collection ;
+import java.util.LinkedHashMap ;
+import java.util.LinkedHashSet ;
+import java.util.Map ;
+import java.util.concurrent.ExecutionException ;
+import java.util.concurrent.ExecutorService ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.Future ;
+import java.util.concurrent.RejectedExecutionException ;
+import java.util.concurrent.Semaphore ;
+import java.util.concurrent.TimeUnit ;
+import java.util.concurrent.TimeoutException ;
+import java.util.function.Function ;
+
+import javax.annotation.PostConstruct ;
+import javax.annotation.PreDestroy ;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory ;
+import org.csap.events.CsapEventsApplication ;
+import org.csap.helpers.CSAP ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.stereotype.Service ;
+
+/**
+ *
+ * Fans out per host metrics reports used by the analytics hourly trends, and
+ * per service trend reports.
+ *
+ * - shared pool of threads, with at most maxPerRequest hosts in flight for any
+ * one report so a large application cannot starve other requests
+ *
+ * - each report has a deadline: hosts not completed in time are cancelled and
+ * left out of the report rather than failing it
+ *
+ * - reports requested from a pool thread (service trends that include hourly
+ * host data) run on that thread, so pool threads never wait on the pool
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".host-reports" )
+public class HostReportExecutor {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	private int threads = 16 ;
+	private int maxPerRequest = 8 ;
+	private int deadlineSeconds = 60 ;
+
+	private ExecutorService hostReportPool ;
+
+	private static final ThreadLocal<Boolean> isPoolThread = ThreadLocal.withInitial( ( ) -> false ) ;
+
+	@PostConstruct
+	public void startPool ( ) {
+
+		logger.info( "Host report pool: threads: {}, maxPerRequest: {}, deadlineSeconds: {}",
+				threads, maxPerRequest, deadlineSeconds ) ;
+
+		BasicThreadFactory hostReportThreadFactory = new BasicThreadFactory.Builder( )
+				.namingPattern( CsapEventsApplication.class.getSimpleName( ) + "HostReport-%d" )
+				.daemon( true )
+				.build( ) ;
+
+		hostReportPool = Executors.newFixedThreadPool( threads, hostReportThreadFactory ) ;
+
+	}
+
+	@PreDestroy
+	public void stopPool ( ) {
+
+		if ( hostReportPool != null ) {
+
+			hostReportPool.shutdownNow( ) ;
+
+		}
+
+	}
+
+	/**
+	 *
+	 * @return reports keyed by host, in host order. Hosts that failed or missed
+	 *         the deadline are omitted.
+	 */
+	public <T> Map<String, T> buildReports (
+												String reportName ,
+												Collection<String> hosts ,
+												Function<String, T> hostReportBuilder ) {
+
+		if ( isPoolThread.get( ) ) {
+
+			return buildReportsInline( reportName, hosts, hostReportBuilder ) ;
+
+		}
+
+		var timer = metricUtilities.startTimer( ) ;
+
+		long deadline = System.currentTimeMillis( ) + TimeUnit.SECONDS.toMillis( deadlineSeconds ) ;
+		var inFlight = new Semaphore( maxPerRequest ) ;
+		Map<String, Future<T>> pendingReports = new LinkedHashMap<>( ) ;
+
+		try {
+
+			for ( var host : new LinkedHashSet<>( hosts ) ) {
+
+				if ( ! inFlight.tryAcquire( remainingMs( deadline ), TimeUnit.MILLISECONDS ) ) {
+
+					logger.warn( "{} deadline reached before all hosts were submitted: {} of {}",
+							reportName, pendingReports.size( ), hosts.size( ) ) ;
+					break ;
+
+				}
+
+				try {
+
+					pendingReports.put( host, hostReportPool.submit( ( ) -> {
+
+						isPoolThread.set( true ) ;
+
+						try {
+
+							return hostReportBuilder.apply( host ) ;
+
+						} finally {
+
+							isPoolThread.set( false ) ;
+							inFlight.release( ) ;
+
+						}
+
+					} ) ) ;
+
+				} catch ( RejectedExecutionException e ) {
+
+					inFlight.release( ) ;
+					logger.warn( "{} host report rejected: {}", reportName, host ) ;
+
+				}
+
+			}
+
+		} catch ( InterruptedException e ) {
+
+			Thread.currentThread( ).interrupt( ) ;
+
+		}
+
+		Map<String, T> hostReports = new LinkedHashMap<>( ) ;
+		int timeouts = 0 ;
+
+		for ( var pendingReport : pendingReports.entrySet( ) ) {
+
+			var host = pendingReport.getKey( ) ;
+			var future = pendingReport.getValue( ) ;
+
+			try {
+
+				var hostReport = future.get( remainingMs( deadline ), TimeUnit.MILLISECONDS ) ;
+
+				if ( hostReport != null ) {
+
+					hostReports.put( host, hostReport ) ;
+
+				}
+
+			} catch ( TimeoutException e ) {
+
+				future.cancel( true ) ;
+				timeouts++ ;
+
+			} catch ( ExecutionException e ) {
+
+				metricUtilities.incrementCounter( "analytics.host-reports.failed" ) ;
+				logger.warn( "{} failed for host: {} {}", reportName, host, CSAP.buildCsapStack( e.getCause( ) ) ) ;
+
+			} catch ( InterruptedException e ) {
+
+				future.cancel( true ) ;
+				Thread.currentThread( ).interrupt( ) ;
+
+			}
+
+		}
+
+		if ( timeouts > 0 ) {
+
+			metricUtilities.incrementCounter( "analytics.host-reports.timeout" ) ;
+			logger.warn( "{} deadline of {} seconds exceeded: {} of {} hosts not included",
+					reportName, deadlineSeconds, timeouts, pendingReports.size( ) ) ;
+
+		}
+
+		metricUtilities.stopTimer( timer, "analytics.host-reports." + reportName ) ;
+
+		return hostReports ;
+
+	}
+
+	private <T> Map<String, T> buildReportsInline (
+													String reportName ,
+													Collection<String> hosts ,
+													Function<String, T> hostReportBuilder ) {
+
+		Map<String, T> hostReports = new LinkedHashMap<>( ) ;
+
+		for ( var host : new LinkedHashSet<>( hosts ) ) {
+
+			try {
+
+				var hostReport = hostReportBuilder.apply( host ) ;
+
+				if ( hostReport != null ) {
+
+					hostReports.put( host, hostReport ) ;
+
+				}
+
+			} catch ( Exception e ) {
+
+				metricUtilities.incrementCounter( "analytics.host-reports.failed" ) ;
+				logger.warn( "{} failed for host: {} {}", reportName, host, CSAP.buildCsapStack( e ) ) ;
+
+			}
+
+		}
+
+		return hostReports ;
+
+	}
+
+	private long remainingMs ( long deadline ) {
+
+		return Math.max( 0, deadline - System.currentTimeMillis( ) ) ;
+
+	}
+
+	public int getThreads ( ) {
+
+		return threads ;
+
+	}
+
+	public void setThreads ( int threads ) {
+
+		this.threads = threads ;
+
+	}
+
+	public int getMaxPerRequest ( ) {
+
+		return maxPerRequest ;
+
+	}
+
+	public void setMaxPerRequest ( int maxPerRequest ) {
+
+		this.maxPerRequest = maxPerRequest ;
+
+	}
+
+	public int getDeadlineSeconds ( ) {
+
+		return deadlineSeconds ;
+
+	}
+
+	public void setDeadlineSeconds ( int deadlineSeconds ) {
+
+		this.deadlineSeconds = deadlineSeconds ;
+
+	}
+
+}
@@ -1,7 +1,9 @@
 package org.csap.events.db ;
 
 import java.io.IOException ;
+import java.io.StringWriter ;
 import java.util.List ;
+import java.util.function.Predicate ;
 import java.util.stream.Collectors ;
 
 import javax.inject.Inject ;
@@ -11,6 +13,8 @@ import org.bson.Document ;
 import org.bson.json.JsonMode ;
 import org.bson.json.JsonWriterSettings ;
 import org.csap.events.CsapEventsApplication ;
+import org.csap.events.util.MetricsDownsampler ;
+import org.csap.events.util.MetricsTimeSeries ;
 import org.csap.helpers.CSAP ;
 import org.csap.helpers.CsapApplication ;
 import org.csap.integations.CsapMicroMeter ;
@@ -19,9 +23,9 @@ import org.slf4j.LoggerFactory ;
 import org.springframework.beans.factory.annotation.Autowired ;
 import org.springframework.cache.annotation.Cacheable ;
 
+import com.fasterxml.jackson.core.JsonGenerator ;
 import com.fasterxml.jackson.databind.JsonNode ;
 import com.fasterxml.jackson.databind.ObjectMapper ;
-import com.fasterxml.jackson.databind.node.ArrayNode ;
 import com.fasterxml.jackson.databind.node.ObjectNode ;
 
 public class MetricsDataHandler {
@@ -40,12 +44,15 @@ public class MetricsDataHandler {
 	@Inject
 	private ObjectMapper jsonMapper ;
 
+	@Inject
+	private HistoricalReportStore historicalReportStore ;
+
 	JsonWriterSettings jsonWriter = JsonWriterSettings.builder( ).outputMode( JsonMode.RELAXED ).build( ) ;
 
 	// storing JSON or BSON arrays in memory can get VERY expensive on large
 	// datasets (millions of Objects created)
 	// Only the unparsed string output is cached
-	@Cacheable ( value = CsapEventsApplication.METRICS_REPORT_CACHE , key = "{#hostName,#collectionId,#numberOfDays,#dayOfYearAndServiceCacheKey,#appId,#life,#showDaysFrom,#padLatest}" )
+	@Cacheable ( value = CsapEventsApplication.METRICS_REPORT_CACHE , key = "{#hostName,#collectionId,#numberOfDays,#dayOfYearAndServiceCacheKey,#appId,#life,#showDaysFrom,#padLatest,T(org.csap.events.util.MetricsDownsampler).cacheKey(#maxPoints,#downsample)}" , sync = true )
 	public String buildPerformanceGraphDataForToday (
 														String hostName ,
 														String collectionId ,
@@ -58,16 +65,18 @@ public class MetricsDataHandler {
 														String appId ,
 														String life ,
 														boolean showDaysFrom ,
-														boolean padLatest ) {
+														boolean padLatest ,
+														int maxPoints ,
+														String downsample ) {
 
 		return buildMetricsReportNoCache( hostName, collectionId, dayOfYearAndServiceCacheKey,
 				numberOfDays, numDaysOffsetFromToday,
 				bucketSize, bucketSpacing, serviceNameArray,
-				appId, life, showDaysFrom, padLatest ) ;
+				appId, life, showDaysFrom, padLatest, maxPoints, downsample ) ;
 
 	}
 
-	@Cacheable ( value = CsapEventsApplication.HISTORICAL_REPORT_CACHE , key = "{#hostName,#collectionId,#numberOfDays,#dayOfYearAndServiceCacheKey,#appId,#life,#showDaysFrom,#padLatest}" )
+	@Cacheable ( value = CsapEventsApplication.HISTORICAL_REPORT_CACHE , key = "{#hostName,#collectionId,#numberOfDays,#dayOfYearAndServiceCacheKey,#appId,#life,#showDaysFrom,#padLatest,T(org.csap.events.util.MetricsDownsampler).cacheKey(#maxPoints,#downsample)}" , sync = true )
 	public String buildPerformanceGraphData (
 												String hostName ,
 												String collectionId ,
@@ -80,12 +89,42 @@ public class MetricsDataHandler {
 												String appId ,
 												String life ,
 												boolean showDaysFrom ,
-												boolean padLatest ) {
+												boolean padLatest ,
+												int maxPoints ,
+												String downsample ) {
 
-		return buildMetricsReportNoCache( hostName, collectionId, dayOfYearAndServiceCacheKey,
+		// closed days are immutable: served from local disk across restarts
+		var isStored = HistoricalReportStore.isDataWindowClosed( numDaysOffsetFromToday ) ;
+		var storeKey = historicalReportStore.reportKey( hostName, collectionId, numberOfDays,
+				dayOfYearAndServiceCacheKey, appId, life, showDaysFrom, padLatest,
+				MetricsDownsampler.cacheKey( maxPoints, downsample ) ) ;
+
+		if ( isStored ) {
+
+			var storedReport = historicalReportStore.read( storeKey ) ;
+
+			if ( storedReport != null ) {
+
+				return storedReport ;
+
+			}
+
+		}
+
+		var metricsReport = buildMetricsReport( hostName, collectionId, dayOfYearAndServiceCacheKey,
 				numberOfDays, numDaysOffsetFromToday,
 				bucketSize, bucketSpacing, serviceNameArray,
-				appId, life, showDaysFrom, padLatest ) ;
+				appId, life, showDaysFrom, padLatest, maxPoints, downsample ) ;
+
+		var graphReport = writeGraphReport( metricsReport ) ;
+
+		if ( isStored && ! metricsReport.data.isEmpty( ) ) {
+
+			historicalReportStore.write( storeKey, graphReport ) ;
+
+		}
+
+		return graphReport ;
 
 	}
 
@@ -101,7 +140,133 @@ public class MetricsDataHandler {
 												String appId ,
 												String life ,
 												boolean showDaysFrom ,
-												boolean padLatest ) {
+												boolean padLatest ,
+												int maxPoints ,
+												String downsample ) {
+
+		// Performance Note:
+		// storing JSON or BSON arrays in memory can get VERY expensive on large
+		// datasets (millions of Objects created)
+		// Only the unparsed string output is cached
+		return writeGraphReport( buildMetricsReport( hostName, collectionId, dayOfYearAndServiceCacheKey,
+				numberOfDays, numDaysOffsetFromToday,
+				bucketSize, bucketSpacing, serviceNamesRequested,
+				appId, life, showDaysFrom, padLatest, maxPoints, downsample ) ) ;
+
+	}
+
+	private MetricsReport buildMetricsReport (
+												String hostName ,
+												String collectionId ,
+												String dayOfYearAndServiceCacheKey ,
+												int numberOfDays ,
+												int numDaysOffsetFromToday ,
+												int bucketSize ,
+												int bucketSpacing ,
+												String[] serviceNamesRequested ,
+												String appId ,
+												String life ,
+												boolean showDaysFrom ,
+												boolean padLatest ,
+												int maxPoints ,
+												String downsample ) {
+
+		var metricsReport = buildMetricsSeries( hostName, collectionId, dayOfYearAndServiceCacheKey,
+				numberOfDays, numDaysOffsetFromToday,
+				bucketSize, bucketSpacing, serviceNamesRequested,
+				appId, life, showDaysFrom, padLatest, maxPoints ) ;
+
+		if ( maxPoints > 0 ) {
+
+			var timer = metricUtilities.startTimer( ) ;
+			var downsampler = MetricsDownsampler.parse( downsample ) ;
+			metricsReport.data = downsampler.downsample( metricsReport.data, maxPoints ) ;
+			metricUtilities.stopTimer( timer, "metrics-get.downsample." + downsampler.name( ) ) ;
+
+		}
+
+		return metricsReport ;
+
+	}
+
+	public static class MetricsReport {
+
+		private ObjectNode csapGraphReport ;
+		private MetricsTimeSeries data ;
+
+		MetricsReport ( ObjectNode csapGraphReport, MetricsTimeSeries data ) {
+
+			this.csapGraphReport = csapGraphReport ;
+			this.data = data ;
+
+		}
+
+		public JsonNode getAttributes ( ) {
+
+			return csapGraphReport.path( "attributes" ) ;
+
+		}
+
+		// empty when attributes could not be loaded
+		public MetricsTimeSeries getData ( ) {
+
+			return data ;
+
+		}
+
+	}
+
+	/**
+	 *
+	 * Report as primitive columns: used by analytics trends to avoid
+	 * serializing and re-parsing the full report. maxPoints (0 for all) may
+	 * select a rollup rather than raw data
+	 *
+	 */
+	public MetricsReport buildMetricsSeries (
+												String hostName ,
+												String collectionId ,
+												String dayOfYearAndServiceCacheKey ,
+												int numberOfDays ,
+												int numDaysOffsetFromToday ,
+												int bucketSize ,
+												int bucketSpacing ,
+												String[] serviceNamesRequested ,
+												String appId ,
+												String life ,
+												boolean showDaysFrom ,
+												boolean padLatest ,
+												int maxPoints ) {
+
+		return buildMetricsSeries( hostName, collectionId, dayOfYearAndServiceCacheKey,
+				numberOfDays, numDaysOffsetFromToday,
+				bucketSize, bucketSpacing, serviceNamesRequested,
+				appId, life, showDaysFrom, padLatest, maxPoints, null ) ;
+
+	}
+
+	/**
+	 *
+	 * dataPointFilter (null for all graph data points) limits the columns loaded:
+	 * it is pushed into the mongo projection so unused attribute arrays are never
+	 * sent or decoded. timeStamp is always loaded
+	 *
+	 */
+	public MetricsReport buildMetricsSeries (
+												String hostName ,
+												String collectionId ,
+												String dayOfYearAndServiceCacheKey ,
+												int numberOfDays ,
+												int numDaysOffsetFromToday ,
+												int bucketSize ,
+												int bucketSpacing ,
+												String[] serviceNamesRequested ,
+												String appId ,
+												String life ,
+												boolean showDaysFrom ,
+												boolean padLatest ,
+												int maxPoints ,
+												Predicate<String> dataPointFilter ) {
 
 		logger.debug(
 				"offset: {} No cache entry found or it expired - adding entry for Host: {}, type: {}, dayOfYearAndServiceCacheKey: {}, numberOfDays: {}",
@@ -129,7 +294,7 @@ public class MetricsDataHandler {
 					numDaysOffsetFromToday,
 					collectionId, dayOfYearAndServiceCacheKey, numberOfDays ) ;
 			csapGraphReport.put( "error", "Error getting data" ) ;
-			return csapGraphReport.toString( ) ;
+			return new MetricsReport( csapGraphReport, new MetricsTimeSeries( List.of( ), 0 ) ) ;
 
 		}
 
@@ -155,35 +320,81 @@ public class MetricsDataHandler {
 		}
 
 		List<String> filteredAttributeNames = retrieveDataPointNames( filteredAttributes ) ;
+
+		if ( dataPointFilter != null ) {
+
+			filteredAttributeNames.removeIf( dataPointFilter.negate( ) ) ;
+
+		}
+
 		filteredAttributeNames.add( "timeStamp" ) ;
 		// graphAttributeNames.add( "totalCpu" ) ;
 		logger.debug( "data will be filtered to only contain: graphAttributeNames: {}", filteredAttributeNames ) ;
 
 		// allAttributeNames or filteredAttributeNames
-		ObjectNode allGraphData = metricsDataReader.findAndMergeMetricData(
+		MetricsTimeSeries allGraphData = metricsDataReader.findAndMergeMetricData(
 				hostName, collectionId, numberOfDays, numDaysOffsetFromToday,
-				appId, life, showDaysFrom, padLatest, filteredAttributeNames ) ;
+				appId, life, showDaysFrom, padLatest, filteredAttributeNames, maxPoints ) ;
 
 		if ( bucketSize > 0 && bucketSpacing >= 1 ) {
 
-			reduceDataBySampling( allGraphData, bucketSize, bucketSpacing ) ;
+			// used for sampling data over large data sets
+			allGraphData = allGraphData.sample( bucketSize, bucketSpacing ) ;
 
 		}
 
-		csapGraphReport.set( "data", allGraphData ) ;
-
 		metricUtilities.stopTimer( timerByResourceType, "metrics-get.by-type." + collectionId ) ;
 		metricUtilities.stopTimer( timerByAppId, "metrics-get.by-appid." + appId ) ;
 		metricUtilities.stopTimer( timerByLifecycle, "metrics-get.by-life." + life ) ;
 		metricUtilities.stopTimer( timerAll, "csap.metrics-get" ) ;
 
-		// logger.info( "csapGraphReport: {}", CSAP.jsonPrint( csapGraphReport ) );
+		return new MetricsReport( csapGraphReport, allGraphData ) ;
 
-		// Performance Note:
-		// storing JSON or BSON arrays in memory can get VERY expensive on large
-		// datasets (millions of Objects created)
-		// Only the unparsed string output is cached
-		return csapGraphReport.toString( ) ;
+	}
+
+	//
+	// data columns are streamed directly from primitive arrays
+	//
+	private String writeGraphReport ( MetricsReport metricsReport ) {
+
+		var csapGraphReport = metricsReport.csapGraphReport ;
+
+		if ( csapGraphReport.has( "error" ) ) {
+
+			return csapGraphReport.toString( ) ;
+
+		}
+
+		StringWriter reportWriter = new StringWriter( 1024 + metricsReport.data.length( ) * 64 ) ;
+
+		try ( JsonGenerator generator = jsonMapper.getFactory( ).createGenerator( reportWriter ) ) {
+
+			generator.writeStartObject( ) ;
+
+			var reportFields = csapGraphReport.fields( ) ;
+
+			while ( reportFields.hasNext( ) ) {
+
+				var reportField = reportFields.next( ) ;
+				generator.writeFieldName( reportField.getKey( ) ) ;
+				generator.writeTree( reportField.getValue( ) ) ;
+
+			}
+
+			generator.writeFieldName( "data" ) ;
+			metricsReport.data.writeJson( generator ) ;
+
+			generator.writeEndObject( ) ;
+
+		} catch ( IOException e ) {
+
+			logger.error( "Failed writing report: {}", CSAP.buildCsapStack( e ) ) ;
+			csapGraphReport.put( "error", "Error getting data" ) ;
+			return csapGraphReport.toString( ) ;
+
+		}
+
+		return reportWriter.toString( ) ;
 
 	}
 
@@ -288,42 +499,6 @@ public class MetricsDataHandler {
 
 	}
 
-	// used for sampling data over large data sets
-	private void reduceDataBySampling ( ObjectNode allGraphData , int bucketSize , int bucketSpacing ) {
-
-		CSAP.asStreamHandleNulls( allGraphData ).forEach( attribute -> {
-
-			var collectedValues = (ArrayNode) allGraphData.get( attribute ) ;
-
-			ArrayNode sampledValues = jsonMapper.createArrayNode( ) ;
-
-			int start = 0 ;
-			int end = bucketSize - 1 ;
-			boolean reInitializeRange = false ;
-
-			for ( int k = 0; k < collectedValues.size( ); k++ ) {
-
-				if ( k >= start && k <= end ) {
-
-					reInitializeRange = true ;
-					sampledValues.add( collectedValues.get( k ) ) ;
-
-				} else if ( reInitializeRange ) {
-
-					start = k + bucketSpacing ;
-					end = ( k + bucketSpacing + bucketSize - 1 ) ;
-					reInitializeRange = false ;
-
-				}
-
-			}
-
-			allGraphData.set( attribute, sampledValues ) ;
-
-		} ) ;
-
-	}
-
 	private JsonNode filterGraphAttributes (
 												String id ,
 												String[] serviceNamesRequested ,
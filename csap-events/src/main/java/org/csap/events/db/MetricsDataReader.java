@@ -16,11 +16,11 @@ import static org.csap.events.util.MongoConstants.METRICS_ATTRIBUTES_COLLECTION_
 import static org.csap.events.util.MongoConstants.METRICS_DATA_COLLECTION_NAME ;
 import static org.csap.events.util.MongoConstants.METRICS_DB_NAME ;
 
-import java.io.IOException ;
 import java.util.ArrayList ;
 import java.util.Calendar ;
 import java.util.Date ;
 import java.util.HashMap ;
+import java.util.HashSet ;
 import java.util.List ;
 import java.util.Map ;
 import java.util.Set ;
@@ -29,19 +29,21 @@ import java.util.concurrent.TimeUnit ;
 import javax.inject.Inject ;
 
 import org.apache.commons.lang3.StringUtils ;
+import org.apache.commons.lang3.math.NumberUtils ;
+import org.bson.BsonBinaryReader ;
+import org.bson.BsonType ;
 import org.bson.Document ;
+import org.bson.RawBsonDocument ;
+import org.bson.conversions.Bson ;
 import org.csap.events.CsapEventsApplication ;
-import org.csap.events.util.EventJsonConstants ;
+import org.csap.events.util.MetricColumn ;
+import org.csap.events.util.MetricsTimeSeries ;
 import org.csap.integations.CsapMicroMeter ;
 import org.slf4j.Logger ;
 import org.slf4j.LoggerFactory ;
 import org.springframework.beans.factory.annotation.Autowired ;
 import org.springframework.cache.annotation.Cacheable ;
 
-import com.fasterxml.jackson.databind.ObjectMapper ;
-import com.fasterxml.jackson.databind.node.ArrayNode ;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory ;
-import com.fasterxml.jackson.databind.node.ObjectNode ;
 import com.mongodb.MongoClient ;
 import com.mongodb.ReadPreference ;
 import com.mongodb.client.FindIterable ;
@@ -55,11 +57,24 @@ public class MetricsDataReader {
 	@Autowired
 	CsapMicroMeter.Utilities metricUtilities ;
 
+	// padding starts 10 minutes after the latest report
+	final static long LATEST_PADDING_OFFSET_MS = 10 * 60 * 1000 ;
+
+	// rollup gaps: samples are uploaded every 30 minutes, allowing for late uploads
+	final static long MAX_UPLOAD_INTERVAL_MS = 60 * 60 * 1000 ;
+	final static int MAX_RAW_RANGES = 50 ;
+
 	@Inject
 	private MongoClient mongoClient ;
 
 	@Inject
-	private ObjectMapper jsonMapper ;
+	private MetricsRollups metricsRollups ;
+
+	@Inject
+	private MetricsIntervals metricsIntervals ;
+
+	@Inject
+	private MetricsHotTail metricsHotTail ;
 
 	@Cacheable ( value = CsapEventsApplication.NUM_DAYS_CACHE )
 	public long retrieveNumDaysOfMetrics ( String hostName ) {
@@ -148,276 +163,402 @@ public class MetricsDataReader {
 	}
 
 	// Significant objects stored in memory DO NOT CACHE PARSED OBJECTS
-	public ObjectNode findAndMergeMetricData (
-												String hostName ,
-												String metricId ,
-												int numberOfDaysToRetreive ,
-												int numDaysOffsetFromToday ,
-												String appId ,
-												String life ,
-												boolean showDaysFrom ,
-												boolean padLatest ,
-												List<String> metricAttributeNames ) {
-
-		var mergedGraphReport = jsonMapper.createObjectNode( ) ;
-
-		var mongoDocumentCursor = getMetricsData( hostName, metricId, numberOfDaysToRetreive, numDaysOffsetFromToday,
-				showDaysFrom ) ;
+	//
+	// Performance: documents are decoded directly from raw bson into primitive
+	// columns - no intermediate Document, String or JsonNode per value
+	//
+	public MetricsTimeSeries findAndMergeMetricData (
+														String hostName ,
+														String metricId ,
+														int numberOfDaysToRetreive ,
+														int numDaysOffsetFromToday ,
+														String appId ,
+														String life ,
+														boolean showDaysFrom ,
+														boolean padLatest ,
+														List<String> metricAttributeNames ,
+														int maxPoints ) {
+
+		var reportTimeRange = reportTimeRange( numberOfDaysToRetreive, numDaysOffsetFromToday, showDaysFrom ) ;
+		long rangeSeconds = TimeUnit.MILLISECONDS.toSeconds(
+				reportTimeRange[1].getTime( ) - reportTimeRange[0].getTime( ) ) ;
+		int rollupResolution = metricsRollups.selectResolution( metricId, rangeSeconds, maxPoints ) ;
+
+		if ( rollupResolution > 0 ) {
+
+			var rollupData = metricsRollups.findRollupData( hostName, metricId, rollupResolution,
+					reportTimeRange[0], reportTimeRange[1], metricAttributeNames ) ;
+
+			var missingRanges = MetricsRollups.missingRanges( rollupData, rollupResolution,
+					reportTimeRange[0], reportTimeRange[1] ) ;
+
+			if ( missingRanges.isEmpty( ) ) {
+
+				return rollupData ;
+
+			}
+
+			logger.debug( "{}:{} rollup {} missing {} ranges, filling from raw data",
+					hostName, metricId, rollupResolution, missingRanges.size( ) ) ;
+
+			var rawData = new MetricsTimeSeries( metricAttributeNames, 128 ) ;
+			mergeDocuments(
+					getRawMetricsData( hostName, metricId, missingRanges, rollupResolution, metricAttributeNames ),
+					metricAttributeNames, rawData ) ;
+
+			return MetricsRollups.fillMissingBuckets( rollupData, rawData, rollupResolution, metricAttributeNames ) ;
+
+		}
 
 		int capacity = getListCapacity( metricId, numberOfDaysToRetreive ) ;
-		Date latestReportDate = null ;
+
+		var mergedGraphReport = new MetricsTimeSeries( metricAttributeNames, capacity ) ;
 
 		logger.debug( "{}:{} results filter: {}", hostName, metricId, metricAttributeNames ) ;
 
-		var numOfAttributesPadded = 0 ;
-		var misMatchAttributeName = "" ;
+		// current day: recent documents from memory, only older documents from mongo.
+		// Only enabled when this instance receives every upload
+		MetricsHotTail.HotTailRead hotTailRead = null ;
 
-		while ( mongoDocumentCursor.hasNext( ) ) {
+		if ( numDaysOffsetFromToday <= 0 ) {
 
-			Document dbObject = mongoDocumentCursor.next( ) ;
+			hotTailRead = metricsHotTail.read( hostName, metricId, reportTimeRange[0], reportTimeRange[1],
+					metricAttributeNames, mergedGraphReport, false ) ;
 
-			if ( null == latestReportDate ) {
+		}
 
-				Document createdOn = (Document) dbObject.get( "createdOn" ) ;
-				latestReportDate = (Date) createdOn.get( "mongoDate" ) ;
+		MergeResult mergeResult ;
 
-			}
+		if ( hotTailRead == null ) {
 
-			Document dataObject = (Document) dbObject.get( DATA ) ;
-			var collectedAttributeValues = new HashMap<String, ArrayNode>( ) ;
+			var mongoDocumentCursor = getRawMetricsData( hostName, metricId, numberOfDaysToRetreive,
+					numDaysOffsetFromToday, showDaysFrom, metricAttributeNames ) ;
 
-			for ( var attributeName : metricAttributeNames ) {
+			mergeResult = mergeDocuments( mongoDocumentCursor, metricAttributeNames, mergedGraphReport ) ;
 
-				List<?> attributeData = (List<?>) dataObject.get( attributeName ) ;
+		} else if ( ! hotTailRead.getCompleteSince( ).before( reportTimeRange[0] ) ) {
 
-				logger.debug( "attribute: {} , atttributeDataObject: {}", attributeName, attributeData ) ;
+			var olderDocumentsCursor = getRawMetricsData( hostName, metricId, reportTimeRange[0],
+					hotTailRead.getCompleteSince( ), metricAttributeNames ) ;
 
-				if ( null != attributeData ) {
+			mergeResult = mergeDocuments( olderDocumentsCursor, metricAttributeNames, mergedGraphReport ) ;
 
-					if ( attributeName.equals( "timeStamp" ) || attributeName.contains( "threadCount" )
-							|| attributeName.contains( "Cpu" ) ) {
+			if ( hotTailRead.getLatestReportDate( ) != null ) {
 
-						// logger.info( "Merging {}: {}", attributeName, attributeData.size() ) ;
-					}
+				mergeResult.latestReportDate = hotTailRead.getLatestReportDate( ) ;
 
-					try {
+			}
 
-						var attributesValuesAsJson = (ArrayNode) jsonMapper.readTree( attributeData.toString( ) ) ;
-						collectedAttributeValues.put( attributeName, attributesValuesAsJson ) ;
+		} else {
 
-					} catch ( IOException e ) {
+			mergeResult = new MergeResult( ) ;
+			mergeResult.latestReportDate = hotTailRead.getLatestReportDate( ) ;
 
-						logger.warn( "Failed parsing mongo data into json: " ) ;
+		}
 
-					}
+		if ( mergeResult.numOfAttributesPadded > 0 ) {
 
-				}
+			logger.warn( "MisMatch data: {} :  {} , number of documents padded: {}, last attribute Mismatch: {} ",
+					hostName, metricId, mergeResult.numOfAttributesPadded, mergeResult.misMatchAttributeName ) ;
+
+		}
+
+		if ( padLatest ) {
+
+			if ( numDaysOffsetFromToday == 0 && StringUtils.isNotEmpty( life ) ) {
+
+				padLatestWithShortestCollectionInterval( appId, life, metricId, hostName,
+						mergeResult.latestReportDate,
+						metricAttributeNames,
+						mergedGraphReport ) ;
+
+			} else {
+
+				logger.warn( "Padding is being skipped because lifecycle was empty :: {}", life ) ;
 
 			}
 
-			var timeStampCount = collectedAttributeValues.get( "timeStamp" ).size( ) ;
+		}
 
-			for ( var attributeName : metricAttributeNames ) {
+		return mergedGraphReport ;
 
-				var collectedValues = collectedAttributeValues.get( attributeName ) ;
+	}
 
-				if ( collectedValues == null ) {
+	static class MergeResult {
 
-					collectedValues = jsonMapper.createArrayNode( ) ;
+		Date latestReportDate = null ;
+		int numOfAttributesPadded = 0 ;
+		String misMatchAttributeName = "" ;
 
-				}
+	}
 
-				if ( timeStampCount != collectedValues.size( ) ) {
+	//
+	// Appends each document's data arrays to the merged series. Attributes
+	// missing or shorter than timeStamp in a document are padded with 0
+	//
+	private MergeResult mergeDocuments (
+											MongoCursor<RawBsonDocument> mongoDocumentCursor ,
+											List<String> metricAttributeNames ,
+											MetricsTimeSeries mergedGraphReport ) {
 
-					numOfAttributesPadded++ ;
-					misMatchAttributeName = attributeName ;
+		var mergeResult = new MergeResult( ) ;
+		var attributesRequested = new HashSet<>( metricAttributeNames ) ;
 
-					while ( collectedValues.size( ) < timeStampCount ) {
+		try {
 
-						collectedValues.add( 0 ) ;
+			while ( mongoDocumentCursor.hasNext( ) ) {
 
-					}
+				RawBsonDocument rawDocument = mongoDocumentCursor.next( ) ;
+				var collectedAttributeValues = new HashMap<String, MetricColumn>( ) ;
+				Date reportDate = decodeMetricsDocument( rawDocument, attributesRequested, collectedAttributeValues ) ;
+
+				if ( null == mergeResult.latestReportDate ) {
+
+					mergeResult.latestReportDate = reportDate ;
 
 				}
 
-				var mergedData = mergedGraphReport.path( attributeName ) ;
+				var timeStamps = collectedAttributeValues.get( MetricsTimeSeries.TIME_STAMP ) ;
+				var timeStampCount = ( timeStamps == null ) ? 0 : timeStamps.size( ) ;
+
+				for ( var attributeName : metricAttributeNames ) {
+
+					var collectedValues = collectedAttributeValues.get( attributeName ) ;
+					var valueCount = ( collectedValues == null ) ? 0 : collectedValues.size( ) ;
 
-				if ( mergedData.isMissingNode( ) ) {
+					if ( timeStampCount != valueCount ) {
 
-					mergedData = JsonNodeFactory.instance.arrayNode( capacity ) ;
-					mergedGraphReport.set( attributeName, mergedData ) ;
+						mergeResult.numOfAttributesPadded++ ;
+						mergeResult.misMatchAttributeName = attributeName ;
+
+					}
 
 				}
 
-				( (ArrayNode) mergedData ).addAll( collectedValues ) ;
+				mergedGraphReport.append( collectedAttributeValues ) ;
 
 			}
 
-		}
+		} finally {
 
-		mongoDocumentCursor.close( ) ;
+			mongoDocumentCursor.close( ) ;
 
-		if ( numOfAttributesPadded > 0 ) {
+		}
 
-			logger.warn( "MisMatch data: {} :  {} , number of documents padded: {}, last attribute Mismatch: {} ",
-					hostName, metricId, numOfAttributesPadded, misMatchAttributeName ) ;
+		return mergeResult ;
 
-		}
-		// logger.info( "graphData: {}", graphData );
+	}
 
-		if ( padLatest ) {
+	//
+	// streams createdOn.mongoDate and requested data.<attribute> arrays; all
+	// other fields are skipped without being decoded
+	//
+	static Date decodeMetricsDocument (
+											RawBsonDocument rawDocument ,
+											Set<String> attributesRequested ,
+											Map<String, MetricColumn> collectedAttributeValues ) {
 
-			if ( numDaysOffsetFromToday == 0 && StringUtils.isNotEmpty( life ) ) {
+		Date reportDate = null ;
 
-				padLatestWithShortestCollectionInterval( appId, life, metricId, hostName, latestReportDate,
-						metricAttributeNames,
-						capacity,
-						mergedGraphReport ) ;
+		try ( BsonBinaryReader reader = new BsonBinaryReader( rawDocument.getByteBuffer( ).asNIO( ) ) ) {
 
-			} else {
+			reader.readStartDocument( ) ;
 
-				logger.warn( "Padding is being skipped because lifecycle was empty :: {}", life ) ;
+			while ( reader.readBsonType( ) != BsonType.END_OF_DOCUMENT ) {
 
-			}
+				String fieldName = reader.readName( ) ;
 
-		}
+				if ( CREATED_ON.equals( fieldName ) && reader.getCurrentBsonType( ) == BsonType.DOCUMENT ) {
 
-		return mergedGraphReport ;
+					reader.readStartDocument( ) ;
 
-	}
+					while ( reader.readBsonType( ) != BsonType.END_OF_DOCUMENT ) {
 
-	// For performance - only 30 second data is uploaded every 30 minutes
-	// so we append it to other collections
-	private void padLatestWithShortestCollectionInterval (
-															String appId ,
-															String life ,
-															String requestedMetricId ,
-															String hostName ,
-															Date latestReportDate ,
-															List<String> metricAttributeNames ,
-															int capacity ,
-															ObjectNode mergedGraphReport ) {
+						String createdOnField = reader.readName( ) ;
 
-		Map<String, List> metricToIntervalsAvailable = getMetricsInterval( appId, life ) ;
-		String smallestMetricIntervalId = getSmallestIntervalId( metricToIntervalsAvailable, requestedMetricId ) ;
-		logger.debug( "requestedMetricId: {}, smallestMetricIntervalId: {}, metricToIntervalsAvailable: {}",
-				requestedMetricId, smallestMetricIntervalId, metricToIntervalsAvailable ) ;
+						if ( "mongoDate".equals( createdOnField )
+								&& reader.getCurrentBsonType( ) == BsonType.DATE_TIME ) {
 
-		if ( isIntervalSmallest( metricToIntervalsAvailable, requestedMetricId ) ) {
+							reportDate = new Date( reader.readDateTime( ) ) ;
 
-			// no need to aggregate - selected interval already has the latest data
-			return ;
+						} else {
 
-		}
+							reader.skipValue( ) ;
 
-		// now get lowest interval report from latest report date
-		MongoCursor<Document> currentDaycursor = getMetricsData( hostName, smallestMetricIntervalId,
-				latestReportDate ) ;
-		Map<String, List> currentDayGraphData = new HashMap<>( ) ;
+						}
+
+					}
 
-		while ( currentDaycursor.hasNext( ) ) {
+					reader.readEndDocument( ) ;
 
-			Document dbObject = currentDaycursor.next( ) ;
-			Document createdOn = (Document) dbObject.get( "createdOn" ) ;
-			Date reportDate = (Date) createdOn.get( "mongoDate" ) ;
-			Document dataObject = (Document) dbObject.get( DATA ) ;
+				} else if ( DATA.equals( fieldName ) && reader.getCurrentBsonType( ) == BsonType.DOCUMENT ) {
 
-			// logger.info( "Searching {} ", dbObject.toJson() ) ;
+					reader.readStartDocument( ) ;
 
-			for ( var attributeName : metricAttributeNames ) {
+					while ( reader.readBsonType( ) != BsonType.END_OF_DOCUMENT ) {
 
-				List atttributeDataObject = (List) dataObject.get( attributeName ) ;
+						String attributeName = reader.readName( ) ;
 
-				if ( null != atttributeDataObject ) {
+						if ( attributesRequested.contains( attributeName )
+								&& reader.getCurrentBsonType( ) == BsonType.ARRAY ) {
 
-					if ( null != currentDayGraphData.get( attributeName ) ) {
+							collectedAttributeValues.put( attributeName, readColumn( reader ) ) ;
 
-						currentDayGraphData.get( attributeName ).addAll( atttributeDataObject ) ;
+						} else {
 
-					} else {
+							reader.skipValue( ) ;
 
-						ArrayList dataList = new ArrayList( ) ;
-						dataList.ensureCapacity( capacity ) ;
-						dataList.addAll( atttributeDataObject ) ;
-						currentDayGraphData.put( attributeName, dataList ) ;
+						}
 
 					}
 
+					reader.readEndDocument( ) ;
+
+				} else {
+
+					reader.skipValue( ) ;
+
 				}
 
 			}
 
+			reader.readEndDocument( ) ;
+
 		}
 
-		if ( ! currentDayGraphData.isEmpty( ) ) {
+		return reportDate ;
 
-			var numOfAttributesPadded = 0 ;
-			var misMatchAttributeName = "" ;
+	}
 
-			logger.debug( "Updating graphs with: {}", currentDayGraphData.keySet( ) ) ;
+	private static MetricColumn readColumn ( BsonBinaryReader reader ) {
 
-			var latestData = jsonMapper.createObjectNode( ) ;
+		var column = new MetricColumn( 128 ) ;
 
-			for ( String key : currentDayGraphData.keySet( ) ) {
+		reader.readStartArray( ) ;
 
-				try {
+		while ( reader.readBsonType( ) != BsonType.END_OF_DOCUMENT ) {
 
-					var attributesValuesAsJson = (ArrayNode) jsonMapper.readTree( currentDayGraphData.get( key )
-							.toString( ) ) ;
-					latestData.set( key, attributesValuesAsJson ) ;
+			switch ( reader.getCurrentBsonType( ) ) {
 
-				} catch ( IOException e ) {
+			case INT32:
+				column.add( reader.readInt32( ) ) ;
+				break ;
 
-					logger.warn( "Failed parsing mongo data into json: " ) ;
+			case INT64:
+				column.add( reader.readInt64( ) ) ;
+				break ;
 
-				}
+			case DOUBLE:
+				column.addDecimal( reader.readDouble( ) ) ;
+				break ;
 
-			}
+			case DECIMAL128:
+				column.addDecimal( reader.readDecimal128( ).bigDecimalValue( ).doubleValue( ) ) ;
+				break ;
 
-			var timeStampCount = latestData.path( "timeStamp" ).size( ) ;
-			logger.debug( "Adding {} new values", timeStampCount ) ;
+			case STRING:
+				// agents send timeStamp as strings
+				var parsedValue = NumberUtils.toDouble( reader.readString( ), 0 ) ;
 
-			for ( var attributeName : metricAttributeNames ) {
+				if ( parsedValue == Math.rint( parsedValue ) ) {
 
-				var collectedValues = latestData.path( attributeName ) ;
+					column.add( parsedValue ) ;
 
-				if ( ! collectedValues.isArray( ) ) {
+				} else {
 
-					// requested attribute is NOT in 30 second collection
-					collectedValues = jsonMapper.createArrayNode( ) ;
+					column.addDecimal( parsedValue ) ;
 
 				}
 
-				if ( timeStampCount != collectedValues.size( ) ) {
+				break ;
 
-					numOfAttributesPadded++ ;
-					misMatchAttributeName = attributeName ;
+			case BOOLEAN:
+				column.add( reader.readBoolean( ) ? 1 : 0 ) ;
+				break ;
 
-					while ( collectedValues.size( ) < timeStampCount ) {
+			case NULL:
+				reader.readNull( ) ;
+				column.addMissing( ) ;
+				break ;
 
-						( (ArrayNode) collectedValues ).add( 0 ) ;
+			default:
+				reader.skipValue( ) ;
+				column.add( 0 ) ;
 
-					}
+			}
 
-				}
+		}
 
-				var mergedAttributeValues = mergedGraphReport.path( attributeName ) ;
+		reader.readEndArray( ) ;
 
-				if ( mergedAttributeValues.isArray( ) ) {
+		return column ;
 
-					var combinedData = JsonNodeFactory.instance.arrayNode( capacity + collectedValues.size( ) ) ;
-					combinedData.addAll( (ArrayNode) collectedValues ) ;
-					combinedData.addAll( (ArrayNode) mergedAttributeValues ) ;
-					mergedGraphReport.set( attributeName, combinedData ) ;
+	}
 
-				}
+	// For performance - only 30 second data is uploaded every 30 minutes
+	// so we append it to other collections
+	private void padLatestWithShortestCollectionInterval (
+															String appId ,
+															String life ,
+															String requestedMetricId ,
+															String hostName ,
+															Date latestReportDate ,
+															List<String> metricAttributeNames ,
+															MetricsTimeSeries mergedGraphReport ) {
+
+		Map<String, List> metricToIntervalsAvailable = metricsIntervals.getIntervals( appId, life ) ;
+		String smallestMetricIntervalId = getSmallestIntervalId( metricToIntervalsAvailable, requestedMetricId ) ;
+		logger.debug( "requestedMetricId: {}, smallestMetricIntervalId: {}, metricToIntervalsAvailable: {}",
+				requestedMetricId, smallestMetricIntervalId, metricToIntervalsAvailable ) ;
+
+		if ( isIntervalSmallest( metricToIntervalsAvailable, requestedMetricId ) ) {
+
+			// no need to aggregate - selected interval already has the latest data
+			return ;
+
+		}
+
+		// now get lowest interval report from latest report date
+		var latestData = new MetricsTimeSeries( metricAttributeNames, 128 ) ;
+
+		// ingested documents kept in memory, falling back to mongo when incomplete
+		MergeResult mergeResult = null ;
+
+		if ( latestReportDate != null ) {
+
+			var hotTailRead = metricsHotTail.read( hostName, smallestMetricIntervalId,
+					new Date( latestReportDate.getTime( ) + LATEST_PADDING_OFFSET_MS + 1 ), new Date( ),
+					metricAttributeNames, latestData, true ) ;
+
+			if ( hotTailRead != null ) {
+
+				mergeResult = new MergeResult( ) ;
 
 			}
 
-			if ( numOfAttributesPadded > 0 ) {
+		}
+
+		if ( mergeResult == null ) {
+
+			var currentDaycursor = getRawMetricsData( hostName, smallestMetricIntervalId, latestReportDate,
+					metricAttributeNames ) ;
+
+			// requested attributes NOT in 30 second collection are padded
+			mergeResult = mergeDocuments( currentDaycursor, metricAttributeNames, latestData ) ;
+
+		}
+
+		if ( ! latestData.isEmpty( ) && ! mergedGraphReport.isEmpty( ) ) {
+
+			logger.debug( "Adding {} new values", latestData.length( ) ) ;
+
+			mergedGraphReport.prepend( latestData ) ;
+
+			if ( mergeResult.numOfAttributesPadded > 0 ) {
 
 				logger.warn( "MisMatch data: {} :  {} , number of documents padded: {}, last attribute Mismatch: {} ",
-						hostName, requestedMetricId, numOfAttributesPadded, misMatchAttributeName ) ;
+						hostName, requestedMetricId, mergeResult.numOfAttributesPadded,
+						mergeResult.misMatchAttributeName ) ;
 
 			}
 
@@ -485,115 +626,160 @@ public class MetricsDataReader {
 
 	}
 
-	private Map<String, List> getMetricsInterval ( String appId , String life ) {
+	private int getListCapacity ( String id , int numberOfDays ) {
 
-		Document query = new Document( ) ;
-		query
-				.append( "appId", appId )
-				.append( "lifecycle", life )
-				.append( "category", EventJsonConstants.CSAP_MODEL_SUMMAY_CATEGORY ) ;
+		int capacity = 300 ;
+		String[] idArr = id.split( "_" ) ;
 
-		Document sortOrder = new Document( ) ;
-		sortOrder.append( CREATED_ON + "." + LAST_UPDATED_ON, -1 ) ;
-		Document dbObj = getMongoEventCollection( ).find( query )
-				.sort( sortOrder )
-				.limit( 1 )
-				.projection( fields( include( "data.packages" ), excludeId( ) ) )
-				.first( ) ;
+		if ( id.length( ) > 1 ) {
 
-		Map<String, List> metricsIntervals = new HashMap<>( ) ;
+			capacity = ( ( 24 * 60 * 60 ) * numberOfDays ) / ( Integer.parseInt( idArr[1] ) ) ;
 
-		if ( null != dbObj ) {
+		}
 
-			Document dataObj = (Document) dbObj.get( "data" ) ;
-			List packages = (List) dataObj.get( "packages" ) ;
+		capacity++ ;
+		return capacity ;
 
-			for ( Object pack : packages ) {
+	}
 
-				Document dbPackObj = (Document) pack ;
-				Document metricsObj = (Document) dbPackObj.get( "metrics" ) ;
+	private MongoCursor<RawBsonDocument> getRawMetricsData (
+															String hostName ,
+															String id ,
+															Date startDate ,
+															List<String> metricAttributeNames ) {
 
-				if ( null != metricsObj ) {
+		Document query = new Document( ) ;
+		query.append( ATTRIBUTES + "." + HOST_NAME, hostName ) ;
+		query.append( ATTRIBUTES + "." + ID, id ) ;
 
-					Set<String> keySet = metricsObj.keySet( ) ;
+		if ( null == startDate ) {
 
-					for ( String key : keySet ) {
+			startDate = Calendar.getInstance( ).getTime( ) ;
 
-						List metricsArray = (List) metricsObj.get( key ) ;
-						metricsIntervals.put( key, metricsArray ) ;
+		}
 
-					}
+		// copied: the report date may be shared (hot tail entries)
+		var afterDate = new Date( startDate.getTime( ) + LATEST_PADDING_OFFSET_MS ) ;
+		query.append( CREATED_ON + "." + LAST_UPDATED_ON, new Document( "$gt", afterDate ) ) ;
+		Document sortOrder = new Document( ) ;
+		sortOrder.append( CREATED_ON + "." + LAST_UPDATED_ON, -1 ) ;
+		FindIterable<RawBsonDocument> findResult = getRawMetricsMongoCollection( ).find( query )
+				.sort( sortOrder )
+				.projection( metricsProjection( metricAttributeNames ) ) ;
+		return findResult.iterator( ) ;
 
-				}
+	}
 
-			}
+	// documents updated from start through end, newest first
+	private MongoCursor<RawBsonDocument> getRawMetricsData (
+															String hostName ,
+															String id ,
+															Date start ,
+															Date end ,
+															List<String> metricAttributeNames ) {
 
-		}
+		Document query = new Document( ) ;
+		query.append( ATTRIBUTES + "." + HOST_NAME, hostName ) ;
+		query.append( ATTRIBUTES + "." + ID, id ) ;
+		query.append( CREATED_ON + "." + LAST_UPDATED_ON,
+				new Document( "$gte", start ).append( "$lte", end ) ) ;
 
-		logger.debug( "Metrics intervals {} ", metricsIntervals ) ;
-		return metricsIntervals ;
+		FindIterable<RawBsonDocument> findResult = getRawMetricsMongoCollection( ).find( query )
+				.sort( new Document( CREATED_ON + "." + LAST_UPDATED_ON, -1 ) )
+				.projection( metricsProjection( metricAttributeNames ) ) ;
+		return findResult.iterator( ) ;
 
 	}
 
-	private int getListCapacity ( String id , int numberOfDays ) {
+	//
+	// documents that can hold samples in the ranges: a document is updated after
+	// its samples are collected, so each range is extended by a bucket and the
+	// upload interval. Many ranges (host restarts) are read as one
+	//
+	private MongoCursor<RawBsonDocument> getRawMetricsData (
+															String hostName ,
+															String id ,
+															List<long[]> ranges ,
+															int resolution ,
+															List<String> metricAttributeNames ) {
 
-		int capacity = 300 ;
-		String[] idArr = id.split( "_" ) ;
+		long extendMs = TimeUnit.SECONDS.toMillis( resolution ) + MAX_UPLOAD_INTERVAL_MS ;
+		var updatedRanges = new ArrayList<Document>( ) ;
 
-		if ( id.length( ) > 1 ) {
+		if ( ranges.size( ) > MAX_RAW_RANGES ) {
 
-			capacity = ( ( 24 * 60 * 60 ) * numberOfDays ) / ( Integer.parseInt( idArr[1] ) ) ;
+			ranges = List.of( new long[] {
+					ranges.get( 0 )[0], ranges.get( ranges.size( ) - 1 )[1]
+			} ) ;
 
 		}
 
-		capacity++ ;
-		return capacity ;
+		for ( var range : ranges ) {
 
-	}
+			updatedRanges.add( new Document( CREATED_ON + "." + LAST_UPDATED_ON,
+					new Document( "$gte", new Date( range[0] ) ).append( "$lt", new Date( range[1] + extendMs ) ) ) ) ;
 
-	private MongoCursor<Document> getMetricsData ( String hostName , String id , Date startDate ) {
+		}
 
 		Document query = new Document( ) ;
 		query.append( ATTRIBUTES + "." + HOST_NAME, hostName ) ;
 		query.append( ATTRIBUTES + "." + ID, id ) ;
+		query.append( "$or", updatedRanges ) ;
 
-		if ( null == startDate ) {
-
-			startDate = Calendar.getInstance( ).getTime( ) ;
-
-		}
-
-		long startTime = startDate.getTime( ) + ( 10 * 60 * 1000 ) ;
-		startDate.setTime( startTime ) ;
-		query.append( CREATED_ON + "." + LAST_UPDATED_ON, new Document( "$gt", startDate ) ) ;
-		Document sortOrder = new Document( ) ;
-		sortOrder.append( CREATED_ON + "." + LAST_UPDATED_ON, -1 ) ;
-		FindIterable<Document> findResult = getMetricsMongoCollection( ).find( query )
-				.sort( sortOrder )
-				.projection( fields( include( "data", "createdOn" ), excludeId( ) ) ) ;
+		FindIterable<RawBsonDocument> findResult = getRawMetricsMongoCollection( ).find( query )
+				.sort( new Document( CREATED_ON + "." + LAST_UPDATED_ON, -1 ) )
+				.projection( metricsProjection( metricAttributeNames ) ) ;
 		return findResult.iterator( ) ;
 
 	}
 
-	public MongoCursor<Document> getMetricsData (
-													String hostName ,
-													String id ,
-													int numberOfDays ,
-													int numDaysOffsetFromToday ,
-													boolean showDaysFrom ) {
+	public MongoCursor<RawBsonDocument> getRawMetricsData (
+															String hostName ,
+															String id ,
+															int numberOfDays ,
+															int numDaysOffsetFromToday ,
+															boolean showDaysFrom ,
+															List<String> metricAttributeNames ) {
 
 		Document query = constructQuery( hostName, id, numberOfDays, numDaysOffsetFromToday, showDaysFrom ) ;
 
 		logger.debug( "loading metrics data: {} ", query ) ;
 		Document sortOrder = new Document( ) ;
 		sortOrder.append( CREATED_ON + "." + LAST_UPDATED_ON, -1 ) ;
-		FindIterable<Document> findResult = getMetricsMongoCollection( ).find( query )
+		FindIterable<RawBsonDocument> findResult = getRawMetricsMongoCollection( ).find( query )
 				.sort( sortOrder )
-				.projection( fields( include( "data", "createdOn" ), excludeId( ) ) ) ;
+				.projection( metricsProjection( metricAttributeNames ) ) ;
 		return findResult.iterator( ) ;
 
 	}
 
+	//
+	// Only the requested data arrays are sent by mongo: host and service documents
+	// hold every attribute collected, most reports use a few of them. Empty names
+	// (or names that are not plain field names) load the full data document
+	//
+	static Bson metricsProjection ( List<String> metricAttributeNames ) {
+
+		if ( metricAttributeNames == null || metricAttributeNames.isEmpty( )
+				|| metricAttributeNames.stream( ).anyMatch( name -> name.contains( "." ) || name.startsWith( "$" ) ) ) {
+
+			return fields( include( DATA, CREATED_ON ), excludeId( ) ) ;
+
+		}
+
+		var fieldsToInclude = new ArrayList<String>( ) ;
+		fieldsToInclude.add( CREATED_ON ) ;
+		fieldsToInclude.add( DATA + "." + MetricsTimeSeries.TIME_STAMP ) ;
+
+		metricAttributeNames.stream( )
+				.filter( name -> ! name.equals( MetricsTimeSeries.TIME_STAMP ) )
+				.map( name -> DATA + "." + name )
+				.forEach( fieldsToInclude::add ) ;
+
+		return fields( include( fieldsToInclude ), excludeId( ) ) ;
+
+	}
+
 	private Document constructQuery (
 										String hostName ,
 										String id ,
@@ -605,6 +791,18 @@ public class MetricsDataReader {
 		query.append( ATTRIBUTES + "." + HOST_NAME, hostName ) ;
 		query.append( ATTRIBUTES + "." + ID, id ) ;
 
+		var reportTimeRange = reportTimeRange( numDays, numDaysOffsetFromToday, showDaysFrom ) ;
+
+		query.append( CREATED_ON + "." + LAST_UPDATED_ON,
+				new Document( "$gte", reportTimeRange[0] ).append( "$lte", reportTimeRange[1] ) ) ;
+		// logger.debug("Query::"+query);
+		return query ;
+
+	}
+
+	// start and end of report, shared by raw and rollup queries
+	private Date[] reportTimeRange ( int numDays , int numDaysOffsetFromToday , boolean showDaysFrom ) {
+
 		Calendar startTime = Calendar.getInstance( ) ;
 		Calendar endTime = Calendar.getInstance( ) ;
 
@@ -647,10 +845,9 @@ public class MetricsDataReader {
 
 		}
 
-		query.append( CREATED_ON + "." + LAST_UPDATED_ON,
-				new Document( "$gte", startTime.getTime( ) ).append( "$lte", endTime.getTime( ) ) ) ;
-		// logger.debug("Query::"+query);
-		return query ;
+		return new Date[] {
+				startTime.getTime( ), endTime.getTime( )
+		} ;
 
 	}
 
@@ -745,6 +942,15 @@ public class MetricsDataReader {
 
 	}
 
+	// metrics documents are decoded lazily from the raw bytes
+	private MongoCollection<RawBsonDocument> getRawMetricsMongoCollection ( ) {
+
+		return mongoClient.getDatabase( METRICS_DB_NAME )
+				.getCollection( METRICS_DATA_COLLECTION_NAME, RawBsonDocument.class )
+				.withReadPreference( ReadPreference.secondaryPreferred( ) ) ;
+
+	}
+
 	private MongoCollection<Document> getMetricsAttributeMongoCollection ( ) {
 
 		return mongoClient.getDatabase( METRICS_DB_NAME )
@@ -0,0 +1,403 @@
+package org.csap.events.db ;
+
+import static org.csap.events.util.MetricsJsonConstants.ATTRIBUTES ;
+import static org.csap.events.util.MetricsJsonConstants.CREATED_ON ;
+import static org.csap.events.util.MetricsJsonConstants.DATA ;
+import static org.csap.events.util.MetricsJsonConstants.HOST_NAME ;
+import static org.csap.events.util.MetricsJsonConstants.ID ;
+import static org.csap.events.util.MetricsJsonConstants.LAST_UPDATED_ON ;
+
+import java.util.ArrayDeque ;
+import java.util.Comparator ;
+import java.util.Date ;
+import java.util.HashMap ;
+import java.util.HashSet ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.TimeUnit ;
+import java.util.concurrent.atomic.AtomicLong ;
+
+import org.bson.Document ;
+import org.bson.RawBsonDocument ;
+import org.bson.codecs.DocumentCodec ;
+import org.csap.events.CsapEventsApplication ;
+import org.csap.events.util.MetricColumn ;
+import org.csap.events.util.MetricsTimeSeries ;
+import org.csap.helpers.CSAP ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.stereotype.Service ;
+
+/**
+ *
+ * Recent metrics per host and collection id, kept as primitive columns as they
+ * are ingested, so current day reports only query mongo for older documents.
+ *
+ * - each series keeps the last hours of documents, newest first, and the time
+ * since which it holds every document: reads never mix a partial window with
+ * mongo results
+ *
+ * - total memory is bounded by maxMb: the least recently used series are
+ * dropped first
+ *
+ * - series start empty after a restart: requests fall back to mongo for
+ * documents before the first one ingested
+ *
+ * - series only see documents ingested by this instance: documents written by
+ * other instances (or directly to mongo) after a series starts are not read.
+ * Disabled by default: only enable when a single instance receives every
+ * metrics upload
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".metrics-hot-tail" )
+public class MetricsHotTail {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	private boolean enabled = false ;
+	private int hours = 6 ;
+	private int maxMb = 256 ;
+
+	static class Entry {
+
+		final long updatedOn ;
+		final Date reportDate ;
+		final Map<String, MetricColumn> columns ;
+		final long bytes ;
+
+		Entry ( long updatedOn, Date reportDate, Map<String, MetricColumn> columns ) {
+
+			this.updatedOn = updatedOn ;
+			this.reportDate = reportDate ;
+			this.columns = columns ;
+			this.bytes = 64 + columns.values( ).stream( ).mapToLong( column -> 48 + column.size( ) * 8L ).sum( ) ;
+
+		}
+	}
+
+	static class Series {
+
+		// newest first
+		final ArrayDeque<Entry> entries = new ArrayDeque<>( ) ;
+
+		// every document updated after this time is in entries
+		long completeSince ;
+		boolean evicted = false ;
+		volatile long lastAccess = System.currentTimeMillis( ) ;
+
+		Series ( long firstUpdatedOn ) {
+
+			// documents with the same time may have been ingested earlier
+			this.completeSince = firstUpdatedOn - 1 ;
+
+		}
+	}
+
+	/**
+	 *
+	 * completeSince: documents updated at or before it were not read from memory
+	 */
+	public static class HotTailRead {
+
+		final long completeSince ;
+		final Date latestReportDate ;
+		final int documents ;
+
+		HotTailRead ( long completeSince, Date latestReportDate, int documents ) {
+
+			this.completeSince = completeSince ;
+			this.latestReportDate = latestReportDate ;
+			this.documents = documents ;
+
+		}
+
+		public Date getCompleteSince ( ) {
+
+			return new Date( completeSince ) ;
+
+		}
+
+		public Date getLatestReportDate ( ) {
+
+			return latestReportDate ;
+
+		}
+
+		public int getDocuments ( ) {
+
+			return documents ;
+
+		}
+
+	}
+
+	private Map<String, Series> seriesByHostAndId = new ConcurrentHashMap<>( ) ;
+	private AtomicLong totalBytes = new AtomicLong( ) ;
+
+	public void metricsDataIngested ( Document dataDocument ) {
+
+		if ( ! isEnabled( ) ) {
+
+			return ;
+
+		}
+
+		var attributes = dataDocument.get( ATTRIBUTES, Document.class ) ;
+		var createdOn = dataDocument.get( CREATED_ON, Document.class ) ;
+		var data = dataDocument.get( DATA, Document.class ) ;
+
+		if ( attributes == null || createdOn == null || data == null
+				|| ! ( createdOn.get( LAST_UPDATED_ON ) instanceof Date ) ) {
+
+			return ;
+
+		}
+
+		try {
+
+			var columns = new HashMap<String, MetricColumn>( ) ;
+			var reportDate = MetricsDataReader.decodeMetricsDocument(
+					new RawBsonDocument( dataDocument, new DocumentCodec( ) ),
+					new HashSet<>( data.keySet( ) ),
+					columns ) ;
+
+			columns.values( ).forEach( MetricColumn::trimToSize ) ;
+
+			long updatedOn = createdOn.getDate( LAST_UPDATED_ON ).getTime( ) ;
+			var entry = new Entry( updatedOn, reportDate, columns ) ;
+			var series = seriesByHostAndId.computeIfAbsent(
+					attributes.getString( HOST_NAME ) + "|" + attributes.getString( ID ),
+					key -> new Series( updatedOn ) ) ;
+
+			long oldest = System.currentTimeMillis( ) - TimeUnit.HOURS.toMillis( hours ) ;
+			long bytesChange = entry.bytes ;
+
+			synchronized ( series ) {
+
+				if ( series.evicted ) {
+
+					// dropped concurrently: the next document starts a new series
+					return ;
+
+				}
+
+				series.entries.addFirst( entry ) ;
+				series.lastAccess = System.currentTimeMillis( ) ;
+
+				while ( series.entries.size( ) > 1 && series.entries.peekLast( ).updatedOn < oldest ) {
+
+					var expired = series.entries.removeLast( ) ;
+					series.completeSince = expired.updatedOn ;
+					bytesChange -= expired.bytes ;
+
+				}
+
+			}
+
+			if ( totalBytes.addAndGet( bytesChange ) > maxMb * 1024L * 1024L ) {
+
+				evictLeastRecentlyUsed( ) ;
+
+			}
+
+		} catch ( Exception e ) {
+
+			logger.warn( "Failed adding hot tail document: {}", CSAP.buildCsapStack( e ) ) ;
+
+		}
+
+	}
+
+	/**
+	 *
+	 * Appends documents updated between start and end (inclusive), newest first
+	 *
+	 * @param requireComplete when true nothing is appended unless memory holds
+	 *                        every document since start
+	 * @return null when the series is not in memory, or is incomplete with
+	 *         requireComplete
+	 */
+	public HotTailRead read (
+								String hostName ,
+								String id ,
+								Date start ,
+								Date end ,
+								List<String> metricAttributeNames ,
+								MetricsTimeSeries target ,
+								boolean requireComplete ) {
+
+		if ( ! isEnabled( ) ) {
+
+			return null ;
+
+		}
+
+		var series = seriesByHostAndId.get( hostName + "|" + id ) ;
+
+		if ( series == null ) {
+
+			metricUtilities.incrementCounter( "csap.metrics-hot-tail.miss" ) ;
+			return null ;
+
+		}
+
+		synchronized ( series ) {
+
+			series.lastAccess = System.currentTimeMillis( ) ;
+
+			if ( requireComplete && series.completeSince >= start.getTime( ) ) {
+
+				metricUtilities.incrementCounter( "csap.metrics-hot-tail.incomplete" ) ;
+				return null ;
+
+			}
+
+			Date latestReportDate = null ;
+			var documents = 0 ;
+
+			for ( var entry : series.entries ) {
+
+				if ( entry.updatedOn > end.getTime( ) ) {
+
+					continue ;
+
+				}
+
+				if ( entry.updatedOn < start.getTime( ) || entry.updatedOn <= series.completeSince ) {
+
+					break ;
+
+				}
+
+				if ( latestReportDate == null ) {
+
+					latestReportDate = entry.reportDate ;
+
+				}
+
+				target.append( selectColumns( entry.columns, metricAttributeNames ) ) ;
+				documents++ ;
+
+			}
+
+			metricUtilities.incrementCounter( "csap.metrics-hot-tail.hit" ) ;
+			return new HotTailRead( series.completeSince, latestReportDate, documents ) ;
+
+		}
+
+	}
+
+	private Map<String, MetricColumn> selectColumns ( Map<String, MetricColumn> columns , List<String> names ) {
+
+		var selected = new HashMap<String, MetricColumn>( ) ;
+
+		for ( var name : names ) {
+
+			var column = columns.get( name ) ;
+
+			if ( column != null ) {
+
+				selected.put( name, column ) ;
+
+			}
+
+		}
+
+		return selected ;
+
+	}
+
+	// least recently used series are dropped until 90% of maxMb
+	private synchronized void evictLeastRecentlyUsed ( ) {
+
+		long target = maxMb * 1024L * 1024L * 9 / 10 ;
+
+		if ( totalBytes.get( ) <= target ) {
+
+			return ;
+
+		}
+
+		var timer = metricUtilities.startTimer( ) ;
+		var evicted = 0 ;
+
+		var leastRecentlyUsed = seriesByHostAndId.entrySet( ).stream( )
+				.sorted( Comparator.comparingLong( seriesEntry -> seriesEntry.getValue( ).lastAccess ) )
+				.iterator( ) ;
+
+		while ( totalBytes.get( ) > target && leastRecentlyUsed.hasNext( ) ) {
+
+			var seriesEntry = leastRecentlyUsed.next( ) ;
+
+			if ( seriesByHostAndId.remove( seriesEntry.getKey( ), seriesEntry.getValue( ) ) ) {
+
+				synchronized ( seriesEntry.getValue( ) ) {
+
+					seriesEntry.getValue( ).evicted = true ;
+					totalBytes.addAndGet( -seriesEntry.getValue( ).entries.stream( ).mapToLong( entry -> entry.bytes )
+							.sum( ) ) ;
+
+				}
+
+				evicted++ ;
+
+			}
+
+		}
+
+		logger.debug( "Evicted {} series, bytes: {}", evicted, totalBytes.get( ) ) ;
+		metricUtilities.stopTimer( timer, "csap.metrics-hot-tail.evict" ) ;
+
+	}
+
+	public long getTotalBytes ( ) {
+
+		return totalBytes.get( ) ;
+
+	}
+
+	public boolean isEnabled ( ) {
+
+		return enabled ;
+
+	}
+
+	public void setEnabled ( boolean enabled ) {
+
+		this.enabled = enabled ;
+
+	}
+
+	public int getHours ( ) {
+
+		return hours ;
+
+	}
+
+	public void setHours ( int hours ) {
+
+		this.hours = hours ;
+
+	}
+
+	public int getMaxMb ( ) {
+
+		return maxMb ;
+
+	}
+
+	public void setMaxMb ( int maxMb ) {
+
+		this.maxMb = maxMb ;
+
+	}
+
+}
@@ -0,0 +1,170 @@
+package org.csap.events.db ;
+
+import static com.mongodb.client.model.Projections.excludeId ;
+import static com.mongodb.client.model.Projections.fields ;
+import static com.mongodb.client.model.Projections.include ;
+import static org.csap.events.util.MetricsJsonConstants.CREATED_ON ;
+import static org.csap.events.util.MetricsJsonConstants.LAST_UPDATED_ON ;
+import static org.csap.events.util.MongoConstants.EVENT_COLLECTION_NAME ;
+import static org.csap.events.util.MongoConstants.EVENT_DB_NAME ;
+
+import java.util.HashMap ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.TimeUnit ;
+
+import javax.inject.Inject ;
+
+import org.bson.Document ;
+import org.csap.events.CsapEventsApplication ;
+import org.csap.events.util.EventJsonConstants ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.stereotype.Service ;
+
+import com.mongodb.MongoClient ;
+import com.mongodb.ReadPreference ;
+
+/**
+ *
+ * Used when padding current day metrics with the shortest collection interval:
+ *
+ * - collection intervals per appId and lifecycle, refreshed when a model
+ * summary is ingested; loaded from the latest summary event on a miss or after
+ * maxAgeMinutes (summaries ingested by other instances)
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".metrics-intervals" )
+public class MetricsIntervals {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	@Inject
+	private MongoClient mongoClient ;
+
+	private int maxAgeMinutes = 60 ;
+
+	static class Intervals {
+
+		final Map<String, List> metricToIntervals ;
+		final long loadedAt = System.currentTimeMillis( ) ;
+
+		Intervals ( Map<String, List> metricToIntervals ) {
+
+			this.metricToIntervals = metricToIntervals ;
+
+		}
+	}
+
+	private Map<String, Intervals> intervalsByAppLife = new ConcurrentHashMap<>( ) ;
+
+	public Map<String, List> getIntervals ( String appId , String life ) {
+
+		var key = appId + "|" + life ;
+		var intervals = intervalsByAppLife.get( key ) ;
+
+		if ( intervals == null
+				|| System.currentTimeMillis( ) - intervals.loadedAt > TimeUnit.MINUTES.toMillis( maxAgeMinutes ) ) {
+
+			metricUtilities.incrementCounter( "csap.metrics-intervals.load" ) ;
+			intervals = new Intervals( loadIntervals( appId, life ) ) ;
+			intervalsByAppLife.put( key, intervals ) ;
+
+		}
+
+		return intervals.metricToIntervals ;
+
+	}
+
+	public void modelSummaryIngested ( Document eventDocument ) {
+
+		var summaryData = eventDocument.get( "data" ) ;
+
+		if ( summaryData instanceof Document ) {
+
+			var key = eventDocument.getString( EventJsonConstants.APPID ) + "|" + eventDocument.getString(
+					EventJsonConstants.LIFE ) ;
+			intervalsByAppLife.put( key, new Intervals( intervalsFromSummary( (Document) summaryData ) ) ) ;
+			logger.debug( "Refreshed intervals: {}", key ) ;
+
+		}
+
+	}
+
+	private Map<String, List> loadIntervals ( String appId , String life ) {
+
+		var query = new Document( )
+				.append( EventJsonConstants.APPID, appId )
+				.append( EventJsonConstants.LIFE, life )
+				.append( EventJsonConstants.CATEGORY, EventJsonConstants.CSAP_MODEL_SUMMAY_CATEGORY ) ;
+
+		var summary = mongoClient.getDatabase( EVENT_DB_NAME )
+				.getCollection( EVENT_COLLECTION_NAME )
+				.withReadPreference( ReadPreference.secondaryPreferred( ) )
+				.find( query )
+				.sort( new Document( CREATED_ON + "." + LAST_UPDATED_ON, -1 ) )
+				.limit( 1 )
+				.projection( fields( include( "data.packages" ), excludeId( ) ) )
+				.first( ) ;
+
+		if ( summary == null ) {
+
+			return new HashMap<>( ) ;
+
+		}
+
+		return intervalsFromSummary( (Document) summary.get( "data" ) ) ;
+
+	}
+
+	@SuppressWarnings ( "rawtypes" )
+	static Map<String, List> intervalsFromSummary ( Document summaryData ) {
+
+		Map<String, List> metricsIntervals = new HashMap<>( ) ;
+		var packages = summaryData.get( "packages" ) ;
+
+		if ( packages instanceof List ) {
+
+			for ( Object pack : (List) packages ) {
+
+				var metrics = ( (Document) pack ).get( "metrics" ) ;
+
+				if ( metrics instanceof Document ) {
+
+					for ( var metric : ( (Document) metrics ).entrySet( ) ) {
+
+						metricsIntervals.put( metric.getKey( ), (List) metric.getValue( ) ) ;
+
+					}
+
+				}
+
+			}
+
+		}
+
+		return metricsIntervals ;
+
+	}
+
+	public int getMaxAgeMinutes ( ) {
+
+		return maxAgeMinutes ;
+
+	}
+
+	public void setMaxAgeMinutes ( int maxAgeMinutes ) {
+
+		this.maxAgeMinutes = maxAgeMinutes ;
+
+	}
+
+}
@@ -0,0 +1,923 @@
+package org.csap.events.db ;
+
+import static com.mongodb.client.model.Filters.and ;
+import static com.mongodb.client.model.Filters.eq ;
+import static com.mongodb.client.model.Filters.gte ;
+import static com.mongodb.client.model.Filters.lte ;
+import static org.csap.events.util.MetricsJsonConstants.ATTRIBUTES ;
+import static org.csap.events.util.MetricsJsonConstants.DATA ;
+import static org.csap.events.util.MetricsJsonConstants.HOST_NAME ;
+import static org.csap.events.util.MetricsJsonConstants.ID ;
+import static org.csap.events.util.MongoConstants.METRICS_DB_NAME ;
+import static org.csap.events.util.MongoConstants.METRICS_ROLLUP_COLLECTION_PREFIX ;
+
+import java.util.ArrayList ;
+import java.util.Collections ;
+import java.util.Date ;
+import java.util.HashMap ;
+import java.util.HashSet ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.TreeMap ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.ScheduledExecutorService ;
+import java.util.concurrent.TimeUnit ;
+import java.util.stream.Collectors ;
+
+import javax.annotation.PostConstruct ;
+import javax.annotation.PreDestroy ;
+import javax.inject.Inject ;
+
+import org.apache.commons.lang3.StringUtils ;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory ;
+import org.apache.commons.lang3.math.NumberUtils ;
+import org.bson.Document ;
+import org.bson.conversions.Bson ;
+import org.csap.events.CsapEventsApplication ;
+import org.csap.events.util.MetricColumn ;
+import org.csap.events.util.MetricsDownsampler ;
+import org.csap.events.util.MetricsTimeSeries ;
+import org.csap.helpers.CSAP ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.stereotype.Service ;
+
+import com.mongodb.MongoBulkWriteException ;
+import com.mongodb.MongoClient ;
+import com.mongodb.bulk.BulkWriteError ;
+import com.mongodb.ReadPreference ;
+import com.mongodb.client.MongoCollection ;
+import com.mongodb.client.model.BulkWriteOptions ;
+import com.mongodb.client.model.Projections ;
+import com.mongodb.client.model.Sorts ;
+import com.mongodb.client.model.UpdateOneModel ;
+import com.mongodb.client.model.UpdateOptions ;
+import com.mongodb.client.model.WriteModel ;
+
+/**
+ *
+ * Rollups of metrics data: for each resolution (default 5m, 1h, 1d) a bucket
+ * document per host, collection id and bucket start holds count, plus sum, min
+ * and max of every attribute, with the number of values of each attribute.
+ * Ingested documents are aggregated in memory, and buckets are updated using
+ * $inc, $min and $max in one unordered bulkWrite every flushMs.
+ *
+ * Reports with maxPoints spanning many days read the coarsest rollup that still
+ * provides the requested points, rather than every raw document. maxPoints 0
+ * (all points) always reads the raw documents.
+ *
+ * Note: rollups only cover data ingested after they are enabled; buckets
+ * missing from a rollup are filled in from the raw collection
+ *
+ * Buckets that fail to write are retried on the next flush, up to
+ * maxFlushAttempts. While mongo is down, at most maxPending buckets are held:
+ * updates beyond that, or past the attempts, are dropped and counted
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".rollups" )
+public class MetricsRollups {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	public static final String BUCKET = "bucket" ;
+	public static final String COUNT = "count" ;
+	public static final String COUNTS = "counts" ;
+	public static final String SUM = "sum" ;
+	public static final String MIN = "min" ;
+	public static final String MAX = "max" ;
+	public static final String EXPIRE_AT = "expireAt" ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	@Inject
+	private MongoClient mongoClient ;
+
+	private boolean enabled = false ;
+	private List<Integer> resolutionSeconds = List.of( 300, 3600, 86400 ) ;
+	private int retentionDays = 400 ;
+	private long flushMs = 1000 ;
+	private int maxFlushAttempts = 3 ;
+	private int maxPending = 200000 ;
+
+	private ConcurrentHashMap<String, PendingBucket> pendingBuckets = new ConcurrentHashMap<>( ) ;
+	private ScheduledExecutorService flusher ;
+
+	static class Bucket {
+
+		int count = 0 ;
+
+		// sum, min, max and count of each attribute: attributes can be missing
+		// from some rows
+		Map<String, double[]> sumMinMax = new HashMap<>( ) ;
+
+		void add ( String attributeName , double value ) {
+
+			var aggregate = sumMinMax.get( attributeName ) ;
+
+			if ( aggregate == null ) {
+
+				sumMinMax.put( attributeName, new double[] {
+						value, value, value, 1
+				} ) ;
+
+			} else {
+
+				aggregate[0] += value ;
+				aggregate[1] = Math.min( aggregate[1], value ) ;
+				aggregate[2] = Math.max( aggregate[2], value ) ;
+				aggregate[3]++ ;
+
+			}
+
+		}
+
+		Bucket merge ( Bucket later ) {
+
+			count += later.count ;
+
+			later.sumMinMax.forEach( ( attributeName , laterAggregate ) -> {
+
+				var aggregate = sumMinMax.get( attributeName ) ;
+
+				if ( aggregate == null ) {
+
+					sumMinMax.put( attributeName, laterAggregate.clone( ) ) ;
+
+				} else {
+
+					aggregate[0] += laterAggregate[0] ;
+					aggregate[1] = Math.min( aggregate[1], laterAggregate[1] ) ;
+					aggregate[2] = Math.max( aggregate[2], laterAggregate[2] ) ;
+					aggregate[3] += laterAggregate[3] ;
+
+				}
+
+			} ) ;
+
+			return this ;
+
+		}
+
+		double average ( String attributeName ) {
+
+			var aggregate = sumMinMax.get( attributeName ) ;
+
+			if ( aggregate == null ) {
+
+				return 0 ;
+
+			}
+
+			return aggregate[0] / aggregate[3] ;
+
+		}
+
+	}
+
+	static class PendingBucket {
+
+		final int resolution ;
+		final String hostName ;
+		final String id ;
+		final long bucketStart ;
+		final Bucket bucket ;
+		int failedFlushes = 0 ;
+
+		PendingBucket ( int resolution, String hostName, String id, long bucketStart, Bucket bucket ) {
+
+			this.resolution = resolution ;
+			this.hostName = hostName ;
+			this.id = id ;
+			this.bucketStart = bucketStart ;
+			this.bucket = bucket ;
+
+		}
+
+		String rollupId ( ) {
+
+			return hostName + "," + id + "," + bucketStart ;
+
+		}
+
+		String pendingKey ( ) {
+
+			return resolution + "," + rollupId( ) ;
+
+		}
+
+	}
+
+	@PostConstruct
+	public void startFlusher ( ) {
+
+		if ( ! isEnabled( ) ) {
+
+			return ;
+
+		}
+
+		logger.info( "Metrics rollups: resolutionSeconds: {}, flushMs: {}", resolutionSeconds, flushMs ) ;
+
+		flusher = Executors.newSingleThreadScheduledExecutor( new BasicThreadFactory.Builder( )
+				.namingPattern( CsapEventsApplication.class.getSimpleName( ) + "Rollups-%d" )
+				.daemon( true )
+				.build( ) ) ;
+
+		flusher.scheduleWithFixedDelay( this::flush, flushMs, flushMs, TimeUnit.MILLISECONDS ) ;
+
+		metricUtilities.addGauge( "csap.rollups.pending", this, MetricsRollups::getPendingCount ) ;
+
+	}
+
+	@PreDestroy
+	public void stopFlusher ( ) {
+
+		if ( flusher == null ) {
+
+			return ;
+
+		}
+
+		flusher.shutdown( ) ;
+
+		try {
+
+			flusher.awaitTermination( flushMs * 5, TimeUnit.MILLISECONDS ) ;
+
+		} catch ( InterruptedException e ) {
+
+			Thread.currentThread( ).interrupt( ) ;
+
+		}
+
+		flush( ) ;
+
+	}
+
+	/**
+	 *
+	 * dataDocument: { attributes: { id, hostName }, data: { timeStamp: [], ... }}
+	 *
+	 */
+	public void update ( Document dataDocument ) {
+
+		var attributes = (Document) dataDocument.get( ATTRIBUTES ) ;
+		var data = (Document) dataDocument.get( DATA ) ;
+
+		if ( attributes == null || data == null || ! ( data.get( MetricsTimeSeries.TIME_STAMP ) instanceof List ) ) {
+
+			return ;
+
+		}
+
+		var hostName = attributes.getString( HOST_NAME ) ;
+		var id = attributes.getString( ID ) ;
+		var sourceInterval = sourceIntervalSeconds( id ) ;
+
+		if ( StringUtils.isEmpty( hostName ) || sourceInterval <= 0 ) {
+
+			return ;
+
+		}
+
+		var timer = metricUtilities.startTimer( ) ;
+		var timeStamps = (List<?>) data.get( MetricsTimeSeries.TIME_STAMP ) ;
+
+		for ( var resolution : resolutionSeconds ) {
+
+			if ( resolution <= sourceInterval ) {
+
+				continue ;
+
+			}
+
+			aggregate( data, timeStamps, resolution ).forEach( ( bucketStart , bucket ) -> {
+
+				addPending( new PendingBucket( resolution, hostName, id, bucketStart, bucket ) ) ;
+
+			} ) ;
+
+		}
+
+		metricUtilities.stopTimer( timer, "db-event.rollups.update" ) ;
+
+	}
+
+	// compute is atomic with the remove in flush: no values are lost
+	void addPending ( PendingBucket pending ) {
+
+		var pendingKey = pending.pendingKey( ) ;
+
+		if ( pendingBuckets.size( ) >= maxPending && ! pendingBuckets.containsKey( pendingKey ) ) {
+
+			metricUtilities.incrementCounter( "db-event.rollups.dropped.max-pending" ) ;
+			return ;
+
+		}
+
+		pendingBuckets.compute( pendingKey, ( key , existing ) -> {
+
+			if ( existing == null ) {
+
+				return pending ;
+
+			}
+
+			existing.bucket.merge( pending.bucket ) ;
+			existing.failedFlushes = Math.max( existing.failedFlushes, pending.failedFlushes ) ;
+			return existing ;
+
+		} ) ;
+
+	}
+
+	// merged with updates since: retried on the next flush
+	private void flushFailed ( PendingBucket failed ) {
+
+		failed.failedFlushes++ ;
+
+		if ( failed.failedFlushes >= maxFlushAttempts ) {
+
+			metricUtilities.incrementCounter( "db-event.rollups.dropped.attempts" ) ;
+			return ;
+
+		}
+
+		addPending( failed ) ;
+
+	}
+
+	void flush ( ) {
+
+		if ( pendingBuckets.isEmpty( ) ) {
+
+			return ;
+
+		}
+
+		var timer = metricUtilities.startTimer( ) ;
+
+		Map<Integer, List<PendingBucket>> bucketsByResolution = new TreeMap<>( ) ;
+
+		for ( String pendingKey : pendingBuckets.keySet( ) ) {
+
+			var pending = pendingBuckets.remove( pendingKey ) ;
+
+			if ( pending != null ) {
+
+				bucketsByResolution.computeIfAbsent( pending.resolution, resolution -> new ArrayList<>( ) )
+						.add( pending ) ;
+
+			}
+
+		}
+
+		bucketsByResolution.forEach( ( resolution , buckets ) -> {
+
+			List<WriteModel<Document>> updates = buckets.stream( )
+					.map( this::buildUpdate )
+					.collect( Collectors.toList( ) ) ;
+
+			try {
+
+				getRollupCollection( resolution ).bulkWrite( updates, new BulkWriteOptions( ).ordered( false ) ) ;
+
+			} catch ( MongoBulkWriteException e ) {
+
+				// unordered: only the buckets with a write error are retried
+				metricUtilities.incrementCounter( "db-event.rollups.failed.write-errors" ) ;
+				logger.warn( "partial rollup {} failure: {} of {} buckets retried: {}",
+						resolution, e.getWriteErrors( ).size( ), buckets.size( ), e.getMessage( ) ) ;
+
+				e.getWriteErrors( ).stream( )
+						.map( BulkWriteError::getIndex )
+						.forEach( index -> flushFailed( buckets.get( index ) ) ) ;
+
+			} catch ( Exception e ) {
+
+				metricUtilities.incrementCounter( "db-event.rollups.failed." + e.getClass( ).getSimpleName( ) ) ;
+				logger.warn( "Failed updating rollup {}, {} buckets retried: {}", resolution, buckets.size( ),
+						CSAP.buildCsapStack( e ) ) ;
+
+				buckets.forEach( this::flushFailed ) ;
+
+			}
+
+		} ) ;
+
+		metricUtilities.stopTimer( timer, "db-event.rollups.flush" ) ;
+
+	}
+
+	private WriteModel<Document> buildUpdate ( PendingBucket pending ) {
+
+		var increments = new Document( COUNT, pending.bucket.count ) ;
+		var mins = new Document( ) ;
+		var maxes = new Document( ) ;
+
+		pending.bucket.sumMinMax.forEach( ( attributeName , aggregate ) -> {
+
+			increments.append( SUM + "." + attributeName, aggregate[0] ) ;
+			increments.append( COUNTS + "." + attributeName, (int) aggregate[3] ) ;
+			mins.append( MIN + "." + attributeName, aggregate[1] ) ;
+			maxes.append( MAX + "." + attributeName, aggregate[2] ) ;
+
+		} ) ;
+
+		var update = new Document( "$inc", increments )
+				.append( "$setOnInsert", new Document( HOST_NAME, pending.hostName )
+						.append( ID, pending.id )
+						.append( BUCKET, new Date( pending.bucketStart ) )
+						.append( EXPIRE_AT, new Date( pending.bucketStart + TimeUnit.DAYS.toMillis( retentionDays ) ) ) ) ;
+
+		if ( ! mins.isEmpty( ) ) {
+
+			update.append( "$min", mins ).append( "$max", maxes ) ;
+
+		}
+
+		return new UpdateOneModel<>( eq( "_id", pending.rollupId( ) ), update, new UpdateOptions( ).upsert( true ) ) ;
+
+	}
+
+	private Map<Long, Bucket> aggregate ( Document data , List<?> timeStamps , int resolution ) {
+
+		long resolutionMs = TimeUnit.SECONDS.toMillis( resolution ) ;
+		var buckets = new TreeMap<Long, Bucket>( ) ;
+		var rowBuckets = new Bucket[timeStamps.size( )] ;
+
+		for ( int row = 0; row < timeStamps.size( ); row++ ) {
+
+			long timeStamp = NumberUtils.toLong( String.valueOf( timeStamps.get( row ) ), 0 ) ;
+
+			if ( timeStamp > 0 ) {
+
+				rowBuckets[row] = buckets.computeIfAbsent( timeStamp - ( timeStamp % resolutionMs ),
+						bucketStart -> new Bucket( ) ) ;
+				rowBuckets[row].count++ ;
+
+			}
+
+		}
+
+		for ( var attribute : data.entrySet( ) ) {
+
+			if ( attribute.getKey( ).equals( MetricsTimeSeries.TIME_STAMP )
+					|| ! ( attribute.getValue( ) instanceof List ) ) {
+
+				continue ;
+
+			}
+
+			var values = (List<?>) attribute.getValue( ) ;
+
+			for ( int row = 0; row < Math.min( values.size( ), rowBuckets.length ); row++ ) {
+
+				if ( rowBuckets[row] != null && values.get( row ) instanceof Number ) {
+
+					rowBuckets[row].add( attribute.getKey( ), ( (Number) values.get( row ) ).doubleValue( ) ) ;
+
+				}
+
+			}
+
+		}
+
+		return buckets ;
+
+	}
+
+	/**
+	 *
+	 * @return coarsest resolution finer than the requested points, 0 if the
+	 *         raw collection should be used: maxPoints 0 requests all points
+	 */
+	public int selectResolution ( String id , long rangeSeconds , int maxPoints ) {
+
+		if ( ! isEnabled( ) || maxPoints <= 0 ) {
+
+			return 0 ;
+
+		}
+
+		var sourceInterval = sourceIntervalSeconds( id ) ;
+		var secondsPerPoint = rangeSeconds / maxPoints ;
+
+		var selected = 0 ;
+
+		for ( var resolution : resolutionSeconds ) {
+
+			if ( resolution > sourceInterval && resolution <= secondsPerPoint && resolution > selected ) {
+
+				selected = resolution ;
+
+			}
+
+		}
+
+		return selected ;
+
+	}
+
+	/**
+	 *
+	 * Bucket averages (sum / count), newest first. timeStamp is the bucket
+	 * start.
+	 *
+	 */
+	public MetricsTimeSeries findRollupData (
+												String hostName ,
+												String id ,
+												int resolution ,
+												Date startTime ,
+												Date endTime ,
+												List<String> metricAttributeNames ) {
+
+		var timer = metricUtilities.startTimer( ) ;
+
+		var rollupDocuments = getRollupCollection( resolution )
+				.withReadPreference( ReadPreference.secondaryPreferred( ) )
+				.find( and(
+						eq( HOST_NAME, hostName ),
+						eq( ID, id ),
+						gte( BUCKET, startTime ),
+						lte( BUCKET, endTime ) ) )
+				.sort( Sorts.descending( BUCKET ) )
+				.projection( rollupProjection( metricAttributeNames ) )
+				.into( new ArrayList<>( ) ) ;
+
+		var series = new MetricsTimeSeries( metricAttributeNames, rollupDocuments.size( ) ) ;
+		var columns = new HashMap<String, MetricColumn>( ) ;
+
+		for ( var attributeName : metricAttributeNames ) {
+
+			columns.put( attributeName, new MetricColumn( rollupDocuments.size( ) ) ) ;
+
+		}
+
+		for ( var rollupDocument : rollupDocuments ) {
+
+			var count = Math.max( 1, rollupDocument.getInteger( COUNT, 1 ) ) ;
+			var sums = rollupDocument.get( SUM ) instanceof Document ? (Document) rollupDocument.get( SUM )
+					: new Document( ) ;
+
+			// buckets written before counts per attribute use the row count
+			var counts = rollupDocument.get( COUNTS ) instanceof Document ? (Document) rollupDocument.get( COUNTS )
+					: new Document( ) ;
+
+			for ( var attributeName : metricAttributeNames ) {
+
+				var column = columns.get( attributeName ) ;
+
+				if ( attributeName.equals( MetricsTimeSeries.TIME_STAMP ) ) {
+
+					column.add( rollupDocument.getDate( BUCKET ).getTime( ) ) ;
+					continue ;
+
+				}
+
+				var sum = sums.get( attributeName ) ;
+				var attributeCount = ( counts.get( attributeName ) instanceof Number )
+						? Math.max( 1, ( (Number) counts.get( attributeName ) ).intValue( ) )
+						: count ;
+				var average = ( sum instanceof Number )
+						? MetricsDownsampler.roundAverage( ( (Number) sum ).doubleValue( ) / attributeCount )
+						: 0 ;
+
+				addValue( column, average ) ;
+
+			}
+
+		}
+
+		series.append( columns ) ;
+
+		metricUtilities.stopTimer( timer, "metrics-get.rollup." + resolution ) ;
+		logger.debug( "{} {} rollup {}: {} buckets", hostName, id, resolution, series.length( ) ) ;
+
+		return series ;
+
+	}
+
+	private static void addValue ( MetricColumn column , double value ) {
+
+		if ( value == Math.rint( value ) ) {
+
+			column.add( value ) ;
+
+		} else {
+
+			column.addDecimal( value ) ;
+
+		}
+
+	}
+
+	/**
+	 *
+	 * Time ranges between start and end with no rollup bucket: before rollups
+	 * were enabled, or buckets not written. Each range is [start, end) in ms.
+	 *
+	 */
+	static List<long[]> missingRanges ( MetricsTimeSeries rollupData , int resolution , Date start , Date end ) {
+
+		long resolutionMs = TimeUnit.SECONDS.toMillis( resolution ) ;
+		long firstBucket = start.getTime( ) - ( start.getTime( ) % resolutionMs ) ;
+		var missing = new ArrayList<long[]>( ) ;
+
+		// newest first
+		var bucketStarts = new ArrayList<Long>( ) ;
+
+		for ( int row = 0; row < rollupData.length( ); row++ ) {
+
+			bucketStarts.add( (long) rollupData.valueAt( MetricsTimeSeries.TIME_STAMP, row ) ) ;
+
+		}
+
+		Collections.reverse( bucketStarts ) ;
+
+		long expected = firstBucket ;
+
+		for ( var bucketStart : bucketStarts ) {
+
+			if ( bucketStart > expected ) {
+
+				missing.add( new long[] {
+						expected, bucketStart
+				} ) ;
+
+			}
+
+			expected = Math.max( expected, bucketStart + resolutionMs ) ;
+
+		}
+
+		if ( expected <= end.getTime( ) ) {
+
+			missing.add( new long[] {
+					expected, end.getTime( ) + 1
+			} ) ;
+
+		}
+
+		return missing ;
+
+	}
+
+	/**
+	 *
+	 * Adds bucket averages of the raw rows to the rollup, for buckets it does not
+	 * have. Both series are newest first.
+	 *
+	 */
+	static MetricsTimeSeries fillMissingBuckets (
+													MetricsTimeSeries rollupData ,
+													MetricsTimeSeries rawData ,
+													int resolution ,
+													List<String> metricAttributeNames ) {
+
+		if ( rawData.isEmpty( ) ) {
+
+			return rollupData ;
+
+		}
+
+		long resolutionMs = TimeUnit.SECONDS.toMillis( resolution ) ;
+		var rollupBuckets = new HashSet<Long>( ) ;
+
+		for ( int row = 0; row < rollupData.length( ); row++ ) {
+
+			rollupBuckets.add( (long) rollupData.valueAt( MetricsTimeSeries.TIME_STAMP, row ) ) ;
+
+		}
+
+		var rawBuckets = new TreeMap<Long, Bucket>( Collections.reverseOrder( ) ) ;
+		var valueNames = metricAttributeNames.stream( )
+				.filter( name -> ! name.equals( MetricsTimeSeries.TIME_STAMP ) && rawData.hasAttribute( name ) )
+				.collect( Collectors.toList( ) ) ;
+
+		for ( int row = 0; row < rawData.length( ); row++ ) {
+
+			long timeStamp = (long) rawData.valueAt( MetricsTimeSeries.TIME_STAMP, row ) ;
+			long bucketStart = timeStamp - ( timeStamp % resolutionMs ) ;
+
+			if ( timeStamp <= 0 || rollupBuckets.contains( bucketStart ) ) {
+
+				continue ;
+
+			}
+
+			var bucket = rawBuckets.computeIfAbsent( bucketStart, key -> new Bucket( ) ) ;
+			bucket.count++ ;
+
+			for ( var name : valueNames ) {
+
+				bucket.add( name, rawData.valueAt( name, row ) ) ;
+
+			}
+
+		}
+
+		if ( rawBuckets.isEmpty( ) ) {
+
+			return rollupData ;
+
+		}
+
+		// rollup rows and raw buckets merged newest first
+		var rows = new TreeMap<Long, Map<String, Double>>( Collections.reverseOrder( ) ) ;
+
+		for ( int row = 0; row < rollupData.length( ); row++ ) {
+
+			var values = new HashMap<String, Double>( ) ;
+
+			for ( var name : valueNames ) {
+
+				values.put( name, rollupData.hasAttribute( name ) ? rollupData.valueAt( name, row ) : 0 ) ;
+
+			}
+
+			rows.put( (long) rollupData.valueAt( MetricsTimeSeries.TIME_STAMP, row ), values ) ;
+
+		}
+
+		rawBuckets.forEach( ( bucketStart , bucket ) -> {
+
+			var values = new HashMap<String, Double>( ) ;
+
+			for ( var name : valueNames ) {
+
+				values.put( name, MetricsDownsampler.roundAverage( bucket.average( name ) ) ) ;
+
+			}
+
+			rows.put( bucketStart, values ) ;
+
+		} ) ;
+
+		var columns = new HashMap<String, MetricColumn>( ) ;
+		var timeStamps = new MetricColumn( rows.size( ) ) ;
+		columns.put( MetricsTimeSeries.TIME_STAMP, timeStamps ) ;
+
+		for ( var name : valueNames ) {
+
+			columns.put( name, new MetricColumn( rows.size( ) ) ) ;
+
+		}
+
+		rows.forEach( ( bucketStart , values ) -> {
+
+			timeStamps.add( bucketStart ) ;
+
+			for ( var name : valueNames ) {
+
+				addValue( columns.get( name ), values.get( name ) ) ;
+
+			}
+
+		} ) ;
+
+		var filled = new MetricsTimeSeries( metricAttributeNames, rows.size( ) ) ;
+		filled.append( columns ) ;
+
+		return filled ;
+
+	}
+
+	// min and max are not used by reports; only requested sums and counts are
+	// loaded
+	private Bson rollupProjection ( List<String> metricAttributeNames ) {
+
+		var fieldsToInclude = new ArrayList<String>( ) ;
+		fieldsToInclude.add( BUCKET ) ;
+		fieldsToInclude.add( COUNT ) ;
+
+		for ( var summary : List.of( SUM, COUNTS ) ) {
+
+			var summaryFields = metricAttributeNames.stream( )
+					.filter( name -> ! name.equals( MetricsTimeSeries.TIME_STAMP ) )
+					.map( name -> name.contains( "." ) ? summary : summary + "." + name )
+					.distinct( )
+					.collect( Collectors.toList( ) ) ;
+
+			if ( summaryFields.contains( summary ) ) {
+
+				fieldsToInclude.add( summary ) ;
+
+			} else {
+
+				fieldsToInclude.addAll( summaryFields ) ;
+
+			}
+
+		}
+
+		return Projections.fields( Projections.include( fieldsToInclude ), Projections.excludeId( ) ) ;
+
+	}
+
+	// service_30 = 30, host_300 = 300
+	static int sourceIntervalSeconds ( String id ) {
+
+		if ( id == null ) {
+
+			return 0 ;
+
+		}
+
+		return NumberUtils.toInt( StringUtils.substringAfterLast( id, "_" ), 0 ) ;
+
+	}
+
+	private MongoCollection<Document> getRollupCollection ( int resolution ) {
+
+		return mongoClient.getDatabase( METRICS_DB_NAME )
+				.getCollection( METRICS_ROLLUP_COLLECTION_PREFIX + resolution ) ;
+
+	}
+
+	public boolean isEnabled ( ) {
+
+		return enabled ;
+
+	}
+
+	public void setEnabled ( boolean enabled ) {
+
+		this.enabled = enabled ;
+
+	}
+
+	public List<Integer> getResolutionSeconds ( ) {
+
+		return resolutionSeconds ;
+
+	}
+
+	public void setResolutionSeconds ( List<Integer> resolutionSeconds ) {
+
+		this.resolutionSeconds = resolutionSeconds ;
+
+	}
+
+	public int getRetentionDays ( ) {
+
+		return retentionDays ;
+
+	}
+
+	public void setRetentionDays ( int retentionDays ) {
+
+		this.retentionDays = retentionDays ;
+
+	}
+
+	public long getPendingCount ( ) {
+
+		return pendingBuckets.size( ) ;
+
+	}
+
+	public long getFlushMs ( ) {
+
+		return flushMs ;
+
+	}
+
+	public void setFlushMs ( long flushMs ) {
+
+		this.flushMs = flushMs ;
+
+	}
+
+	public int getMaxFlushAttempts ( ) {
+
+		return maxFlushAttempts ;
+
+	}
+
+	public void setMaxFlushAttempts ( int maxFlushAttempts ) {
+
+		this.maxFlushAttempts = maxFlushAttempts ;
+
+	}
+
+	public int getMaxPending ( ) {
+
+		return maxPending ;
+
+	}
+
+	public void setMaxPending ( int maxPending ) {
+
+		this.maxPending = maxPending ;
+
+	}
+
+}
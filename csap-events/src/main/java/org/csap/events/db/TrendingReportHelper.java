@@ -648,11 +648,37 @@ public class TrendingReportHelper {
 																int numDays ,
 																int dateOffSet ) {
 
+		return trendingOperationPipelineBuilder( byHost, appId, project, life, serviceNameFilter, category,
+				metricsId, divideBy, allVmTotal, numDays, dateOffSet, false ) ;
+
+	}
+
+	/**
+	 *
+	 * isDailyTotals: pipeline is run on DailyTrendStore totals, which hold one
+	 * summary per service rather than an array
+	 *
+	 */
+	public List<Document> trendingOperationPipelineBuilder (
+																boolean byHost ,
+																String appId ,
+																String project ,
+																String life ,
+																String serviceNameFilter ,
+																String category ,
+																String[] metricsId ,
+																String[] divideBy ,
+																String allVmTotal ,
+																int numDays ,
+																int dateOffSet ,
+																boolean isDailyTotals ) {
+
 		List<Document> mongoOperationPipeline = new ArrayList<>( ) ;
 
 		mongoOperationPipeline.add(
-				trendingPrimaryQueryBuilder( appId, project, life, serviceNameFilter, category,
-						numDays, dateOffSet ) ) ;
+				trendingPrimaryQueryBuilder( appId, project, life,
+						isDailyTotals ? null : serviceNameFilter,
+						category, numDays, dateOffSet ) ) ;
 
 		mongoOperationPipeline.add( new Document( "$unwind", "$data.summary" ) ) ;
 
@@ -185,7 +185,7 @@ public class HealthMonitor {
 			var timer = metricUtilities.startTimer( ) ;
 
 			logger.debug( "Testing: {}, {}, {}, {}", appId, life, fromDate, toDate ) ;
-			EventMetaData searchFilters = eventDataReader.getEventMetaData(
+			EventMetaData searchFilters = eventDataReader.loadEventMetaData(
 					appId,
 					life,
 					fromDate, toDate, 60 ) ;
@@ -10,9 +10,11 @@ import org.csap.docs.CsapDoc ;
 import org.csap.events.CsapEventsApplication ;
 import org.csap.events.EventJsonConstants ;
 import org.csap.events.EventMetaData ;
+import org.csap.events.db.EventCount ;
 import org.csap.events.db.EventDataHelper ;
 import org.csap.events.db.EventDataReader ;
 import org.csap.events.db.EventDataWriter ;
+import org.csap.events.db.EventIngestPipeline ;
 import org.csap.events.db.HealthEventWriter ;
 import org.csap.integations.CsapMicroMeter ;
 import org.csap.security.SpringAuthCachingFilter ;
@@ -67,17 +69,26 @@ public class ApiEventController {
 	@Inject
 	private EventDataHelper eventDataHelper ;
 
+	@Inject
+	private EventIngestPipeline ingestPipeline ;
+
 	@Inject
 	private CsapEventsApplication csapEvents ;
 
 	private volatile long lastMongoTimeoutError ;
 
-	@CsapDoc ( notes = "Search on event" , linkTests = {
+	@CsapDoc ( notes = {
+			"Search on event",
+			"pageToken: optional. Set to empty for the first page, then to nextPageToken from the previous response."
+					+ " Pages seek on the sort field and _id rather than skipping start events"
+	} , linkTests = {
 			"Search with appid etc",
-			"lifecycle appid uiUser search"
+			"lifecycle appid uiUser search",
+			"Search using page token"
 	} , linkGetParams = {
 			"search[value]='appId=csapeng.gen,eventReceivedOn=false,isDataRequired=false'",
-			"search[value]='lifecycle=dev,appId=csapeng.gen,metaData.uiUser=paranant,project=Sample Release Package 2,eventReceivedOn=false,isDataRequired=false'"
+			"search[value]='lifecycle=dev,appId=csapeng.gen,metaData.uiUser=paranant,project=Sample Release Package 2,eventReceivedOn=false,isDataRequired=false'",
+			"search[value]='appId=csapeng.gen,eventReceivedOn=false,isDataRequired=false',pageToken="
 	} , produces = {
 			MediaType.APPLICATION_JSON_VALUE
 	} )
@@ -86,14 +97,24 @@ public class ApiEventController {
 										@RequestParam ( value = "length" , required = false , defaultValue = "20" ) Integer length ,
 										@RequestParam ( value = "start" , required = false , defaultValue = "0" ) Integer start ,
 										@RequestParam ( value = "search[value]" , required = false ) String searchValue ,
-										@RequestParam ( value = "searchText" , required = false ) String searchText ) {
+										@RequestParam ( value = "searchText" , required = false ) String searchText ,
+										@RequestParam ( value = "pageToken" , required = false ) String pageToken ) {
 
-		logger.debug( "in event records {} , {} , {} , {}", length, start, searchValue, searchText ) ;
+		logger.debug( "in event records {} , {} , {} , {}, {}", length, start, searchValue, searchText, pageToken ) ;
 
 		var timer = metricUtilities.startTimer( ) ;
 
 		String searchString = getSearchString( searchValue, searchText ) ;
 		String data = "Error getting data" ;
+
+		if ( pageToken != null ) {
+
+			data = getEventsAfter( searchString, length, pageToken ) ;
+			metricUtilities.stopTimer( timer, "csap.event.get.keyset" ) ;
+			return data ;
+
+		}
+
 		data = getPaginatedEvents( searchString, length, start ) ;
 		metricUtilities.stopTimer( timer, "csap.event.get" ) ;
 
@@ -148,13 +169,22 @@ public class ApiEventController {
 		} else {
 
 			metricUtilities.incrementCounter( "addEvent.attempt" ) ;
-			result = "Added Event: " + eventDataWriter.insertEventData( eventJson, userid ) ;
+			String insertResult = eventDataWriter.insertEventData( eventJson, userid ) ;
+			result = "Added Event: " + insertResult ;
 
-			if ( EventDataWriter.MONGO_IS_TIMING_OUT.equalsIgnoreCase( result ) ) {
+			if ( EventDataWriter.MONGO_IS_TIMING_OUT.equalsIgnoreCase( insertResult ) ) {
 
 				metricUtilities.incrementCounter( "addEventRecord.mongoDown" ) ;
 				response.setStatus( HttpStatus.SERVICE_UNAVAILABLE.value( ) ) ;
 				lastMongoTimeoutError = System.currentTimeMillis( ) ;
+				result = insertResult ;
+
+			} else if ( EventDataWriter.INGEST_BACKLOG_FULL.equalsIgnoreCase( insertResult ) ) {
+
+				// batched ingest queue is full - agent will retry on next interval
+				metricUtilities.incrementCounter( "addEventRecord.backlogFull" ) ;
+				response.setStatus( HttpStatus.SERVICE_UNAVAILABLE.value( ) ) ;
+				result = insertResult ;
 
 			} else {
 
@@ -183,7 +213,7 @@ public class ApiEventController {
 		var allTimer = metricUtilities.startTimer( ) ;
 
 		var rowTimer = metricUtilities.startTimer( ) ;
-		Long filteredCount = eventDataReader.numberOfEvents( searchString ) ;
+		EventCount filteredCount = eventDataReader.numberOfEvents( searchString ) ;
 		metricUtilities.stopTimer( rowTimer, "event.filtered-count.rowCount" ) ;
 
 		var dataTimer = metricUtilities.startTimer( ) ;
@@ -191,14 +221,20 @@ public class ApiEventController {
 		metricUtilities.stopTimer( dataTimer, "event.filtered-count.dataSize" ) ;
 
 		Document countResponse = new Document( ) ;
-		countResponse.put( "recordsFiltered", filteredCount.longValue( ) ) ;
+		countResponse.put( "recordsFiltered", filteredCount.getCount( ) ) ;
 
-		if ( filteredCount.longValue( ) >= 0 ) {
+		if ( filteredCount.getCount( ) >= 0 ) {
 
 			countResponse.put( "success", true ) ;
 
 		}
 
+		if ( filteredCount.isApproximate( ) ) {
+
+			countResponse.put( "approximate", true ) ;
+
+		}
+
 		countResponse.put( "dataSize", dataSize ) ;
 
 		metricUtilities.stopTimer( allTimer, "csap.event.filtered-count" ) ;
@@ -299,7 +335,8 @@ public class ApiEventController {
 
 		var timer = metricUtilities.startTimer( ) ;
 		String result = callback + "(" ;
-		result = result + "{\"count\":" + eventDataReader.countEvents( days, appId, life, category, project ) + " } )" ;
+		result = result + "{\"count\":" + eventDataReader.countEvents( days, appId, life, category, project )
+				.getCount( ) + " } )" ;
 		metricUtilities.stopTimer( timer, "eventJCount" ) ;
 		return result ;
 
@@ -524,9 +561,15 @@ public class ApiEventController {
 									@RequestParam ( value = "category" , required = false ) String category ) {
 
 		var timer = metricUtilities.startTimer( ) ;
-		long result = eventDataReader.countEvents( days, appId, life, category, project ) ;
+		EventCount result = eventDataReader.countEvents( days, appId, life, category, project ) ;
 		ObjectNode node = jacksonMapper.createObjectNode( ) ;
-		node.put( "count", result ) ;
+		node.put( "count", result.getCount( ) ) ;
+
+		if ( result.isApproximate( ) ) {
+
+			node.put( "approximate", true ) ;
+
+		}
 		metricUtilities.stopTimer( timer, "csap.eventApiCount" ) ;
 		return node ;
 
@@ -576,6 +619,45 @@ public class ApiEventController {
 
 	}
 
+	private String getEventsAfter ( String searchString , int length , String pageToken ) {
+
+		String json = "" ;
+		String data = "" ;
+
+		ObjectNode rootNode = jacksonMapper.createObjectNode( ) ;
+
+		try {
+
+			var page = eventDataReader.getEventsAfter( searchString, length, pageToken ) ;
+			data = "\"data\": " + JSON.serialize( page.getEvents( ) ) + "" ;
+
+			rootNode.put( "aaData", "value" ) ;
+			rootNode.put( "nextPageToken", page.getNextPageToken( ) ) ;
+			// counts are not needed to page using tokens
+			rootNode.put( EventJsonConstants.DATA_TABLES_RECORDS_TOTAL, -1 ) ;
+			rootNode.put( EventJsonConstants.DATA_TABLES_RECORDS_FILTERED, -1 ) ;
+			json = jacksonMapper.writeValueAsString( rootNode ) ;
+
+		} catch ( IllegalArgumentException e ) {
+
+			// token or length
+			metricUtilities.incrementCounter( "csap.event.get.keyset.invalid-request" ) ;
+			logger.warn( "Invalid page request: {}", e.getMessage( ) ) ;
+			rootNode.removeAll( ) ;
+			rootNode.put( "error", e.getMessage( ) ) ;
+			return rootNode.toString( ) ;
+
+		} catch ( Exception e ) {
+
+			logger.error( "Exception while converting json", e ) ;
+
+		}
+
+		json = json.replace( "\"aaData\":\"value\"", data ) ;
+		return json ;
+
+	}
+
 	private String getSearchString ( String searchValue , String searchText ) {
 
 		String searchString = "" ;
@@ -595,17 +677,19 @@ public class ApiEventController {
 	}
 
 	// Avoid slamming mongo - wait between intervals
+	// - batched ingest: inserts are written after the post returns
 	private boolean isMongoTimeoutError ( ) {
 
 		long currentTime = System.currentTimeMillis( ) ;
-		logger.debug( "diff {} ", ( currentTime - lastMongoTimeoutError ) ) ;
+		long lastError = Math.max( lastMongoTimeoutError, ingestPipeline.getLastMongoFailure( ) ) ;
+		logger.debug( "diff {} ", ( currentTime - lastError ) ) ;
 
-		if ( lastMongoTimeoutError == 0 ) {
+		if ( lastError == 0 ) {
 
-			logger.debug( "lastMongoTimeoutError " + lastMongoTimeoutError ) ;
+			logger.debug( "lastMongoTimeoutError " + lastError ) ;
 			return false ;
 
-		} else if ( ( currentTime - lastMongoTimeoutError ) < MONGO_DISABLED_INTERVAL_MS ) {
+		} else if ( ( currentTime - lastError ) < MONGO_DISABLED_INTERVAL_MS ) {
 
 			return true ;
 
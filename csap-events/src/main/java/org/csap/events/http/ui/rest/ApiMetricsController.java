@@ -44,7 +44,10 @@ public class ApiMetricsController {
 
 	@GetMapping ( value = "/{hostName}/{id}" , produces = MediaType.APPLICATION_JSON_UTF8_VALUE )
 	@CrossOrigin
-	@CsapDoc ( notes = "Time series performance data suitable for graphing" , linkTests = {
+	@CsapDoc ( notes = {
+			"Time series performance data suitable for graphing",
+			"Optional: maxPoints limits the rows returned using downsample: lttb (default), minmax, or mean"
+	} , linkTests = {
 			"service30Second",
 			"resource300Second",
 			"service300Second",
@@ -52,7 +55,8 @@ public class ApiMetricsController {
 			"data300Second",
 			"jmx300Second",
 			"jmxCustom300Second",
-			"service30Second:jsonp"
+			"service30Second:jsonp",
+			"service300SecondDownsampled"
 	} , linkGetParams = {
 			"hostName=csap-dev01,id=service_30,numberOfDays=1",
 			"hostName=csap-dev01,id=resource_300,numberOfDays=1",
@@ -61,7 +65,8 @@ public class ApiMetricsController {
 			"hostName=csap-dev01,serviceName=data,id=service_300,numberOfDays=1",
 			"hostName=csap-dev01,id=jmx_300,numberOfDays=1",
 			"hostName=csap-dev01,id=jmxCsAgent_300,numberOfDays=1,serviceName=CsAgent",
-			"hostName=csap-dev01,id=service_30,numberOfDays=1,callback=myFunctionCall"
+			"hostName=csap-dev01,id=service_30,numberOfDays=1,callback=myFunctionCall",
+			"hostName=csap-dev01,id=service_300,numberOfDays=20,maxPoints=2000,downsample=lttb"
 	} , produces = {
 			MediaType.APPLICATION_JSON_VALUE
 	} )
@@ -78,7 +83,9 @@ public class ApiMetricsController {
 										@RequestParam ( value = "appId" , defaultValue = "null" ) String appId ,
 										@RequestParam ( value = "life" , required = false ) String life ,
 										@RequestParam ( value = "showDaysFrom" , defaultValue = "false" ) boolean showDaysFrom ,
-										@RequestParam ( value = "padLatest" , defaultValue = "true" ) boolean padLatest )
+										@RequestParam ( value = "padLatest" , defaultValue = "true" ) boolean padLatest ,
+										@RequestParam ( value = "maxPoints" , defaultValue = "0" ) int maxPoints ,
+										@RequestParam ( value = "downsample" , defaultValue = "lttb" ) String downsample )
 		throws IOException {
 
 		if ( ( collectionSetId.endsWith( "_30" ) && numberOfDaysToRetrieve > 7 )
@@ -152,7 +159,8 @@ public class ApiMetricsController {
 							uniqueCacheKey,
 							numberOfDaysToRetrieve, numDaysOffsetFromToday,
 							bucketSize, bucketSpacing,
-							serviceNameArray, appId, life, showDaysFrom, padLatest ) ;
+							serviceNameArray, appId, life, showDaysFrom, padLatest,
+							maxPoints, downsample ) ;
 
 		} else if ( numDaysOffsetFromToday == 0 ) {
 
@@ -163,7 +171,8 @@ public class ApiMetricsController {
 							uniqueCacheKey,
 							numberOfDaysToRetrieve, numDaysOffsetFromToday,
 							bucketSize, bucketSpacing,
-							serviceNameArray, appId, life, showDaysFrom, padLatest ) ;
+							serviceNameArray, appId, life, showDaysFrom, padLatest,
+							maxPoints, downsample ) ;
 
 		} else {
 
@@ -175,7 +184,8 @@ public class ApiMetricsController {
 							uniqueCacheKey,
 							numberOfDaysToRetrieve, numDaysOffsetFromToday,
 							bucketSize, bucketSpacing,
-							serviceNameArray, appId, life, showDaysFrom, padLatest ) ;
+							serviceNameArray, appId, life, showDaysFrom, padLatest,
+							maxPoints, downsample ) ;
 
 		}
 
@@ -1,13 +1,17 @@
 package org.csap.events.http.ui.rest ;
 
+import java.io.IOException ;
 import java.io.PrintWriter ;
+import java.util.HashSet ;
 import java.util.List ;
 import java.util.Map ;
 import java.util.Set ;
 import java.util.concurrent.TimeUnit ;
+import java.util.stream.Collectors ;
 
 import javax.inject.Inject ;
 import javax.servlet.http.HttpServletRequest ;
+import javax.servlet.http.HttpServletResponse ;
 
 import org.apache.commons.lang3.ArrayUtils ;
 import org.apache.commons.lang3.StringUtils ;
@@ -15,13 +19,16 @@ import org.bson.Document ;
 import org.csap.docs.CsapDoc ;
 import org.csap.events.CsapEventsApplication ;
 import org.csap.events.EventJsonConstants ;
+import org.csap.events.db.AdoptionReportBackfill ;
 import org.csap.events.db.AnalyticsDbReader ;
 import org.csap.events.db.AnalyticsHelper ;
 import org.csap.events.db.CsapAdoptionReportBuilder ;
 import org.csap.events.db.GlobalAnalyticsDbReader ;
+import org.csap.events.db.HostReportExecutor ;
 import org.csap.events.db.TrendingReportHelper ;
 import org.csap.events.util.BusinessProgramDisplayInfo ;
 import org.csap.events.util.GraphData ;
+import org.csap.events.util.SingleFlightCache ;
 import org.csap.helpers.CSAP ;
 import org.csap.helpers.CsapApplication ;
 import org.csap.integations.CsapMicroMeter ;
@@ -31,6 +38,7 @@ import org.springframework.beans.factory.annotation.Autowired ;
 import org.springframework.cache.annotation.Cacheable ;
 import org.springframework.http.MediaType ;
 import org.springframework.web.bind.annotation.RequestMapping ;
+import org.springframework.web.bind.annotation.RequestMethod ;
 import org.springframework.web.bind.annotation.RequestParam ;
 import org.springframework.web.bind.annotation.RestController ;
 
@@ -53,6 +61,7 @@ public class ApiReportController {
 
 	private static final String REPORT_DATA_ALL_SUMMARY = "csap.reports-summary" ;
 	private static final String REPORT_DATA_ALL_TREND = "csap.reports-trend" ;
+	private static final String REPORT_DATA_STREAMED = "csap.reports-streamed" ;
 	public String service = "service" ;
 
 	@Inject
@@ -67,9 +76,15 @@ public class ApiReportController {
 	@Inject
 	private CsapAdoptionReportBuilder adoptionReportBuilder ;
 
+	@Inject
+	private AdoptionReportBackfill adoptionReportBackfill ;
+
 	@Inject
 	private GlobalAnalyticsDbReader globalAnalyticsReader ;
 
+	@Inject
+	private HostReportExecutor hostReportExecutor ;
+
 	@CsapDoc ( notes = "Get host and service report " , linkTests = {
 			"JSON", "JSONP"
 	} , linkGetParams = {
@@ -269,7 +284,7 @@ public class ApiReportController {
 	} , produces = {
 			MediaType.APPLICATION_JSON_VALUE
 	} )
-	@Cacheable ( CsapEventsApplication.SIMPLE_REPORT_CACHE )
+	@Cacheable ( value = CsapEventsApplication.SIMPLE_REPORT_CACHE , sync = true )
 	@RequestMapping ( value = {
 			"vm", CsapApplication.COLLECTION_HOST
 	} , produces = MediaType.APPLICATION_JSON_VALUE )
@@ -329,6 +344,114 @@ public class ApiReportController {
 
 	}
 
+	@CsapDoc ( notes = {
+			"Host report streamed from the aggregation cursor: same output as host report, using constant memory",
+			"Not cached - intended for large reports"
+	} , linkTests = {
+			"stream=true"
+	} , linkGetParams = {
+			"stream=true"
+	} , produces = {
+			MediaType.APPLICATION_JSON_VALUE
+	} )
+	@RequestMapping ( value = {
+			"vm", CsapApplication.COLLECTION_HOST
+	} , params = "stream=true" , produces = MediaType.APPLICATION_JSON_VALUE )
+	public void streamHostReport (
+									@RequestParam ( value = "appId" , required = false ) String appId ,
+									@RequestParam ( value = "project" , required = false ) String project ,
+									@RequestParam ( value = "life" , required = false ) String life ,
+									@RequestParam ( value = "numDays" , required = false , defaultValue = "1" ) Integer days ,
+									@RequestParam ( value = "dateOffSet" , required = false , defaultValue = "0" ) Integer dateOffSet ,
+									@RequestParam ( value = "resource" , required = false , defaultValue = "resource_30" ) String resource ,
+									@RequestParam ( value = "trending" , required = false , defaultValue = "false" ) Boolean trending ,
+									@RequestParam ( value = "metricsId" , required = false ) String[] metricsId ,
+									@RequestParam ( value = "perVm" , required = false , defaultValue = "false" ) Boolean perVm ,
+									@RequestParam ( value = "allVmTotal" , required = false ) String allVmTotal ,
+									@RequestParam ( value = "divideBy" , required = false ) String[] divideBy ,
+									@RequestParam ( value = "top" , required = false , defaultValue = "0" ) int top ,
+									@RequestParam ( value = "low" , required = false , defaultValue = "0" ) int low ,
+									HttpServletResponse response )
+		throws IOException {
+
+		if ( trending && ArrayUtils.isNotEmpty( metricsId ) ) {
+
+			// trends are built in memory
+			writeReport( response, buildHostReport( appId, project, life, days, dateOffSet, resource, trending,
+					metricsId, perVm, allVmTotal, divideBy, top, low ) ) ;
+			return ;
+
+		}
+
+		Long numDaysAvailable = null ;
+
+		if ( null != appId && null != project && null != life ) {
+
+			numDaysAvailable = analyticsDbReader.numDaysAnalyticsAvailable( appId, project, life, "hostreport",
+					null ) ;
+
+		}
+
+		streamReport( response,
+				analyticsDbReader.getVmReport( appId, project, life, days, dateOffSet ),
+				numDaysAvailable ) ;
+
+	}
+
+	private void writeReport ( HttpServletResponse response , JsonNode report )
+		throws IOException {
+
+		response.setContentType( MediaType.APPLICATION_JSON_VALUE ) ;
+		response.setCharacterEncoding( "UTF-8" ) ;
+		jacksonMapper.writeValue( response.getWriter( ), report ) ;
+
+	}
+
+	//
+	// {"data": [ ...aggregation results... ], "numDaysAvailable": n} - rows are
+	// written as they are read from the cursor
+	//
+	private void streamReport (
+								HttpServletResponse response ,
+								AggregateIterable<Document> results ,
+								Long numDaysAvailable )
+		throws IOException {
+
+		response.setContentType( MediaType.APPLICATION_JSON_VALUE ) ;
+		response.setCharacterEncoding( "UTF-8" ) ;
+
+		var outputWriter = response.getWriter( ) ;
+		var timer = metricUtilities.startTimer( ) ;
+
+		try {
+
+			outputWriter.write( "{\"data\":" ) ;
+			long rows = EventJsonConstants.streamJsonArray( results, outputWriter ) ;
+
+			if ( numDaysAvailable != null ) {
+
+				outputWriter.write( ",\"numDaysAvailable\":" + numDaysAvailable ) ;
+
+			}
+
+			outputWriter.write( "}" ) ;
+			outputWriter.flush( ) ;
+			logger.debug( "streamed {} rows", rows ) ;
+
+		} catch ( Exception e ) {
+
+			// response may already be committed: rethrown so the connection is
+			// aborted, rather than ending truncated json with a 200
+			logger.error( "Failed streaming report: {}", CSAP.buildCsapStack( e ) ) ;
+			metricUtilities.incrementCounter( REPORT_DATA_STREAMED + ".failed" ) ;
+			throw e ;
+
+		}
+
+		metricUtilities.stopTimer( timer, REPORT_DATA_STREAMED ) ;
+
+	}
+
 	@Inject
 	private TrendingReportHelper trendingReportHelper ;
 
@@ -339,7 +462,7 @@ public class ApiReportController {
 	} , produces = {
 			MediaType.APPLICATION_JSON_VALUE
 	} )
-	@Cacheable ( CsapEventsApplication.SIMPLE_REPORT_CACHE )
+	@Cacheable ( value = CsapEventsApplication.SIMPLE_REPORT_CACHE , sync = true )
 	@RequestMapping ( value = "/top" , produces = MediaType.APPLICATION_JSON_VALUE )
 	public List topHosts (
 							@RequestParam ( value = "appId" , required = true ) String appId ,
@@ -384,7 +507,7 @@ public class ApiReportController {
 	} , produces = {
 			MediaType.APPLICATION_JSON_VALUE
 	} )
-	@Cacheable ( CsapEventsApplication.SIMPLE_REPORT_CACHE )
+	@Cacheable ( value = CsapEventsApplication.SIMPLE_REPORT_CACHE , sync = true )
 	@RequestMapping ( value = "/low" , produces = MediaType.APPLICATION_JSON_VALUE )
 	public List lowHosts (
 							@RequestParam ( value = "appId" , required = true ) String appId ,
@@ -595,7 +718,7 @@ public class ApiReportController {
 	} , produces = {
 			MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE
 	} )
-	@Cacheable ( CsapEventsApplication.SIMPLE_REPORT_CACHE )
+	@Cacheable ( value = CsapEventsApplication.SIMPLE_REPORT_CACHE , sync = true )
 	@RequestMapping ( value = "/custom/core" , produces = MediaType.APPLICATION_JSON_VALUE )
 	public ObjectNode coreTrending (
 										@RequestParam ( value = "appId" , required = false ) String appId ,
@@ -649,7 +772,7 @@ public class ApiReportController {
 	} , produces = {
 			MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE
 	} )
-	@Cacheable ( CsapEventsApplication.SIMPLE_REPORT_CACHE )
+	@Cacheable ( value = CsapEventsApplication.SIMPLE_REPORT_CACHE , sync = true )
 	@RequestMapping ( value = "/custom/health" , produces = MediaType.APPLICATION_JSON_VALUE )
 	public ObjectNode healthTrending (
 										@RequestParam ( value = "appId" , required = false ) String appId ,
@@ -702,7 +825,7 @@ public class ApiReportController {
 			MediaType.APPLICATION_JSON_VALUE,
 			MediaType.APPLICATION_JSON_VALUE
 	} )
-	@Cacheable ( CsapEventsApplication.SIMPLE_REPORT_CACHE )
+	@Cacheable ( value = CsapEventsApplication.SIMPLE_REPORT_CACHE , sync = true )
 	@RequestMapping ( value = "/custom/logRotate" , produces = MediaType.APPLICATION_JSON_VALUE )
 	public ObjectNode logRotateTrending (
 											@RequestParam ( value = "appId" , required = false ) String appId ,
@@ -762,7 +885,7 @@ public class ApiReportController {
 			MediaType.APPLICATION_JSON_VALUE
 	} )
 
-	@Cacheable ( CsapEventsApplication.SIMPLE_REPORT_CACHE )
+	@Cacheable ( value = CsapEventsApplication.SIMPLE_REPORT_CACHE , sync = true )
 	@RequestMapping ( value = {
 			"service", CsapApplication.COLLECTION_OS_PROCESS
 	} , produces = MediaType.APPLICATION_JSON_VALUE )
@@ -818,17 +941,23 @@ public class ApiReportController {
 						days, dateOffSet ) ;
 				var summaryServicesReport = EventJsonConstants.transformToJackson( results ) ;
 
-				var multiServiceReport = jacksonMapper.createArrayNode( ) ;
-				var serviceCategory = category ;
-				CSAP.jsonStream( summaryServicesReport )
-						.filter( JsonNode::isObject )
-						.map( summaryReport -> (ObjectNode) summaryReport )
-						.forEach( summaryReport -> {
+				var serviceNames = CSAP.jsonStream( summaryServicesReport )
+						.map( summaryReport -> summaryReport.path( "serviceName" ) )
+						.filter( JsonNode::isTextual )
+						.map( JsonNode::asText )
+						.collect( Collectors.toList( ) ) ;
 
-							var serviceName = summaryReport.path( "serviceName" ).asText( ) ;
+				//
+				// each service trend is a separate pipeline: run concurrently, bounded per
+				// request and by the shared report pool
+				//
+				var timer = metricUtilities.startTimer( ) ;
+				var serviceCategory = category ;
+				Map<String, JsonNode> serviceReports = hostReportExecutor.buildReports( "service-trends",
+						serviceNames,
+						serviceName -> {
 
 							logger.debug( "Running report for: {}, metric: {}, ", serviceName, metricsId ) ;
-//						if ( serviceName.equals( "csap-agent" ) || serviceName.equals( "csap-admin" ) ) {
 
 							try {
 
@@ -839,7 +968,7 @@ public class ApiReportController {
 										divideBy,
 										Boolean.toString( ! serviceTrendPerVm ), days, dateOffSet ) ;
 
-								multiServiceReport.add( serviceReport.path( 0 ) ) ;
+								return serviceReport.path( 0 ) ;
 
 							} catch ( Exception e ) {
 
@@ -847,10 +976,25 @@ public class ApiReportController {
 										e ) ) ;
 
 							}
-//						}
+
+							return null ;
 
 						} ) ;
 
+				var multiServiceReport = jacksonMapper.createArrayNode( ) ;
+				serviceReports.values( ).forEach( multiServiceReport::add ) ;
+				metricUtilities.stopTimer( timer, REPORT_DATA_ALL_TREND ) ;
+
+				// services that failed or missed the deadline: marked partial, so report caches skip it
+				var servicesMissing = new HashSet<>( serviceNames ).size( ) - serviceReports.size( ) ;
+
+				if ( servicesMissing > 0 ) {
+
+					osProcessReport.put( SingleFlightCache.PARTIAL_REPORT, true ) ;
+					osProcessReport.put( "servicesMissing", servicesMissing ) ;
+
+				}
+
 				requestedReport = multiServiceReport ;
 
 			} else if ( trending ) {
@@ -892,6 +1036,75 @@ public class ApiReportController {
 
 	}
 
+	@CsapDoc ( notes = {
+			"OS process report streamed from the aggregation cursor: same output as os-process report, using constant memory",
+			"Not cached - intended for large reports"
+	} , linkTests = {
+			"stream=true"
+	} , linkGetParams = {
+			"stream=true"
+	} , produces = {
+			MediaType.APPLICATION_JSON_VALUE
+	} )
+	@RequestMapping ( value = {
+			"service", CsapApplication.COLLECTION_OS_PROCESS
+	} , params = "stream=true" , produces = MediaType.APPLICATION_JSON_VALUE )
+	public void streamServiceReports (
+										@RequestParam ( value = "appId" , required = false ) String appId ,
+										@RequestParam ( value = "project" , required = false ) String project ,
+										@RequestParam ( value = "life" , required = false ) String life ,
+										@RequestParam ( value = "host" , required = false ) String host ,
+										@RequestParam ( value = "perVm" , required = false , defaultValue = "false" ) Boolean perVm ,
+										@RequestParam ( value = "serviceName" , required = false ) String serviceNameFilter ,
+										@RequestParam ( value = "numDays" , required = false , defaultValue = "1" ) Integer days ,
+										@RequestParam ( value = "dateOffSet" , required = false , defaultValue = "0" ) Integer dateOffSet ,
+										@RequestParam ( value = "trending" , required = false , defaultValue = "false" ) Boolean trending ,
+										@RequestParam ( value = "metricsId" , required = false ) String[] metricsId ,
+										@RequestParam ( value = "divideBy" , required = false ) String[] divideBy ,
+										@RequestParam ( value = "allVmTotal" , required = false ) String allVmTotal ,
+										@RequestParam ( value = "category" , required = false , defaultValue = "" ) String category ,
+										HttpServletRequest httpRequest ,
+										HttpServletResponse response )
+		throws IOException {
+
+		if ( trending ) {
+
+			// trends are built in memory
+			writeReport( response, serviceReports( appId, project, life, host, perVm, serviceNameFilter, days,
+					dateOffSet, trending, metricsId, divideBy, allVmTotal, category, httpRequest ) ) ;
+			return ;
+
+		}
+
+		if ( StringUtils.isEmpty( category ) ) {
+
+			category = "/csap/reports/" + CsapApplication.COLLECTION_OS_PROCESS + "/daily" ;
+
+			if ( httpRequest.getRequestURI( ).endsWith( "service" ) ) {
+
+				category = "/csap/reports/process/daily" ;
+
+			}
+
+		}
+
+		Long numDaysAvailable = null ;
+
+		if ( null != appId && null != project && null != life ) {
+
+			numDaysAvailable = analyticsDbReader.numDaysAnalyticsAvailable( appId, project, life, category,
+					serviceNameFilter ) ;
+
+		}
+
+		streamReport( response,
+				analyticsDbReader.findSummaryReportDataUsingCategory(
+						appId, project, life, host, serviceNameFilter, category,
+						days, dateOffSet ),
+				numDaysAvailable ) ;
+
+	}
+
 	@CsapDoc ( notes = "Service detail report" , linkTests = {
 			"a=b", "appId=csapeng.gen,serviceName=data,metricsId=socketCount",
 			"appId=csapeng.gen,serviceName=data,metricsId=socketCount,trending=true"
@@ -902,7 +1115,7 @@ public class ApiReportController {
 	} , produces = {
 			MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE
 	} )
-	@Cacheable ( CsapEventsApplication.DETAILS_REPORT_CACHE )
+	@Cacheable ( value = CsapEventsApplication.DETAILS_REPORT_CACHE , sync = true )
 	@RequestMapping ( value = {
 			"service/detail",
 			CsapApplication.COLLECTION_OS_PROCESS + "/detail"
@@ -985,7 +1198,7 @@ public class ApiReportController {
 
 	}
 
-	@Cacheable ( CsapEventsApplication.SIMPLE_REPORT_CACHE )
+	@Cacheable ( value = CsapEventsApplication.SIMPLE_REPORT_CACHE , sync = true )
 	@RequestMapping ( value = {
 			"jmx", CsapApplication.COLLECTION_JAVA
 	} , produces = MediaType.APPLICATION_JSON_VALUE )
@@ -1065,7 +1278,7 @@ public class ApiReportController {
 
 	}
 
-	@Cacheable ( CsapEventsApplication.DETAILS_REPORT_CACHE )
+	@Cacheable ( value = CsapEventsApplication.DETAILS_REPORT_CACHE , sync = true )
 	@RequestMapping ( value = {
 			"jmx/detail",
 			CsapApplication.COLLECTION_JAVA + "/detail"
@@ -1150,7 +1363,7 @@ public class ApiReportController {
 
 	}
 
-	@Cacheable ( CsapEventsApplication.SIMPLE_REPORT_CACHE )
+	@Cacheable ( value = CsapEventsApplication.SIMPLE_REPORT_CACHE , sync = true )
 	@RequestMapping ( value = {
 			"jmxCustom", CsapApplication.COLLECTION_APPLICATION
 	} , produces = MediaType.APPLICATION_JSON_VALUE )
@@ -1230,7 +1443,7 @@ public class ApiReportController {
 
 	}
 
-	@Cacheable ( CsapEventsApplication.DETAILS_REPORT_CACHE )
+	@Cacheable ( value = CsapEventsApplication.DETAILS_REPORT_CACHE , sync = true )
 	@RequestMapping ( value = {
 			"jmxCustom/detail",
 			CsapApplication.COLLECTION_APPLICATION + "/detail"
@@ -1372,6 +1585,23 @@ public class ApiReportController {
 		// return "Posted analytics";
 	}
 
+	@RequestMapping ( value = "/adoptionBackfill" , method = RequestMethod.POST , produces = MediaType.APPLICATION_JSON_VALUE )
+	public ObjectNode adoptionBackfill (
+											@RequestParam ( value = "offSet" , defaultValue = "1" ) Integer offSet ,
+											@RequestParam ( value = "numDays" , defaultValue = "30" ) Integer numDays ) {
+
+		logger.info( "Adoption backfill offSet: {} numDays: {}", offSet, numDays ) ;
+		return adoptionReportBackfill.start( offSet, numDays ) ;
+
+	}
+
+	@RequestMapping ( value = "/adoptionBackfill/progress" , produces = MediaType.APPLICATION_JSON_VALUE )
+	public ObjectNode adoptionBackfillProgress ( ) {
+
+		return adoptionReportBackfill.getProgress( ) ;
+
+	}
+
 	@RequestMapping ( value = "/postProjectAnalytics" , produces = MediaType.APPLICATION_JSON_VALUE )
 	public String postAnalyticsForAProject (
 												@RequestParam ( value = "numDays" , defaultValue = "1" ) Integer numDays ,
@@ -0,0 +1,195 @@
+package org.csap.events.util ;
+
+import java.io.ByteArrayInputStream ;
+import java.io.ByteArrayOutputStream ;
+import java.io.IOException ;
+import java.io.Serializable ;
+import java.io.UncheckedIOException ;
+import java.nio.charset.StandardCharsets ;
+import java.util.concurrent.Callable ;
+import java.util.zip.Deflater ;
+import java.util.zip.GZIPInputStream ;
+import java.util.zip.GZIPOutputStream ;
+
+import org.springframework.cache.Cache ;
+import org.springframework.cache.support.SimpleValueWrapper ;
+
+/**
+ *
+ * Stores String report values gzip compressed: metric reports are large json
+ * strings that typically compress 10x, so byte sized cache tiers hold far more
+ * reports. Other values are stored unchanged.
+ *
+ */
+public class CompressedStringCache implements Cache {
+
+	private Cache cache ;
+
+	static class CompressedString implements Serializable {
+
+		private static final long serialVersionUID = 1L ;
+
+		final byte[] gzipped ;
+
+		CompressedString ( byte[] gzipped ) {
+
+			this.gzipped = gzipped ;
+
+		}
+	}
+
+	public CompressedStringCache ( Cache cache ) {
+
+		this.cache = cache ;
+
+	}
+
+	static Object compress ( Object value ) {
+
+		if ( ! ( value instanceof String ) ) {
+
+			return value ;
+
+		}
+
+		var compressedBytes = new ByteArrayOutputStream( ( (String) value ).length( ) / 8 + 64 ) ;
+
+		try ( var gzipStream = new GZIPOutputStream( compressedBytes ) {
+			{
+
+				def.setLevel( Deflater.BEST_SPEED ) ;
+
+			}
+		} ) {
+
+			gzipStream.write( ( (String) value ).getBytes( StandardCharsets.UTF_8 ) ) ;
+
+		} catch ( IOException e ) {
+
+			throw new UncheckedIOException( e ) ;
+
+		}
+
+		return new CompressedString( compressedBytes.toByteArray( ) ) ;
+
+	}
+
+	static Object decompress ( Object value ) {
+
+		if ( ! ( value instanceof CompressedString ) ) {
+
+			return value ;
+
+		}
+
+		try ( var gzipStream = new GZIPInputStream( new ByteArrayInputStream( ( (CompressedString) value ).gzipped ) ) ) {
+
+			return new String( gzipStream.readAllBytes( ), StandardCharsets.UTF_8 ) ;
+
+		} catch ( IOException e ) {
+
+			throw new UncheckedIOException( e ) ;
+
+		}
+
+	}
+
+	@SuppressWarnings ( "unchecked" )
+	@Override
+	public <T> T get ( Object key , Callable<T> valueLoader ) {
+
+		return (T) decompress( cache.get( key, ( ) -> compress( valueLoader.call( ) ) ) ) ;
+
+	}
+
+	@Override
+	public ValueWrapper get ( Object key ) {
+
+		var valueWrapper = cache.get( key ) ;
+
+		if ( valueWrapper == null ) {
+
+			return null ;
+
+		}
+
+		return new SimpleValueWrapper( decompress( valueWrapper.get( ) ) ) ;
+
+	}
+
+	@SuppressWarnings ( "unchecked" )
+	@Override
+	public <T> T get ( Object key , Class<T> type ) {
+
+		var valueWrapper = get( key ) ;
+
+		if ( valueWrapper == null ) {
+
+			return null ;
+
+		}
+
+		var value = valueWrapper.get( ) ;
+
+		if ( value != null && type != null && ! type.isInstance( value ) ) {
+
+			throw new IllegalStateException( "Cached value is not of required type [" + type.getName( ) + "]: "
+					+ value ) ;
+
+		}
+
+		return (T) value ;
+
+	}
+
+	@Override
+	public void put ( Object key , Object value ) {
+
+		cache.put( key, compress( value ) ) ;
+
+	}
+
+	@Override
+	public ValueWrapper putIfAbsent ( Object key , Object value ) {
+
+		var existing = cache.putIfAbsent( key, compress( value ) ) ;
+
+		if ( existing == null ) {
+
+			return null ;
+
+		}
+
+		return new SimpleValueWrapper( decompress( existing.get( ) ) ) ;
+
+	}
+
+	@Override
+	public void evict ( Object key ) {
+
+		cache.evict( key ) ;
+
+	}
+
+	@Override
+	public void clear ( ) {
+
+		cache.clear( ) ;
+
+	}
+
+	@Override
+	public String getName ( ) {
+
+		return cache.getName( ) ;
+
+	}
+
+	@Override
+	public Object getNativeCache ( ) {
+
+		return cache.getNativeCache( ) ;
+
+	}
+
+}
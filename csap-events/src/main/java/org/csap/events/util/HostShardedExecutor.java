@@ -0,0 +1,129 @@
+package org.csap.events.util ;
+
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.concurrent.LinkedBlockingQueue ;
+import java.util.concurrent.RejectedExecutionException ;
+import java.util.concurrent.ThreadPoolExecutor ;
+import java.util.concurrent.TimeUnit ;
+
+import javax.annotation.PostConstruct ;
+import javax.annotation.PreDestroy ;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory ;
+import org.csap.events.CsapEventsApplication ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.stereotype.Service ;
+
+/**
+ *
+ * Health and discovery work for a host always runs on the same single thread
+ * lane, so events for a host are processed in the order received without
+ * locks; different hosts run in parallel across lanes.
+ *
+ * - each lane has a bounded queue: when full the task is rejected and counted
+ * for that lane, other lanes are not affected
+ *
+ * - queue depth per lane is exposed as a gauge
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".health-lanes" )
+public class HostShardedExecutor {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	private int lanes = 5 ;
+	private int laneQueue = 100 ;
+
+	private List<ThreadPoolExecutor> laneExecutors = new ArrayList<>( ) ;
+
+	@PostConstruct
+	public void startLanes ( ) {
+
+		logger.info( "Host lanes: {}, queue per lane: {}", lanes, laneQueue ) ;
+
+		BasicThreadFactory laneThreadFactory = new BasicThreadFactory.Builder( )
+				.namingPattern( CsapEventsApplication.class.getSimpleName( ) + "HostLane-%d" )
+				.daemon( true )
+				.build( ) ;
+
+		for ( var lane = 0; lane < lanes; lane++ ) {
+
+			var laneExecutor = new ThreadPoolExecutor( 1, 1, 0L, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<>( laneQueue ), laneThreadFactory ) ;
+
+			laneExecutors.add( laneExecutor ) ;
+			metricUtilities.addGauge( "csap.health-lanes.lane-" + lane + ".queue", laneExecutor,
+					executor -> executor.getQueue( ).size( ) ) ;
+
+		}
+
+	}
+
+	@PreDestroy
+	public void stopLanes ( ) {
+
+		laneExecutors.forEach( ThreadPoolExecutor::shutdown ) ;
+
+	}
+
+	/**
+	 *
+	 * @throws RejectedExecutionException when the host's lane is full
+	 */
+	public void execute ( String host , Runnable task ) {
+
+		int lane = laneFor( host, laneExecutors.size( ) ) ;
+
+		try {
+
+			laneExecutors.get( lane ).execute( task ) ;
+
+		} catch ( RejectedExecutionException e ) {
+
+			metricUtilities.incrementCounter( "csap.health-lanes.lane-" + lane + ".rejected" ) ;
+			throw e ;
+
+		}
+
+	}
+
+	static int laneFor ( String host , int laneCount ) {
+
+		return Math.floorMod( String.valueOf( host ).hashCode( ), laneCount ) ;
+
+	}
+
+	public int getLanes ( ) {
+
+		return lanes ;
+
+	}
+
+	public void setLanes ( int lanes ) {
+
+		this.lanes = lanes ;
+
+	}
+
+	public int getLaneQueue ( ) {
+
+		return laneQueue ;
+
+	}
+
+	public void setLaneQueue ( int laneQueue ) {
+
+		this.laneQueue = laneQueue ;
+
+	}
+
+}
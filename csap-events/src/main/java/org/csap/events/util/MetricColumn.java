@@ -0,0 +1,98 @@
+package org.csap.events.util ;
+
+import java.util.Arrays ;
+import java.util.BitSet ;
+
+/**
+ *
+ * Growable primitive buffer for one data array of a metrics document. Values
+ * are appended to a MetricsTimeSeries once the document is decoded.
+ *
+ */
+public class MetricColumn {
+
+	private double[] values ;
+	private int size = 0 ;
+	private BitSet decimalIndexes = new BitSet( ) ;
+
+	public MetricColumn ( int initialCapacity ) {
+
+		values = new double[Math.max( initialCapacity, 16 )] ;
+
+	}
+
+	public void add ( double value ) {
+
+		ensureCapacity( size + 1 ) ;
+		values[size++] = value ;
+
+	}
+
+	// source was a bson double: report output keeps the decimal point
+	public void addDecimal ( double value ) {
+
+		decimalIndexes.set( size ) ;
+		add( value ) ;
+
+	}
+
+	// source was null: report output is null
+	public void addMissing ( ) {
+
+		add( MetricsTimeSeries.MISSING ) ;
+
+	}
+
+	public double get ( int index ) {
+
+		return values[index] ;
+
+	}
+
+	// backing array: only the first size() entries are valid
+	double[] values ( ) {
+
+		return values ;
+
+	}
+
+	public int size ( ) {
+
+		return size ;
+
+	}
+
+	public boolean isIntegral ( ) {
+
+		return decimalIndexes.isEmpty( ) ;
+
+	}
+
+	public boolean isDecimal ( int index ) {
+
+		return decimalIndexes.get( index ) ;
+
+	}
+
+	// releases unused capacity: used for columns held in memory
+	public void trimToSize ( ) {
+
+		if ( values.length > size ) {
+
+			values = Arrays.copyOf( values, size ) ;
+
+		}
+
+	}
+
+	private void ensureCapacity ( int required ) {
+
+		if ( required > values.length ) {
+
+			values = Arrays.copyOf( values, Math.max( required, values.length * 2 ) ) ;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,422 @@
+package org.csap.events.util ;
+
+import java.util.ArrayList ;
+import java.util.List ;
+
+/**
+ *
+ * Reduces a MetricsTimeSeries to at most maxPoints rows for graphing. All
+ * columns share the reduced timeStamps.
+ *
+ * - lttb: largest triangle three buckets - keeps the rows that most change the
+ * shape of the graph, scored across all attributes
+ *
+ * - minmax: the rows holding each attribute's min and max in a bucket, so
+ * peaks are never lost; rows are kept whole, so every value keeps its own
+ * timeStamp. When attributes peak on different rows, buckets are widened to
+ * stay within maxPoints
+ *
+ * - mean: 1 row per bucket holding each attribute's average, stamped with the
+ * bucket's first timeStamp
+ *
+ * - MISSING values are never selected as a min or max, and are left out of
+ * averages
+ *
+ */
+public enum MetricsDownsampler {
+
+	lttb {
+
+		@Override
+		MetricsTimeSeries reduce ( MetricsTimeSeries series , int maxPoints ) {
+
+			int length = series.length( ) ;
+			var timeStamps = series.timeStampArray( ) ;
+			var normalized = normalizedColumns( series ) ;
+
+			var selectedRows = new int[maxPoints] ;
+			int selectedCount = 0 ;
+			selectedRows[selectedCount++] = 0 ;
+
+			// first and last rows are always kept
+			double bucketWidth = (double) ( length - 2 ) / ( maxPoints - 2 ) ;
+			int anchorRow = 0 ;
+			var nextAverage = new double[normalized.size( )] ;
+
+			for ( int bucket = 0; bucket < maxPoints - 2; bucket++ ) {
+
+				int nextStart = (int) Math.floor( ( bucket + 1 ) * bucketWidth ) + 1 ;
+				int nextEnd = Math.min( (int) Math.floor( ( bucket + 2 ) * bucketWidth ) + 1, length ) ;
+
+				if ( nextStart >= nextEnd ) {
+
+					// last bucket: the final row is the third point
+					nextStart = length - 1 ;
+					nextEnd = length ;
+
+				}
+
+				double nextAverageTime = 0 ;
+
+				for ( int row = nextStart; row < nextEnd; row++ ) {
+
+					nextAverageTime += timeStamps[row] - timeStamps[0] ;
+
+				}
+
+				nextAverageTime /= ( nextEnd - nextStart ) ;
+
+				for ( int column = 0; column < normalized.size( ); column++ ) {
+
+					var values = normalized.get( column ) ;
+					double total = 0 ;
+
+					for ( int row = nextStart; row < nextEnd; row++ ) {
+
+						total += values[row] ;
+
+					}
+
+					nextAverage[column] = total / ( nextEnd - nextStart ) ;
+
+				}
+
+				int bucketStart = (int) Math.floor( bucket * bucketWidth ) + 1 ;
+				int bucketEnd = (int) Math.floor( ( bucket + 1 ) * bucketWidth ) + 1 ;
+				double anchorTime = timeStamps[anchorRow] - timeStamps[0] ;
+
+				double largestArea = -1 ;
+				int largestRow = bucketStart ;
+
+				for ( int row = bucketStart; row < bucketEnd; row++ ) {
+
+					double rowTime = timeStamps[row] - timeStamps[0] ;
+					double area = 0 ;
+
+					for ( int column = 0; column < normalized.size( ); column++ ) {
+
+						var values = normalized.get( column ) ;
+						double anchorValue = values[anchorRow] ;
+
+						area += Math.abs( ( anchorTime - nextAverageTime ) * ( values[row] - anchorValue )
+								- ( anchorTime - rowTime ) * ( nextAverage[column] - anchorValue ) ) ;
+
+					}
+
+					if ( area > largestArea ) {
+
+						largestArea = area ;
+						largestRow = row ;
+
+					}
+
+				}
+
+				selectedRows[selectedCount++] = largestRow ;
+				anchorRow = largestRow ;
+
+			}
+
+			selectedRows[selectedCount++] = length - 1 ;
+
+			return series.selectRows( selectedRows, selectedCount ) ;
+
+		}
+
+	},
+
+	minmax {
+
+		@Override
+		MetricsTimeSeries reduce ( MetricsTimeSeries series , int maxPoints ) {
+
+			int buckets = maxPoints / 2 ;
+
+			while ( true ) {
+
+				var rows = extremeRows( series, buckets ) ;
+
+				// a single bucket always keeps every attribute's min and max
+				if ( rows.length <= maxPoints || buckets == 1 ) {
+
+					return series.selectRows( rows, rows.length ) ;
+
+				}
+
+				buckets = Math.max( 1, Math.min( buckets - 1, (int) ( (long) buckets * maxPoints / rows.length ) ) ) ;
+
+			}
+
+		}
+
+	},
+
+	mean {
+
+		@Override
+		MetricsTimeSeries reduce ( MetricsTimeSeries series , int maxPoints ) {
+
+			int length = series.length( ) ;
+
+			var timeStamps = series.timeStampArray( ) ;
+			var reduced = series.emptyCopy( maxPoints ) ;
+			var reducedTimeStamps = reduced.timeStampArray( ) ;
+
+			for ( int bucket = 0; bucket < maxPoints; bucket++ ) {
+
+				reducedTimeStamps[bucket] = timeStamps[bucketStart( bucket, maxPoints, length )] ;
+
+			}
+
+			for ( var column : series.columnArrays( ).entrySet( ) ) {
+
+				var values = column.getValue( ) ;
+				var reducedValues = reduced.columnArrays( ).get( column.getKey( ) ) ;
+
+				for ( int bucket = 0; bucket < maxPoints; bucket++ ) {
+
+					int start = bucketStart( bucket, maxPoints, length ) ;
+					int end = bucketStart( bucket + 1, maxPoints, length ) ;
+					double total = 0 ;
+					int count = 0 ;
+					boolean isDecimal = false ;
+
+					for ( int row = start; row < end; row++ ) {
+
+						if ( ! Double.isNaN( values[row] ) ) {
+
+							total += values[row] ;
+							count++ ;
+							isDecimal |= series.isDecimal( column.getKey( ), row ) ;
+
+						}
+
+					}
+
+					double average = ( count == 0 ) ? MetricsTimeSeries.MISSING : roundAverage( total / count ) ;
+					reducedValues[bucket] = average ;
+
+					if ( isDecimal || average != Math.rint( average ) ) {
+
+						reduced.markDecimal( column.getKey( ), bucket ) ;
+
+					}
+
+				}
+
+			}
+
+			reduced.setLength( maxPoints ) ;
+
+			return reduced ;
+
+		}
+
+	} ;
+
+	public static final int MINIMUM_POINTS = 3 ;
+
+	abstract MetricsTimeSeries reduce ( MetricsTimeSeries series , int maxPoints ) ;
+
+	/**
+	 *
+	 * @return series unchanged if it already fits in maxPoints, or maxPoints
+	 *         is not set
+	 */
+	public MetricsTimeSeries downsample ( MetricsTimeSeries series , int maxPoints ) {
+
+		if ( maxPoints <= 0 || series.length( ) <= maxPoints ) {
+
+			return series ;
+
+		}
+
+		return reduce( series, Math.max( maxPoints, MINIMUM_POINTS ) ) ;
+
+	}
+
+	public static MetricsDownsampler parse ( String name ) {
+
+		for ( var downsampler : values( ) ) {
+
+			if ( downsampler.name( ).equalsIgnoreCase( name ) ) {
+
+				return downsampler ;
+
+			}
+
+		}
+
+		return lttb ;
+
+	}
+
+	/**
+	 *
+	 * report cache key: unknown names share the lttb entry, and downsample is
+	 * ignored when maxPoints is not set
+	 */
+	public static String cacheKey ( int maxPoints , String downsample ) {
+
+		if ( maxPoints <= 0 ) {
+
+			return "" ;
+
+		}
+
+		return maxPoints + "-" + parse( downsample ).name( ) ;
+
+	}
+
+	// rows holding the min or max of any attribute in each bucket, in collection
+	// order
+	static int[] extremeRows ( MetricsTimeSeries series , int buckets ) {
+
+		int length = series.length( ) ;
+		var selected = new boolean[length] ;
+		int selectedCount = 0 ;
+
+		for ( int bucket = 0; bucket < buckets; bucket++ ) {
+
+			int start = bucketStart( bucket, buckets, length ) ;
+			int end = bucketStart( bucket + 1, buckets, length ) ;
+
+			if ( start >= end ) {
+
+				continue ;
+
+			}
+
+			if ( series.columnArrays( ).isEmpty( ) && ! selected[start] ) {
+
+				selected[start] = true ;
+				selectedCount++ ;
+
+			}
+
+			for ( var values : series.columnArrays( ).values( ) ) {
+
+				int minRow = start ;
+				int maxRow = start ;
+
+				for ( int row = start + 1; row < end; row++ ) {
+
+					if ( Double.isNaN( values[row] ) ) {
+
+						continue ;
+
+					}
+
+					if ( Double.isNaN( values[minRow] ) || values[row] < values[minRow] ) {
+
+						minRow = row ;
+
+					}
+
+					if ( Double.isNaN( values[maxRow] ) || values[row] > values[maxRow] ) {
+
+						maxRow = row ;
+
+					}
+
+				}
+
+				for ( var row : new int[] { minRow, maxRow } ) {
+
+					if ( ! selected[row] ) {
+
+						selected[row] = true ;
+						selectedCount++ ;
+
+					}
+
+				}
+
+			}
+
+		}
+
+		var rows = new int[selectedCount] ;
+		int next = 0 ;
+
+		for ( int row = 0; row < length; row++ ) {
+
+			if ( selected[row] ) {
+
+				rows[next++] = row ;
+
+			}
+
+		}
+
+		return rows ;
+
+	}
+
+	// 4 significant digits, and never less precise than 2 decimal places: small
+	// values such as load or latency in seconds are not rounded to 0
+	public static double roundAverage ( double average ) {
+
+		if ( average == 0 || Double.isNaN( average ) || Double.isInfinite( average ) ) {
+
+			return average ;
+
+		}
+
+		int magnitude = (int) Math.floor( Math.log10( Math.abs( average ) ) ) ;
+		double scale = Math.pow( 10, Math.max( 2, 3 - magnitude ) ) ;
+
+		return Math.round( average * scale ) / scale ;
+
+	}
+
+	static int bucketStart ( int bucket , int buckets , int length ) {
+
+		return (int) ( (long) bucket * length / buckets ) ;
+
+	}
+
+	// values scaled to 0..1 so each attribute contributes equally to lttb areas
+	static List<double[]> normalizedColumns ( MetricsTimeSeries series ) {
+
+		int length = series.length( ) ;
+		var normalized = new ArrayList<double[]>( ) ;
+
+		for ( var values : series.columnArrays( ).values( ) ) {
+
+			double min = Double.MAX_VALUE ;
+			double max = -Double.MAX_VALUE ;
+
+			for ( int row = 0; row < length; row++ ) {
+
+				if ( ! Double.isNaN( values[row] ) ) {
+
+					min = Math.min( min, values[row] ) ;
+					max = Math.max( max, values[row] ) ;
+
+				}
+
+			}
+
+			if ( max > min ) {
+
+				var scaled = new double[length] ;
+
+				// MISSING scaled as the minimum
+				for ( int row = 0; row < length; row++ ) {
+
+					scaled[row] = Double.isNaN( values[row] ) ? 0 : ( values[row] - min ) / ( max - min ) ;
+
+				}
+
+				normalized.add( scaled ) ;
+
+			}
+
+		}
+
+		return normalized ;
+
+	}
+
+}
@@ -0,0 +1,459 @@
+package org.csap.events.util ;
+
+import java.io.IOException ;
+import java.util.ArrayList ;
+import java.util.Arrays ;
+import java.util.BitSet ;
+import java.util.HashMap ;
+import java.util.LinkedHashSet ;
+import java.util.List ;
+import java.util.Map ;
+
+import com.fasterxml.jackson.core.JsonGenerator ;
+
+/**
+ *
+ * Columnar metrics report: long[] timeStamps plus a double[] per attribute, all
+ * sharing one length. Used for merge, padding, sampling and serialization so a
+ * multi day report is a handful of primitive arrays rather than millions of
+ * JsonNodes.
+ *
+ * - attributes missing or short in a document are zero filled to the
+ * timeStamp count, as the JsonNode merge did. Values beyond the timeStamp count
+ * are dropped: the JsonNode merge appended them, shifting every later document
+ * of that attribute out of line with its timeStamps
+ *
+ * - null values are held as MISSING (NaN) and written back as null. valueAt()
+ * and values() read them as 0, as JsonNode.asDouble( ) did
+ *
+ * - values read from integer bson types are written without a decimal point,
+ * values read from doubles with one: tracked per value, matching the source
+ * documents
+ *
+ * - arrays are heap only: no off-heap storage; reports are cached serialized
+ *
+ */
+public class MetricsTimeSeries {
+
+	public static final String TIME_STAMP = "timeStamp" ;
+	public static final double MISSING = Double.NaN ;
+
+	// report order - includes timeStamp
+	private List<String> attributeNames ;
+
+	private long[] timeStamps ;
+	private Map<String, double[]> columns = new HashMap<>( ) ;
+	// rows read from decimal sources, per attribute
+	private Map<String, BitSet> decimalRows = new HashMap<>( ) ;
+	private int length = 0 ;
+
+	public MetricsTimeSeries ( List<String> attributeNames, int initialCapacity ) {
+
+		this.attributeNames = new ArrayList<>( new LinkedHashSet<>( attributeNames ) ) ;
+
+		int capacity = Math.max( initialCapacity, 16 ) ;
+		timeStamps = new long[capacity] ;
+
+		for ( var attributeName : attributeNames ) {
+
+			if ( ! attributeName.equals( TIME_STAMP ) ) {
+
+				columns.put( attributeName, new double[capacity] ) ;
+
+			}
+
+		}
+
+	}
+
+	/**
+	 *
+	 * appends the rows from one metrics document. Values beyond the timeStamp
+	 * count are dropped, short or missing attributes are 0 filled
+	 *
+	 */
+	public void append ( Map<String, MetricColumn> documentValues ) {
+
+		var documentTimeStamps = documentValues.get( TIME_STAMP ) ;
+
+		if ( documentTimeStamps == null || documentTimeStamps.size( ) == 0 ) {
+
+			return ;
+
+		}
+
+		int rows = documentTimeStamps.size( ) ;
+		ensureCapacity( length + rows ) ;
+
+		for ( int i = 0; i < rows; i++ ) {
+
+			timeStamps[length + i] = (long) documentTimeStamps.get( i ) ;
+
+		}
+
+		for ( var column : columns.entrySet( ) ) {
+
+			var values = column.getValue( ) ;
+			var documentColumn = documentValues.get( column.getKey( ) ) ;
+			int copied = 0 ;
+
+			if ( documentColumn != null ) {
+
+				copied = Math.min( rows, documentColumn.size( ) ) ;
+				System.arraycopy( documentColumn.values( ), 0, values, length, copied ) ;
+
+				if ( ! documentColumn.isIntegral( ) ) {
+
+					for ( int i = 0; i < copied; i++ ) {
+
+						if ( documentColumn.isDecimal( i ) ) {
+
+							markDecimal( column.getKey( ), length + i ) ;
+
+						}
+
+					}
+
+				}
+
+			}
+
+			Arrays.fill( values, length + copied, length + rows, 0 ) ;
+
+		}
+
+		length += rows ;
+
+	}
+
+	// latest rows are placed in front: reports are sorted newest first
+	public void prepend ( MetricsTimeSeries latest ) {
+
+		int combinedLength = length + latest.length ;
+		int capacity = Math.max( timeStamps.length, combinedLength ) ;
+
+		var combinedTimeStamps = new long[capacity] ;
+		System.arraycopy( latest.timeStamps, 0, combinedTimeStamps, 0, latest.length ) ;
+		System.arraycopy( timeStamps, 0, combinedTimeStamps, latest.length, length ) ;
+		timeStamps = combinedTimeStamps ;
+
+		columns.replaceAll( ( attributeName , values ) -> {
+
+			var combined = new double[capacity] ;
+			var latestValues = latest.columns.get( attributeName ) ;
+
+			if ( latestValues != null ) {
+
+				System.arraycopy( latestValues, 0, combined, 0, latest.length ) ;
+
+			}
+
+			System.arraycopy( values, 0, combined, latest.length, length ) ;
+			return combined ;
+
+		} ) ;
+
+		var combinedDecimalRows = new HashMap<String, BitSet>( ) ;
+
+		for ( var attributeName : columns.keySet( ) ) {
+
+			var combinedRows = new BitSet( ) ;
+			var latestRows = latest.decimalRows.get( attributeName ) ;
+
+			if ( latestRows != null ) {
+
+				combinedRows.or( latestRows.get( 0, latest.length ) ) ;
+
+			}
+
+			var rows = decimalRows.get( attributeName ) ;
+
+			if ( rows != null ) {
+
+				rows.stream( ).forEach( row -> combinedRows.set( latest.length + row ) ) ;
+
+			}
+
+			if ( ! combinedRows.isEmpty( ) ) {
+
+				combinedDecimalRows.put( attributeName, combinedRows ) ;
+
+			}
+
+		}
+
+		decimalRows = combinedDecimalRows ;
+		length = combinedLength ;
+
+	}
+
+	/**
+	 *
+	 * keeps bucketSize rows, skips bucketSpacing rows, repeat. Row indexes are
+	 * shared by every column.
+	 *
+	 */
+	public MetricsTimeSeries sample ( int bucketSize , int bucketSpacing ) {
+
+		var sampledRows = new int[length] ;
+		int sampledLength = 0 ;
+
+		int start = 0 ;
+		int end = bucketSize - 1 ;
+		boolean reInitializeRange = false ;
+
+		for ( int k = 0; k < length; k++ ) {
+
+			if ( k >= start && k <= end ) {
+
+				reInitializeRange = true ;
+				sampledRows[sampledLength++] = k ;
+
+			} else if ( reInitializeRange ) {
+
+				start = k + bucketSpacing ;
+				end = ( k + bucketSpacing + bucketSize - 1 ) ;
+				reInitializeRange = false ;
+
+			}
+
+		}
+
+		return selectRows( sampledRows, sampledLength ) ;
+
+	}
+
+	public MetricsTimeSeries selectRows ( int[] rows , int rowCount ) {
+
+		var selected = emptyCopy( rowCount ) ;
+
+		for ( int row = 0; row < rowCount; row++ ) {
+
+			selected.timeStamps[row] = timeStamps[rows[row]] ;
+
+		}
+
+		for ( var column : columns.entrySet( ) ) {
+
+			var values = column.getValue( ) ;
+			var selectedValues = selected.columns.get( column.getKey( ) ) ;
+
+			for ( int row = 0; row < rowCount; row++ ) {
+
+				selectedValues[row] = values[rows[row]] ;
+
+				if ( isDecimal( column.getKey( ), rows[row] ) ) {
+
+					selected.markDecimal( column.getKey( ), row ) ;
+
+				}
+
+			}
+
+		}
+
+		selected.length = rowCount ;
+
+		return selected ;
+
+	}
+
+	//
+	// used by MetricsDownsampler to build reduced series in place
+	//
+	MetricsTimeSeries emptyCopy ( int capacity ) {
+
+		return new MetricsTimeSeries( attributeNames, capacity ) ;
+
+	}
+
+	long[] timeStampArray ( ) {
+
+		return timeStamps ;
+
+	}
+
+	Map<String, double[]> columnArrays ( ) {
+
+		return columns ;
+
+	}
+
+	void setLength ( int length ) {
+
+		this.length = length ;
+
+	}
+
+	void markDecimal ( String attributeName , int row ) {
+
+		decimalRows.computeIfAbsent( attributeName, name -> new BitSet( ) ).set( row ) ;
+
+	}
+
+	/**
+	 *
+	 * adds a derived column, eg. totals across kubernetes pods
+	 *
+	 */
+	public void putColumn ( String attributeName , double[] values , boolean integral ) {
+
+		var column = Arrays.copyOf( values, timeStamps.length ) ;
+		Arrays.fill( column, Math.min( values.length, length ), column.length, 0 ) ;
+		columns.put( attributeName, column ) ;
+
+		if ( ! attributeNames.contains( attributeName ) ) {
+
+			attributeNames.add( attributeName ) ;
+
+		}
+
+		decimalRows.remove( attributeName ) ;
+
+		if ( ! integral ) {
+
+			var rows = new BitSet( ) ;
+			rows.set( 0, length ) ;
+			decimalRows.put( attributeName, rows ) ;
+
+		}
+
+	}
+
+	public boolean hasAttribute ( String attributeName ) {
+
+		return attributeName.equals( TIME_STAMP ) || columns.containsKey( attributeName ) ;
+
+	}
+
+	public boolean isIntegral ( String attributeName ) {
+
+		var rows = decimalRows.get( attributeName ) ;
+		return rows == null || rows.isEmpty( ) ;
+
+	}
+
+	public boolean isDecimal ( String attributeName , int row ) {
+
+		var rows = decimalRows.get( attributeName ) ;
+		return rows != null && rows.get( row ) ;
+
+	}
+
+	// MISSING is read as 0
+	public double valueAt ( String attributeName , int row ) {
+
+		if ( attributeName.equals( TIME_STAMP ) ) {
+
+			return timeStamps[row] ;
+
+		}
+
+		var value = columns.get( attributeName )[row] ;
+		return Double.isNaN( value ) ? 0 : value ;
+
+	}
+
+	// copy trimmed to length, MISSING is read as 0
+	public double[] values ( String attributeName ) {
+
+		var values = Arrays.copyOf( columns.get( attributeName ), length ) ;
+
+		for ( int i = 0; i < values.length; i++ ) {
+
+			if ( Double.isNaN( values[i] ) ) {
+
+				values[i] = 0 ;
+
+			}
+
+		}
+
+		return values ;
+
+	}
+
+	public int length ( ) {
+
+		return length ;
+
+	}
+
+	public boolean isEmpty ( ) {
+
+		return length == 0 ;
+
+	}
+
+	public void writeJson ( JsonGenerator generator )
+		throws IOException {
+
+		generator.writeStartObject( ) ;
+
+		// no documents found: data is left empty
+		if ( ! isEmpty( ) ) {
+
+			for ( var attributeName : attributeNames ) {
+
+				generator.writeFieldName( attributeName ) ;
+
+				if ( attributeName.equals( TIME_STAMP ) ) {
+
+					generator.writeArray( timeStamps, 0, length ) ;
+
+				} else {
+
+					writeValues( generator, columns.get( attributeName ), decimalRows.get( attributeName ) ) ;
+
+				}
+
+			}
+
+		}
+
+		generator.writeEndObject( ) ;
+
+	}
+
+	private void writeValues ( JsonGenerator generator , double[] values , BitSet decimals )
+		throws IOException {
+
+		generator.writeStartArray( ) ;
+
+		for ( int i = 0; i < length; i++ ) {
+
+			if ( Double.isNaN( values[i] ) ) {
+
+				generator.writeNull( ) ;
+
+			} else if ( decimals != null && decimals.get( i ) ) {
+
+				generator.writeNumber( values[i] ) ;
+
+			} else {
+
+				generator.writeNumber( (long) values[i] ) ;
+
+			}
+
+		}
+
+		generator.writeEndArray( ) ;
+
+	}
+
+	private void ensureCapacity ( int required ) {
+
+		if ( required <= timeStamps.length ) {
+
+			return ;
+
+		}
+
+		int capacity = Math.max( required, timeStamps.length * 2 ) ;
+		timeStamps = Arrays.copyOf( timeStamps, capacity ) ;
+		columns.replaceAll( ( attributeName , values ) -> Arrays.copyOf( values, capacity ) ) ;
+
+	}
+
+}
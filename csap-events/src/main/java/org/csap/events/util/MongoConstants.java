@@ -3,9 +3,13 @@ package org.csap.events.util ;
 public class MongoConstants {
 	public static final String EVENT_DB_NAME = "event" ;
 	public static final String EVENT_COLLECTION_NAME = "eventRecords" ;
+	public static final String EVENT_COUNTERS_COLLECTION_NAME = "eventCounters" ;
+	public static final String DAILY_TREND_HOSTS_COLLECTION_NAME = "dailyTrendHosts" ;
+	public static final String DAILY_TREND_TOTALS_COLLECTION_NAME = "dailyTrendTotals" ;
 	public static final String METRICS_ATTRIBUTES_COLLECTION_NAME = "metricsAttributes" ;
 	public static final String METRICS_DATA_COLLECTION_NAME = "metrics" ;
 	public static final String METRICS_DB_NAME = "metricsDb" ;
+	public static final String METRICS_ROLLUP_COLLECTION_PREFIX = "metricsRollup_" ;
 	public static final String ANALYTICS_DB_NAME = "analyticsDb" ;
 	public static final String TOP_SERVICE_COLLECTION = "topService" ;
 	public static final String HOST_ANALYTICS_COLLECTION = "hostAnalytics" ;
@@ -0,0 +1,456 @@
+package org.csap.events.util ;
+
+import java.net.URI ;
+import java.util.ArrayList ;
+import java.util.Arrays ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.ExecutorService ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.TimeUnit ;
+import java.util.concurrent.atomic.AtomicBoolean ;
+import java.util.concurrent.atomic.AtomicInteger ;
+import java.util.concurrent.atomic.LongAdder ;
+import java.util.stream.Collectors ;
+import java.util.stream.Stream ;
+
+import javax.annotation.PostConstruct ;
+import javax.annotation.PreDestroy ;
+import javax.inject.Inject ;
+import javax.servlet.http.HttpServletRequest ;
+import javax.servlet.http.HttpServletResponse ;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory ;
+import org.apache.commons.lang3.math.NumberUtils ;
+import org.csap.events.CsapEventsApplication ;
+import org.csap.events.db.HistoricalReportStore ;
+import org.csap.helpers.CSAP ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.cache.annotation.Cacheable ;
+import org.springframework.core.env.Environment ;
+import org.springframework.http.HttpEntity ;
+import org.springframework.http.HttpHeaders ;
+import org.springframework.http.HttpMethod ;
+import org.springframework.scheduling.TaskScheduler ;
+import org.springframework.scheduling.support.CronTrigger ;
+import org.springframework.stereotype.Service ;
+import org.springframework.web.client.RestTemplate ;
+import org.springframework.web.method.HandlerMethod ;
+import org.springframework.web.servlet.HandlerInterceptor ;
+
+/**
+ *
+ * Pre-builds the most requested report urls so the first dashboard
+ * of the day is served from the report caches.
+ *
+ * - request counts are recorded for successful GETs on handlers cached in one
+ * of the warmed caches (Cacheable): cached handlers are read only, so replaying
+ * them cannot post or update reports. Caches expiring before the working day
+ * (metrics) are not warmed. Counts are halved after each warm so they follow
+ * recent usage
+ *
+ * - historical metrics (dateOffSet on a closed day, no bucketSpacing) are also
+ * recorded: they are cached without expiry, and stored on disk by
+ * HistoricalReportStore. dateOffSet is relative, so replaying warms the day
+ * dashboards will request next
+ *
+ * - scheduled on the taskScheduler (default: after the nightly reports, and
+ * again before the working day as report caches expire hourly), the urls are
+ * replayed over http on a single low priority thread, one at a time, pausing
+ * while interactive requests are in progress
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".cache-warmer" )
+public class ReportCacheWarmer implements HandlerInterceptor {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	final static String WARM_HEADER = "X-Csap-Cache-Warm" ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	@Inject
+	private TaskScheduler taskScheduler ;
+
+	@Inject
+	private RestTemplate genericRestTemplate ;
+
+	@Inject
+	private Environment env ;
+
+	private boolean enabled = true ;
+	private String cron = "0 45 0,7 * * ?" ;
+	private int maxReports = 50 ;
+	private int minRequests = 2 ;
+	private int maxTracked = 2000 ;
+	private int maxActiveRequests = 2 ;
+	private long pauseMs = 500 ;
+	private boolean historicalMetrics = true ;
+
+	// ttl should outlast the time between the warm and the working day
+	private List<String> caches = new ArrayList<>( List.of(
+			CsapEventsApplication.SIMPLE_REPORT_CACHE,
+			CsapEventsApplication.DETAILS_REPORT_CACHE ) ) ;
+
+	private Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>( ) ;
+	private AtomicInteger activeRequests = new AtomicInteger( ) ;
+	private AtomicBoolean isWarming = new AtomicBoolean( ) ;
+
+	private ExecutorService warmExecutor ;
+
+	@PostConstruct
+	public void scheduleWarming ( ) {
+
+		if ( ! isEnabled( ) ) {
+
+			logger.info( "Report cache warming disabled" ) ;
+			return ;
+
+		}
+
+		logger.info( "Report cache warming: cron: {}, maxReports: {}, minRequests: {}",
+				cron, maxReports, minRequests ) ;
+
+		BasicThreadFactory warmThreadFactory = new BasicThreadFactory.Builder( )
+				.namingPattern( CsapEventsApplication.class.getSimpleName( ) + "CacheWarmer-%d" )
+				.daemon( true )
+				.priority( Thread.MIN_PRIORITY )
+				.build( ) ;
+
+		warmExecutor = Executors.newSingleThreadExecutor( warmThreadFactory ) ;
+
+		// scheduler thread only hands off: reports are built on the warm thread
+		taskScheduler.schedule( ( ) -> warmExecutor.submit( this::warmReportCaches ), new CronTrigger( cron ) ) ;
+
+	}
+
+	@PreDestroy
+	public void stopWarming ( ) {
+
+		if ( warmExecutor != null ) {
+
+			warmExecutor.shutdownNow( ) ;
+
+		}
+
+	}
+
+	@Override
+	public boolean preHandle ( HttpServletRequest request , HttpServletResponse response , Object handler ) {
+
+		if ( request.getHeader( WARM_HEADER ) == null ) {
+
+			activeRequests.incrementAndGet( ) ;
+
+		}
+
+		return true ;
+
+	}
+
+	@Override
+	public void afterCompletion (
+									HttpServletRequest request ,
+									HttpServletResponse response ,
+									Object handler ,
+									Exception ex ) {
+
+		if ( request.getHeader( WARM_HEADER ) != null ) {
+
+			return ;
+
+		}
+
+		activeRequests.decrementAndGet( ) ;
+
+		if ( ! isEnabled( )
+				|| ex != null
+				|| response.getStatus( ) != HttpServletResponse.SC_OK
+				|| ! HttpMethod.GET.matches( request.getMethod( ) ) ) {
+
+			return ;
+
+		}
+
+		var path = request.getRequestURI( ).substring( request.getContextPath( ).length( ) ) ;
+
+		if ( isWarmable( handler )
+				|| isHistoricalMetrics( path, request.getParameter( "dateOffSet" ),
+						request.getParameter( "bucketSpacing" ) ) ) {
+
+			recordRequest( path, request.getQueryString( ) ) ;
+
+		}
+
+	}
+
+	boolean isWarmable ( Object handler ) {
+
+		if ( ! ( handler instanceof HandlerMethod ) ) {
+
+			return false ;
+
+		}
+
+		var cacheable = ( (HandlerMethod) handler ).getMethodAnnotation( Cacheable.class ) ;
+
+		if ( cacheable == null ) {
+
+			return false ;
+
+		}
+
+		return Stream.concat( Arrays.stream( cacheable.value( ) ), Arrays.stream( cacheable.cacheNames( ) ) )
+				.anyMatch( caches::contains ) ;
+
+	}
+
+	boolean isHistoricalMetrics ( String path , String dateOffSet , String bucketSpacing ) {
+
+		if ( ! historicalMetrics || ! path.startsWith( CsapEventsApplication.METRICS_API + "/" ) ) {
+
+			return false ;
+
+		}
+
+		// bucketSpacing reports are never cached
+		return HistoricalReportStore.isDataWindowClosed( NumberUtils.toInt( dateOffSet, 0 ) )
+				&& NumberUtils.toInt( bucketSpacing, 0 ) <= 0 ;
+
+	}
+
+	void recordRequest ( String path , String query ) {
+
+		if ( query != null && query.contains( "stream=true" ) ) {
+
+			return ;
+
+		}
+
+		var url = ( query == null ) ? path : path + "?" + query ;
+		var count = requestCounts.get( url ) ;
+
+		if ( count == null ) {
+
+			if ( requestCounts.size( ) >= maxTracked ) {
+
+				return ;
+
+			}
+
+			count = requestCounts.computeIfAbsent( url, newUrl -> new LongAdder( ) ) ;
+
+		}
+
+		count.increment( ) ;
+
+	}
+
+	public void warmReportCaches ( ) {
+
+		if ( ! isWarming.compareAndSet( false, true ) ) {
+
+			logger.info( "Report cache warming already in progress" ) ;
+			return ;
+
+		}
+
+		var timer = metricUtilities.startTimer( ) ;
+		var warmed = 0 ;
+
+		try {
+
+			var baseUrl = "http://localhost:" + env.getProperty( "local.server.port" )
+					+ env.getProperty( "server.servlet.context-path", "" ) ;
+
+			var warmRequest = new HttpHeaders( ) ;
+			warmRequest.set( WARM_HEADER, "true" ) ;
+
+			for ( var url : mostRequested( ) ) {
+
+				waitForIdle( ) ;
+
+				try {
+
+					genericRestTemplate.exchange( URI.create( baseUrl + url ), HttpMethod.GET,
+							new HttpEntity<>( warmRequest ), String.class ) ;
+					warmed++ ;
+
+				} catch ( Exception e ) {
+
+					logger.warn( "Failed warming {}: {}", url, CSAP.buildCsapStack( e ) ) ;
+
+				}
+
+				TimeUnit.MILLISECONDS.sleep( pauseMs ) ;
+
+			}
+
+		} catch ( InterruptedException e ) {
+
+			Thread.currentThread( ).interrupt( ) ;
+
+		} finally {
+
+			decayCounts( ) ;
+			isWarming.set( false ) ;
+
+		}
+
+		var nanos = metricUtilities.stopTimer( timer, "csap.report-cache.warm" ) ;
+		logger.info( "Report caches warmed: {} reports, Time Taken: {}", warmed,
+				CSAP.timeUnitPresent( TimeUnit.NANOSECONDS.toMillis( nanos ) ) ) ;
+
+	}
+
+	List<String> mostRequested ( ) {
+
+		return requestCounts.entrySet( ).stream( )
+				.filter( entry -> entry.getValue( ).sum( ) >= minRequests )
+				.sorted( ( a , b ) -> Long.compare( b.getValue( ).sum( ), a.getValue( ).sum( ) ) )
+				.limit( maxReports )
+				.map( Map.Entry::getKey )
+				.collect( Collectors.toList( ) ) ;
+
+	}
+
+	void decayCounts ( ) {
+
+		requestCounts.entrySet( ).removeIf( entry -> {
+
+			var halved = entry.getValue( ).sumThenReset( ) / 2 ;
+			entry.getValue( ).add( halved ) ;
+			return halved == 0 ;
+
+		} ) ;
+
+	}
+
+	private void waitForIdle ( )
+		throws InterruptedException {
+
+		// interactive requests have priority: give up waiting after a minute
+		for ( var attempt = 0; attempt < 60 && activeRequests.get( ) > maxActiveRequests; attempt++ ) {
+
+			TimeUnit.SECONDS.sleep( 1 ) ;
+
+		}
+
+	}
+
+	public boolean isEnabled ( ) {
+
+		return enabled ;
+
+	}
+
+	public void setEnabled ( boolean enabled ) {
+
+		this.enabled = enabled ;
+
+	}
+
+	public String getCron ( ) {
+
+		return cron ;
+
+	}
+
+	public void setCron ( String cron ) {
+
+		this.cron = cron ;
+
+	}
+
+	public int getMaxReports ( ) {
+
+		return maxReports ;
+
+	}
+
+	public void setMaxReports ( int maxReports ) {
+
+		this.maxReports = maxReports ;
+
+	}
+
+	public int getMinRequests ( ) {
+
+		return minRequests ;
+
+	}
+
+	public void setMinRequests ( int minRequests ) {
+
+		this.minRequests = minRequests ;
+
+	}
+
+	public int getMaxTracked ( ) {
+
+		return maxTracked ;
+
+	}
+
+	public void setMaxTracked ( int maxTracked ) {
+
+		this.maxTracked = maxTracked ;
+
+	}
+
+	public int getMaxActiveRequests ( ) {
+
+		return maxActiveRequests ;
+
+	}
+
+	public void setMaxActiveRequests ( int maxActiveRequests ) {
+
+		this.maxActiveRequests = maxActiveRequests ;
+
+	}
+
+	public List<String> getCaches ( ) {
+
+		return caches ;
+
+	}
+
+	public void setCaches ( List<String> caches ) {
+
+		this.caches = caches ;
+
+	}
+
+	public boolean isHistoricalMetrics ( ) {
+
+		return historicalMetrics ;
+
+	}
+
+	public void setHistoricalMetrics ( boolean historicalMetrics ) {
+
+		this.historicalMetrics = historicalMetrics ;
+
+	}
+
+	public long getPauseMs ( ) {
+
+		return pauseMs ;
+
+	}
+
+	public void setPauseMs ( long pauseMs ) {
+
+		this.pauseMs = pauseMs ;
+
+	}
+
+}
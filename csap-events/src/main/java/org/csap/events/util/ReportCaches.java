@@ -0,0 +1,171 @@
+package org.csap.events.util ;
+
+import java.util.ArrayList ;
+import java.util.Collection ;
+import java.util.HashMap ;
+import java.util.List ;
+import java.util.Map ;
+import java.util.concurrent.ConcurrentHashMap ;
+
+import org.csap.events.CsapEventsApplication ;
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.beans.factory.ObjectProvider ;
+import org.springframework.beans.factory.annotation.Autowired ;
+import org.springframework.boot.context.properties.ConfigurationProperties ;
+import org.springframework.cache.Cache ;
+import org.springframework.cache.CacheManager ;
+import org.springframework.stereotype.Service ;
+
+/**
+ *
+ * Report caches listed in freshSeconds are wrapped in a SingleFlightCache:
+ * entries older than freshSeconds are rebuilt by one request while others are
+ * served the cached value, until the ehcache ttl expires them.
+ *
+ * String reports in compressed caches are stored gzipped; ehcache3.xml bounds
+ * those tiers in bytes rather than entries.
+ *
+ */
+@Service
+@ConfigurationProperties ( prefix = CsapEventsApplication.CONFIGURATION_PREFIX + ".report-caches" )
+public class ReportCaches {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	@Autowired
+	CsapMicroMeter.Utilities metricUtilities ;
+
+	private boolean enabled = true ;
+
+	private Map<String, Integer> freshSeconds = new HashMap<>( Map.of(
+			CsapEventsApplication.SIMPLE_REPORT_CACHE, 3000,
+			CsapEventsApplication.DETAILS_REPORT_CACHE, 3000,
+			CsapEventsApplication.METRICS_REPORT_CACHE, 240 ) ) ;
+
+	private List<String> compressed = new ArrayList<>( List.of(
+			CsapEventsApplication.METRICS_REPORT_CACHE,
+			CsapEventsApplication.HISTORICAL_REPORT_CACHE ) ) ;
+
+	Cache decorate ( Cache cache ) {
+
+		if ( ! isEnabled( ) || cache == null ) {
+
+			return cache ;
+
+		}
+
+		var decoratedCache = cache ;
+
+		if ( freshSeconds.containsKey( cache.getName( ) ) ) {
+
+			logger.info( "{} fresh for {} seconds, single flight loads", cache.getName( ), freshSeconds.get( cache
+					.getName( ) ) ) ;
+
+			decoratedCache = new SingleFlightCache( decoratedCache, freshSeconds.get( cache.getName( ) ) * 1000L,
+					metricUtilities ) ;
+
+		}
+
+		if ( compressed.contains( cache.getName( ) ) ) {
+
+			logger.info( "{} string reports stored compressed", cache.getName( ) ) ;
+			decoratedCache = new CompressedStringCache( decoratedCache ) ;
+
+		}
+
+		return decoratedCache ;
+
+	}
+
+	/**
+	 *
+	 * Wraps the boot CacheManager; settings are resolved on first cache lookup so
+	 * the wrapper can be registered from a BeanPostProcessor
+	 *
+	 */
+	public static class DecoratingCacheManager implements CacheManager {
+
+		private CacheManager cacheManager ;
+		private ObjectProvider<ReportCaches> reportCachesProvider ;
+
+		private ConcurrentHashMap<String, Cache> decoratedCaches = new ConcurrentHashMap<>( ) ;
+
+		public DecoratingCacheManager ( CacheManager cacheManager, ObjectProvider<ReportCaches> reportCachesProvider ) {
+
+			this.cacheManager = cacheManager ;
+			this.reportCachesProvider = reportCachesProvider ;
+
+		}
+
+		@Override
+		public Cache getCache ( String name ) {
+
+			var cache = decoratedCaches.get( name ) ;
+
+			if ( cache == null ) {
+
+				var managedCache = cacheManager.getCache( name ) ;
+
+				if ( managedCache == null ) {
+
+					return null ;
+
+				}
+
+				cache = decoratedCaches.computeIfAbsent( name,
+						cacheName -> reportCachesProvider.getObject( ).decorate( managedCache ) ) ;
+
+			}
+
+			return cache ;
+
+		}
+
+		@Override
+		public Collection<String> getCacheNames ( ) {
+
+			return cacheManager.getCacheNames( ) ;
+
+		}
+
+	}
+
+	public boolean isEnabled ( ) {
+
+		return enabled ;
+
+	}
+
+	public void setEnabled ( boolean enabled ) {
+
+		this.enabled = enabled ;
+
+	}
+
+	public List<String> getCompressed ( ) {
+
+		return compressed ;
+
+	}
+
+	public void setCompressed ( List<String> compressed ) {
+
+		this.compressed = compressed ;
+
+	}
+
+	public Map<String, Integer> getFreshSeconds ( ) {
+
+		return freshSeconds ;
+
+	}
+
+	public void setFreshSeconds ( Map<String, Integer> freshSeconds ) {
+
+		this.freshSeconds = freshSeconds ;
+
+	}
+
+}
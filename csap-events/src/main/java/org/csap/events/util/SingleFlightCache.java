@@ -0,0 +1,290 @@
+package org.csap.events.util ;
+
+import java.io.Serializable ;
+import java.util.concurrent.Callable ;
+import java.util.concurrent.CompletableFuture ;
+import java.util.concurrent.ConcurrentHashMap ;
+import java.util.concurrent.ExecutionException ;
+
+import org.csap.integations.CsapMicroMeter ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.cache.Cache ;
+import org.springframework.cache.support.SimpleValueWrapper ;
+
+import com.fasterxml.jackson.databind.JsonNode ;
+
+/**
+ *
+ * Report cache wrapper used with @Cacheable( sync = true ):
+ *
+ * - concurrent misses for the same key wait on a single load rather than
+ * building the same report in parallel
+ *
+ * - entries older than freshMs are stale: the first request rebuilds the entry
+ * while other requests are served the stale value. The underlying cache ttl is
+ * the hard limit
+ *
+ * - partial reports (PARTIAL_REPORT set, eg. services missing the report
+ * deadline) are returned but never stored: the next request rebuilds them
+ *
+ */
+public class SingleFlightCache implements Cache {
+
+	private Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	public static final String PARTIAL_REPORT = "partial" ;
+
+	private Cache cache ;
+	private long freshMs ;
+	private CsapMicroMeter.Utilities metricUtilities ;
+
+	private ConcurrentHashMap<Object, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>( ) ;
+
+	static class TimedValue implements Serializable {
+
+		private static final long serialVersionUID = 1L ;
+
+		final Object value ;
+		final long loadedAt ;
+
+		TimedValue ( Object value, long loadedAt ) {
+
+			this.value = value ;
+			this.loadedAt = loadedAt ;
+
+		}
+	}
+
+	public SingleFlightCache ( Cache cache, long freshMs, CsapMicroMeter.Utilities metricUtilities ) {
+
+		this.cache = cache ;
+		this.freshMs = freshMs ;
+		this.metricUtilities = metricUtilities ;
+
+	}
+
+	@SuppressWarnings ( "unchecked" )
+	@Override
+	public <T> T get ( Object key , Callable<T> valueLoader ) {
+
+		var timedValue = getTimedValue( key ) ;
+
+		if ( timedValue != null ) {
+
+			if ( System.currentTimeMillis( ) - timedValue.loadedAt < freshMs ) {
+
+				return (T) timedValue.value ;
+
+			}
+
+			var refresh = new CompletableFuture<Object>( ) ;
+
+			if ( inFlightLoads.putIfAbsent( key, refresh ) != null ) {
+
+				metricUtilities.incrementCounter( metricName( "stale-served" ) ) ;
+				return (T) timedValue.value ;
+
+			}
+
+			logger.debug( "{} refreshing stale entry: {}", getName( ), key ) ;
+			metricUtilities.incrementCounter( metricName( "refreshed" ) ) ;
+			return (T) load( key, valueLoader, refresh ) ;
+
+		}
+
+		var load = new CompletableFuture<Object>( ) ;
+		var inFlightLoad = inFlightLoads.putIfAbsent( key, load ) ;
+
+		if ( inFlightLoad != null ) {
+
+			metricUtilities.incrementCounter( metricName( "coalesced" ) ) ;
+			return (T) waitFor( key, valueLoader, inFlightLoad ) ;
+
+		}
+
+		return (T) load( key, valueLoader, load ) ;
+
+	}
+
+	private Object load ( Object key , Callable<?> valueLoader , CompletableFuture<Object> load ) {
+
+		try {
+
+			var value = valueLoader.call( ) ;
+			put( key, value ) ;
+			load.complete( value ) ;
+			return value ;
+
+		} catch ( Exception e ) {
+
+			load.completeExceptionally( e ) ;
+			throw new ValueRetrievalException( key, valueLoader, e ) ;
+
+		} finally {
+
+			inFlightLoads.remove( key, load ) ;
+
+		}
+
+	}
+
+	private Object waitFor ( Object key , Callable<?> valueLoader , CompletableFuture<Object> inFlightLoad ) {
+
+		try {
+
+			return inFlightLoad.get( ) ;
+
+		} catch ( ExecutionException e ) {
+
+			throw new ValueRetrievalException( key, valueLoader, e.getCause( ) ) ;
+
+		} catch ( InterruptedException e ) {
+
+			Thread.currentThread( ).interrupt( ) ;
+			throw new ValueRetrievalException( key, valueLoader, e ) ;
+
+		}
+
+	}
+
+	private TimedValue getTimedValue ( Object key ) {
+
+		var valueWrapper = cache.get( key ) ;
+
+		if ( valueWrapper == null ) {
+
+			return null ;
+
+		}
+
+		var cachedValue = valueWrapper.get( ) ;
+
+		if ( cachedValue instanceof TimedValue ) {
+
+			return (TimedValue) cachedValue ;
+
+		}
+
+		// entry put by another client of the cache
+		return new TimedValue( cachedValue, 0 ) ;
+
+	}
+
+	private String metricName ( String event ) {
+
+		return "csap.report-cache." + getName( ) + "." + event ;
+
+	}
+
+	@Override
+	public ValueWrapper get ( Object key ) {
+
+		var timedValue = getTimedValue( key ) ;
+
+		if ( timedValue == null ) {
+
+			return null ;
+
+		}
+
+		return new SimpleValueWrapper( timedValue.value ) ;
+
+	}
+
+	@SuppressWarnings ( "unchecked" )
+	@Override
+	public <T> T get ( Object key , Class<T> type ) {
+
+		var timedValue = getTimedValue( key ) ;
+
+		if ( timedValue == null ) {
+
+			return null ;
+
+		}
+
+		if ( timedValue.value != null && type != null && ! type.isInstance( timedValue.value ) ) {
+
+			throw new IllegalStateException( "Cached value is not of required type [" + type.getName( ) + "]: "
+					+ timedValue.value ) ;
+
+		}
+
+		return (T) timedValue.value ;
+
+	}
+
+	@Override
+	public void put ( Object key , Object value ) {
+
+		if ( isPartialReport( value ) ) {
+
+			logger.debug( "{} partial report not cached: {}", getName( ), key ) ;
+			metricUtilities.incrementCounter( metricName( "partial-skipped" ) ) ;
+			return ;
+
+		}
+
+		cache.put( key, new TimedValue( value, System.currentTimeMillis( ) ) ) ;
+
+	}
+
+	static boolean isPartialReport ( Object value ) {
+
+		return value instanceof JsonNode && ( (JsonNode) value ).path( PARTIAL_REPORT ).asBoolean( ) ;
+
+	}
+
+	@Override
+	public ValueWrapper putIfAbsent ( Object key , Object value ) {
+
+		var existing = cache.putIfAbsent( key, new TimedValue( value, System.currentTimeMillis( ) ) ) ;
+
+		if ( existing == null ) {
+
+			return null ;
+
+		}
+
+		var existingValue = existing.get( ) ;
+		return new SimpleValueWrapper( ( existingValue instanceof TimedValue ) ? ( (TimedValue) existingValue ).value
+				: existingValue ) ;
+
+	}
+
+	@Override
+	public void evict ( Object key ) {
+
+		cache.evict( key ) ;
+
+	}
+
+	@Override
+	public void clear ( ) {
+
+		cache.clear( ) ;
+
+	}
+
+	@Override
+	public String getName ( ) {
+
+		return cache.getName( ) ;
+
+	}
+
+	@Override
+	public Object getNativeCache ( ) {
+
+		return cache.getNativeCache( ) ;
+
+	}
+
+	public long getFreshMs ( ) {
+
+		return freshMs ;
+
+	}
+
+}
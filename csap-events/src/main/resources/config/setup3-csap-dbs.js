@@ -17,6 +17,13 @@ db.metrics.createIndex({"createdOn.date":1},{ background: true });
 db.createCollection("metricsAttributes");
 db.metricsAttributes.ensureIndex({"hostName": 1, "id": 1, "createdOn.lastUpdatedOn": 1}, {"background": true});
 
+// rollups of metrics data: 5 minute, 1 hour, 1 day buckets. expireAt is set from csap-events.rollups.retention-days
+[300, 3600, 86400].forEach( function( resolution ) {
+	var rollup = db.getCollection( "metricsRollup_" + resolution ) ;
+	rollup.createIndex({"hostName":1,"id":1,"bucket":-1},{ background: true });
+	rollup.createIndex({"expireAt":1},{ expireAfterSeconds: 0 });
+} ) ;
+
 
 db = db.getSiblingDB("event");
 db.createCollection("eventRecords");
@@ -36,6 +43,18 @@ db.eventRecords.ensureIndex({"appId":1,"lifecycle":1});
 db.eventRecords.ensureIndex({"category":1,"summary":1,"metaData.uiUser":1});
 db.eventRecords.ensureIndex({"appId":1,"createdOn.mongoDate":-1});
 
+// event browser page tokens seek on (sort field, _id)
+db.eventRecords.createIndex({"createdOn.lastUpdatedOn":-1,"_id":-1},{"background": true});
+db.eventRecords.createIndex({"createdOn.mongoDate":-1,"_id":-1},{"background": true});
+
+// event counts per appId, lifecycle, category, date: rebuilt by the service when empty
+db.eventCounters.createIndex({"appId":1,"lifecycle":1,"createdOn.date":-1},{"background": true});
+db.eventCounters.createIndex({"category":1,"createdOn.date":-1},{"background": true});
+
+// daily report totals used by trends: rebuilt by the service when empty
+db.dailyTrendTotals.createIndex({"appId":1,"project":1,"lifecycle":1,"category":1,"createdOn.date":-1},{"background": true});
+db.dailyTrendTotals.createIndex({"category":1,"createdOn.date":-1},{"background": true});
+
 //expireAfterSeconds 0 means it will expire at the time specified by the expiresAt attribute
 db.eventRecords.createIndex( { "expireAt": 1 }, { expireAfterSeconds: 0 } );
 db.eventRecords.createIndex({"appId":1,"project":1,"lifecycle":1,"createdOn.lastUpdatedOn":-1},{"background": true})
@@ -52,4 +71,7 @@ db.eventRecords.createIndex({"appId":1,"lifecycle":1,"createdOn.date":-1},{"back
 
 // index for health events
 db.eventRecords.createIndex({"category":1,"host":1,"createdOn.date":-1},{"background": true})
+
+// index for adoption report: latest model summary per lifecycle
+db.eventRecords.createIndex({"category":1,"lifecycle":1,"createdOn.mongoDate":-1},{"background": true})
  
\ No newline at end of file
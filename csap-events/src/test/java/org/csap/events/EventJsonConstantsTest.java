@@ -0,0 +1,129 @@
+package org.csap.events ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+import static org.assertj.core.api.Assertions.assertThatThrownBy ;
+import static org.mockito.Mockito.mock ;
+import static org.mockito.Mockito.when ;
+
+import java.io.StringWriter ;
+import java.util.Arrays ;
+import java.util.Date ;
+import java.util.List ;
+
+import org.bson.Document ;
+import org.bson.types.ObjectId ;
+import org.csap.helpers.CsapApplication ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+import com.fasterxml.jackson.databind.ObjectMapper ;
+import com.mongodb.MongoExecutionTimeoutException ;
+import com.mongodb.client.AggregateIterable ;
+import com.mongodb.client.MongoCursor ;
+
+public class EventJsonConstantsTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	ObjectMapper jsonMapper = new ObjectMapper( ) ;
+
+	@Test
+	public void streamed_array_matches_transform_to_jackson ( ) throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: report rows with the types returned by the aggregations
+		var results = aggregation( List.of(
+				new Document( "_id", new Document( "appId", "app-1" ).append( "hostName", "host-1" ) )
+						.append( "cpuCountAvg", 16.0 )
+						.append( "totalUsrCpu", 6468 )
+						.append( "totalMemory", 34359738368L )
+						.append( "lastUpdated", new Date( 1760745600000L ) )
+						.append( "eventId", new ObjectId( "5f1d7a2b9c1e4a0012345678" ) )
+						.append( "services", Arrays.asList( "csap-agent", null, "data \"quoted\"" ) ),
+				new Document( "_id", "host-2" ).append( "load", 0.25 ).append( "empty", new Document( ) ) ) ) ;
+
+		// when
+		var streamed = new StringWriter( ) ;
+		var rows = EventJsonConstants.streamJsonArray( results, streamed ) ;
+
+		// then
+		var transformed = jsonMapper.writeValueAsString( EventJsonConstants.transformToJackson( results ) ) ;
+		logger.info( "streamed: {}", streamed ) ;
+
+		assertThat( rows ).isEqualTo( 2 ) ;
+		assertThat( jsonMapper.readTree( streamed.toString( ) ) ).isEqualTo( jsonMapper.readTree( transformed ) ) ;
+
+	}
+
+	@Test
+	public void empty_results_stream_an_empty_array ( ) throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		var streamed = new StringWriter( ) ;
+
+		assertThat( EventJsonConstants.streamJsonArray( aggregation( List.of( ) ), streamed ) ).isZero( ) ;
+		assertThat( streamed.toString( ) ).isEqualTo( "[]" ) ;
+
+	}
+
+	@Test
+	public void cursor_failures_are_thrown ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: cursor fails after the first row
+		@SuppressWarnings ( "unchecked" )
+		AggregateIterable<Document> results = mock( AggregateIterable.class ) ;
+		@SuppressWarnings ( "unchecked" )
+		MongoCursor<Document> cursor = mock( MongoCursor.class ) ;
+		when( results.iterator( ) ).thenReturn( cursor ) ;
+		when( cursor.hasNext( ) ).thenReturn( true ) ;
+		when( cursor.next( ) ).thenReturn( new Document( "_id", "host-1" ) )
+				.thenThrow( new MongoExecutionTimeoutException( 50, "exceeded time limit" ) ) ;
+
+		var streamed = new StringWriter( ) ;
+
+		// then: callers abort the response rather than ending the json
+		assertThatThrownBy( ( ) -> EventJsonConstants.streamJsonArray( results, streamed ) )
+				.isInstanceOf( MongoExecutionTimeoutException.class ) ;
+		assertThat( streamed.toString( ) ).doesNotEndWith( "]" ) ;
+
+	}
+
+	// each report reads the results once
+	@SuppressWarnings ( "unchecked" )
+	private AggregateIterable<Document> aggregation ( List<Document> documents ) {
+
+		var streamCursor = cursor( documents ) ;
+		var transformCursor = cursor( documents ) ;
+
+		AggregateIterable<Document> results = mock( AggregateIterable.class ) ;
+		when( results.iterator( ) ).thenReturn( streamCursor, transformCursor ) ;
+
+		return results ;
+
+	}
+
+	@SuppressWarnings ( "unchecked" )
+	private MongoCursor<Document> cursor ( List<Document> documents ) {
+
+		var rows = documents.iterator( ) ;
+
+		MongoCursor<Document> cursor = mock( MongoCursor.class ) ;
+		when( cursor.hasNext( ) ).thenAnswer( invocation -> rows.hasNext( ) ) ;
+		when( cursor.next( ) ).thenAnswer( invocation -> rows.next( ) ) ;
+
+		return cursor ;
+
+	}
+
+}
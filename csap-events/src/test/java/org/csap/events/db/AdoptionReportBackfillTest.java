@@ -0,0 +1,84 @@
+package org.csap.events.db ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+import static org.mockito.ArgumentMatchers.any ;
+import static org.mockito.ArgumentMatchers.anyInt ;
+import static org.mockito.ArgumentMatchers.eq ;
+import static org.mockito.Mockito.mock ;
+import static org.mockito.Mockito.times ;
+import static org.mockito.Mockito.verify ;
+import static org.mockito.Mockito.when ;
+
+import java.util.concurrent.TimeUnit ;
+
+import org.bson.Document ;
+import org.csap.events.EventServiceConfiguration ;
+import org.csap.helpers.CsapApplication ;
+import org.csap.integations.CsapMicroMeter ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.test.util.ReflectionTestUtils ;
+
+public class AdoptionReportBackfillTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	@Test
+	public void days_are_built_in_chunks_and_stored_directly ( )
+		throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: every third day has no data
+		var adoptionReportBuilder = mock( CsapAdoptionReportBuilder.class ) ;
+		when( adoptionReportBuilder.buildAdoptionReport( anyInt( ) ) ).thenAnswer( invocation -> {
+
+			int offSet = invocation.getArgument( 0 ) ;
+			return ( offSet % 3 == 0 ) ? null : "{\"category\": \"/csap/reports/global/daily\"}" ;
+
+		} ) ;
+
+		var eventDataWriter = mock( EventDataWriter.class ) ;
+		var eventServiceConfiguration = mock( EventServiceConfiguration.class ) ;
+		when( eventServiceConfiguration.getUser( ) ).thenReturn( "events-user" ) ;
+
+		var backfill = new AdoptionReportBackfill( ) ;
+		backfill.metricUtilities = CsapMicroMeter.Utilities.supportForNonSpringConsumers( ) ;
+		ReflectionTestUtils.setField( backfill, "adoptionReportBuilder", adoptionReportBuilder ) ;
+		ReflectionTestUtils.setField( backfill, "eventDataWriter", eventDataWriter ) ;
+		ReflectionTestUtils.setField( backfill, "eventServiceConfiguration", eventServiceConfiguration ) ;
+		backfill.setConcurrency( 2 ) ;
+		backfill.setChunkDays( 3 ) ;
+
+		// when
+		backfill.start( 1, 10 ) ;
+
+		for ( var attempt = 0; attempt < 50 && backfill.getProgress( ).path( "running" ).asBoolean( ); attempt++ ) {
+
+			TimeUnit.MILLISECONDS.sleep( 100 ) ;
+
+		}
+
+		// then
+		var progress = backfill.getProgress( ) ;
+		logger.info( "progress: {}", progress ) ;
+
+		assertThat( progress.path( "running" ).asBoolean( ) ).isFalse( ) ;
+		assertThat( progress.path( "completed" ).asInt( ) ).isEqualTo( 10 ) ;
+		assertThat( progress.path( "stored" ).asInt( ) ).isEqualTo( 7 ) ;
+		assertThat( progress.path( "noData" ).asInt( ) ).isEqualTo( 3 ) ;
+		assertThat( progress.path( "remaining" ).asInt( ) ).isZero( ) ;
+
+		verify( adoptionReportBuilder, times( 10 ) ).buildAdoptionReport( anyInt( ) ) ;
+		verify( eventDataWriter, times( 7 ) ).insertReportDocument( any( Document.class ), eq( "events-user" ) ) ;
+
+	}
+
+}
@@ -0,0 +1,81 @@
+package org.csap.events.db ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import java.util.LinkedHashMap ;
+import java.util.List ;
+
+import org.bson.Document ;
+import org.csap.helpers.CsapApplication ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+public class DailyTrendStoreTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	@Test
+	public void updated_report_increments_totals_by_difference ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var previousReport = hostSummary( List.of(
+				new Document( "serviceName", "csap-agent" ).append( "numberOfSamples", 10 ).append( "cpu", 2.5 ),
+				new Document( "serviceName", "data" ).append( "numberOfSamples", 4 ) ) ) ;
+
+		var latestReport = hostSummary( List.of(
+				new Document( "serviceName", "csap-agent" ).append( "numberOfSamples", 25 ).append( "cpu", 3.0 ),
+				new Document( "serviceName", "data" ).append( "numberOfSamples", 4 ) ) ) ;
+
+		// when
+		var totalsDeltas = new LinkedHashMap<String, DailyTrendStore.TotalsDelta>( ) ;
+		DailyTrendStore.addContributions( totalsDeltas, latestReport, 1 ) ;
+		DailyTrendStore.addContributions( totalsDeltas, previousReport, -1 ) ;
+
+		// then
+		assertThat( totalsDeltas ).hasSize( 2 ) ;
+
+		var agentDelta = totalsDeltas.get( "/csap/reports/process/daily|app-1|project-1|dev|2026-100|csap-agent" ) ;
+		assertThat( agentDelta.increments.get( "data.summary.numberOfSamples" ) ).isEqualTo( 15L ) ;
+		assertThat( agentDelta.increments.get( "data.summary.cpu" ) ).isEqualTo( 0.5 ) ;
+		assertThat( agentDelta.increments ).doesNotContainKey( "data.summary.serviceName" ) ;
+		assertThat( agentDelta.totalsFields.getString( "data.summary.serviceName" ) ).isEqualTo( "csap-agent" ) ;
+
+		var dataDelta = totalsDeltas.get( "/csap/reports/process/daily|app-1|project-1|dev|2026-100|data" ) ;
+		assertThat( dataDelta.increments.get( "data.summary.numberOfSamples" ) ).isEqualTo( 0L ) ;
+
+	}
+
+	@Test
+	public void trend_categories ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		assertThat( DailyTrendStore.isTrendCategory( "/csap/reports/host/daily" ) ).isTrue( ) ;
+		assertThat( DailyTrendStore.isTrendCategory( "/csap/reports/os-process/daily" ) ).isTrue( ) ;
+		assertThat( DailyTrendStore.isTrendCategory( "/csap/reports/global/daily" ) ).isFalse( ) ;
+		assertThat( DailyTrendStore.isTrendCategory( "/csap/reports/health" ) ).isFalse( ) ;
+
+	}
+
+	private Document hostSummary ( Object summary ) {
+
+		return new Document( "appId", "app-1" )
+				.append( "project", "project-1" )
+				.append( "lifecycle", "dev" )
+				.append( "category", "/csap/reports/process/daily" )
+				.append( "host", "host-1" )
+				.append( "createdOn", new Document( "date", "2026-100" ) )
+				.append( "summary", summary ) ;
+
+	}
+
+}
@@ -0,0 +1,185 @@
+package org.csap.events.db ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+import static org.csap.events.util.MongoConstants.EVENT_COLLECTION_NAME ;
+import static org.csap.events.util.MongoConstants.EVENT_COUNTERS_COLLECTION_NAME ;
+import static org.csap.events.util.MongoConstants.EVENT_DB_NAME ;
+import static org.mockito.ArgumentMatchers.any ;
+import static org.mockito.ArgumentMatchers.anyList ;
+import static org.mockito.ArgumentMatchers.eq ;
+import static org.mockito.Mockito.doAnswer ;
+import static org.mockito.Mockito.mock ;
+import static org.mockito.Mockito.never ;
+import static org.mockito.Mockito.times ;
+import static org.mockito.Mockito.verify ;
+import static org.mockito.Mockito.when ;
+
+import java.util.Map ;
+
+import org.bson.Document ;
+import org.bson.types.ObjectId ;
+import org.csap.helpers.CsapApplication ;
+import org.csap.integations.CsapMicroMeter ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.test.util.ReflectionTestUtils ;
+
+import com.mongodb.MongoClient ;
+import com.mongodb.MongoNamespace ;
+import com.mongodb.client.AggregateIterable ;
+import com.mongodb.client.MongoCollection ;
+import com.mongodb.client.MongoDatabase ;
+import com.mongodb.client.model.BulkWriteOptions ;
+import com.mongodb.client.model.IndexOptions ;
+import com.mongodb.client.model.RenameCollectionOptions ;
+
+public class EventCountersTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	MongoCollection<Document> eventCollection = mock( MongoCollection.class ) ;
+	MongoCollection<Document> countersCollection = mock( MongoCollection.class ) ;
+	MongoCollection<Document> rebuildCollection = mock( MongoCollection.class ) ;
+	AggregateIterable<Document> rebuildAggregation = mock( AggregateIterable.class ) ;
+
+	@Test
+	public void deltas_during_rebuild_are_fenced ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: a delta pending for an event the rebuild will count
+		var counters = counters( ) ;
+		counters.eventInserted( event( new ObjectId( ), "/before-rebuild" ) ) ;
+		var fencedId = new ObjectId( ) ;
+
+		// while aggregating: events before and after the fence, and a flush
+		doAnswer( invocation -> {
+
+			counters.eventInserted( event( fencedId, "/fenced" ) ) ;
+			counters.eventInserted( event( new ObjectId( ), "/after-fence" ) ) ;
+			counters.flush( ) ;
+			return null ;
+
+		} ).when( rebuildAggregation ).toCollection( ) ;
+
+		// when
+		counters.rebuild( ) ;
+
+		// then: flush held, only the delta after the fence is pending
+		verify( countersCollection, never( ) ).bulkWrite( anyList( ), any( BulkWriteOptions.class ) ) ;
+		assertThat( pendingCounts( counters ).keySet( ) ).containsExactly( "app-1|dev|/after-fence|2026-10-18" ) ;
+
+		counters.flush( ) ;
+		verify( countersCollection, times( 1 ) ).bulkWrite( anyList( ), any( BulkWriteOptions.class ) ) ;
+
+	}
+
+	@Test
+	public void rebuilt_counters_are_indexed_before_the_swap ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// when
+		counters( ).rebuild( ) ;
+
+		// then: same indexes as setup3-csap-dbs.js
+		for ( var index : EventCounters.COUNTER_INDEXES ) {
+
+			verify( rebuildCollection ).createIndex( eq( index ), any( IndexOptions.class ) ) ;
+
+		}
+
+		verify( rebuildCollection ).renameCollection(
+				eq( new MongoNamespace( EVENT_DB_NAME, EVENT_COUNTERS_COLLECTION_NAME ) ),
+				any( RenameCollectionOptions.class ) ) ;
+
+		assertThat( EventCounters.COUNTER_INDEXES ).containsExactly(
+				new Document( "appId", 1 ).append( "lifecycle", 1 ).append( "createdOn.date", -1 ),
+				new Document( "category", 1 ).append( "createdOn.date", -1 ) ) ;
+
+	}
+
+	@Test
+	public void fence_includes_its_own_id ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		var before = new ObjectId( ) ;
+		var fence = new ObjectId( ) ;
+		var after = new ObjectId( ) ;
+
+		assertThat( EventCounters.isBeforeFence( before, fence ) ).isTrue( ) ;
+		assertThat( EventCounters.isBeforeFence( fence, fence ) ).isTrue( ) ;
+		assertThat( EventCounters.isBeforeFence( after, fence ) ).isFalse( ) ;
+
+		// ids assigned by callers are never fenced
+		assertThat( EventCounters.isBeforeFence( "custom-id", fence ) ).isFalse( ) ;
+
+	}
+
+	@Test
+	public void counter_search_uses_only_counter_fields ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		var counters = counters( ) ;
+
+		assertThat( counters.isCounterSearch( "appId=app-1,lifecycle=dev,eventReceivedOn=false,isDataRequired=false" ) )
+				.isTrue( ) ;
+		assertThat( counters.isCounterSearch( "simpleSearchText=/csap/health,from=10/01/2026,to=10/18/2026" ) )
+				.isTrue( ) ;
+		assertThat( counters.isCounterSearch( "appId=app-1,project=demo" ) ).isFalse( ) ;
+		assertThat( counters.isCounterSearch( "appId=app-1,metaData.uiUser=user-1" ) ).isFalse( ) ;
+		assertThat( counters.isCounterSearch( null ) ).isFalse( ) ;
+
+		counters.setEnabled( false ) ;
+		assertThat( counters.isCounterSearch( "appId=app-1" ) ).isFalse( ) ;
+
+	}
+
+	private EventCounters counters ( ) {
+
+		var database = mock( MongoDatabase.class ) ;
+		var mongoClient = mock( MongoClient.class ) ;
+		when( mongoClient.getDatabase( EVENT_DB_NAME ) ).thenReturn( database ) ;
+		when( database.getCollection( EVENT_COLLECTION_NAME ) ).thenReturn( eventCollection ) ;
+		when( database.getCollection( EVENT_COUNTERS_COLLECTION_NAME ) ).thenReturn( countersCollection ) ;
+		when( database.getCollection( EventCounters.REBUILD_COLLECTION_NAME ) ).thenReturn( rebuildCollection ) ;
+
+		when( eventCollection.aggregate( anyList( ) ) ).thenReturn( rebuildAggregation ) ;
+		when( rebuildAggregation.allowDiskUse( true ) ).thenReturn( rebuildAggregation ) ;
+
+		var counters = new EventCounters( ) ;
+		counters.metricUtilities = CsapMicroMeter.Utilities.supportForNonSpringConsumers( ) ;
+		ReflectionTestUtils.setField( counters, "mongoClient", mongoClient ) ;
+		counters.setEnabled( true ) ;
+
+		return counters ;
+
+	}
+
+	private Document event ( ObjectId id , String category ) {
+
+		return new Document( "_id", id )
+				.append( "appId", "app-1" )
+				.append( "lifecycle", "dev" )
+				.append( "category", category )
+				.append( "createdOn", new Document( "date", "2026-10-18" ) ) ;
+
+	}
+
+	@SuppressWarnings ( "unchecked" )
+	private Map<String, EventCounters.PendingCount> pendingCounts ( EventCounters counters ) {
+
+		return (Map<String, EventCounters.PendingCount>) ReflectionTestUtils.getField( counters, "pendingCounts" ) ;
+
+	}
+
+}
@@ -0,0 +1,230 @@
+package org.csap.events.db ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+import static org.mockito.ArgumentMatchers.any ;
+import static org.mockito.ArgumentMatchers.anyList ;
+import static org.mockito.Mockito.after ;
+import static org.mockito.Mockito.doAnswer ;
+import static org.mockito.Mockito.doThrow ;
+import static org.mockito.Mockito.mock ;
+import static org.mockito.Mockito.never ;
+import static org.mockito.Mockito.timeout ;
+import static org.mockito.Mockito.times ;
+import static org.mockito.Mockito.verify ;
+import static org.mockito.Mockito.when ;
+
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.concurrent.CountDownLatch ;
+import java.util.concurrent.TimeUnit ;
+import java.util.concurrent.atomic.AtomicLong ;
+
+import org.bson.Document ;
+import org.csap.events.util.MongoConstants ;
+import org.csap.helpers.CsapApplication ;
+import org.csap.integations.CsapMicroMeter ;
+import org.junit.jupiter.api.AfterEach ;
+import org.junit.jupiter.api.Test ;
+import org.mockito.ArgumentCaptor ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.test.util.ReflectionTestUtils ;
+
+import com.mongodb.MongoNamespace ;
+import com.mongodb.MongoTimeoutException ;
+import com.mongodb.client.MongoCollection ;
+import com.mongodb.client.model.InsertManyOptions ;
+
+public class EventIngestPipelineTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	MongoCollection<Document> eventCollection = mock( MongoCollection.class ) ;
+	EventCounters eventCounters = mock( EventCounters.class ) ;
+
+	EventIngestPipeline pipeline ;
+
+	@AfterEach
+	public void stopPipeline ( ) {
+
+		if ( pipeline != null ) {
+
+			pipeline.stopWriters( ) ;
+
+		}
+
+	}
+
+	@Test
+	public void inserts_are_written_in_batches ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		pipeline = pipeline( 100, 3, 500, 3 ) ;
+
+		// when
+		assertThat( pipeline.submit( inserts( 7 ) ) ).isTrue( ) ;
+
+		// then
+		@SuppressWarnings ( "unchecked" )
+		ArgumentCaptor<List<Document>> batches = ArgumentCaptor.forClass( List.class ) ;
+		verify( eventCollection, timeout( 3000 ).times( 3 ) ).insertMany( batches.capture( ), any( InsertManyOptions.class ) ) ;
+
+		assertThat( batches.getAllValues( ) ).extracting( List::size ).containsExactly( 3, 3, 1 ) ;
+		verify( eventCounters, timeout( 1000 ).times( 7 ) ).eventInserted( any( Document.class ) ) ;
+		assertThat( batches.getAllValues( ).get( 0 ).get( 0 ).get( "_id" ) ).isNotNull( ) ;
+
+	}
+
+	@Test
+	public void partial_batch_is_written_after_flush_interval ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		pipeline = pipeline( 100, 500, 500, 3 ) ;
+
+		// when
+		pipeline.submit( inserts( 2 ) ) ;
+
+		// then: waits for more inserts, then writes both
+		verify( eventCollection, after( 100 ).never( ) ).insertMany( anyList( ), any( InsertManyOptions.class ) ) ;
+		verify( eventCollection, timeout( 2000 ).times( 1 ) ).insertMany( anyList( ), any( InsertManyOptions.class ) ) ;
+
+	}
+
+	@Test
+	public void failed_batches_are_retried_and_mark_mongo_failing ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: mongo times out once
+		var failureSeenOnRetry = new AtomicLong( ) ;
+
+		doThrow( new MongoTimeoutException( "mongo down" ) )
+				.doAnswer( invocation -> {
+
+					failureSeenOnRetry.set( pipeline.getLastMongoFailure( ) ) ;
+					return null ;
+
+				} )
+				.when( eventCollection ).insertMany( anyList( ), any( InsertManyOptions.class ) ) ;
+
+		pipeline = pipeline( 100, 10, 100, 3 ) ;
+
+		// when
+		pipeline.submit( inserts( 2 ) ) ;
+
+		// then: new posts are rejected until the retry succeeds
+		verify( eventCollection, timeout( 2000 ).times( 2 ) ).insertMany( anyList( ), any( InsertManyOptions.class ) ) ;
+		verify( eventCounters, timeout( 1000 ).times( 2 ) ).eventInserted( any( Document.class ) ) ;
+		assertThat( failureSeenOnRetry.get( ) ).isGreaterThan( 0 ) ;
+		assertThat( pipeline.getLastMongoFailure( ) ).isZero( ) ;
+
+	}
+
+	@Test
+	public void inserts_are_dropped_after_max_attempts ( )
+		throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: mongo stays down
+		doThrow( new MongoTimeoutException( "mongo down" ) )
+				.when( eventCollection ).insertMany( anyList( ), any( InsertManyOptions.class ) ) ;
+
+		pipeline = pipeline( 2, 10, 50, 2 ) ;
+
+		// when
+		pipeline.submit( inserts( 2 ) ) ;
+
+		// then: capacity is held until the inserts are dropped
+		verify( eventCollection, timeout( 2000 ).times( 2 ) ).insertMany( anyList( ), any( InsertManyOptions.class ) ) ;
+		verify( eventCollection, after( 300 ).times( 2 ) ).insertMany( anyList( ), any( InsertManyOptions.class ) ) ;
+		verify( eventCounters, never( ) ).eventInserted( any( Document.class ) ) ;
+
+		assertThat( pipeline.getQueueSize( ) ).isZero( ) ;
+		assertThat( pipeline.submit( inserts( 2 ) ) ).isTrue( ) ;
+
+	}
+
+	@Test
+	public void full_queue_rejects_the_whole_post ( )
+		throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: first batch is in flight
+		var insertStarted = new CountDownLatch( 1 ) ;
+		var release = new CountDownLatch( 1 ) ;
+
+		doAnswer( invocation -> {
+
+			insertStarted.countDown( ) ;
+			release.await( 5, TimeUnit.SECONDS ) ;
+			return null ;
+
+		} ).when( eventCollection ).insertMany( anyList( ), any( InsertManyOptions.class ) ) ;
+
+		pipeline = pipeline( 3, 2, 50, 3 ) ;
+		assertThat( pipeline.submit( inserts( 2 ) ) ).isTrue( ) ;
+		assertThat( insertStarted.await( 2, TimeUnit.SECONDS ) ).isTrue( ) ;
+
+		// when
+		var oversized = pipeline.submit( inserts( 2 ) ) ;
+		var fits = pipeline.submit( inserts( 1 ) ) ;
+		var full = pipeline.submit( inserts( 1 ) ) ;
+
+		// then
+		assertThat( oversized ).isFalse( ) ;
+		assertThat( fits ).isTrue( ) ;
+		assertThat( full ).isFalse( ) ;
+
+		release.countDown( ) ;
+		verify( eventCollection, timeout( 2000 ).times( 2 ) ).insertMany( anyList( ), any( InsertManyOptions.class ) ) ;
+
+	}
+
+	private EventIngestPipeline pipeline ( int queueCapacity , int batchSize , long flushIntervalMs , int maxAttempts ) {
+
+		when( eventCollection.getNamespace( ) ).thenReturn( new MongoNamespace( MongoConstants.EVENT_DB_NAME,
+				MongoConstants.EVENT_COLLECTION_NAME ) ) ;
+
+		var pipeline = new EventIngestPipeline( ) ;
+		pipeline.metricUtilities = CsapMicroMeter.Utilities.supportForNonSpringConsumers( ) ;
+		ReflectionTestUtils.setField( pipeline, "eventCounters", eventCounters ) ;
+		pipeline.setEnabled( true ) ;
+		pipeline.setQueueCapacity( queueCapacity ) ;
+		pipeline.setBatchSize( batchSize ) ;
+		pipeline.setFlushIntervalMs( flushIntervalMs ) ;
+		pipeline.setWriterThreads( 1 ) ;
+		pipeline.setMaxFlushAttempts( maxAttempts ) ;
+		pipeline.startWriters( ) ;
+
+		return pipeline ;
+
+	}
+
+	private List<EventIngestPipeline.PendingInsert> inserts ( int count ) {
+
+		var inserts = new ArrayList<EventIngestPipeline.PendingInsert>( ) ;
+
+		for ( var i = 0; i < count; i++ ) {
+
+			inserts.add( new EventIngestPipeline.PendingInsert( eventCollection,
+					new Document( "category", "/csap/test/" + i ) ) ) ;
+
+		}
+
+		return inserts ;
+
+	}
+
+}
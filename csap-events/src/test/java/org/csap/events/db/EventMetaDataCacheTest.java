@@ -0,0 +1,92 @@
+package org.csap.events.db ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import java.util.List ;
+import java.util.concurrent.atomic.AtomicInteger ;
+
+import org.bson.Document ;
+import org.csap.events.EventMetaData ;
+import org.csap.helpers.CsapApplication ;
+import org.csap.integations.CsapMicroMeter ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+public class EventMetaDataCacheTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	@Test
+	public void new_event_values_invalidate_matching_filters ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var cache = new EventMetaDataCache( ) ;
+		cache.metricUtilities = CsapMicroMeter.Utilities.supportForNonSpringConsumers( ) ;
+
+		var loads = new AtomicInteger( ) ;
+		var otherAppLoads = new AtomicInteger( ) ;
+
+		cache.get( "app-1", "dev", "", "", ( ) -> searchFilters( loads ) ) ;
+		cache.get( "app-1", "dev", "", "", ( ) -> searchFilters( loads ) ) ;
+		cache.get( "app-2", "dev", "", "", ( ) -> searchFilters( otherAppLoads ) ) ;
+		assertThat( loads.get( ) ).isEqualTo( 1 ) ;
+
+		// when
+		cache.eventAdded( event( "app-1", "host-1" ) ) ;
+
+		// then
+		assertThat( cache.size( ) ).isEqualTo( 2 ) ;
+
+		// when
+		cache.eventAdded( event( "app-1", "host-new" ) ) ;
+
+		// then
+		assertThat( cache.size( ) ).isEqualTo( 1 ) ;
+		cache.get( "app-1", "dev", "", "", ( ) -> searchFilters( loads ) ) ;
+		cache.get( "app-2", "dev", "", "", ( ) -> searchFilters( otherAppLoads ) ) ;
+		assertThat( loads.get( ) ).isEqualTo( 2 ) ;
+		assertThat( otherAppLoads.get( ) ).isEqualTo( 1 ) ;
+
+		// when: high volume categories are not checked
+		cache.eventAdded( event( "app-1", "host-other" ).append( "category", "/csap/metrics/host/data" ) ) ;
+		cache.eventAdded( event( "app-1", "host-other" ).append( "category", "/csap/health" ) ) ;
+
+		// then
+		assertThat( cache.size( ) ).isEqualTo( 2 ) ;
+
+	}
+
+	private EventMetaData searchFilters ( AtomicInteger loads ) {
+
+		loads.incrementAndGet( ) ;
+
+		var searchFilters = new EventMetaData( ) ;
+		searchFilters.setAppIds( List.of( "app-1", "app-2" ) ) ;
+		searchFilters.setLifecycles( List.of( "dev" ) ) ;
+		searchFilters.setCategories( List.of( "/csap/system/deploy" ) ) ;
+		searchFilters.setHosts( List.of( "host-1" ) ) ;
+		searchFilters.setProjects( List.of( "project-1" ) ) ;
+		return searchFilters ;
+
+	}
+
+	private Document event ( String appId , String host ) {
+
+		return new Document( "appId", appId )
+				.append( "lifecycle", "dev" )
+				.append( "category", "/csap/system/deploy" )
+				.append( "host", host )
+				.append( "project", "project-1" ) ;
+
+	}
+
+}
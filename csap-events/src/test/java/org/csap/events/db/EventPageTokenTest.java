@@ -0,0 +1,51 @@
+package org.csap.events.db ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+import static org.assertj.core.api.Assertions.assertThatThrownBy ;
+
+import java.util.Date ;
+
+import org.bson.Document ;
+import org.bson.types.ObjectId ;
+import org.csap.helpers.CsapApplication ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+public class EventPageTokenTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	@Test
+	public void token_round_trips_last_event_position ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var id = new ObjectId( ) ;
+		var lastUpdatedOn = new Date( 1600000000000L ) ;
+		var lastEvent = new Document( "_id", id )
+				.append( "createdOn", new Document( "lastUpdatedOn", lastUpdatedOn ) ) ;
+
+		// when
+		var token = EventPageToken.fromLastEvent( "createdOn.lastUpdatedOn", lastEvent ).encode( ) ;
+		var decoded = EventPageToken.decode( token ) ;
+
+		// then
+		assertThat( token ).doesNotContain( "createdOn" ) ;
+		assertThat( decoded.getSortField( ) ).isEqualTo( "createdOn.lastUpdatedOn" ) ;
+		assertThat( decoded.getSortValue( ) ).isEqualTo( lastUpdatedOn ) ;
+		assertThat( decoded.getId( ) ).isEqualTo( id ) ;
+
+		assertThatThrownBy( ( ) -> EventPageToken.decode( "not-a-token" ) )
+				.isInstanceOf( IllegalArgumentException.class ) ;
+
+	}
+
+}
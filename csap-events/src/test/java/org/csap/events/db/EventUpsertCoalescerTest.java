@@ -0,0 +1,142 @@
+package org.csap.events.db ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+import static org.mockito.ArgumentMatchers.any ;
+import static org.mockito.ArgumentMatchers.anyList ;
+import static org.mockito.Mockito.mock ;
+import static org.mockito.Mockito.when ;
+
+import java.util.ArrayList ;
+import java.util.List ;
+import java.util.Map ;
+
+import org.bson.Document ;
+import org.csap.helpers.CsapApplication ;
+import org.csap.integations.CsapMicroMeter ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.test.util.ReflectionTestUtils ;
+
+import com.mongodb.MongoTimeoutException ;
+import com.mongodb.client.MongoCollection ;
+import com.mongodb.client.model.BulkWriteOptions ;
+import com.mongodb.client.model.Filters ;
+
+public class EventUpsertCoalescerTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	@Test
+	public void merged_upserts_keep_latest_fields_and_sum_counter ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var first = new Document( "host", "host-1" ).append( "summary", "first" ).append( "firstOnly", true ) ;
+		var second = new Document( "host", "host-1" ).append( "summary", "second" ) ;
+
+		// when
+		var pending = new EventUpsertCoalescer.PendingUpsert( Filters.eq( "host", "host-1" ), first ) ;
+		pending.merge( second ) ;
+		var update = pending.buildUpdate( ) ;
+
+		// then
+		var setFields = (Document) update.get( "$set" ) ;
+		assertThat( setFields.getString( "summary" ) ).isEqualTo( "second" ) ;
+		assertThat( setFields.getBoolean( "firstOnly" ) ).isTrue( ) ;
+		assertThat( ( (Document) update.get( "$inc" ) ).getInteger( "counter" ) ).isEqualTo( 2 ) ;
+
+	}
+
+	@Test
+	public void deep_copy_isolates_nested_documents ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		List<Object> status = new ArrayList<>( ) ;
+		status.add( new Document( "time", "10:00" ) ) ;
+		var eventDocument = new Document( "data", new Document( "Healthy", true ).append( "status", status ) ) ;
+
+		// when
+		var copy = (Document) EventUpsertCoalescer.deepCopy( eventDocument ) ;
+		( (Document) eventDocument.get( "data" ) ).remove( "Healthy" ) ;
+		status.add( new Document( "time", "10:30" ) ) ;
+
+		// then
+		var copiedData = (Document) copy.get( "data" ) ;
+		assertThat( copiedData.getBoolean( "Healthy" ) ).isTrue( ) ;
+		assertThat( (List<?>) copiedData.get( "status" ) ).hasSize( 1 ) ;
+
+	}
+
+	@Test
+	public void failed_upserts_are_merged_back_behind_newer_upserts ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: a newer upsert to the same key arrives while the write fails
+		MongoCollection<Document> eventCollection = mock( MongoCollection.class ) ;
+		var coalescer = coalescer( eventCollection, 2 ) ;
+		coalescer.submit( "host-1", Filters.eq( "host", "host-1" ),
+				new Document( "summary", "first" ).append( "firstOnly", true ) ) ;
+
+		when( eventCollection.bulkWrite( anyList( ), any( BulkWriteOptions.class ) ) ).thenAnswer( invocation -> {
+
+			coalescer.submit( "host-1", Filters.eq( "host", "host-1" ), new Document( "summary", "second" ) ) ;
+			throw new MongoTimeoutException( "mongo down" ) ;
+
+		} ) ;
+
+		// when
+		var written = coalescer.flush( ) ;
+
+		// then
+		assertThat( written ).isFalse( ) ;
+		var pending = pendingUpserts( coalescer ).get( "host-1" ) ;
+		assertThat( pending.setFields.getString( "summary" ) ).isEqualTo( "second" ) ;
+		assertThat( pending.setFields.getBoolean( "firstOnly" ) ).isTrue( ) ;
+		assertThat( pending.counter ).isEqualTo( 2 ) ;
+		assertThat( pending.failedFlushes ).isEqualTo( 1 ) ;
+
+		// when: mongo is still down
+		when( eventCollection.bulkWrite( anyList( ), any( BulkWriteOptions.class ) ) )
+				.thenThrow( new MongoTimeoutException( "mongo down" ) ) ;
+		coalescer.flush( ) ;
+
+		// then: dropped after max attempts
+		assertThat( coalescer.getPendingCount( ) ).isZero( ) ;
+
+	}
+
+	private EventUpsertCoalescer coalescer ( MongoCollection<Document> eventCollection , int maxFlushAttempts ) {
+
+		var eventDataHelper = mock( EventDataHelper.class ) ;
+		when( eventDataHelper.getMongoEventCollection( ) ).thenReturn( eventCollection ) ;
+
+		var coalescer = new EventUpsertCoalescer( ) ;
+		coalescer.metricUtilities = CsapMicroMeter.Utilities.supportForNonSpringConsumers( ) ;
+		ReflectionTestUtils.setField( coalescer, "eventDataHelper", eventDataHelper ) ;
+		ReflectionTestUtils.setField( coalescer, "eventCounters", mock( EventCounters.class ) ) ;
+		coalescer.setMaxFlushAttempts( maxFlushAttempts ) ;
+
+		return coalescer ;
+
+	}
+
+	@SuppressWarnings ( "unchecked" )
+	private Map<String, EventUpsertCoalescer.PendingUpsert> pendingUpserts ( EventUpsertCoalescer coalescer ) {
+
+		return (Map<String, EventUpsertCoalescer.PendingUpsert>) ReflectionTestUtils.getField( coalescer,
+				"pendingUpserts" ) ;
+
+	}
+
+}
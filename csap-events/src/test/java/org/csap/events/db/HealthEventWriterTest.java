@@ -0,0 +1,57 @@
+package org.csap.events.db ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import java.util.List ;
+
+import org.bson.Document ;
+import org.csap.helpers.CsapApplication ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+public class HealthEventWriterTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	@Test
+	public void health_change_is_a_single_upsert ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var eventDocument = new Document( "category", "/csap/reports/health" )
+				.append( "host", "host-1" )
+				.append( "lifecycle", "dev" )
+				.append( "counter", 3 )
+				.append( "createdOn", new Document( "date", "2026-10-18" ).append( "unixMs", 1L ) )
+				.append( "data", new Document( "Healthy", false )
+						.append( "errors", new Document( "host-1", List.of( "disk full" ) ) )
+						.append( "vm", new Document( "cpu", 10 ) ) ) ;
+
+		// when
+		var update = HealthEventWriter.healthChangeUpdate( eventDocument, List.of( "disk full" ), 1, 21 ) ;
+		logger.info( "update: {}", update.toJson( ) ) ;
+
+		// then
+		assertThat( update.get( "$inc", Document.class ).getInteger( "data.UnHealthyEventCount" ) ).isEqualTo( 1 ) ;
+		assertThat( update.get( "$set", Document.class ).get( "data.lastStatus" ) ).isEqualTo( List.of( "disk full" ) ) ;
+
+		var push = update.get( "$push", Document.class ).get( "data.healthStatus", Document.class ) ;
+		assertThat( push.getInteger( "$slice" ) ).isEqualTo( 22 ) ;
+		assertThat( push.getList( "$each", Document.class ).get( 0 ).get( "status" ) )
+				.isEqualTo( List.of( "disk full" ) ) ;
+
+		// query and health fields are not part of the insert
+		var insertFields = update.get( "$setOnInsert", Document.class ) ;
+		assertThat( insertFields.keySet( ) ).containsExactlyInAnyOrder( "lifecycle", "createdOn.unixMs", "data.vm" ) ;
+
+	}
+
+}
@@ -0,0 +1,115 @@
+package org.csap.events.db ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import java.util.List ;
+
+import org.bson.Document ;
+import org.csap.helpers.CsapApplication ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+public class HealthStatesTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	static final List<String> SUCCESS = List.of( "Success" ) ;
+	static final List<String> DISK_FULL = List.of( "disk full" ) ;
+
+	@Test
+	public void only_transitions_and_counts_are_pending ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var state = new HealthStates.HostHealth( new Document( ), new Document( "lifecycle", "dev" ), 21 ) ;
+		state.loaded( null, 0 ) ;
+
+		// when
+		state.record( SUCCESS, 0 ) ;
+		state.record( DISK_FULL, 1 ) ;
+		state.record( DISK_FULL, 1 ) ;
+		var update = state.buildUpdate( ) ;
+		state.takePending( ) ;
+
+		state.record( DISK_FULL, 0 ) ;
+
+		// then
+		logger.info( "update: {}", update.toJson( ) ) ;
+		assertThat( update.get( "$inc", Document.class ).getInteger( "data.UnHealthyEventCount" ) ).isEqualTo( 2 ) ;
+		assertThat( update.get( "$push", Document.class ).get( "data.healthStatus", Document.class )
+				.getList( "$each", Document.class ) ).hasSize( 2 ) ;
+
+		// repeated status with no unhealthy events writes nothing
+		assertThat( state.isPending( ) ).isFalse( ) ;
+
+	}
+
+	@Test
+	public void stored_status_is_not_a_change ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: events arrive before the stored state is loaded
+		var state = new HealthStates.HostHealth( new Document( ), new Document( ), 3 ) ;
+		state.record( DISK_FULL, 1 ) ;
+		state.record( SUCCESS, 0 ) ;
+
+		// when
+		state.loaded( DISK_FULL, 3 ) ;
+		state.record( DISK_FULL, 1 ) ;
+
+		// then: 3 stored + success = limit of 4, so the last change is dropped
+		assertThat( state.statusChanges ).hasSize( 1 ) ;
+		assertThat( state.statusChanges.get( 0 ).get( "status" ) ).isEqualTo( SUCCESS ) ;
+		assertThat( state.buildUpdate( ).get( "$set", Document.class ).get( "data.lastStatus" ) ).isEqualTo( DISK_FULL ) ;
+
+	}
+
+	@Test
+	public void failed_writes_are_merged_back ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: a flush taken, then more events before the write fails
+		var state = new HealthStates.HostHealth( new Document( ), new Document( ), 21 ) ;
+		state.loaded( null, 0 ) ;
+		state.record( DISK_FULL, 2 ) ;
+
+		var pending = state.takePending( ) ;
+		state.record( SUCCESS, 0 ) ;
+
+		// when
+		state.restore( pending ) ;
+
+		// then: counts and changes are kept, in order
+		assertThat( state.isPending( ) ).isTrue( ) ;
+		assertThat( state.unHealthyEvents ).isEqualTo( 2 ) ;
+		assertThat( state.statusChanges ).extracting( change -> change.get( "status" ) )
+				.containsExactly( DISK_FULL, SUCCESS ) ;
+		assertThat( state.failedFlushes ).isEqualTo( 1 ) ;
+
+	}
+
+	@Test
+	public void state_key_is_project_lifecycle_host_day ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		var eventDocument = new Document( "project", "demo" )
+				.append( "lifecycle", "dev" )
+				.append( "host", "host-1" )
+				.append( "createdOn", new Document( "date", "2026-10-18" ) ) ;
+
+		assertThat( HealthStates.stateKey( eventDocument ) ).isEqualTo( "demo|dev|host-1|2026-10-18" ) ;
+
+	}
+
+}
@@ -0,0 +1,79 @@
+package org.csap.events.db ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+import static org.assertj.core.api.Assertions.assertThatThrownBy ;
+
+import java.nio.ByteBuffer ;
+import java.nio.file.Files ;
+import java.util.zip.DataFormatException ;
+
+import org.csap.helpers.CsapApplication ;
+import org.csap.integations.CsapMicroMeter ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+public class HistoricalReportStoreTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	@Test
+	public void stored_reports_are_read_back ( ) throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var store = new HistoricalReportStore( ) ;
+		store.metricUtilities = CsapMicroMeter.Utilities.supportForNonSpringConsumers( ) ;
+		store.setEnabled( true ) ;
+		store.setFolder( Files.createTempDirectory( "historical-reports" ).toString( ) ) ;
+
+		var report = "{\"attributes\":{\"id\":\"host\"},\"data\":{\"usrCpu\":[" + "10,".repeat( 5000 ) + "1]}}" ;
+		var key = store.reportKey( "host-1", "host_30", 1, "[null]2026-100", "app", "dev", false, false, 0, "" ) ;
+
+		// when
+		var missing = store.read( key ) ;
+		store.write( key, report ) ;
+
+		// then
+		assertThat( missing ).isNull( ) ;
+		assertThat( store.read( key ) ).isEqualTo( report ) ;
+		assertThat( store.reportKey( "host-2", "host_30", 1, "[null]2026-100", "app", "dev", false, false, 0, "" ) )
+				.isNotEqualTo( key ) ;
+
+	}
+
+	@Test
+	public void only_closed_days_are_stored ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// yesterday's daily collections may still be uploaded after midnight
+		assertThat( HistoricalReportStore.isDataWindowClosed( 0 ) ).isFalse( ) ;
+		assertThat( HistoricalReportStore.isDataWindowClosed( 1 ) ).isFalse( ) ;
+		assertThat( HistoricalReportStore.isDataWindowClosed( 2 ) ).isTrue( ) ;
+
+		// disabled by default: folder is relative to the working folder
+		assertThat( new HistoricalReportStore( ).isEnabled( ) ).isFalse( ) ;
+
+	}
+
+	@Test
+	public void truncated_report_is_rejected ( ) throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		var encoded = HistoricalReportStore.encode( "{\"data\":[" + "1,".repeat( 5000 ) + "1]}" ) ;
+
+		assertThatThrownBy( ( ) -> HistoricalReportStore.decode( ByteBuffer.wrap( encoded, 0, encoded.length / 2 ) ) )
+				.isInstanceOf( DataFormatException.class ) ;
+
+	}
+
+}
@@ -0,0 +1,214 @@
+package org.csap.events.db ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import java.io.StringWriter ;
+import java.util.Arrays ;
+import java.util.HashMap ;
+import java.util.HashSet ;
+import java.util.List ;
+
+import org.bson.Document ;
+import org.bson.RawBsonDocument ;
+import org.bson.codecs.DocumentCodec ;
+import org.csap.events.util.MetricColumn ;
+import org.csap.events.util.MetricsTimeSeries ;
+import org.csap.helpers.CsapApplication ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+import com.fasterxml.jackson.databind.ObjectMapper ;
+import com.fasterxml.jackson.databind.node.ArrayNode ;
+
+public class MetricsDataReaderTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	ObjectMapper jsonMapper = new ObjectMapper( ) ;
+
+	List<String> attributeNames = List.of( "usrCpu", "load", "memory", "timeStamp" ) ;
+
+	@Test
+	public void merged_series_matches_json_node_merge ( ) throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: nulls, integer and double values in one column, short and
+		// missing attributes
+		var documents = List.of(
+				metricsDocument( List.of( 300L, 200L, 100L ),
+						Arrays.asList( 3, null, 1 ),
+						Arrays.asList( 0.5, 2.0, 1 ),
+						null ),
+				metricsDocument( List.of( 50L ),
+						List.of( 7 ),
+						List.of( 2 ),
+						List.of( 9L ) ),
+				metricsDocument( List.of( 20L, 10L ),
+						List.of( 1 ),
+						Arrays.asList( null, 0.25 ),
+						List.of( 4.5, 5 ) ) ) ;
+
+		// when
+		var series = mergeSeries( documents ) ;
+
+		// then
+		var expected = jsonNodeMerge( documents ) ;
+		logger.info( "json node merge: {}", expected ) ;
+
+		assertThat( toJson( series ) ).isEqualTo( expected ) ;
+		assertThat( expected ).isEqualTo( "{\"usrCpu\":[3,null,1,7,1,0],"
+				+ "\"load\":[0.5,2.0,1,2,null,0.25],"
+				+ "\"memory\":[0,0,0,9,4.5,5],"
+				+ "\"timeStamp\":[300,200,100,50,20,10]}" ) ;
+
+		// missing values are read as 0
+		assertThat( series.valueAt( "usrCpu", 1 ) ).isZero( ) ;
+		assertThat( series.values( "load" ) ).containsExactly( 0.5, 2.0, 1, 2, 0, 0.25 ) ;
+		assertThat( series.isIntegral( "usrCpu" ) ).isTrue( ) ;
+		assertThat( series.isIntegral( "load" ) ).isFalse( ) ;
+
+	}
+
+	@Test
+	public void values_beyond_time_stamps_are_dropped ( ) throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var documents = List.of(
+				metricsDocument( List.of( 300L, 200L ), List.of( 3, 2, 99 ), null, null ),
+				metricsDocument( List.of( 100L ), List.of( 1 ), null, null ) ) ;
+
+		// when
+		var series = mergeSeries( documents ) ;
+
+		// then: the json node merge kept 99, shifting 1 to a missing timeStamp
+		assertThat( jsonNodeMerge( documents ) ).contains( "\"usrCpu\":[3,2,99,1]" ) ;
+		assertThat( toJson( series ) ).contains( "\"usrCpu\":[3,2,1]", "\"timeStamp\":[300,200,100]" ) ;
+
+	}
+
+	private Document metricsDocument ( List<?> timeStamps , List<?> usrCpu , List<?> load , List<?> memory ) {
+
+		var data = new Document( "timeStamp", timeStamps ) ;
+
+		if ( usrCpu != null ) {
+
+			data.append( "usrCpu", usrCpu ) ;
+
+		}
+
+		if ( load != null ) {
+
+			data.append( "load", load ) ;
+
+		}
+
+		if ( memory != null ) {
+
+			data.append( "memory", memory ) ;
+
+		}
+
+		return new Document( "createdOn", new Document( "date", "2026-10-18" ) ).append( "data", data ) ;
+
+	}
+
+	private MetricsTimeSeries mergeSeries ( List<Document> documents ) {
+
+		var series = new MetricsTimeSeries( attributeNames, 16 ) ;
+
+		for ( var document : documents ) {
+
+			var columns = new HashMap<String, MetricColumn>( ) ;
+			MetricsDataReader.decodeMetricsDocument( new RawBsonDocument( document, new DocumentCodec( ) ),
+					new HashSet<>( attributeNames ), columns ) ;
+			series.append( columns ) ;
+
+		}
+
+		return series ;
+
+	}
+
+	// merge used before the columnar series: each data list parsed to json,
+	// padded with 0 to the timeStamp count
+	private String jsonNodeMerge ( List<Document> documents ) throws Exception {
+
+		var mergedGraphReport = jsonMapper.createObjectNode( ) ;
+
+		for ( var document : documents ) {
+
+			var dataObject = (Document) document.get( "data" ) ;
+			var collectedAttributeValues = new HashMap<String, ArrayNode>( ) ;
+
+			for ( var attributeName : attributeNames ) {
+
+				var attributeData = (List<?>) dataObject.get( attributeName ) ;
+
+				if ( attributeData != null ) {
+
+					collectedAttributeValues.put( attributeName,
+							(ArrayNode) jsonMapper.readTree( attributeData.toString( ) ) ) ;
+
+				}
+
+			}
+
+			var timeStampCount = collectedAttributeValues.get( "timeStamp" ).size( ) ;
+
+			for ( var attributeName : attributeNames ) {
+
+				var collectedValues = collectedAttributeValues.get( attributeName ) ;
+
+				if ( collectedValues == null ) {
+
+					collectedValues = jsonMapper.createArrayNode( ) ;
+
+				}
+
+				while ( collectedValues.size( ) < timeStampCount ) {
+
+					collectedValues.add( 0 ) ;
+
+				}
+
+				if ( ! mergedGraphReport.has( attributeName ) ) {
+
+					mergedGraphReport.putArray( attributeName ) ;
+
+				}
+
+				( (ArrayNode) mergedGraphReport.get( attributeName ) ).addAll( collectedValues ) ;
+
+			}
+
+		}
+
+		return jsonMapper.writeValueAsString( mergedGraphReport ) ;
+
+	}
+
+	private String toJson ( MetricsTimeSeries series ) throws Exception {
+
+		var writer = new StringWriter( ) ;
+
+		try ( var generator = jsonMapper.getFactory( ).createGenerator( writer ) ) {
+
+			series.writeJson( generator ) ;
+
+		}
+
+		return writer.toString( ) ;
+
+	}
+
+}
@@ -0,0 +1,130 @@
+package org.csap.events.db ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import java.util.Date ;
+import java.util.List ;
+
+import org.bson.Document ;
+import org.csap.events.util.MetricsTimeSeries ;
+import org.csap.helpers.CsapApplication ;
+import org.csap.integations.CsapMicroMeter ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+public class MetricsHotTailTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	static final List<String> ATTRIBUTES = List.of( MetricsTimeSeries.TIME_STAMP, "usrCpu" ) ;
+
+	long now = System.currentTimeMillis( ) ;
+
+	@Test
+	public void reads_recent_documents_newest_first ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var hotTail = hotTail( ) ;
+
+		for ( var minutesAgo = 30; minutesAgo > 0; minutesAgo -= 10 ) {
+
+			hotTail.metricsDataIngested( dataDocument( "host_30", minutesAgo ) ) ;
+
+		}
+
+		// when
+		var report = new MetricsTimeSeries( ATTRIBUTES, 10 ) ;
+		var hotTailRead = hotTail.read( "host-1", "host_30", minutesAgo( 60 ), minutesAgo( 0 ), ATTRIBUTES, report,
+				false ) ;
+
+		// then
+		assertThat( hotTailRead.getDocuments( ) ).isEqualTo( 3 ) ;
+		assertThat( hotTailRead.getLatestReportDate( ) ).isEqualTo( minutesAgo( 10 ) ) ;
+		assertThat( hotTailRead.getCompleteSince( ) ).isBefore( minutesAgo( 30 ) ) ;
+		assertThat( report.length( ) ).isEqualTo( 3 ) ;
+		assertThat( report.valueAt( MetricsTimeSeries.TIME_STAMP, 0 ) ).isEqualTo( 10 ) ;
+		assertThat( report.valueAt( "usrCpu", 2 ) ).isEqualTo( 30 ) ;
+
+		assertThat( hotTail.read( "host-1", "host_300", minutesAgo( 60 ), minutesAgo( 0 ), ATTRIBUTES, report,
+				false ) ).isNull( ) ;
+
+	}
+
+	@Test
+	public void incomplete_series_are_not_used_when_complete_is_required ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var hotTail = hotTail( ) ;
+		hotTail.setHours( 1 ) ;
+
+		hotTail.metricsDataIngested( dataDocument( "host_30", 90 ) ) ;
+		hotTail.metricsDataIngested( dataDocument( "host_30", 20 ) ) ;
+		hotTail.metricsDataIngested( dataDocument( "host_30", 10 ) ) ;
+
+		// when
+		var report = new MetricsTimeSeries( ATTRIBUTES, 10 ) ;
+		var sinceExpired = hotTail.read( "host-1", "host_30", minutesAgo( 120 ), minutesAgo( 0 ), ATTRIBUTES, report,
+				true ) ;
+		var sinceRetained = hotTail.read( "host-1", "host_30", minutesAgo( 30 ), minutesAgo( 0 ), ATTRIBUTES, report,
+				true ) ;
+
+		// then: the 90 minute document was trimmed, so memory is complete only after it
+		assertThat( sinceExpired ).isNull( ) ;
+		assertThat( sinceRetained.getDocuments( ) ).isEqualTo( 2 ) ;
+		assertThat( sinceRetained.getCompleteSince( ) ).isEqualTo( minutesAgo( 90 ) ) ;
+
+	}
+
+	@Test
+	public void series_are_evicted_above_max_mb ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		var hotTail = hotTail( ) ;
+		hotTail.setMaxMb( 0 ) ;
+
+		hotTail.metricsDataIngested( dataDocument( "host_30", 10 ) ) ;
+
+		assertThat( hotTail.getTotalBytes( ) ).isZero( ) ;
+		assertThat( hotTail.read( "host-1", "host_30", minutesAgo( 60 ), minutesAgo( 0 ), ATTRIBUTES,
+				new MetricsTimeSeries( ATTRIBUTES, 10 ), false ) ).isNull( ) ;
+
+	}
+
+	private MetricsHotTail hotTail ( ) {
+
+		var hotTail = new MetricsHotTail( ) ;
+		hotTail.setEnabled( true ) ;
+		hotTail.metricUtilities = CsapMicroMeter.Utilities.supportForNonSpringConsumers( ) ;
+		return hotTail ;
+
+	}
+
+	private Date minutesAgo ( int minutes ) {
+
+		return new Date( now - minutes * 60_000L ) ;
+
+	}
+
+	private Document dataDocument ( String id , int minutesAgo ) {
+
+		return new Document( "attributes", new Document( "hostName", "host-1" ).append( "id", id ) )
+				.append( "data", new Document( "timeStamp", List.of( Integer.toString( minutesAgo ) ) )
+						.append( "usrCpu", List.of( minutesAgo ) ) )
+				.append( "createdOn", new Document( "lastUpdatedOn", minutesAgo( minutesAgo ) )
+						.append( "mongoDate", minutesAgo( minutesAgo ) ) ) ;
+
+	}
+
+}
@@ -0,0 +1,39 @@
+package org.csap.events.db ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import java.util.List ;
+
+import org.bson.Document ;
+import org.csap.helpers.CsapApplication ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+public class MetricsIntervalsTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	@Test
+	public void intervals_from_model_summary ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		var summary = new Document( "packages", List.of(
+				new Document( "metrics", new Document( "host", List.of( 30, 300, 3600 ) )
+						.append( "jmx", List.of( 30, 300 ) ) ) ) ) ;
+
+		var intervals = MetricsIntervals.intervalsFromSummary( summary ) ;
+
+		assertThat( intervals.get( "host" ) ).containsExactly( 30, 300, 3600 ) ;
+		assertThat( intervals.get( "jmx" ) ).containsExactly( 30, 300 ) ;
+
+	}
+
+}
@@ -0,0 +1,144 @@
+package org.csap.events.db ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import java.util.Date ;
+import java.util.HashMap ;
+import java.util.List ;
+import java.util.Map ;
+
+import org.csap.events.util.MetricColumn ;
+import org.csap.events.util.MetricsTimeSeries ;
+import org.csap.helpers.CsapApplication ;
+import org.csap.integations.CsapMicroMeter ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+public class MetricsRollupsTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	static final long MINUTE = 60 * 1000 ;
+
+	@Test
+	public void missing_buckets_are_filled_from_raw_rows ( ) throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: 5 minute rollup with buckets at 10 and 20 minutes, range 0 to 29
+		var names = List.of( "usrCpu", "timeStamp" ) ;
+		var rollupData = new MetricsTimeSeries( names, 4 ) ;
+		rollupData.append( columns( new double[] { 20 * MINUTE, 10 * MINUTE }, new double[] { 50, 40 } ) ) ;
+
+		// when
+		var missingRanges = MetricsRollups.missingRanges( rollupData, 300, new Date( 0 ), new Date( 29 * MINUTE ) ) ;
+
+		// then
+		assertThat( missingRanges ).hasSize( 3 ) ;
+		assertThat( missingRanges.get( 0 ) ).containsExactly( 0, 10 * MINUTE ) ;
+		assertThat( missingRanges.get( 1 ) ).containsExactly( 15 * MINUTE, 20 * MINUTE ) ;
+		assertThat( missingRanges.get( 2 ) ).containsExactly( 25 * MINUTE, 29 * MINUTE + 1 ) ;
+
+		// given: raw rows, including rows in buckets the rollup already has
+		var rawData = new MetricsTimeSeries( names, 8 ) ;
+		rawData.append( columns(
+				new double[] { 21 * MINUTE, 16 * MINUTE, 15 * MINUTE, 11 * MINUTE, 2 * MINUTE, 1 * MINUTE },
+				new double[] { 99, 6, 4, 99, 1, 0.002 } ) ) ;
+
+		// when
+		var filled = MetricsRollups.fillMissingBuckets( rollupData, rawData, 300, names ) ;
+
+		// then: newest first, rollup buckets unchanged
+		assertThat( filled.values( "usrCpu" ) ).containsExactly( 50, 5, 40, 0.501 ) ;
+		assertThat( filled.valueAt( "timeStamp", 1 ) ).isEqualTo( 15 * MINUTE ) ;
+		assertThat( filled.valueAt( "timeStamp", 3 ) ).isEqualTo( 0 ) ;
+
+	}
+
+	@Test
+	public void averages_use_the_count_of_each_attribute ( ) throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: load is only collected on the first row
+		var later = new MetricsRollups.Bucket( ) ;
+		later.count = 2 ;
+		later.add( "usrCpu", 10 ) ;
+		later.add( "usrCpu", 20 ) ;
+		later.add( "load", 3 ) ;
+
+		// when
+		var bucket = new MetricsRollups.Bucket( ).merge( later ).merge( later ) ;
+
+		// then
+		assertThat( bucket.count ).isEqualTo( 4 ) ;
+		assertThat( bucket.average( "usrCpu" ) ).isEqualTo( 15 ) ;
+		assertThat( bucket.average( "load" ) ).isEqualTo( 3 ) ;
+		assertThat( bucket.sumMinMax.get( "load" ) ).containsExactly( 6, 3, 3, 2 ) ;
+
+	}
+
+	@Test
+	public void pending_buckets_are_limited ( ) throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var rollups = new MetricsRollups( ) ;
+		rollups.metricUtilities = CsapMicroMeter.Utilities.supportForNonSpringConsumers( ) ;
+		rollups.setMaxPending( 2 ) ;
+
+		// when
+		rollups.addPending( pendingBucket( "host-1", 0 ) ) ;
+		rollups.addPending( pendingBucket( "host-2", 0 ) ) ;
+		rollups.addPending( pendingBucket( "host-3", 0 ) ) ;
+		rollups.addPending( pendingBucket( "host-1", 0 ) ) ;
+
+		// then: new buckets are dropped, existing ones still merge
+		assertThat( rollups.getPendingCount( ) ).isEqualTo( 2 ) ;
+
+	}
+
+	private MetricsRollups.PendingBucket pendingBucket ( String hostName , long bucketStart ) {
+
+		var bucket = new MetricsRollups.Bucket( ) ;
+		bucket.count = 1 ;
+		bucket.add( "usrCpu", 10 ) ;
+
+		return new MetricsRollups.PendingBucket( 300, hostName, "host_30", bucketStart, bucket ) ;
+
+	}
+
+	private Map<String, MetricColumn> columns ( double[] timeStamps , double[] usrCpu ) {
+
+		var columns = new HashMap<String, MetricColumn>( ) ;
+		var timeStampColumn = new MetricColumn( timeStamps.length ) ;
+		var usrCpuColumn = new MetricColumn( usrCpu.length ) ;
+
+		for ( var timeStamp : timeStamps ) {
+
+			timeStampColumn.add( timeStamp ) ;
+
+		}
+
+		for ( var value : usrCpu ) {
+
+			usrCpuColumn.addDecimal( value ) ;
+
+		}
+
+		columns.put( "timeStamp", timeStampColumn ) ;
+		columns.put( "usrCpu", usrCpuColumn ) ;
+
+		return columns ;
+
+	}
+
+}
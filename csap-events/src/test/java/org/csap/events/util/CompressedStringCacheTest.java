@@ -0,0 +1,47 @@
+package org.csap.events.util ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import org.csap.helpers.CsapApplication ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.cache.concurrent.ConcurrentMapCache ;
+
+public class CompressedStringCacheTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	@Test
+	public void string_reports_are_stored_compressed ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var storedCache = new ConcurrentMapCache( "test" ) ;
+		var cache = new CompressedStringCache( storedCache ) ;
+		var report = "{\"data\":[" + "{\"usrCpu\":10,\"sysCpu\":2},".repeat( 1000 ) + "{}]}" ;
+
+		// when
+		var loadedReport = cache.get( "report", ( ) -> report ) ;
+		cache.put( "numDays", 7L ) ;
+
+		// then
+		assertThat( loadedReport ).isEqualTo( report ) ;
+		assertThat( cache.get( "report", String.class ) ).isEqualTo( report ) ;
+
+		var stored = (CompressedStringCache.CompressedString) storedCache.get( "report" ).get( ) ;
+		logger.info( "report length: {}, stored bytes: {}", report.length( ), stored.gzipped.length ) ;
+		assertThat( stored.gzipped.length ).isLessThan( report.length( ) / 10 ) ;
+
+		assertThat( storedCache.get( "numDays" ).get( ) ).isEqualTo( 7L ) ;
+
+	}
+
+}
@@ -0,0 +1,109 @@
+package org.csap.events.util ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+import static org.assertj.core.api.Assertions.assertThatThrownBy ;
+
+import java.util.List ;
+import java.util.concurrent.CopyOnWriteArrayList ;
+import java.util.concurrent.CountDownLatch ;
+import java.util.concurrent.RejectedExecutionException ;
+import java.util.concurrent.TimeUnit ;
+
+import org.csap.helpers.CsapApplication ;
+import org.csap.integations.CsapMicroMeter ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+public class HostShardedExecutorTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	@Test
+	public void host_events_run_in_order ( )
+		throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var hostLanes = hostLanes( 3, 100 ) ;
+		List<Integer> processed = new CopyOnWriteArrayList<>( ) ;
+		var done = new CountDownLatch( 1 ) ;
+
+		// when
+		for ( var eventNumber = 0; eventNumber < 50; eventNumber++ ) {
+
+			var event = eventNumber ;
+			hostLanes.execute( "host-1", ( ) -> processed.add( event ) ) ;
+
+		}
+
+		hostLanes.execute( "host-1", done::countDown ) ;
+
+		// then
+		assertThat( done.await( 5, TimeUnit.SECONDS ) ).isTrue( ) ;
+		assertThat( processed ).isSorted( ).hasSize( 50 ) ;
+		assertThat( HostShardedExecutor.laneFor( "host-1", 3 ) ).isEqualTo( HostShardedExecutor.laneFor( "host-1", 3 ) )
+				.isBetween( 0, 2 ) ;
+
+		hostLanes.stopLanes( ) ;
+
+	}
+
+	@Test
+	public void full_lane_rejects ( )
+		throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: the lane thread is blocked and its queue holds one task
+		var hostLanes = hostLanes( 1, 1 ) ;
+		var release = new CountDownLatch( 1 ) ;
+		var started = new CountDownLatch( 1 ) ;
+
+		hostLanes.execute( "host-1", ( ) -> {
+
+			started.countDown( ) ;
+
+			try {
+
+				release.await( ) ;
+
+			} catch ( InterruptedException e ) {
+
+				Thread.currentThread( ).interrupt( ) ;
+
+			}
+
+		} ) ;
+
+		started.await( 5, TimeUnit.SECONDS ) ;
+		hostLanes.execute( "host-2", ( ) -> {} ) ;
+
+		// when / then
+		assertThatThrownBy( ( ) -> hostLanes.execute( "host-3", ( ) -> {} ) )
+				.isInstanceOf( RejectedExecutionException.class ) ;
+
+		release.countDown( ) ;
+		hostLanes.stopLanes( ) ;
+
+	}
+
+	private HostShardedExecutor hostLanes ( int lanes , int laneQueue ) {
+
+		var hostLanes = new HostShardedExecutor( ) ;
+		hostLanes.metricUtilities = CsapMicroMeter.Utilities.supportForNonSpringConsumers( ) ;
+		hostLanes.setLanes( lanes ) ;
+		hostLanes.setLaneQueue( laneQueue ) ;
+		hostLanes.startLanes( ) ;
+		return hostLanes ;
+
+	}
+
+}
@@ -0,0 +1,208 @@
+package org.csap.events.util ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import java.io.StringWriter ;
+import java.util.HashMap ;
+import java.util.List ;
+import java.util.Map ;
+
+import org.csap.helpers.CsapApplication ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+import com.fasterxml.jackson.databind.ObjectMapper ;
+
+public class MetricsTimeSeriesTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	ObjectMapper jsonMapper = new ObjectMapper( ) ;
+
+	@Test
+	public void merged_documents_are_padded_and_latest_prepended ( ) throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var names = List.of( "usrCpu", "load", "timeStamp" ) ;
+		var series = new MetricsTimeSeries( names, 2 ) ;
+		series.append( document( new double[] { 300, 200, 100 }, new double[] { 3, 2, 1 }, null ) ) ;
+		series.append( document( new double[] { 50 }, null, new double[] { 0.5 } ) ) ;
+
+		var latest = new MetricsTimeSeries( names, 2 ) ;
+		latest.append( document( new double[] { 400 }, new double[] { 4 }, new double[] { 1.5 } ) ) ;
+
+		// when
+		series.prepend( latest ) ;
+
+		// then
+		assertThat( series.length( ) ).isEqualTo( 5 ) ;
+		assertThat( toJson( series ) ).isEqualTo(
+				"{\"usrCpu\":[4,3,2,1,0],\"load\":[1.5,0,0,0,0.5],\"timeStamp\":[400,300,200,100,50]}" ) ;
+
+		assertThat( toJson( series.sample( 2, 1 ) ) ).isEqualTo(
+				"{\"usrCpu\":[4,3,1,0],\"load\":[1.5,0,0,0.5],\"timeStamp\":[400,300,100,50]}" ) ;
+
+	}
+
+	@Test
+	public void empty_series_has_no_data ( ) throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		var series = new MetricsTimeSeries( List.of( "usrCpu", "timeStamp" ), 10 ) ;
+
+		assertThat( toJson( series ) ).isEqualTo( "{}" ) ;
+
+	}
+
+	@Test
+	public void downsampling_keeps_peaks_within_max_points ( ) throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var timeStamps = new double[1000] ;
+		var usrCpu = new double[1000] ;
+
+		for ( var i = 0; i < timeStamps.length; i++ ) {
+
+			timeStamps[i] = 100000 - ( i * 30 ) ;
+			usrCpu[i] = ( i == 500 ) ? 90 : i % 7 ;
+
+		}
+
+		var series = new MetricsTimeSeries( List.of( "usrCpu", "timeStamp" ), 1000 ) ;
+		series.append( document( timeStamps, usrCpu, null ) ) ;
+
+		for ( var downsampler : List.of( MetricsDownsampler.lttb, MetricsDownsampler.minmax ) ) {
+
+			// when
+			var reduced = downsampler.downsample( series, 20 ) ;
+
+			// then
+			assertThat( reduced.length( ) ).as( downsampler.name( ) ).isEqualTo( 20 ) ;
+			assertThat( reduced.values( "usrCpu" ) ).as( downsampler.name( ) ).contains( 90 ) ;
+
+		}
+
+		assertThat( MetricsDownsampler.mean.downsample( series, 20 ).length( ) ).isEqualTo( 20 ) ;
+		assertThat( MetricsDownsampler.parse( "unknown" ).downsample( series, 2000 ) ).isSameAs( series ) ;
+
+		// cache keys
+		assertThat( MetricsDownsampler.cacheKey( 0, "minmax" ) ).isEqualTo( MetricsDownsampler.cacheKey( 0, "lttb" ) ) ;
+		assertThat( MetricsDownsampler.cacheKey( 20, "unknown" ) ).isEqualTo( MetricsDownsampler.cacheKey( 20, "LTTB" ) ) ;
+		assertThat( MetricsDownsampler.cacheKey( 20, "mean" ) ).isNotEqualTo( MetricsDownsampler.cacheKey( 20, "lttb" ) ) ;
+
+	}
+
+	@Test
+	public void downsampled_values_keep_their_time_stamps ( ) throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: attributes peaking on different rows, load is small
+		var timeStamps = new double[1000] ;
+		var usrCpu = new double[1000] ;
+		var load = new double[1000] ;
+
+		for ( var i = 0; i < timeStamps.length; i++ ) {
+
+			timeStamps[i] = 100000 - ( i * 30 ) ;
+			usrCpu[i] = ( i == 100 ) ? 90 : i % 7 ;
+			load[i] = ( i == 700 ) ? 0.9 : 0.001 * ( i % 3 ) ;
+
+		}
+
+		var series = new MetricsTimeSeries( List.of( "usrCpu", "load", "timeStamp" ), 1000 ) ;
+		series.append( document( timeStamps, usrCpu, load ) ) ;
+
+		// when
+		var reduced = MetricsDownsampler.minmax.downsample( series, 20 ) ;
+
+		// then: every row is a collected sample
+		assertThat( reduced.length( ) ).isLessThanOrEqualTo( 20 ) ;
+		assertThat( reduced.values( "usrCpu" ) ).contains( 90 ) ;
+		assertThat( reduced.values( "load" ) ).contains( 0.9 ) ;
+
+		for ( var row = 0; row < reduced.length( ); row++ ) {
+
+			var sourceRow = (int) ( ( 100000 - reduced.valueAt( "timeStamp", row ) ) / 30 ) ;
+			assertThat( reduced.valueAt( "usrCpu", row ) ).isEqualTo( usrCpu[sourceRow] ) ;
+			assertThat( reduced.valueAt( "load", row ) ).isEqualTo( load[sourceRow] ) ;
+
+		}
+
+		// small averages are not rounded to 0
+		assertThat( MetricsDownsampler.mean.downsample( series, 20 ).values( "load" ) ).doesNotContain( 0 ) ;
+		assertThat( MetricsDownsampler.roundAverage( 0.00123456 ) ).isEqualTo( 0.001235 ) ;
+		assertThat( MetricsDownsampler.roundAverage( 123456.789 ) ).isEqualTo( 123456.79 ) ;
+
+	}
+
+	private Map<String, MetricColumn> document ( double[] timeStamps , double[] usrCpu , double[] load ) {
+
+		var values = new HashMap<String, MetricColumn>( ) ;
+		values.put( "timeStamp", column( timeStamps, true ) ) ;
+
+		if ( usrCpu != null ) {
+
+			values.put( "usrCpu", column( usrCpu, true ) ) ;
+
+		}
+
+		if ( load != null ) {
+
+			values.put( "load", column( load, false ) ) ;
+
+		}
+
+		return values ;
+
+	}
+
+	private MetricColumn column ( double[] values , boolean integral ) {
+
+		var column = new MetricColumn( values.length ) ;
+
+		for ( var value : values ) {
+
+			if ( integral ) {
+
+				column.add( value ) ;
+
+			} else {
+
+				column.addDecimal( value ) ;
+
+			}
+
+		}
+
+		return column ;
+
+	}
+
+	private String toJson ( MetricsTimeSeries series ) throws Exception {
+
+		var writer = new StringWriter( ) ;
+
+		try ( var generator = jsonMapper.getFactory( ).createGenerator( writer ) ) {
+
+			series.writeJson( generator ) ;
+
+		}
+
+		return writer.toString( ) ;
+
+	}
+
+}
@@ -0,0 +1,122 @@
+package org.csap.events.util ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import org.csap.events.CsapEventsApplication ;
+import org.csap.helpers.CsapApplication ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.cache.annotation.Cacheable ;
+import org.springframework.web.method.HandlerMethod ;
+
+public class ReportCacheWarmerTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	@Test
+	public void most_requested_urls_are_warmed_first ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var warmer = new ReportCacheWarmer( ) ;
+
+		for ( var i = 0; i < 5; i++ ) {
+
+			warmer.recordRequest( "/api/report/vm", "appId=csap&life=dev" ) ;
+
+		}
+
+		for ( var i = 0; i < 3; i++ ) {
+
+			warmer.recordRequest( "/api/report/service", "appId=csap&life=dev" ) ;
+
+		}
+
+		warmer.recordRequest( "/api/report/service", "appId=csap" ) ;
+		warmer.recordRequest( "/api/report/vm", "appId=csap&stream=true" ) ;
+		warmer.recordRequest( "/api/report/vm", "appId=csap&stream=true" ) ;
+
+		// when
+		var urls = warmer.mostRequested( ) ;
+
+		// then
+		assertThat( urls ).containsExactly(
+				"/api/report/vm?appId=csap&life=dev",
+				"/api/report/service?appId=csap&life=dev" ) ;
+
+		warmer.decayCounts( ) ;
+		assertThat( warmer.mostRequested( ) ).containsExactly( "/api/report/vm?appId=csap&life=dev" ) ;
+
+	}
+
+	@Test
+	public void only_cached_report_handlers_are_warmed ( )
+		throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		var warmer = new ReportCacheWarmer( ) ;
+		var controller = new Handlers( ) ;
+
+		assertThat( warmer.isWarmable( new HandlerMethod( controller, "report" ) ) ).isTrue( ) ;
+		assertThat( warmer.isWarmable( new HandlerMethod( controller, "postReport" ) ) ).isFalse( ) ;
+		assertThat( warmer.isWarmable( new HandlerMethod( controller, "metrics" ) ) ).isFalse( ) ;
+		assertThat( warmer.isWarmable( controller ) ).isFalse( ) ;
+
+	}
+
+	@Test
+	public void historical_metrics_are_warmed ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		var warmer = new ReportCacheWarmer( ) ;
+		var metricsUrl = CsapEventsApplication.METRICS_API + "/csap-dev01/host_30" ;
+
+		assertThat( warmer.isHistoricalMetrics( metricsUrl, "2", null ) ).isTrue( ) ;
+		assertThat( warmer.isHistoricalMetrics( metricsUrl, "5", "0" ) ).isTrue( ) ;
+
+		// today and yesterday are still being uploaded, bucketSpacing is not cached
+		assertThat( warmer.isHistoricalMetrics( metricsUrl, null, null ) ).isFalse( ) ;
+		assertThat( warmer.isHistoricalMetrics( metricsUrl, "1", null ) ).isFalse( ) ;
+		assertThat( warmer.isHistoricalMetrics( metricsUrl, "2", "3" ) ).isFalse( ) ;
+		assertThat( warmer.isHistoricalMetrics( "/api/report/vm", "2", null ) ).isFalse( ) ;
+
+		warmer.setHistoricalMetrics( false ) ;
+		assertThat( warmer.isHistoricalMetrics( metricsUrl, "2", null ) ).isFalse( ) ;
+
+	}
+
+	static class Handlers {
+
+		@Cacheable ( value = CsapEventsApplication.SIMPLE_REPORT_CACHE , sync = true )
+		public String report ( ) {
+
+			return "report" ;
+
+		}
+
+		public String postReport ( ) {
+
+			return "posted" ;
+
+		}
+
+		@Cacheable ( CsapEventsApplication.METRICS_REPORT_CACHE )
+		public String metrics ( ) {
+
+			return "metrics" ;
+
+		}
+
+	}
+
+}
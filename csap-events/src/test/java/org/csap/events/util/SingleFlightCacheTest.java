@@ -0,0 +1,126 @@
+package org.csap.events.util ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import java.util.ArrayList ;
+import java.util.concurrent.CountDownLatch ;
+import java.util.concurrent.Executors ;
+import java.util.concurrent.Future ;
+import java.util.concurrent.TimeUnit ;
+import java.util.concurrent.atomic.AtomicInteger ;
+
+import org.csap.helpers.CsapApplication ;
+import org.csap.integations.CsapMicroMeter ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+import org.springframework.cache.concurrent.ConcurrentMapCache ;
+
+import com.fasterxml.jackson.databind.ObjectMapper ;
+
+public class SingleFlightCacheTest {
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	CsapMicroMeter.Utilities metricUtilities = CsapMicroMeter.Utilities.supportForNonSpringConsumers( ) ;
+
+	@Test
+	public void concurrent_misses_share_one_load ( ) throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var cache = new SingleFlightCache( new ConcurrentMapCache( "test" ), 60_000, metricUtilities ) ;
+		var loads = new AtomicInteger( ) ;
+		var loadStarted = new CountDownLatch( 1 ) ;
+		var releaseLoad = new CountDownLatch( 1 ) ;
+
+		var executor = Executors.newFixedThreadPool( 4 ) ;
+		var results = new ArrayList<Future<String>>( ) ;
+
+		// when
+		results.add( executor.submit( ( ) -> cache.get( "report", ( ) -> {
+
+			loads.incrementAndGet( ) ;
+			loadStarted.countDown( ) ;
+			releaseLoad.await( ) ;
+			return "report-1" ;
+
+		} ) ) ) ;
+
+		loadStarted.await( 5, TimeUnit.SECONDS ) ;
+
+		for ( var i = 0; i < 3; i++ ) {
+
+			results.add( executor.submit( ( ) -> cache.get( "report", ( ) -> {
+
+				loads.incrementAndGet( ) ;
+				return "report-other" ;
+
+			} ) ) ) ;
+
+		}
+
+		Thread.sleep( 100 ) ;
+		releaseLoad.countDown( ) ;
+
+		// then
+		for ( var result : results ) {
+
+			assertThat( result.get( 5, TimeUnit.SECONDS ) ).isEqualTo( "report-1" ) ;
+
+		}
+
+		assertThat( loads.get( ) ).isEqualTo( 1 ) ;
+		assertThat( cache.get( "report", String.class ) ).isEqualTo( "report-1" ) ;
+		executor.shutdownNow( ) ;
+
+	}
+
+	@Test
+	public void stale_entry_is_rebuilt ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var cache = new SingleFlightCache( new ConcurrentMapCache( "test" ), 0, metricUtilities ) ;
+		cache.put( "report", "report-1" ) ;
+
+		// when
+		var report = cache.get( "report", ( ) -> "report-2" ) ;
+
+		// then
+		assertThat( report ).isEqualTo( "report-2" ) ;
+		assertThat( cache.get( "report" ).get( ) ).isEqualTo( "report-2" ) ;
+
+	}
+
+	@Test
+	public void partial_reports_are_not_cached ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given
+		var cache = new SingleFlightCache( new ConcurrentMapCache( "test" ), 60_000, metricUtilities ) ;
+		var jsonMapper = new ObjectMapper( ) ;
+		var partialReport = jsonMapper.createObjectNode( ).put( SingleFlightCache.PARTIAL_REPORT, true ) ;
+		var fullReport = jsonMapper.createObjectNode( ).put( "data", "all services" ) ;
+
+		// when
+		var first = cache.get( "report", ( ) -> partialReport ) ;
+		var second = cache.get( "report", ( ) -> fullReport ) ;
+
+		// then: rebuilt on the next request
+		assertThat( first ).isSameAs( partialReport ) ;
+		assertThat( second ).isSameAs( fullReport ) ;
+		assertThat( cache.get( "report", ( ) -> partialReport ) ).isSameAs( fullReport ) ;
+
+	}
+
+}
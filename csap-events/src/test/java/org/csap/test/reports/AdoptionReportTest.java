@@ -0,0 +1,226 @@
+package org.csap.test.reports ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import java.util.ArrayList ;
+import java.util.Date ;
+import java.util.List ;
+
+import javax.inject.Inject ;
+
+import org.bson.Document ;
+import org.csap.events.db.CsapAdoptionReportBuilder ;
+import org.csap.events.util.DateUtil ;
+import org.csap.events.util.EventJsonConstants ;
+import org.csap.events.util.MongoConstants ;
+import org.csap.helpers.CsapApplication ;
+import org.csap.test.container.CsapEventsTests ;
+import org.junit.jupiter.api.AfterAll ;
+import org.junit.jupiter.api.BeforeAll ;
+import org.junit.jupiter.api.Tag ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+import com.fasterxml.jackson.databind.JsonNode ;
+import com.fasterxml.jackson.databind.ObjectMapper ;
+import com.mongodb.client.MongoCollection ;
+import com.mongodb.client.model.Filters ;
+
+@CsapEventsTests.MockTests
+@Tag ( "mongo" )
+
+class AdoptionReportTest {
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	// no other test data on this day
+	static final int OFFSET = 3 ;
+	static final String PROJECT = "adoption-a" ;
+	static final String PROJECT_WITHOUT_MODEL = "adoption-b" ;
+
+	@Inject
+	MongoEmbedded mongoEmbedded ;
+
+	@Inject
+	CsapAdoptionReportBuilder adoptionReportBuilder ;
+
+	@Inject
+	ObjectMapper jacksonMapper ;
+
+	long dayStart = DateUtil.getDateWithOffSet( OFFSET ).getTimeInMillis( ) ;
+	String date = DateUtil.buildMongoCreatedDateFromOffset( OFFSET ) ;
+
+	@BeforeAll
+	void beforeAll ( ) {
+
+		deleteSeededEvents( ) ;
+
+		var events = new ArrayList<Document>( ) ;
+
+		// model summaries: the latest per lifecycle is used
+		events.add( modelSummary( "dev", 1, "1.0", "old deployment", List.of(
+				projectPackage( PROJECT, 1, 1, 1 ) ) ) ) ;
+		events.add( modelSummary( "dev", 3, "2.0", "adoption deployment", List.of(
+				projectPackage( "other-project", 9, 9, 9 ),
+				projectPackage( PROJECT, 2, 5, 7 ) ) ) ) ;
+		events.add( modelSummary( "prod", 2, "3.0", "adoption deployment", List.of(
+				projectPackage( PROJECT, 3, 4, 6 ) ) ) ) ;
+
+		events.add( event( PROJECT, "/csap/reports/host/daily", 4 )
+				.append( "data", new Document( "summary", new Document( "totalLoad", 1.5 )
+						.append( "numberOfSamples", 10 ) ) ) ) ;
+		events.add( event( PROJECT, "/csap/reports/host/daily", 4 )
+				.append( "data", new Document( "summary", new Document( "totalLoad", 2.5 )
+						.append( "numberOfSamples", 20 ) ) ) ) ;
+
+		events.add( event( PROJECT, "/csap/health", 5 )
+				.append( "data", new Document( "vm", new Document( "cpuCount", 8 ) ) ) ) ;
+		events.add( event( PROJECT, "/csap/health", 5 )
+				.append( "data", new Document( "vm", new Document( "cpuCount", 4 ) ) ) ) ;
+
+		events.add( uiEvent( "/csap/ui/access", "user-1" ) ) ;
+		events.add( uiEvent( "/csap/ui/access", "user-2" ) ) ;
+		events.add( uiEvent( "/csap/ui/access", "user-1" ) ) ;
+		events.add( uiEvent( "/csap/system/deploy", "user-1" ) ) ;
+
+		events.add( event( PROJECT_WITHOUT_MODEL, "/csap/reports/host/daily", 4 )
+				.append( "data", new Document( "summary", new Document( "totalLoad", 9.0 )
+						.append( "numberOfSamples", 90 ) ) ) ) ;
+
+		eventCollection( ).insertMany( events ) ;
+
+	}
+
+	@AfterAll
+	void afterAll ( ) {
+
+		deleteSeededEvents( ) ;
+
+	}
+
+	@Test
+	void report_matches_seeded_data ( )
+		throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// when
+		var report = jacksonMapper.readTree( adoptionReportBuilder.buildAdoptionReport( OFFSET ) ) ;
+		logger.info( "report: {}", jacksonMapper.writerWithDefaultPrettyPrinter( ).writeValueAsString( report ) ) ;
+
+		// then
+		assertThat( report.path( "category" ).asText( ) ).isEqualTo( EventJsonConstants.CSAP_GLOBAL_REPORT_CATEGORY ) ;
+		assertThat( report.at( "/createdOn/date" ).asText( ) ).isEqualTo( date ) ;
+		assertThat( report.path( "data" ) ).hasSize( 2 ) ;
+
+		var expectedProject = jacksonMapper.readTree( "{"
+				+ "\"projectName\":\"adoption-a\",\"deploymentName\":\"adoption deployment\","
+				+ "\"csapVersion\":\"3.0\",\"appId\":\"adoption-app\","
+				+ "\"vms\":5,\"serviceCount\":9,\"instanceCount\":13,"
+				+ "\"cpuCount\":12,\"totalLoad\":4.0,\"numSamples\":30,"
+				+ "\"activeUsers\":2,\"totalActivity\":4}" ) ;
+
+		var project = projectSummary( report, PROJECT ) ;
+		expectedProject.fieldNames( ).forEachRemaining( field -> assertThat( project.path( field ) )
+				.as( field )
+				.isEqualTo( expectedProject.path( field ) ) ) ;
+
+		var total = projectSummary( report, "total" ) ;
+
+		for ( var field : List.of( "vms", "serviceCount", "instanceCount", "cpuCount", "totalLoad", "numSamples",
+				"activeUsers", "totalActivity" ) ) {
+
+			assertThat( total.path( field ).asDouble( ) ).as( "total " + field )
+					.isEqualTo( expectedProject.path( field ).asDouble( ) ) ;
+
+		}
+
+		// no model summary: not reported
+		assertThat( projectSummary( report, PROJECT_WITHOUT_MODEL ) ).isNull( ) ;
+
+	}
+
+	private JsonNode projectSummary ( JsonNode report , String projectName ) {
+
+		for ( var summary : report.path( "data" ) ) {
+
+			if ( projectName.equals( summary.path( "projectName" ).asText( ) ) ) {
+
+				return summary ;
+
+			}
+
+		}
+
+		return null ;
+
+	}
+
+	private Document modelSummary (
+									String lifecycle ,
+									int hour ,
+									String version ,
+									String name ,
+									List<Document> packages ) {
+
+		var summary = event( PROJECT, EventJsonConstants.CSAP_MODEL_SUMMAY_CATEGORY, hour )
+				.append( "data", new Document( "version", version )
+						.append( "name", name )
+						.append( "packages", packages ) ) ;
+
+		summary.put( "lifecycle", lifecycle ) ;
+		return summary ;
+
+	}
+
+	private Document projectPackage ( String packageName , int vms , int services , int instances ) {
+
+		return new Document( "package", packageName )
+				.append( "vms", vms )
+				.append( "services", services )
+				.append( "instances", new Document( "total", instances ) ) ;
+
+	}
+
+	private Document uiEvent ( String category , String uiUser ) {
+
+		return event( PROJECT, category, 6 ).append( "metaData", new Document( "uiUser", uiUser ) ) ;
+
+	}
+
+	private Document event ( String project , String category , int hour ) {
+
+		var createdOn = new Date( dayStart + hour * 3600_000L ) ;
+
+		return new Document( "category", category )
+				.append( "project", project )
+				.append( "lifecycle", "dev" )
+				.append( "appId", "adoption-app" )
+				.append( "createdOn", new Document( "mongoDate", createdOn )
+						.append( "lastUpdatedOn", createdOn )
+						.append( "date", date ) ) ;
+
+	}
+
+	private void deleteSeededEvents ( ) {
+
+		eventCollection( ).deleteMany( Filters.in( "project", PROJECT, PROJECT_WITHOUT_MODEL ) ) ;
+
+	}
+
+	private MongoCollection<Document> eventCollection ( ) {
+
+		return mongoEmbedded.mongoClient
+				.getDatabase( MongoConstants.EVENT_DB_NAME )
+				.getCollection( MongoConstants.EVENT_COLLECTION_NAME ) ;
+
+	}
+
+}
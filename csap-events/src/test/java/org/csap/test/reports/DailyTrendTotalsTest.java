@@ -0,0 +1,155 @@
+package org.csap.test.reports ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import java.util.ArrayList ;
+import java.util.stream.Collectors ;
+
+import javax.inject.Inject ;
+
+import org.bson.Document ;
+import org.csap.events.db.AnalyticsDbReader ;
+import org.csap.events.db.DailyTrendStore ;
+import org.csap.helpers.CsapApplication ;
+import org.csap.test.container.CsapEventsTests ;
+import org.junit.jupiter.api.AfterAll ;
+import org.junit.jupiter.api.BeforeAll ;
+import org.junit.jupiter.api.Tag ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+import com.fasterxml.jackson.databind.JsonNode ;
+
+@CsapEventsTests.MockTests
+@Tag ( "mongo" )
+
+class DailyTrendTotalsTest {
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static final String SERVICE_CATEGORY = "/csap/reports/process/daily" ;
+	static final String HOST_CATEGORY = "/csap/reports/host/daily" ;
+
+	@Inject
+	MongoEmbedded mongoEmbedded ;
+
+	@Inject
+	DailyTrendStore dailyTrendStore ;
+
+	@Inject
+	AnalyticsDbReader analyticsDbReader ;
+
+	int dateOffSet ;
+
+	@BeforeAll
+	void beforeAll ( )
+		throws Exception {
+
+		dateOffSet = mongoEmbedded.getDateOffSet( mongoEmbedded.DATE ) ;
+
+	}
+
+	@AfterAll
+	void afterAll ( ) {
+
+		dailyTrendStore.setEnabled( false ) ;
+
+	}
+
+	@Test
+	void service_trends_match_report_events ( )
+		throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		verifyTotalsMatchEvents( SERVICE_CATEGORY, null, new String[] { "topCpu" }, null ) ;
+		verifyTotalsMatchEvents( SERVICE_CATEGORY, "docker", new String[] { "topCpu" }, null ) ;
+		verifyTotalsMatchEvents( SERVICE_CATEGORY, null, new String[] { "threadCount" },
+				new String[] { "numberOfSamples" } ) ;
+
+	}
+
+	@Test
+	void host_trends_match_report_events ( )
+		throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		verifyTotalsMatchEvents( HOST_CATEGORY, null, new String[] { "totalMemFree" }, null ) ;
+		verifyTotalsMatchEvents( HOST_CATEGORY, null, new String[] { "totalMemFree" },
+				new String[] { "numberOfSamples" } ) ;
+
+	}
+
+	@Test
+	void rebuilt_totals_are_indexed ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// when
+		dailyTrendStore.setEnabled( true ) ;
+		dailyTrendStore.rebuild( ) ;
+
+		// then: same indexes as setup3-csap-dbs.js
+		var indexKeys = dailyTrendStore.getTotalsCollection( )
+				.listIndexes( )
+				.into( new ArrayList<>( ) )
+				.stream( )
+				.map( index -> index.get( "key" ) )
+				.collect( Collectors.toList( ) ) ;
+
+		logger.info( "indexes: {}", indexKeys ) ;
+
+		assertThat( indexKeys ).contains(
+				new Document( "appId", 1 ).append( "project", 1 ).append( "lifecycle", 1 ).append( "category", 1 )
+						.append( "createdOn.date", -1 ),
+				new Document( "category", 1 ).append( "createdOn.date", -1 ) ) ;
+
+	}
+
+	private void verifyTotalsMatchEvents (
+											String category ,
+											String serviceName ,
+											String[] metricsId ,
+											String[] divideBy )
+		throws Exception {
+
+		// given: trends grouped from every report event
+		dailyTrendStore.setEnabled( false ) ;
+		var eventTrends = trendReport( category, serviceName, metricsId, divideBy ) ;
+
+		// when: trends read from the rebuilt totals
+		dailyTrendStore.setEnabled( true ) ;
+		dailyTrendStore.rebuild( ) ;
+		assertThat( dailyTrendStore.isReady( ) ).isTrue( ) ;
+		var totalsTrends = trendReport( category, serviceName, metricsId, divideBy ) ;
+
+		// then
+		logger.info( "{} {}: {}", category, metricsId[0], totalsTrends ) ;
+		assertThat( eventTrends.size( ) ).as( "trends found" ).isGreaterThan( 0 ) ;
+		assertThat( totalsTrends )
+				.as( category + " " + metricsId[0] + " totals do not match events" )
+				.isEqualTo( eventTrends ) ;
+
+	}
+
+	private JsonNode trendReport (
+									String category ,
+									String serviceName ,
+									String[] metricsId ,
+									String[] divideBy )
+		throws Exception {
+
+		return analyticsDbReader.buildCategoryTrendingReport( false, "SensusCsap", "CSAP Platform", "dev",
+				serviceName, category, metricsId, divideBy, null, 2, dateOffSet ) ;
+
+	}
+
+}
@@ -0,0 +1,137 @@
+package org.csap.test.reports ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+import static org.assertj.core.api.Assertions.assertThatThrownBy ;
+
+import java.util.ArrayList ;
+import java.util.Date ;
+import java.util.HashSet ;
+import java.util.List ;
+
+import javax.inject.Inject ;
+
+import org.bson.Document ;
+import org.bson.types.ObjectId ;
+import org.csap.events.db.EventDataReader ;
+import org.csap.events.util.MongoConstants ;
+import org.csap.helpers.CsapApplication ;
+import org.csap.test.container.CsapEventsTests ;
+import org.junit.jupiter.api.AfterAll ;
+import org.junit.jupiter.api.Tag ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+import com.mongodb.client.MongoCollection ;
+import com.mongodb.client.model.Filters ;
+
+@CsapEventsTests.MockTests
+@Tag ( "mongo" )
+
+class EventPagingTest {
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static final String APP_ID = "keyset-paging" ;
+	static final String SEARCH = "appId=" + APP_ID + ",eventReceivedOn=false,isDataRequired=false" ;
+
+	@Inject
+	MongoEmbedded mongoEmbedded ;
+
+	@Inject
+	EventDataReader eventDataReader ;
+
+	@AfterAll
+	void tearDown ( ) {
+
+		eventCollection( ).deleteMany( Filters.eq( "appId", APP_ID ) ) ;
+
+	}
+
+	@Test
+	void pages_return_every_event_once ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: groups of events sharing a createdOn, plus events without one
+		var insertedIds = new HashSet<ObjectId>( ) ;
+		var events = new ArrayList<Document>( ) ;
+		var now = System.currentTimeMillis( ) ;
+
+		for ( var i = 0; i < 21; i++ ) {
+
+			var createdOn = new Date( now - ( i / 5 ) * 60000 ) ;
+			events.add( new Document( "appId", APP_ID )
+					.append( "category", "/keyset/" + i )
+					.append( "createdOn", new Document( "mongoDate", createdOn ).append( "lastUpdatedOn", createdOn ) ) ) ;
+
+		}
+
+		for ( var i = 0; i < 6; i++ ) {
+
+			events.add( new Document( "appId", APP_ID ).append( "category", "/keyset/no-date/" + i ) ) ;
+
+		}
+
+		for ( var event : events ) {
+
+			var id = new ObjectId( ) ;
+			event.append( "_id", id ) ;
+			insertedIds.add( id ) ;
+
+		}
+
+		eventCollection( ).insertMany( events ) ;
+
+		// when: walking pages of 4, ending on a tie
+		var returnedIds = new ArrayList<ObjectId>( ) ;
+		var pageToken = "" ;
+		var pages = 0 ;
+
+		do {
+
+			var page = eventDataReader.getEventsAfter( SEARCH, 4, pageToken ) ;
+			assertThat( page.getEvents( ) ).hasSizeLessThanOrEqualTo( 4 ) ;
+			page.getEvents( ).forEach( event -> returnedIds.add( event.getObjectId( "_id" ) ) ) ;
+			pageToken = page.getNextPageToken( ) ;
+			pages++ ;
+
+		} while ( pageToken != null && pages < 20 ) ;
+
+		// then
+		logger.info( "pages: {} events: {}", pages, returnedIds.size( ) ) ;
+		assertThat( pageToken ).isNull( ) ;
+		assertThat( returnedIds ).hasSize( insertedIds.size( ) ) ;
+		assertThat( returnedIds ).containsExactlyInAnyOrderElementsOf( insertedIds ) ;
+
+	}
+
+	@Test
+	void non_positive_length_is_rejected ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		for ( var length : List.of( 0, -1 ) ) {
+
+			assertThatThrownBy( ( ) -> eventDataReader.getEventsAfter( SEARCH, length, "" ) )
+					.isInstanceOf( IllegalArgumentException.class ) ;
+
+		}
+
+	}
+
+	private MongoCollection<Document> eventCollection ( ) {
+
+		return mongoEmbedded.mongoClient
+				.getDatabase( MongoConstants.EVENT_DB_NAME )
+				.getCollection( MongoConstants.EVENT_COLLECTION_NAME ) ;
+
+	}
+
+}
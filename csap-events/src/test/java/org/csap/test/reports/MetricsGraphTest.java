@@ -0,0 +1,124 @@
+package org.csap.test.reports ;
+
+import static org.assertj.core.api.Assertions.assertThat ;
+
+import java.util.Date ;
+import java.util.List ;
+
+import javax.inject.Inject ;
+
+import org.bson.Document ;
+import org.csap.events.db.MetricsDataReader ;
+import org.csap.events.db.MetricsHotTail ;
+import org.csap.events.util.MetricsTimeSeries ;
+import org.csap.events.util.MongoConstants ;
+import org.csap.helpers.CsapApplication ;
+import org.csap.test.container.CsapEventsTests ;
+import org.junit.jupiter.api.AfterEach ;
+import org.junit.jupiter.api.Tag ;
+import org.junit.jupiter.api.Test ;
+import org.slf4j.Logger ;
+import org.slf4j.LoggerFactory ;
+
+import com.mongodb.client.MongoCollection ;
+import com.mongodb.client.model.Filters ;
+
+@CsapEventsTests.MockTests
+@Tag ( "mongo" )
+
+class MetricsGraphTest {
+
+	static {
+
+		CsapApplication.initialize( "" ) ;
+
+	}
+
+	Logger logger = LoggerFactory.getLogger( getClass( ) ) ;
+
+	static final String HOST = "graph-test-host" ;
+	static final String ID = "host_30" ;
+	static final List<String> ATTRIBUTES = List.of( MetricsTimeSeries.TIME_STAMP, "usrCpu" ) ;
+
+	@Inject
+	MongoEmbedded mongoEmbedded ;
+
+	@Inject
+	MetricsDataReader metricsDataReader ;
+
+	@Inject
+	MetricsHotTail metricsHotTail ;
+
+	long now = System.currentTimeMillis( ) ;
+
+	@AfterEach
+	void afterEach ( ) {
+
+		metricsHotTail.setEnabled( false ) ;
+		metricsCollection( ).deleteMany( Filters.eq( "attributes.hostName", HOST ) ) ;
+
+	}
+
+	@Test
+	void documents_inserted_in_mongo_are_graphed ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: uploaded to another instance
+		metricsCollection( ).insertOne( dataDocument( 5, 42 ) ) ;
+
+		// when
+		var graph = currentDayGraph( ) ;
+
+		// then
+		assertThat( graph.values( "usrCpu" ) ).containsExactly( 42 ) ;
+
+	}
+
+	@Test
+	void hot_tail_reads_older_documents_from_mongo ( ) {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		// given: uploaded before the series started in memory
+		metricsHotTail.setEnabled( true ) ;
+		metricsCollection( ).insertOne( dataDocument( 40, 40 ) ) ;
+
+		var ingested = dataDocument( 20, 20 ) ;
+		metricsCollection( ).insertOne( ingested ) ;
+		metricsHotTail.metricsDataIngested( ingested ) ;
+
+		// when
+		var graph = currentDayGraph( ) ;
+
+		// then: newest first, no duplicates
+		assertThat( graph.values( "usrCpu" ) ).containsExactly( 20, 40 ) ;
+
+	}
+
+	private MetricsTimeSeries currentDayGraph ( ) {
+
+		return metricsDataReader.findAndMergeMetricData( HOST, ID, 1, 0, "", "", false, false, ATTRIBUTES, 0 ) ;
+
+	}
+
+	private Document dataDocument ( int minutesAgo , int usrCpu ) {
+
+		var updatedOn = new Date( now - minutesAgo * 60_000L ) ;
+
+		return new Document( "attributes", new Document( "hostName", HOST ).append( "id", ID ) )
+				.append( "data", new Document( MetricsTimeSeries.TIME_STAMP, List.of( updatedOn.getTime( ) ) )
+						.append( "usrCpu", List.of( usrCpu ) ) )
+				.append( "createdOn", new Document( "lastUpdatedOn", updatedOn ).append( "mongoDate", updatedOn ) ) ;
+
+	}
+
+	private MongoCollection<Document> metricsCollection ( ) {
+
+		return mongoEmbedded.mongoClient
+				.getDatabase( MongoConstants.METRICS_DB_NAME )
+				.getCollection( MongoConstants.METRICS_DATA_COLLECTION_NAME ) ;
+
+	}
+
+}
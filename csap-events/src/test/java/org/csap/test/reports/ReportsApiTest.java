@@ -315,6 +315,27 @@ public class ReportsApiTest {
 
 	}
 
+	@Test
+	public void verify_streamed_reports_match_reports ( @Autowired MockMvc mockMvc )
+		throws Exception {
+
+		logger.info( CsapApplication.testHeader( ) ) ;
+
+		for ( var url : List.of( "/api/report/vm", "/api/report/service" ) ) {
+
+			Map<String, String> urlParams = mongoTest.createStandardUrlParamMap( "2" ) ;
+			JsonNode report = jacksonMapper.readTree( retrieveAnalyticsReport( mockMvc, urlParams, url ) ) ;
+
+			urlParams.put( "stream", "true" ) ;
+			JsonNode streamedReport = jacksonMapper.readTree( retrieveAnalyticsReport( mockMvc, urlParams, url ) ) ;
+
+			assertThat( report.path( "data" ).size( ) ).as( url ).isGreaterThan( 0 ) ;
+			assertThat( streamedReport ).as( url ).isEqualTo( report ) ;
+
+		}
+
+	}
+
 	private String retrieveAnalyticsReport ( MockMvc mockMvc , Map<String, String> urlParams , String url )
 		throws Exception {
 
@@ -330,7 +351,7 @@ public class ReportsApiTest {
 		requestBuilder.accept( MediaType.APPLICATION_JSON ) ;
 		ResultActions resultActions = mockMvc.perform( requestBuilder ) ;
 		String responseText = resultActions.andExpect( status( ).isOk( ) )
-				.andExpect( content( ).contentType( MediaType.APPLICATION_JSON ) )
+				.andExpect( content( ).contentTypeCompatibleWith( MediaType.APPLICATION_JSON ) )
 				.andReturn( )
 				.getResponse( )
 				.getContentAsString( ) ;
@@ -10,6 +10,7 @@ import java.net.URI ;
 import java.net.URISyntaxException ;
 
 import org.csap.events.CsapEventsApplication ;
+import org.csap.events.db.EventCount ;
 import org.csap.events.db.EventDataReader ;
 import org.csap.events.db.EventDataWriter ;
 import org.csap.events.db.MetricsDataHandler ;
@@ -89,7 +90,8 @@ public class CrossOrginTest {
 
 		logger.info( "test_cors" ) ;
 		// mock does much validation.....
-		when( mockEventsReader.countEvents( anyInt( ), any( ), any( ), any( ), any( ) ) ).thenReturn( COUNT ) ;
+		when( mockEventsReader.countEvents( anyInt( ), any( ), any( ), any( ), any( ) ) )
+				.thenReturn( new EventCount( COUNT, false, EventCount.QUERY ) ) ;
 
 		testGetResponse( "/api/event/count?appId=SensusCsap",
 				convertToJsonpCallback( EVENT_COUNT_RES, false ),
@@ -103,7 +105,8 @@ public class CrossOrginTest {
 
 		logger.info( "test_cors" ) ;
 		// mock does much validation.....
-		when( mockEventsReader.countEvents( anyInt( ), any( ), any( ), any( ), any( ) ) ).thenReturn( COUNT ) ;
+		when( mockEventsReader.countEvents( anyInt( ), any( ), any( ), any( ), any( ) ) )
+				.thenReturn( new EventCount( COUNT, false, EventCount.QUERY ) ) ;
 
 		testOptionResponse( "/api/event/count?appId=SensusCsap" ) ;
 
@@ -118,7 +121,7 @@ public class CrossOrginTest {
 		// mock does much validation.....
 		when( mockMetricsHandler.buildPerformanceGraphDataForToday( any( ), any( ), any( ), anyInt( ), anyInt( ),
 				anyInt( ),
-				anyInt( ), any( ), any( ), any( ), anyBoolean( ), anyBoolean( ) ) ).thenReturn( DATA ) ;
+				anyInt( ), any( ), any( ), any( ), anyBoolean( ), anyBoolean( ), anyInt( ), any( ) ) ).thenReturn( DATA ) ;
 
 		testGetResponse( "/api/metrics/csap-dev02.lab.sensus.net/service_300?numberofDays=1",
 				metricsConvertToJsonpCallback( DATA, false ),